@@ -0,0 +1,80 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The folder that the benchmarks keep their files in, and the check that
+ * keeps them from running over a user's profiles.<br/>
+ * <br/>
+ * The benchmarks use JMH, from <tt>lib/jmh-core-1.35.jar</tt>. They live in
+ * the <tt>bench</tt> source folder, next to <tt>src</tt>, and are built
+ * against the compiled program with JMH's annotation processor, which
+ * generates the code that runs them:
+ * <pre>
+ * JMH=lib/jmh-core-1.35.jar:lib/jmh-generator-annprocess-1.35.jar:lib/jopt-simple-5.0.4.jar:lib/commons-math3-3.2.jar
+ * javac -cp build/classes:$JMH -d build/bench bench/com/chockly/pm/bench/*.java
+ * cd /tmp/empty-dir
+ * java -cp build/classes:build/bench:$JMH org.openjdk.jmh.Main [options] [regex]
+ * </pre>
+ * The benchmarks create a profile store, saves and INI files in the working
+ * directory, so they refuse to run in a directory that has a Profile
+ * Manager's data in it. Some useful JMH options are:
+ * <table>
+ * <tr><td>[regex]</td><td>Only runs the benchmarks whose names match, such
+ * as <tt>IniBench</tt>.</td></tr>
+ * <tr><td>-wi 2 -i 3</td><td>Runs fewer iterations, for a rough idea.</td></tr>
+ * <tr><td>-p [param]=[values]</td><td>Overrides a parameter, such as
+ * <tt>-p count=1000</tt>.</td></tr>
+ * <tr><td>-rf csv -rff [file]</td><td>Writes the results to a CSV file, to
+ * compare with a run from before a change.</td></tr>
+ * <tr><td>-prof gc</td><td>Also reports the memory allocated per
+ * operation.</td></tr>
+ * </table>
+ * Each result is the mean time per operation over the measured iterations,
+ * with its 99.9% confidence interval. Every benchmark runs in its own forked,
+ * headless, JVM.
+ *
+ * @author Curtis Oakley
+ */
+final class BenchData {
+    
+    /** The folder that the benchmarks keep their files in. */
+    static final File DATA_DIR = new File("bench-data");
+    /** Marks a directory as safe for the benchmarks to write to. */
+    private static final String MARKER = ".pm-bench";
+    
+    private BenchData(){}
+    
+    /**
+     * Checks that the benchmarks won't overwrite a user's profiles.
+     * @throws IOException If the working directory has Profile Manager data
+     * in it.
+     */
+    static void checkDirectory() throws IOException {
+        File marker = new File(MARKER);
+        if(marker.exists())
+            return;
+        if(new File("profiles").exists() || new File("profile_manger.ini").exists())
+            throw new IOException("The working directory has Profile Manager data in it."
+                    + " Run the benchmarks from an empty directory.");
+        
+        marker.createNewFile();
+    }
+}
@@ -0,0 +1,125 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.bench;
+
+import com.chockly.pm.Config;
+import com.chockly.pm.IOUtils;
+import com.chockly.pm.Profile;
+import com.chockly.pm.ProfileFactory;
+import com.chockly.pm.games.Game;
+import com.chockly.pm.games.GameFactory;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading the character names out of saved games during auto
+ * setup, for each of the built in game's save formats.<br/>
+ * <br/>
+ * Deep scanning is turned on so that every save's header is read. Each
+ * invocation starts from a flat save folder, and the time includes creating
+ * the profiles and moving the saves into them, the same as a real auto
+ * setup. Rebuilding the save folder isn't timed, and an invocation takes
+ * long enough that the cost of JMH timing each one doesn't matter.
+ *
+ * @author Curtis Oakley
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class HeaderBench {
+    
+    /** The number of saves scanned in an invocation. */
+    private static final int SAVES = 200;
+    /** The number of different characters the saves belong to. */
+    private static final int CHARACTERS = 20;
+    private static final int SAVE_SIZE = 8 * 1024;
+    
+    /** The class name of the game whose saves are scanned. */
+    @Param({"Morrowind", "Oblivion", "Skyrim", "Fallout3", "FalloutNV"})
+    public String game;
+    
+    private Game g;
+    private File gameDir;
+    private File saveDir;
+    
+    @Setup
+    public void setUp() throws Exception {
+        BenchData.checkDirectory();
+        
+        for(byte id : GameFactory.getAllBuiltInGameIds()){
+            Game candidate = GameFactory.getGameFromID(id);
+            if(candidate.getClass().getSimpleName().equals(game))
+                g = candidate;
+        }
+        if(g == null)
+            throw new IllegalArgumentException("Unknown game " + game);
+        
+        gameDir = new File(BenchData.DATA_DIR, "header-" + game).getAbsoluteFile();
+        Config.set(Config.Key.deep_scan, "true");
+        Config.set(g.getDirConfigKey(), gameDir.getPath() + File.separator);
+        saveDir = new File(g.getDir() + g.getGameSaveDir());
+    }
+    
+    @Setup(Level.Invocation)
+    public void createSaves() throws Exception {
+        // Start over from a save folder that hasn't been set up
+        removeProfiles();
+        saveDir.mkdirs();
+        
+        String ext = SaveFiles.getExtension(g.getId());
+        for(int i=0; i<SAVES; i++){
+            SaveFiles.write(new File(saveDir, "Save " + i + ext), g.getId(),
+                    "Character" + (i % CHARACTERS), SAVE_SIZE);
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(SAVES)
+    public void autoSetup() {
+        g.autoSetupProfiles();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        removeProfiles();
+    }
+    
+    private void removeProfiles(){
+        ProfileFactory pf = ProfileFactory.getInstance();
+        for(Profile p : pf.getProfiles(g.getId())){
+            pf.remove(p);
+        }
+        IOUtils.deleteFile(gameDir);
+    }
+}
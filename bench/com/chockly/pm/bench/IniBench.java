@@ -0,0 +1,93 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.bench;
+
+import com.chockly.pm.IOUtils;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks changing the save path in a game's INI file, which is done
+ * every time a Bethesda game's profile is activated. A Skyrim.ini is around
+ * 100 lines long, while the larger modded INIs run into the thousands.
+ *
+ * @author Curtis Oakley
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class IniBench {
+    
+    /** The number of lines in the INI file. */
+    @Param({"100", "1000", "10000"})
+    public int lines;
+    
+    private File ini;
+    private int n = 0;
+    
+    @Setup
+    public void setUp() throws Exception {
+        BenchData.checkDirectory();
+        
+        File dir = new File(BenchData.DATA_DIR, "ini");
+        dir.mkdirs();
+        ini = new File(dir, "Skyrim.ini");
+        
+        PrintWriter out = new PrintWriter(new FileWriter(ini));
+        try {
+            out.println("[General]");
+            out.println("sLanguage=ENGLISH");
+            out.println("SLocalSavePath=Saves\\");
+            for(int i=3, section=0; i<lines; i++){
+                if(i % 25 == 0)
+                    out.println("[Section" + (section++) + "]");
+                else
+                    out.println("fSetting" + i + "=" + (i * 0.25f));
+            }
+        } finally {
+            out.close();
+        }
+    }
+    
+    @Benchmark
+    public void setINIValue() throws Exception {
+        IOUtils.setINIValue(ini, "SLocalSavePath",
+                "Saves\\Profile " + (n++ % 16) + "\\", "[General]");
+    }
+    
+    @TearDown
+    public void tearDown() {
+        ini.delete();
+    }
+}
@@ -0,0 +1,121 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.bench;
+
+import com.chockly.pm.IOUtils;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link IOUtils#moveFile(java.io.File, java.io.File)} moving a
+ * saved game within a volume, where it is renamed, and between volumes,
+ * where it falls back to copying.<br/>
+ * <br/>
+ * The copy needs a folder on another volume, given with the
+ * <tt>bench.copyDir</tt> system property, for example
+ * <tt>-jvmArgsAppend -Dbench.copyDir=/mnt/other</tt>. It defaults to
+ * <tt>/dev/shm</tt>, and fails its set up when there is no other volume.
+ *
+ * @author Curtis Oakley
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class MoveFileBench {
+    
+    public static final String RENAME = "rename";
+    public static final String COPY = "copy";
+    
+    private static final int SAVE_SIZE = 4 * 1024 * 1024;
+    
+    /** How the save is moved, {@link #RENAME} or {@link #COPY}. */
+    @Param({RENAME, COPY})
+    public String move;
+    
+    private File from;
+    private File to;
+    
+    @Setup
+    public void setUp() throws Exception {
+        BenchData.checkDirectory();
+        
+        File fromDir = new File(BenchData.DATA_DIR, "move-from").getAbsoluteFile();
+        File toDir;
+        if(move.equals(COPY)){
+            toDir = new File(System.getProperty("bench.copyDir", "/dev/shm"), "pm-bench-move");
+        } else {
+            toDir = new File(BenchData.DATA_DIR, "move-to").getAbsoluteFile();
+        }
+        fromDir.mkdirs();
+        toDir.mkdirs();
+        
+        if(move.equals(COPY) && (!toDir.isDirectory()
+                || Files.getFileStore(fromDir.toPath()).equals(Files.getFileStore(toDir.toPath()))))
+        {
+            toDir.delete();
+            throw new UnsupportedOperationException(
+                    "set bench.copyDir to a folder on another volume");
+        }
+        
+        from = new File(fromDir, "Save 1.ess");
+        to = new File(toDir, "Save 1.ess");
+        byte[] data = new byte[SAVE_SIZE];
+        for(int i=0; i<data.length; i++){
+            data[i] = (byte) (i * 31 + 7);
+        }
+        OutputStream out = new FileOutputStream(from);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void moveFile() throws Exception {
+        // Move the save there and back
+        IOUtils.moveFile(from, to);
+        IOUtils.moveFile(to, from);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        from.delete();
+        to.delete();
+        to.getParentFile().delete();
+    }
+}
@@ -0,0 +1,134 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.bench;
+
+import com.chockly.pm.Config;
+import com.chockly.pm.Profile;
+import com.chockly.pm.ProfileFactory;
+import com.chockly.pm.games.GameFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks loading, saving and looking up profiles in the
+ * {@link ProfileFactory}, with 100 to 100,000 profiles spread over the
+ * built in games.<br/>
+ * <br/>
+ * The profile store is written straight to <tt>profiles/profiles.obj</tt>
+ * instead of being built with {@link ProfileFactory#add(java.lang.String, java.lang.String, byte)},
+ * which would create a save folder for every profile.
+ *
+ * @author Curtis Oakley
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class ProfileStoreBench {
+    
+    /** The number of random profile IDs that the lookups cycle through. */
+    private static final int LOOKUPS = 1024;
+    
+    /** The number of profiles in the store. */
+    @Param({"100", "1000", "10000", "100000"})
+    public int count;
+    
+    private ProfileFactory pf;
+    private int[] ids;
+    private byte[] games;
+    private int next = 0;
+    
+    @Setup
+    public void setUp() throws Exception {
+        BenchData.checkDirectory();
+        games = GameFactory.getAllBuiltInGameIds();
+        
+        // Write the store the same way ProfileFactory.saveProfiles does
+        Profile[] profiles = new Profile[count];
+        for(int i=0; i<count; i++){
+            profiles[i] = new Profile("Character " + i, "Character " + i,
+                    games[i % games.length], i + 1);
+        }
+        new File(Config.PROFILE_DATA_DIR).mkdirs();
+        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(
+                Config.PROFILE_DATA_DIR + "profiles.obj"));
+        try {
+            out.writeObject(profiles);
+            out.writeInt(count + 1);
+        } finally {
+            out.close();
+        }
+        
+        pf = load();
+        
+        // Make the loaded store the one the program uses
+        Field instance = ProfileFactory.class.getDeclaredField("instance");
+        instance.setAccessible(true);
+        instance.set(null, pf);
+        
+        Random r = new Random(count);
+        ids = new int[LOOKUPS];
+        for(int i=0; i<LOOKUPS; i++){
+            ids[i] = r.nextInt(count) + 1;
+        }
+    }
+    
+    @Benchmark
+    public ProfileFactory loadStore() throws Exception {
+        return load();
+    }
+    
+    @Benchmark
+    public void saveStore() {
+        pf.saveProfiles();
+    }
+    
+    @Benchmark
+    public Profile getProfile() {
+        return pf.getProfile(ids[next++ & (LOOKUPS - 1)]);
+    }
+    
+    @Benchmark
+    public Profile[] getProfiles() {
+        return pf.getProfiles(games[next++ % games.length]);
+    }
+    
+    /** Loads the profile store from disk into a new ProfileFactory. */
+    private static ProfileFactory load() throws Exception {
+        Constructor<ProfileFactory> c = ProfileFactory.class.getDeclaredConstructor();
+        c.setAccessible(true);
+        return c.newInstance();
+    }
+}
@@ -0,0 +1,300 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.bench;
+
+import com.chockly.pm.Config;
+import com.chockly.pm.Utils;
+import com.chockly.pm.games.Game;
+import com.chockly.pm.games.GameFactory;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Generates a folder of fake saved games for the built in games, for testing
+ * auto setup at scale without shipping real saves.<br/>
+ * <br/>
+ * Each game gets its own data folder with a save folder full of saves from
+ * the generated characters. The character's name is written into each save's
+ * header at the offset the game reads it from, and depending on the naming
+ * scheme also into the file name the way the game names its saves. The
+ * output folder also gets:
+ * <ul>
+ * <li><tt>profile_manger.ini</tt>, which points each game at its data
+ * folder, so that running the Profile Manager from the output folder (for
+ * example <tt>java com.chockly.pm.Main auto-setup all</tt>) scans the
+ * corpus.</li>
+ * <li><tt>manifest.csv</tt>, listing each save with the character's name
+ * and the profile folder that auto setup should move it into. A save whose
+ * name can't be made into a folder has an empty profile folder, and is left
+ * where it is.</li>
+ * </ul>
+ * Usage:
+ * <pre>
+ * java com.chockly.pm.bench.SaveCorpus [options]
+ * </pre>
+ * <table>
+ * <tr><td>--dir [folder]</td><td>The folder to write to, must be empty. Defaults to a new temporary folder.</td></tr>
+ * <tr><td>--games [names]</td><td>Comma separated game class names, such as <tt>Skyrim,Morrowind</tt>, or <tt>all</tt>. Default all.</td></tr>
+ * <tr><td>--characters [n]</td><td>The number of characters per game. Default 10.</td></tr>
+ * <tr><td>--saves [n]</td><td>The number of saves per character. Default 10.</td></tr>
+ * <tr><td>--size [size]</td><td>The size of each save, such as <tt>64k</tt>, or a range such as <tt>64k-8m</tt>. Default 64k.</td></tr>
+ * <tr><td>--naming [scheme]</td><td><tt>header</tt> to leave names out of the file names, <tt>filename</tt> to put them in, or <tt>mixed</tt>. Default mixed.</td></tr>
+ * <tr><td>--duplicates [fraction]</td><td>The fraction of characters that reuse another's name, either exactly or with characters that aren't allowed in folder names. Default 0.</td></tr>
+ * <tr><td>--unicode [fraction]</td><td>The fraction of characters with accented or non-Latin names. Default 0.</td></tr>
+ * <tr><td>--encoding [charset]</td><td>How names are encoded in the headers. Default UTF-8.</td></tr>
+ * <tr><td>--seed [n]</td><td>The random seed, the same options and seed make the same corpus. Default 1.</td></tr>
+ * </table>
+ * The saves are sparse files, so large corpora don't take up their full
+ * size. On Linux run both the generator and the Profile Manager with a
+ * UTF-8 locale (such as <tt>LC_ALL=C.UTF-8</tt>), otherwise Java can't
+ * create folders for the unicode names.
+ *
+ * @author Curtis Oakley
+ */
+public class SaveCorpus {
+    
+    private static final String[] SYLLABLES = {
+        "al", "bar", "cor", "da", "el", "fen", "gor", "ha", "is", "jar",
+        "ka", "lor", "mi", "nor", "os", "pel", "quin", "ra", "sil", "tor",
+        "ul", "vin", "wen", "xan", "yr", "zed"};
+    private static final String[] UNICODE_NAMES = {
+        "Zo\u00eb", "Bj\u00f6rn", "\u00c9lise", "A\u00f0albj\u00f6rg", "S\u00f8ren", "\u00c6gir", "\u00d1u\u00f1o",
+        "\u0414\u0430\u043d\u0438\u043b\u0430", "\u0395\u03bb\u03ad\u03bd\u03b7", "\u674e\u767d", "\u30e8\u30b7\u30b3", "\u0141ukasz"};
+    private static final String[] LOCATIONS = {
+        "Whiterun", "Riverwood", "Imperial City", "Megaton", "Goodsprings",
+        "Balmora", "Rivet City", "Solitude"};
+    /** Characters that are dropped from folder names, used for near duplicates. */
+    private static final String ILLEGAL = "?*:\"<>|";
+    
+    private File dir = null;
+    private String games = "all";
+    private int characters = 10;
+    private int saves = 10;
+    private long minSize = 64 * 1024;
+    private long maxSize = 64 * 1024;
+    private String naming = "mixed";
+    private double duplicates = 0;
+    private double unicode = 0;
+    private Charset encoding = Charset.forName("UTF-8");
+    private long seed = 1;
+    
+    public static void main(String[] args) throws IOException {
+        SaveCorpus corpus = new SaveCorpus();
+        try {
+            for(int i=0; i<args.length; i+=2){
+                if(i + 1 >= args.length)
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                corpus.setOption(args[i], args[i + 1]);
+            }
+        } catch(IllegalArgumentException iae){
+            System.err.println(iae.getMessage());
+            System.err.println("See the SaveCorpus documentation for the options.");
+            System.exit(2);
+        }
+        
+        System.setProperty("java.awt.headless", "true");
+        long start = System.nanoTime();
+        int count = corpus.generate();
+        System.out.println(String.format("Wrote %d saves to %s in %.1fs",
+                count, corpus.dir, (System.nanoTime() - start) / 1e9));
+        System.exit(0);
+    }
+    
+    private void setOption(String option, String value){
+        if(option.equals("--dir")){
+            dir = new File(value).getAbsoluteFile();
+        } else if(option.equals("--games")){
+            games = value;
+        } else if(option.equals("--characters")){
+            characters = Integer.parseInt(value);
+        } else if(option.equals("--saves")){
+            saves = Integer.parseInt(value);
+        } else if(option.equals("--size")){
+            int dash = value.indexOf('-');
+            minSize = parseSize(dash == -1 ? value : value.substring(0, dash));
+            maxSize = dash == -1 ? minSize : parseSize(value.substring(dash + 1));
+            if(maxSize < minSize)
+                throw new IllegalArgumentException("Invalid size range " + value);
+        } else if(option.equals("--naming")){
+            if( !value.equals("header") && !value.equals("filename") && !value.equals("mixed"))
+                throw new IllegalArgumentException("Unknown naming scheme " + value);
+            naming = value;
+        } else if(option.equals("--duplicates")){
+            duplicates = Double.parseDouble(value);
+        } else if(option.equals("--unicode")){
+            unicode = Double.parseDouble(value);
+        } else if(option.equals("--encoding")){
+            encoding = Charset.forName(value);
+        } else if(option.equals("--seed")){
+            seed = Long.parseLong(value);
+        } else {
+            throw new IllegalArgumentException("Unknown option " + option);
+        }
+    }
+    
+    /**
+     * Writes the corpus.
+     * @return The number of saves written.
+     * @throws IOException If the corpus can't be written.
+     */
+    private int generate() throws IOException {
+        if(dir == null){
+            dir = Files.createTempDirectory("pm-corpus").toFile();
+        } else if(dir.exists() && dir.list().length > 0){
+            throw new IOException(dir + " isn't empty.");
+        }
+        dir.mkdirs();
+        
+        Properties ini = new Properties();
+        ini.setProperty(Config.Key.deep_scan.toString(), Config.DEEP_SCAN_AUTO);
+        
+        Writer manifest = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(dir, "manifest.csv")), "UTF-8"));
+        int count = 0;
+        try {
+            manifest.write("game,file,name,expected_dir\n");
+            for(Game g : getGames()){
+                File gameDir = new File(dir, g.getClass().getSimpleName());
+                String path = gameDir.getPath() + File.separator;
+                Config.set(g.getDirConfigKey(), path);
+                ini.setProperty(g.getDirConfigKey(), path);
+                
+                count += generate(g, new File(g.getDir() + g.getGameSaveDir()), manifest);
+            }
+        } finally {
+            manifest.close();
+        }
+        
+        OutputStream out = new FileOutputStream(new File(dir, "profile_manger.ini"));
+        try {
+            ini.store(out, "Generated save corpus, seed " + seed);
+        } finally {
+            out.close();
+        }
+        return count;
+    }
+    
+    /** Writes one game's saves. */
+    private int generate(Game g, File saveDir, Writer manifest) throws IOException {
+        saveDir.mkdirs();
+        byte gameID = g.getId();
+        String gameName = g.getClass().getSimpleName();
+        // Each game gets the same characters for the same seed
+        Random r = new Random(seed);
+        List<String> names = new ArrayList<String>(characters);
+        
+        int number = 1;
+        for(int c=0; c<characters; c++){
+            String name = nextName(r, names);
+            names.add(name);
+            byte[] encoded = name.getBytes(encoding);
+            
+            for(int s=0; s<saves; s++){
+                // A name has to be a valid file name to be in one
+                boolean inFileName = naming.equals("filename")
+                        || (naming.equals("mixed") && r.nextBoolean());
+                inFileName = inFileName && SaveFiles.hasNamedFiles(gameID)
+                        && !containsIllegal(name);
+                
+                String fileName = SaveFiles.fileName(gameID, number++,
+                        inFileName ? name : null, LOCATIONS[r.nextInt(LOCATIONS.length)]);
+                SaveFiles.write(new File(saveDir, fileName), gameID, encoded, nextSize(r));
+                
+                String read = inFileName ? name : SaveFiles.decodeName(encoded);
+                manifest.write(csv(gameName) + ',' + csv(fileName) + ',' + csv(name)
+                        + ',' + csv(Utils.sanitizeDir(read)) + '\n');
+            }
+        }
+        return characters * saves;
+    }
+    
+    /** Picks the next character's name. */
+    private String nextName(Random r, List<String> used){
+        if( !used.isEmpty() && r.nextDouble() < duplicates){
+            String original = used.get(r.nextInt(used.size()));
+            if(r.nextBoolean())
+                return original;
+            // Ends up in the same profile folder as the original
+            return original + ILLEGAL.charAt(r.nextInt(ILLEGAL.length()));
+        }
+        
+        if(r.nextDouble() < unicode)
+            return UNICODE_NAMES[r.nextInt(UNICODE_NAMES.length)] + " " + (used.size() + 1);
+        
+        StringBuilder name = new StringBuilder();
+        int parts = 2 + r.nextInt(2);
+        for(int i=0; i<parts; i++){
+            name.append(SYLLABLES[r.nextInt(SYLLABLES.length)]);
+        }
+        name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+        // Keep the names unique
+        return name.append(' ').append(used.size() + 1).toString();
+    }
+    
+    private long nextSize(Random r){
+        if(minSize == maxSize)
+            return minSize;
+        // Spread the sizes evenly over each order of magnitude
+        double log = Math.log(minSize) + r.nextDouble() * (Math.log(maxSize) - Math.log(minSize));
+        return (long) Math.exp(log);
+    }
+    
+    private List<Game> getGames(){
+        List<Game> list = new ArrayList<Game>();
+        for(byte id : GameFactory.getAllBuiltInGameIds()){
+            Game g = GameFactory.getGameFromID(id);
+            String name = g.getClass().getSimpleName();
+            if(games.equalsIgnoreCase("all") || (',' + games + ',').contains(',' + name + ','))
+                list.add(g);
+        }
+        if(list.isEmpty())
+            throw new IllegalArgumentException("No games match " + games);
+        return list;
+    }
+    
+    private static boolean containsIllegal(String name){
+        for(int i=0; i<ILLEGAL.length(); i++){
+            if(name.indexOf(ILLEGAL.charAt(i)) != -1)
+                return true;
+        }
+        return false;
+    }
+    
+    private static long parseSize(String s){
+        s = s.trim().toLowerCase();
+        long unit = 1;
+        if(s.endsWith("k"))
+            unit = 1024;
+        else if(s.endsWith("m"))
+            unit = 1024 * 1024;
+        else if(s.endsWith("g"))
+            unit = 1024 * 1024 * 1024;
+        if(unit != 1)
+            s = s.substring(0, s.length() - 1);
+        return Long.parseLong(s) * unit;
+    }
+    
+    /** Quotes a CSV field. */
+    private static String csv(String s){
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,183 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.bench;
+
+import com.chockly.pm.games.GameFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+
+/**
+ * Writes fake saved games with the character name where each game's auto
+ * setup looks for it, so that profiles can be detected without real saves.
+ * Only the header is meaningful, the rest of the file is left empty so that
+ * large saves take little disk space where sparse files are supported.<br/>
+ * <br/>
+ * The games read the name out of the header one byte per character, so a
+ * name written in any encoding other than ISO-8859-1 is read back as the
+ * characters of its bytes, see {@link #decodeName(byte[])}.
+ *
+ * @author Curtis Oakley
+ */
+final class SaveFiles {
+    
+    static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+    /** Where Morrowind starts looking for the GMDT record. */
+    private static final int MORROWIND_SEARCH_START = 0x162;
+    /** The distance from the end of GMDT to Morrowind's character name. */
+    private static final int MORROWIND_NAME_GAP = 96;
+    
+    private SaveFiles(){}
+    
+    /**
+     * Gets the saved game extension for a game.
+     * @param gameID The ID of the game.
+     * @return The extension, including the period.
+     */
+    static String getExtension(byte gameID){
+        switch(gameID){
+            case GameFactory.FALLOUT_3_ID:
+            case GameFactory.FALLOUT_NV_ID:
+                return ".fos";
+            default:
+                return ".ess";
+        }
+    }
+    
+    /**
+     * Checks if a game can find the character's name in a save's file name.
+     * @param gameID The ID of the game.
+     * @return <tt>false</tt> for Morrowind, which always reads the header.
+     */
+    static boolean hasNamedFiles(byte gameID){
+        return gameID != GameFactory.MORROWIND_ID;
+    }
+    
+    /**
+     * Makes the file name of a save.
+     * @param gameID The ID of the game.
+     * @param number The save's number.
+     * @param name The character's name, or null to leave the name out of the
+     * file name so that the header has to be read.
+     * @param location The place the game was saved at, must not contain the
+     * game's name separators.
+     * @return The file name.
+     */
+    static String fileName(byte gameID, int number, String name, String location){
+        String ext = getExtension(gameID);
+        if(name == null || !hasNamedFiles(gameID))
+            return "Save " + number + ext;
+        
+        // Laid out so that the name is between each game's nameStart and
+        // (repeated) nameEnd
+        switch(gameID){
+            case GameFactory.OBLIVION_ID:
+                return "Save " + number + " - " + name + " - " + location + ext;
+            case GameFactory.FALLOUT_3_ID:
+                return "Save " + number + " - " + name + ", " + location + ", 01.02.03" + ext;
+            case GameFactory.FALLOUT_NV_ID:
+                return "Save " + number + "   " + name + "  " + location + "  01.02.03" + ext;
+            default:
+                return "Save " + number + " - " + name + "  " + location + "  01.02.03" + ext;
+        }
+    }
+    
+    /**
+     * Writes a fake saved game with an ISO-8859-1 name.
+     * @param file The file to write.
+     * @param gameID The ID of the game that the save is for.
+     * @param name The character's name.
+     * @param size The size of the file, the header is never cut short.
+     * @throws IOException If the file can't be written.
+     */
+    static void write(File file, byte gameID, String name, long size) throws IOException {
+        write(file, gameID, name.getBytes(LATIN1), size);
+    }
+    
+    /**
+     * Writes a fake saved game.
+     * @param file The file to write.
+     * @param gameID The ID of the game that the save is for.
+     * @param name The encoded character's name, must not contain a null byte.
+     * @param size The size of the file, the header is never cut short.
+     * @throws IOException If the file can't be written.
+     */
+    static void write(File file, byte gameID, byte[] name, long size) throws IOException {
+        byte[] header = header(gameID, name);
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.write(header);
+            out.setLength(Math.max(size, header.length));
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Gets the name that the games will read out of a header.
+     * @param name The encoded name that was written.
+     * @return The name, one character per byte.
+     */
+    static String decodeName(byte[] name){
+        return new String(name, LATIN1);
+    }
+    
+    /** Builds the start of a save up to the end of the character's name. */
+    private static byte[] header(byte gameID, byte[] name){
+        if(gameID == GameFactory.MORROWIND_ID){
+            byte[] h = new byte[MORROWIND_SEARCH_START + 16 + 4
+                    + MORROWIND_NAME_GAP + name.length + 1];
+            int gmdt = MORROWIND_SEARCH_START + 16;
+            h[gmdt] = 'G';
+            h[gmdt + 1] = 'M';
+            h[gmdt + 2] = 'D';
+            h[gmdt + 3] = 'T';
+            System.arraycopy(name, 0, h, gmdt + 4 + MORROWIND_NAME_GAP, name.length);
+            return h;
+        }
+        
+        // The Bethesda games read from the offset to a null byte, and then
+        // drop the bytes between the name and the null
+        int offset = getNameOffset(gameID);
+        int backTrack = getBackTrack(gameID);
+        byte[] h = new byte[offset + name.length + backTrack + 1];
+        System.arraycopy(name, 0, h, offset, name.length);
+        for(int i=0; i<backTrack; i++){
+            h[offset + name.length + i] = (byte) 0x7c;
+        }
+        return h;
+    }
+    
+    private static int getNameOffset(byte gameID){
+        switch(gameID){
+            case GameFactory.OBLIVION_ID:   return 0x2b;
+            case GameFactory.FALLOUT_3_ID:  return 0x26;
+            case GameFactory.FALLOUT_NV_ID: return 0x67;
+            default:                        return 0x1b;
+        }
+    }
+    
+    private static int getBackTrack(byte gameID){
+        switch(gameID){
+            case GameFactory.OBLIVION_ID:   return 0;
+            case GameFactory.FALLOUT_3_ID:
+            case GameFactory.FALLOUT_NV_ID: return 2;
+            default:                        return 1;
+        }
+    }
+}
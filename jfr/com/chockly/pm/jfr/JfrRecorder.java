@@ -0,0 +1,161 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.jfr;
+
+import com.chockly.pm.metrics.Events;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * Creates the Profile Manager's Java Flight Recorder events while a
+ * recording is running.<br/>
+ * <br/>
+ * This needs Java 11 or higher and is loaded by {@link Events#install()},
+ * see {@link Events} for how it is built. The events are in the
+ * <i>Profile Manager</i> category of JDK Mission Control, and each has the
+ * game id, profile id, bytes and outcome of the operation.
+ *
+ * @author Curtis Oakley
+ */
+public class JfrRecorder implements Events.Recorder {
+    
+    private JfrRecorder(){}
+    
+    /**
+     * Starts creating events whenever a recording is running.
+     */
+    public static void install(){
+        final JfrRecorder recorder = new JfrRecorder();
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(FlightRecorder fr) {
+                recorder.update();
+            }
+            
+            @Override
+            public void recordingStateChanged(Recording r) {
+                recorder.update();
+            }
+        });
+    }
+    
+    /** Turns the events on or off to match the running recordings. */
+    private synchronized void update(){
+        boolean running = false;
+        for(Recording r : FlightRecorder.getFlightRecorder().getRecordings()){
+            if(r.getState() == RecordingState.RUNNING){
+                running = true;
+                break;
+            }
+        }
+        Events.setRecorder(running ? this : null);
+    }
+    
+    @Override
+    public Events.Event begin(int type) {
+        ProfileManagerEvent event;
+        switch(type){
+            case Events.ACTIVATE:
+                event = new ActivateEvent();
+                break;
+            case Events.DEACTIVATE:
+                event = new DeactivateEvent();
+                break;
+            case Events.RECONCILE:
+                event = new ReconcileEvent();
+                break;
+            case Events.HEADER_PARSE:
+                event = new HeaderParseEvent();
+                break;
+            case Events.FILE_MOVE:
+                event = new FileMoveEvent();
+                break;
+            case Events.BACKUP_ENTRY:
+                event = new BackupEntryEvent();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type " + type);
+        }
+        event.begin();
+        return event;
+    }
+    
+    /** The fields that all of the events have. */
+    @Category("Profile Manager")
+    abstract static class ProfileManagerEvent extends jdk.jfr.Event
+            implements Events.Event
+    {
+        @Label("Game ID")
+        byte gameID;
+        
+        @Label("Profile ID")
+        int profileID;
+        
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        
+        @Label("Outcome")
+        String outcome;
+        
+        @Override
+        public void commit(byte gameID, int profileID, long bytes, String outcome) {
+            if( !shouldCommit())
+                return;
+            this.gameID = gameID;
+            this.profileID = profileID;
+            this.bytes = bytes;
+            this.outcome = outcome;
+            commit();
+        }
+    }
+    
+    @Name("com.chockly.pm.Activate")
+    @Label("Profile Activation")
+    static class ActivateEvent extends ProfileManagerEvent {}
+    
+    @Name("com.chockly.pm.Deactivate")
+    @Label("Profile Deactivation")
+    static class DeactivateEvent extends ProfileManagerEvent {}
+    
+    @Name("com.chockly.pm.Reconcile")
+    @Label("Profile Folder Scan")
+    @Description("Compares a game's profile folders to its profiles.")
+    static class ReconcileEvent extends ProfileManagerEvent {}
+    
+    @Name("com.chockly.pm.HeaderParse")
+    @Label("Save Header Read")
+    @Description("Reads a character's name from a saved game.")
+    static class HeaderParseEvent extends ProfileManagerEvent {}
+    
+    @Name("com.chockly.pm.FileMove")
+    @Label("File Move")
+    @Description("Moves a file by renaming it, or copying it when it can't be renamed.")
+    static class FileMoveEvent extends ProfileManagerEvent {}
+    
+    @Name("com.chockly.pm.BackupEntry")
+    @Label("Backup Entry")
+    @Description("Stores a file in a profile's backup.")
+    static class BackupEntryEvent extends ProfileManagerEvent {}
+}
@@ -0,0 +1,258 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+import com.chockly.pm.backup.BackupRepository;
+import com.chockly.pm.backup.RetentionPolicy;
+import com.chockly.pm.games.Game;
+import com.chockly.pm.games.GameFactory;
+import com.chockly.pm.log.LogEntry;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Backs up profiles automatically in the background.<br/>
+ * <br/>
+ * Depending on the {@link Config.Key#backup_schedule} every profile of the
+ * active games is backed up each {@link Config.Key#backup_interval} hours, or
+ * the active profile of a game is backed up when the game exits. The time of
+ * the last scheduled backup is kept in the private configuration, so the
+ * interval carries on across restarts instead of starting over.<br/>
+ * <br/>
+ * Backups run on a small pool of low priority threads. A profile that is
+ * already waiting to be backed up isn't queued a second time, and backups
+ * hold their game's {@link GameLocks lock} so they never run during an
+ * activation. After each backup to the backup repository, the profile's old
+ * snapshots are deleted following the configured {@link RetentionPolicy}.
+ * @author Curtis Oakley
+ */
+public class BackupScheduler implements GameListener {
+    
+    /** The most backups that can run at once. */
+    private static final int MAX_CONCURRENT_BACKUPS = 2;
+    private static final long HOUR = 60L * 60L * 1000L;
+    
+    private static BackupScheduler instance = null;
+    
+    private final ScheduledExecutorService timer;
+    private final ExecutorService workers;
+    private final Set<Integer> queued = Collections.synchronizedSet(new HashSet<Integer>());
+    private ScheduledFuture<?> intervalTask = null;
+    
+    private BackupScheduler(){
+        timer = Executors.newSingleThreadScheduledExecutor(new LowPriorityThreads("backup-timer"));
+        workers = Executors.newFixedThreadPool(MAX_CONCURRENT_BACKUPS,
+                new LowPriorityThreads("backup"));
+    }
+    
+    /**
+     * Returns the BackupScheduler instance.
+     * @return The BackupScheduler.
+     */
+    public static synchronized BackupScheduler getInstance(){
+        if(instance == null){
+            instance = new BackupScheduler();
+            GameLauncher.addGameListener(instance);
+        }
+        return instance;
+    }
+    
+    /**
+     * Starts backing up on the configured schedule. Calling this again after
+     * the configuration has changed reschedules the backups.
+     */
+    public synchronized void start(){
+        stop();
+        
+        if( !Config.BACKUP_ON_INTERVAL.equals(Config.get(Config.Key.backup_schedule)))
+            return;
+        
+        long interval = Math.max(1, Config.getInt(Config.Key.backup_interval)) * HOUR;
+        
+        // Pick up where the previous run of the program left off
+        long last;
+        try {
+            last = Long.parseLong(Config.getPrivateProperty(Config.LAST_SCHEDULED_BACKUP, "0"));
+        } catch(NumberFormatException nfe){
+            last = 0;
+        }
+        long delay = Math.max(0, Math.min(interval, last + interval - System.currentTimeMillis()));
+        
+        intervalTask = timer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                backupAll();
+            }
+        }, delay, interval, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Stops any further scheduled backups. Backups that are queued or running
+     * still complete.
+     */
+    public synchronized void stop(){
+        if(intervalTask != null){
+            intervalTask.cancel(false);
+            intervalTask = null;
+        }
+    }
+    
+    /**
+     * Informs the scheduler that a game has exited, backing up the game's
+     * active profile when backups are scheduled on exit.
+     * @param gameID The ID of the game that exited.
+     */
+    public void gameExited(byte gameID){
+        if( !Config.BACKUP_ON_EXIT.equals(Config.get(Config.Key.backup_schedule)))
+            return;
+        
+        Profile[] profiles = ProfileFactory.getInstance().getProfiles(gameID);
+        for(int i=0; i<profiles.length; i++){
+            if(profiles[i].isActive()){
+                submit(profiles[i]);
+                break;
+            }
+        }
+    }
+    
+    @Override
+    public void gameStarted(byte gameID){
+        // Backups are only made once the game is done with the saves
+    }
+    
+    @Override
+    public void gameExited(byte gameID, int exitCode, long runTime){
+        gameExited(gameID);
+    }
+    
+    /**
+     * Queues a background backup of a profile.
+     * @param p The profile to back up.
+     * @return <tt>true</tt> if the backup was queued, <tt>false</tt> if a
+     * backup of the profile was already waiting to run.
+     */
+    public boolean submit(Profile p){
+        final int id = p.getID();
+        if( !queued.add(id))
+            return false;
+        
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Changes from here on need another backup
+                queued.remove(id);
+                
+                Profile profile = ProfileFactory.getInstance().getProfile(id);
+                if(profile != null)
+                    backup(profile);
+            }
+        });
+        return true;
+    }
+    
+    /** Queues a backup of every profile of the active games. */
+    private void backupAll(){
+        Config.setPrivateProperty(Config.LAST_SCHEDULED_BACKUP,
+                Long.toString(System.currentTimeMillis()));
+        Config.saveConfig();
+        
+        ProfileFactory pf = ProfileFactory.getInstance();
+        for(byte gameID : GameFactory.getActiveGameIds()){
+            Game g = GameFactory.getGameFromID(gameID);
+            if(g.getDir() == null || !new File(g.getDir()).isDirectory())
+                continue;
+            
+            for(Profile p : pf.getProfiles(gameID)){
+                if(IOUtils.getProfileDir(g, p).isDirectory())
+                    submit(p);
+            }
+        }
+    }
+    
+    /** Backs up a profile and applies the retention policy to its backups. */
+    private void backup(Profile p){
+        ProfileBackup backup = new ProfileBackup(p, null);
+        // Don't interrupt the user for something they didn't start
+        backup.setErrorLevel(Main.LOG_LEVEL);
+        backup.backupProfile();
+        
+        if(Config.REPOSITORY_FORMAT.equals(Config.get(Config.Key.archive_format)))
+            pruneSnapshots(p);
+    }
+    
+    /**
+     * Deletes the profile's snapshots that the retention policy doesn't keep,
+     * and then the chunks that are no longer used by any snapshot.
+     */
+    private void pruneSnapshots(Profile p){
+        RetentionPolicy policy = new RetentionPolicy(
+                Config.getInt(Config.Key.keep_recent_backups),
+                Config.getInt(Config.Key.keep_daily_backups),
+                Config.getInt(Config.Key.keep_weekly_backups));
+        if(policy.keepsAll())
+            return;
+        
+        Game g = GameFactory.getGameFromID(p.getGameID());
+        BackupRepository repo = new BackupRepository(
+                new File(g.getDir() + BackupRepository.REPOSITORY_DIR));
+        
+        // Chunks mustn't be collected while another backup is adding them
+        try {
+            GameLocks.get(g.getId()).lockInterruptibly();
+        } catch(InterruptedException ie){
+            return;
+        }
+        try {
+            int deleted = 0;
+            for(String snapshot : policy.selectExpired(repo.listSnapshots(p.getSaveDir()))){
+                if(repo.deleteSnapshot(p.getSaveDir(), snapshot))
+                    deleted++;
+            }
+            if(deleted > 0)
+                repo.collectGarbage();
+        } catch(IOException ioe){
+            Main.handleException(new LogEntry(Main.LOG_LEVEL, "pruneSnapshots",
+                    "Unable to remove old backups of " + p.getName() + ".", ioe)
+                    .game(g.getId()).profile(p.getID()));
+        } finally {
+            GameLocks.unlock(g.getId());
+        }
+    }
+    
+    /** Creates named, low priority daemon threads. */
+    private static class LowPriorityThreads implements ThreadFactory {
+        
+        private final String name;
+        private int count = 0;
+        
+        private LowPriorityThreads(String name){
+            this.name = name;
+        }
+        
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + "-" + (++count));
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,489 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+import com.chockly.pm.games.AutoSetupListener;
+import com.chockly.pm.games.Game;
+import com.chockly.pm.games.GameFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the Profile Manager's bulk operations from the command line, without
+ * the GUI.<br/>
+ * <br/>
+ * The following commands are accepted:
+ * <pre>
+ * auto-setup &lt;game&gt;...             Creates profiles from the games' saves.
+ * activate &lt;profile id&gt;...          Activates the profiles.
+ * deactivate &lt;game&gt;...             Deactivates the games' active profiles.
+ * backup &lt;game|profile id&gt;...       Backs up the profiles.
+ * import &lt;file&gt; &lt;game&gt;...          Imports profiles into the games.
+ * export &lt;file&gt; &lt;game&gt;...          Exports the games' profiles.
+ * reconcile [--create] [--delete] &lt;game&gt;...
+ *                                  Updates the profiles for the folders that
+ *                                  were added to or removed from the games'
+ *                                  profile folders.
+ * shortcuts &lt;game&gt;...              Creates desktop shortcuts for the games'
+ *                                  profiles.
+ * </pre>
+ * Games are given by their name, such as <tt>Skyrim</tt> or
+ * <tt>"New Vegas"</tt>, or <tt>all</tt> for all of the active games.<br/>
+ * <br/>
+ * The results are written to standard out as JSON, one object per line, and
+ * errors are written to standard error the same way. Anything else the
+ * Profile Manager prints is sent to standard error so it can't be mistaken
+ * for a result. The exit status is <tt>0</tt> if every operation succeeded,
+ * <tt>1</tt> if any failed and <tt>2</tt> if the command couldn't be
+ * understood.<br/>
+ * <br/>
+ * None of the AWT or Swing GUI is initialized, so the commands can be run
+ * without a display.
+ * @author Curtis Oakley
+ */
+public class BatchCommands implements ProfileListener {
+    
+    /** The exit status when all the operations succeeded. */
+    public static final int SUCCESS = 0;
+    /** The exit status when one or more operations failed. */
+    public static final int FAILURE = 1;
+    /** The exit status when the command line couldn't be understood. */
+    public static final int USAGE_ERROR = 2;
+    
+    private static final String[] COMMANDS = {"auto-setup", "activate",
+        "deactivate", "backup", "import", "export", "reconcile", "shortcuts"};
+    
+    private final PrintStream out;
+    private final String command;
+    private int failures = 0;
+    
+    private BatchCommands(PrintStream out, String command){
+        this.out = out;
+        this.command = command;
+    }
+    
+    /**
+     * Checks if a command line argument is one of the batch commands.
+     * @param arg The argument to check.
+     * @return <tt>true</tt> if the argument names a batch command.
+     */
+    public static boolean isCommand(String arg){
+        return Arrays.asList(COMMANDS).contains(arg.toLowerCase());
+    }
+    
+    /**
+     * Runs a batch command.
+     * @param args The command line arguments, starting with the command.
+     * @return The exit status.
+     */
+    public static int run(String[] args){
+        // Keep standard out for the results
+        PrintStream out = System.out;
+        System.setOut(System.err);
+        
+        BatchCommands batch = new BatchCommands(out, args[0].toLowerCase());
+        try {
+            return batch.run(Arrays.asList(args).subList(1, args.length));
+        } finally {
+            out.flush();
+            System.setOut(out);
+        }
+    }
+    
+    private int run(List<String> args){
+        long start = System.nanoTime();
+        
+        Config.loadConfig();
+        
+        // The GUI asks the system for this, which needs Swing
+        if(Config.get(Config.Key.user_directory) == null){
+            File home = new File(System.getProperty("user.home"));
+            File documents = new File(home, "Documents");
+            Config.set(Config.Key.user_directory,
+                    (documents.isDirectory() ? documents : home).getPath() + File.separatorChar);
+        }
+        
+        ProfileFactory pf = ProfileFactory.getInstance();
+        pf.addProfileListener(this);
+        
+        boolean changed;
+        try {
+            if(command.equals("auto-setup")){
+                changed = autoSetup(parseGames(args));
+            } else if(command.equals("activate")){
+                changed = activate(parseProfiles(args));
+            } else if(command.equals("deactivate")){
+                changed = deactivate(parseGames(args));
+            } else if(command.equals("backup")){
+                changed = backup(args);
+            } else if(command.equals("import")){
+                changed = importProfiles(getFile(args), parseGames(args.subList(1, args.size())));
+            } else if(command.equals("export")){
+                changed = exportProfiles(getFile(args), parseGames(args.subList(1, args.size())));
+            } else if(command.equals("shortcuts")){
+                changed = createShortcuts(parseGames(args));
+            } else {
+                changed = reconcile(args);
+            }
+        } catch(IllegalArgumentException iae){
+            emit("event", "error", "message", iae.getMessage());
+            return USAGE_ERROR;
+        } finally {
+            pf.removeProfileListener(this);
+        }
+        
+        if(changed)
+            pf.saveProfiles();
+        
+        emit("event", "done", "ok", failures == 0, "failures", failures,
+                "ms", (System.nanoTime() - start) / 1000000);
+        return failures == 0 ? SUCCESS : FAILURE;
+    }
+    
+    /** Runs the games' auto setup. */
+    private boolean autoSetup(byte[] games){
+        for(byte gameID : games){
+            Game g = GameFactory.getGameFromID(gameID);
+            final int[] created = {0};
+            
+            GameLocks.get(gameID).lock();
+            try {
+                g.autoSetupProfiles(new AutoSetupListener() {
+                    @Override
+                    public boolean isCancelled() {
+                        return false;
+                    }
+                    @Override
+                    public void fileProcessed(int processed, int total) {
+                        // Only the results are reported
+                    }
+                    @Override
+                    public void profileCreated(Profile profile) {
+                        created[0]++;
+                    }
+                });
+            } finally {
+                GameLocks.unlock(gameID);
+            }
+            emit("event", "auto-setup", "game", g.getName(), "created", created[0]);
+        }
+        return true;
+    }
+    
+    /** Activates the profiles. */
+    private boolean activate(Profile[] profiles){
+        boolean changed = false;
+        for(Profile p : profiles){
+            Game g = GameFactory.getGameFromID(p.getGameID());
+            boolean ok = g.activateProfile(p);
+            changed |= ok;
+            result("activated", ok, "game", g.getName(), "profile", p.getID(),
+                    "name", p.getName());
+        }
+        return changed;
+    }
+    
+    /** Deactivates the games' profiles. */
+    private boolean deactivate(byte[] games){
+        for(byte gameID : games){
+            Game g = GameFactory.getGameFromID(gameID);
+            g.deactivateProfiles();
+            
+            boolean ok = true;
+            for(Profile p : ProfileFactory.getInstance().getProfiles(gameID)){
+                ok &= !p.isActive();
+            }
+            result("deactivated", ok, "game", g.getName());
+        }
+        return true;
+    }
+    
+    /**
+     * Backs up profiles. Profiles can be given by their ID, and games by
+     * their name, which backs up all of the game's profiles that have saves.
+     */
+    private boolean backup(List<String> args){
+        ProfileFactory pf = ProfileFactory.getInstance();
+        List<Profile> profiles = new ArrayList<Profile>();
+        List<String> games = new ArrayList<String>();
+        
+        for(String arg : args){
+            if(isNumber(arg))
+                profiles.addAll(Arrays.asList(parseProfiles(Arrays.asList(arg))));
+            else
+                games.add(arg);
+        }
+        if( !games.isEmpty()){
+            for(byte gameID : parseGames(games)){
+                Game g = GameFactory.getGameFromID(gameID);
+                for(Profile p : pf.getProfiles(gameID)){
+                    if(IOUtils.getProfileDir(g, p).isDirectory())
+                        profiles.add(p);
+                }
+            }
+        } else if(profiles.isEmpty()){
+            throw new IllegalArgumentException("No profiles or games were given.");
+        }
+        
+        for(Profile p : profiles){
+            long start = System.nanoTime();
+            ProfileBackup backup = new ProfileBackup(p, null);
+            backup.backupProfile();
+            
+            result("backed-up", !backup.hasFailed(),
+                    "game", GameFactory.getNameFromID(p.getGameID()),
+                    "profile", p.getID(), "name", p.getName(),
+                    "summary", backup.getSummary(),
+                    "ms", (System.nanoTime() - start) / 1000000);
+        }
+        return false;
+    }
+    
+    /** Imports the profiles in a file into the games. */
+    private boolean importProfiles(String file, byte[] games){
+        Profile[] profiles = BundleUtils.isBundle(file)
+                ? BundleUtils.ProfilesFromBundle(file)
+                : XMLUtils.ProfilesFromXML(file);
+        if(profiles == null){
+            result("imported", false, "file", file);
+            return false;
+        }
+        
+        for(byte gameID : games){
+            ProfileFactory.getInstance().addAll(profiles, gameID);
+            result("imported", true, "file", file,
+                    "game", GameFactory.getNameFromID(gameID),
+                    "profiles", profiles.length);
+        }
+        return true;
+    }
+    
+    /** Exports the games' profiles to a file. */
+    private boolean exportProfiles(String file, byte[] games){
+        List<Profile> profiles = new ArrayList<Profile>();
+        for(byte gameID : games){
+            profiles.addAll(Arrays.asList(ProfileFactory.getInstance().getProfiles(gameID)));
+        }
+        Profile[] p = profiles.toArray(new Profile[profiles.size()]);
+        
+        if(BundleUtils.isBundle(file))
+            BundleUtils.ProfilesToBundle(p, file, BundleUtils.isGzipBundle(file));
+        else
+            XMLUtils.ProfilesToXML(p, file);
+        
+        result("exported", new File(file).isFile(), "file", file, "profiles", p.length);
+        return false;
+    }
+    
+    /**
+     * Adds and removes profiles for the changes to the games' profile
+     * folders. New folders only get profiles with <tt>--create</tt>, and
+     * missing folders only lose their profiles with <tt>--delete</tt>, unless
+     * the configuration always makes the change.
+     */
+    private boolean reconcile(List<String> args){
+        List<String> games = new ArrayList<String>(args);
+        boolean create = games.remove("--create");
+        boolean delete = games.remove("--delete");
+        
+        boolean changed = false;
+        for(byte gameID : parseGames(games)){
+            try {
+                ProfileDirChanges changes = ProfileDirChanges.scan(gameID);
+                changed |= changes.apply(new UpdateProfilesChecker(create, delete));
+                result("reconciled", true, "game", GameFactory.getNameFromID(gameID));
+            } catch(InterruptedException ie){
+                result("reconciled", false, "game", GameFactory.getNameFromID(gameID));
+                break;
+            }
+        }
+        return changed;
+    }
+    
+    /** Creates a desktop shortcut for each of the games' profiles. */
+    private boolean createShortcuts(byte[] games){
+        for(byte gameID : games){
+            Profile[] profiles = ProfileFactory.getInstance().getProfiles(gameID);
+            boolean ok = true;
+            try {
+                IOUtils.createShortcuts(profiles);
+            } catch(IOException ioe){
+                ok = false;
+                Main.handleException("Unable to create the shortcuts.", ioe, Main.WARN_LEVEL);
+            }
+            result("shortcuts", ok, "game", GameFactory.getNameFromID(gameID),
+                    "profiles", profiles.length);
+        }
+        return false;
+    }
+    
+    @Override
+    public void profileAdded(Profile p) {
+        emit("event", "profile-added", "game", GameFactory.getNameFromID(p.getGameID()),
+                "profile", p.getID(), "name", p.getName(), "dir", p.getSaveDir());
+    }
+    
+    @Override
+    public void profileRemoved(Profile p) {
+        emit("event", "profile-removed", "game", GameFactory.getNameFromID(p.getGameID()),
+                "profile", p.getID(), "name", p.getName(), "dir", p.getSaveDir());
+    }
+    
+    @Override
+    public void profileChanged(Profile p) {
+        // Changes are reported by the commands that make them
+    }
+    
+    /**
+     * Finds the games named by the arguments.
+     * @throws IllegalArgumentException If a game can't be found.
+     */
+    private static byte[] parseGames(List<String> args){
+        if(args.isEmpty())
+            throw new IllegalArgumentException("No games were given.");
+        
+        byte[] all = GameFactory.getAllGameIds();
+        byte[] games = new byte[0];
+        for(String arg : args){
+            byte[] found;
+            if(arg.equalsIgnoreCase("all")){
+                found = GameFactory.getActiveGameIds();
+            } else {
+                found = null;
+                for(byte id : all){
+                    Game g = GameFactory.getGameFromID(id);
+                    if(arg.equalsIgnoreCase(g.getName()) || arg.equalsIgnoreCase(g.getFullName())){
+                        found = new byte[] {id};
+                        break;
+                    }
+                }
+                if(found == null)
+                    throw new IllegalArgumentException("Unknown game: " + arg);
+            }
+            
+            for(byte id : found){
+                if(Utils.getIndex(games, id) == -1){
+                    games = Arrays.copyOf(games, games.length + 1);
+                    games[games.length - 1] = id;
+                }
+            }
+        }
+        return games;
+    }
+    
+    /**
+     * Finds the profiles with the IDs given by the arguments.
+     * @throws IllegalArgumentException If a profile can't be found.
+     */
+    private static Profile[] parseProfiles(List<String> args){
+        if(args.isEmpty())
+            throw new IllegalArgumentException("No profiles were given.");
+        
+        Profile[] profiles = new Profile[args.size()];
+        for(int i=0; i<profiles.length; i++){
+            String arg = args.get(i);
+            Profile p = isNumber(arg) ? ProfileFactory.getInstance().getProfile(Integer.parseInt(arg)) : null;
+            if(p == null)
+                throw new IllegalArgumentException("Unknown profile: " + arg);
+            profiles[i] = p;
+        }
+        return profiles;
+    }
+    
+    private static String getFile(List<String> args){
+        if(args.isEmpty())
+            throw new IllegalArgumentException("No file was given.");
+        return args.get(0);
+    }
+    
+    private static boolean isNumber(String arg){
+        return arg.matches("\\d{1,9}");
+    }
+    
+    /** Writes the result of an operation, counting it if it failed. */
+    private void result(String event, boolean ok, Object... pairs){
+        if( !ok)
+            failures++;
+        
+        Object[] line = new Object[pairs.length + 4];
+        line[0] = "event";
+        line[1] = event;
+        line[2] = "ok";
+        line[3] = ok;
+        System.arraycopy(pairs, 0, line, 4, pairs.length);
+        emit(line);
+    }
+    
+    /** Writes a line of output. */
+    private void emit(Object... pairs){
+        Object[] line = new Object[pairs.length + 2];
+        line[0] = "command";
+        line[1] = command;
+        System.arraycopy(pairs, 0, line, 2, pairs.length);
+        out.println(toJSON(line));
+    }
+    
+    /**
+     * Formats name value pairs as a single line JSON object. Numbers and
+     * booleans are written as is, all other values as strings.
+     * @param pairs The names and values, alternating.
+     * @return The JSON object.
+     */
+    static String toJSON(Object... pairs){
+        StringBuilder json = new StringBuilder(128);
+        json.append('{');
+        for(int i=0; i+1<pairs.length; i+=2){
+            if(i > 0)
+                json.append(',');
+            quote(json, String.valueOf(pairs[i]));
+            json.append(':');
+            
+            Object value = pairs[i+1];
+            if(value instanceof Number || value instanceof Boolean)
+                json.append(value);
+            else if(value == null)
+                json.append("null");
+            else
+                quote(json, value.toString());
+        }
+        return json.append('}').toString();
+    }
+    
+    private static void quote(StringBuilder json, String s){
+        json.append('"');
+        for(int i=0; i<s.length(); i++){
+            char c = s.charAt(i);
+            switch(c){
+                case '"':  json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if(c < 0x20)
+                        json.append(String.format("\\u%04x", (int) c));
+                    else
+                        json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
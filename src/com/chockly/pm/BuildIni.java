@@ -18,11 +18,19 @@ package com.chockly.pm;
 
 import com.chockly.pm.games.Game;
 import com.chockly.pm.games.GameFactory;
+import com.chockly.pm.win86.RegistryBackend;
+import com.chockly.pm.win86.RegistryFile;
 import com.chockly.pm.win86.RegistryReader;
+import java.io.File;
+import java.util.Map;
 
 /**
  * Builds the default ini by reading the file directories from the Windows
- * Registry.
+ * Registry.<br/>
+ * <br/>
+ * Setting the <tt>pm.registry</tt> system property to the saved output of a
+ * <tt>reg query</tt> reads the registry from that file instead, see
+ * {@link RegistryFile}.
  *
  * @author Curtis Oakley
  */
@@ -33,8 +41,23 @@ public class BuildIni {
      * Windows Registry.
      */
     public static void buildDefaultIni() {
+        String registryFile = System.getProperty("pm.registry");
+        if(registryFile != null)
+            buildDefaultIni(new RegistryFile(new File(registryFile)));
+        else
+            buildDefaultIni(new RegistryReader());
+    }
+
+    /**
+     * Build the ini file by reading the game's file directories from a
+     * registry.
+     * @param reg The registry to read the install paths from.
+     */
+    public static void buildDefaultIni(RegistryBackend reg) {
         try {
-            RegistryReader reg = new RegistryReader();
+            // All of the games' install paths in one query
+            Map<String, String> installPaths =
+                    reg.findValues("Bethesda Softworks", "Installed Path");
 
             byte[] gameIds = GameFactory.getAllBuiltInGameIds();
 
@@ -63,8 +86,7 @@ public class BuildIni {
                         continue;
                 }
 
-                String keyValue = reg.getKeyValue("Bethesda Softworks\\" + key,
-                        "Installed Path");
+                String keyValue = installPaths.get(key);
 
                 Game g = GameFactory.getGameFromID(gameIds[x]);
 
@@ -0,0 +1,430 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+import com.chockly.pm.games.CustomGame;
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Contains methods to store Profile Manager objects in a compact binary
+ * bundle, and to read them back again.<br/>
+ * <br/>
+ * A bundle holds the same information as the XML files written by
+ * {@link XMLUtils}, but is much smaller and faster to read and write. The
+ * bundle layout is:
+ * <pre>
+ * magic     4 bytes  'P' 'M' 'B' 'N'
+ * version   1 byte   {@link #VERSION}
+ * kind      1 byte   {@link #PROFILES_KIND} or {@link #GAMES_KIND}
+ * count     int      The number of records that follow.
+ * records   Each record is an int length followed by that many bytes.
+ * </pre>
+ * Strings inside of a record are stored as an int byte length (-1 for
+ * <tt>null</tt>) followed by the UTF-8 bytes of the string. Since every record
+ * is length prefixed, readers skip any trailing fields they don't understand.
+ * <br/><br/>
+ * Gzip bundles are the same bundle wrapped in a gzip stream.
+ *
+ * @author Curtis Oakley
+ */
+public class BundleUtils {
+
+    /** The file extension used by uncompressed bundles. */
+    public static final String BUNDLE_EXT = "pmb";
+    /** The file extension used by gzip compressed bundles. */
+    public static final String GZIP_BUNDLE_EXT = "pmz";
+
+    /** The current version of the bundle format. */
+    public static final byte VERSION = 1;
+    /** Bundle kind indicating that the bundle contains profiles. */
+    public static final byte PROFILES_KIND = 'P';
+    /** Bundle kind indicating that the bundle contains custom games. */
+    public static final byte GAMES_KIND = 'G';
+
+    /**
+     * Saves custom games to a bundle file.
+     * @param games The games to save.
+     * @param fileName The name of the bundle file to save the games to.
+     * @param gzip <tt>true</tt> if the bundle should be gzip compressed.
+     */
+    public static void GamesToBundle(CustomGame[] games, String fileName, boolean gzip){
+        DataOutputStream out = null;
+        try {
+            out = openOutput(fileName, gzip, GAMES_KIND, games.length);
+
+            RecordBuffer record = new RecordBuffer();
+            for(int i=0; i<games.length; i++){
+                record.reset();
+                record.data.writeByte(games[i].getId());
+                writeString(record.data, games[i].getName());
+                writeString(record.data, games[i].getDir());
+                writeString(record.data, games[i].getExe());
+                writeString(record.data, games[i].getIconPath());
+                writeString(record.data, games[i].getSave());
+                writeString(record.data, games[i].getGameSaveDir());
+                record.writeTo(out);
+            }
+
+        } catch (Exception ex) {
+            Main.handleException("Exception occured while saving games to bundle file.",
+                    ex, Main.WARN_LEVEL);
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Loads up custom games from a bundle file.
+     * @param fileName The name of the bundle file to load the games from.
+     * @return An array of CustomGames retrieved from the file, or <tt>null</tt>
+     * if no games where loaded.
+     */
+    public static CustomGame[] GamesFromBundle(String fileName){
+        DataInputStream in = null;
+        try {
+            in = openInput(fileName, GAMES_KIND);
+
+            CustomGame[] games = new CustomGame[in.readInt()];
+            RecordReader record = new RecordReader();
+
+            for(int i=0; i<games.length; i++){
+                record.read(in);
+
+                byte id = record.readByte();
+                String name = record.readString();
+                String gameDir = record.readString();
+                String exe = record.readString();
+                String icon = record.readString();
+                String profileDir = record.readString();
+                String saveDir = record.readString();
+
+                games[i] = new CustomGame(id, name, gameDir, exe, icon,
+                        profileDir, saveDir);
+            }
+
+            return games;
+
+        } catch (Exception ex) {
+            Main.handleException("Exception occured while loading the custom game(s).",
+                    ex, Main.WARN_LEVEL);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Saves profiles to a bundle file.
+     * @param profiles The profiles to save.
+     * @param fileName The name of the bundle file to save the profiles to.
+     * @param gzip <tt>true</tt> if the bundle should be gzip compressed.
+     */
+    public static void ProfilesToBundle(Profile[] profiles, String fileName, boolean gzip){
+        DataOutputStream out = null;
+        try {
+            out = openOutput(fileName, gzip, PROFILES_KIND, profiles.length);
+
+            RecordBuffer record = new RecordBuffer();
+            for(int i=0; i<profiles.length; i++){
+                record.reset();
+                record.data.writeInt(profiles[i].getID());
+                record.data.writeByte(profiles[i].getGameID());
+                writeString(record.data, profiles[i].getName());
+                writeString(record.data, profiles[i].getImage());
+                writeString(record.data, profiles[i].getSaveDir());
+                record.writeTo(out);
+            }
+
+        } catch (Exception ex) {
+            Main.handleException("Exception occured while saving profiles to bundle file.",
+                    ex, Main.WARN_LEVEL);
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Loads profiles from a bundle file.
+     * @param fileName The name of the bundle file to get the profiles from.
+     * @return An array of Profiles retrieved from the bundle file, or
+     * <tt>null</tt> if no profiles where found.
+     */
+    public static Profile[] ProfilesFromBundle(String fileName){
+        DataInputStream in = null;
+        try {
+            in = openInput(fileName, PROFILES_KIND);
+
+            Profile[] profiles = new Profile[in.readInt()];
+            RecordReader record = new RecordReader();
+
+            for(int i=0; i<profiles.length; i++){
+                record.read(in);
+
+                int id = record.readInt();
+                byte gameId = record.readByte();
+                String name = record.readString();
+                String img = record.readString();
+                String dir = record.readString();
+
+                profiles[i] = new Profile(name, dir, gameId, id);
+                profiles[i].setImage(img);
+            }
+
+            return profiles;
+
+        } catch (Exception ex) {
+            Main.handleException("Exception occured while loading the profile(s).",
+                    ex, Main.WARN_LEVEL);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Indicates if the provided file name uses one of the bundle extensions.
+     * @param fileName The name of the file to check.
+     * @return <tt>True</tt> if the file is a bundle file, <tt>false</tt>
+     * otherwise.
+     */
+    public static boolean isBundle(String fileName){
+        String ext = getExtension(fileName);
+        return ext.equals(BUNDLE_EXT) || ext.equals(GZIP_BUNDLE_EXT);
+    }
+
+    /**
+     * Indicates if the provided file name uses the gzip bundle extension.
+     * @param fileName The name of the file to check.
+     * @return <tt>True</tt> if the file is a gzip bundle, <tt>false</tt>
+     * otherwise.
+     */
+    public static boolean isGzipBundle(String fileName){
+        return getExtension(fileName).equals(GZIP_BUNDLE_EXT);
+    }
+
+    /**
+     * Gets the lower case extension of the file name, without the period.
+     * @param fileName The name of the file.
+     * @return The extension, or an empty string if the file has no extension.
+     */
+    private static String getExtension(String fileName){
+        int index = fileName.lastIndexOf('.');
+        if(index == -1 || index < fileName.lastIndexOf(File.separatorChar))
+            return "";
+
+        return fileName.substring(index + 1).toLowerCase();
+    }
+
+    /**
+     * Closes the provided stream, logging any errors.
+     * @param c The stream to close. Can be <tt>null</tt>.
+     */
+    private static void close(Closeable c){
+        if(c != null){
+            try {
+                c.close();
+            } catch(IOException ioe){
+                Main.handleException("Unable to close the bundle file.",
+                        ioe, Main.LOG_LEVEL);
+            }
+        }
+    }
+
+    /**
+     * Opens a bundle for reading and checks its header.
+     * @param fileName The name of the bundle file.
+     * @param kind The kind of bundle that the file is expected to be.
+     * @return The stream to read the records count and records from.
+     * @throws IOException If the file can't be read, or isn't a bundle of the
+     * expected kind.
+     */
+    private static DataInputStream openInput(String fileName, byte kind)
+            throws IOException
+    {
+        InputStream in = new BufferedInputStream(new FileInputStream(fileName), BUFFER_SIZE);
+        boolean opened = false;
+        try {
+            // Detect gzip bundles from their content rather than the file name
+            in.mark(2);
+            int b1 = in.read();
+            int b2 = in.read();
+            in.reset();
+            if(b1 == (GZIPInputStream.GZIP_MAGIC & 0xff)
+                    && b2 == (GZIPInputStream.GZIP_MAGIC >> 8))
+                in = new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+
+            DataInputStream data = new DataInputStream(in);
+
+            byte[] magic = new byte[MAGIC.length];
+            data.readFully(magic);
+            if( !java.util.Arrays.equals(magic, MAGIC))
+                throw new IOException(fileName + " is not a Profile Manager bundle.");
+
+            byte version = data.readByte();
+            if(version > VERSION)
+                throw new IOException(fileName + " was created by a newer version of the Profile Manager.");
+
+            if(data.readByte() != kind)
+                throw new IOException(fileName + " doesn't contain "
+                        + (kind == PROFILES_KIND ? "profiles." : "games."));
+
+            opened = true;
+            return data;
+        } finally {
+            // The caller can't close a stream it never received
+            if( !opened)
+                close(in);
+        }
+    }
+
+    /**
+     * Creates a bundle file and writes its header.
+     * @param fileName The name of the bundle file.
+     * @param gzip If the bundle should be gzip compressed.
+     * @param kind The kind of records that the bundle will hold.
+     * @param count The number of records that will be written.
+     * @return The stream to write the records to.
+     * @throws IOException
+     */
+    private static DataOutputStream openOutput(String fileName, boolean gzip,
+            byte kind, int count) throws IOException
+    {
+        OutputStream out = new FileOutputStream(fileName);
+        boolean opened = false;
+        try {
+            if(gzip)
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+
+            DataOutputStream data = new DataOutputStream(
+                    new BufferedOutputStream(out, BUFFER_SIZE));
+
+            data.write(MAGIC);
+            data.writeByte(VERSION);
+            data.writeByte(kind);
+            data.writeInt(count);
+
+            opened = true;
+            return data;
+        } finally {
+            // The caller can't close a stream it never received
+            if( !opened)
+                close(out);
+        }
+    }
+
+    /**
+     * Writes a length prefixed UTF-8 string.
+     * @param out The stream to write to.
+     * @param s The string to write, may be <tt>null</tt>.
+     * @throws IOException
+     */
+    private static void writeString(DataOutput out, String s) throws IOException {
+        if(s == null){
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads length prefixed records out of a bundle, reusing the same buffer
+     * for every record.
+     */
+    private static class RecordReader {
+        private byte[] buf = new byte[256];
+        private int pos;
+        private int limit;
+
+        /**
+         * Reads the next record from the bundle into the buffer.
+         * @param in The bundle stream.
+         * @throws IOException
+         */
+        private void read(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if(length < 0)
+                throw new IOException("Invalid bundle record length.");
+
+            if(length > buf.length)
+                buf = new byte[Math.max(length, buf.length * 2)];
+
+            in.readFully(buf, 0, length);
+            pos = 0;
+            limit = length;
+        }
+
+        private byte readByte() throws IOException {
+            require(1);
+            return buf[pos++];
+        }
+
+        private int readInt() throws IOException {
+            require(4);
+            int value = ((buf[pos] & 0xff) << 24)
+                    | ((buf[pos + 1] & 0xff) << 16)
+                    | ((buf[pos + 2] & 0xff) << 8)
+                    | (buf[pos + 3] & 0xff);
+            pos += 4;
+            return value;
+        }
+
+        /**
+         * Reads a string written by {@link #writeString(java.io.DataOutput, java.lang.String)}.
+         * @return The string, may be <tt>null</tt>.
+         * @throws IOException
+         */
+        private String readString() throws IOException {
+            int length = readInt();
+            if(length < 0)
+                return null;
+
+            require(length);
+            String s = new String(buf, pos, length, UTF_8);
+            pos += length;
+            return s;
+        }
+
+        private void require(int count) throws IOException {
+            if(count > limit - pos)
+                throw new EOFException("Bundle record is truncated.");
+        }
+    }
+
+    /** Buffers a single record so that it can be written with its length. */
+    private static class RecordBuffer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        private final DataOutputStream data = new DataOutputStream(bytes);
+
+        private void reset(){
+            bytes.reset();
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
+
+    private static final byte[] MAGIC = {'P', 'M', 'B', 'N'};
+    private static final int BUFFER_SIZE = 8192;
+    private static final java.nio.charset.Charset UTF_8 =
+            java.nio.charset.Charset.forName("UTF-8");
+}
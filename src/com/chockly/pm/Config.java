@@ -61,10 +61,39 @@ public class Config {
      */
     public static final String ZIP_FORMAT = "zip";
     /**
-     * Value for {@link Key#archive_format} that indicates that profile
-     * backups should use the 7z file format to archive the saves.
+     * Legacy value for {@link Key#archive_format}. Backups no longer use an
+     * external 7z program, this is treated as {@link #ZIP_FORMAT} with
+     * {@link #HIGH_COMPRESSION}.
      */
     public static final String SEVEN_ZIP_FORMAT = "7z";
+    /**
+     * Value for {@link Key#archive_format} that indicates that profile
+     * backups should be stored as snapshots in the game's deduplicating
+     * backup repository.
+     */
+    public static final String REPOSITORY_FORMAT = "repository";
+    
+    /**
+     * Value for {@link Key#compression} that indicates that backups should
+     * favor size over speed.
+     */
+    public static final String HIGH_COMPRESSION = "high";
+    
+    /**
+     * Value for {@link Key#backup_schedule} that indicates that profiles are
+     * only backed up when the user asks.
+     */
+    public static final String BACKUP_OFF = "off";
+    /**
+     * Value for {@link Key#backup_schedule} that indicates that every profile
+     * is backed up every {@link Key#backup_interval} hours.
+     */
+    public static final String BACKUP_ON_INTERVAL = "interval";
+    /**
+     * Value for {@link Key#backup_schedule} that indicates that the active
+     * profile is backed up when its game exits.
+     */
+    public static final String BACKUP_ON_EXIT = "exit";
     
     /**
      * Contains the keys used by the Configuration file to store and retrieve
@@ -171,17 +200,104 @@ public class Config {
         /**
          * Key used to retrieve/store what compression format should be used to
          * archive the profiles.<br/>
+         * Valid values for the key: {@link Config#ZIP_FORMAT},
+         * {@link Config#REPOSITORY_FORMAT}.<br/>
          * <br/>
          * Default Value: {@link Config#ZIP_FORMAT}
          */
         archive_format (ZIP_FORMAT),
         
         /**
-         * Key used to retrieve/store the location of 7z.exe.<br/>
+         * Key used to retrieve/store the number of incremental zip backups
+         * that can be made before the next full backup of a profile.<br/>
+         * A value of 0 makes every backup a full backup.<br/>
+         * <br/>
+         * Default Value: 7
+         */
+        full_backup_interval ("7"),
+        
+        /**
+         * Key used to retrieve/store how hard backups should try to compress
+         * the saves. Files that are already compressed are always stored.<br/>
+         * Valid values for the key: <tt>stored, fast, normal, high</tt>.<br/>
+         * <br/>
+         * Default Value: normal
+         */
+        compression ("normal"),
+        
+        
+        /**
+         * Key used to retrieve/store when profiles are backed up
+         * automatically.<br/>
+         * Valid values for the key: {@link Config#BACKUP_OFF},
+         * {@link Config#BACKUP_ON_INTERVAL}, {@link Config#BACKUP_ON_EXIT}.<br/>
+         * <br/>
+         * Default Value: {@link Config#BACKUP_OFF}
+         */
+        backup_schedule (BACKUP_OFF),
+        
+        /**
+         * Key used to retrieve/store the number of hours between scheduled
+         * backups.<br/>
+         * <br/>
+         * Default Value: 24
+         */
+        backup_interval ("24"),
+        
+        /**
+         * Key used to retrieve/store how many of the newest backups of each
+         * profile are kept by scheduled backups. Only applies to the
+         * {@link Config#REPOSITORY_FORMAT}.<br/>
+         * A value of 0 for this and the other keep keys keeps every backup.<br/>
          * <br/>
-         * Default Value: C:\Program Files\7-Zip\7z.exe
+         * Default Value: 5
          */
-        seven_zip_exe ("C:\\Program Files\\7-Zip\\7z.exe");
+        keep_recent_backups ("5"),
+        
+        /**
+         * Key used to retrieve/store for how many days one backup a day of
+         * each profile is kept by scheduled backups.<br/>
+         * <br/>
+         * Default Value: 7
+         */
+        keep_daily_backups ("7"),
+        
+        /**
+         * Key used to retrieve/store for how many weeks one backup a week of
+         * each profile is kept by scheduled backups.<br/>
+         * <br/>
+         * Default Value: 4
+         */
+        keep_weekly_backups ("4"),
+        
+        
+        /**
+         * Key used to retrieve/store the boolean String value indicating if
+         * the program should keep running in the background after its window
+         * is closed, so that profile shortcuts don't have to start it
+         * again.<br/>
+         * <br/>
+         * Default Value: false
+         */
+        resident_mode ("false"),
+        
+        
+        /**
+         * Key used to retrieve/store the size in bytes that the error log can
+         * grow to before it is rotated.<br/>
+         * <br/>
+         * Default Value: 1048576
+         */
+        log_max_size ("1048576"),
+        
+        
+        /**
+         * Key used to retrieve/store the number of rotated error logs to
+         * keep.<br/>
+         * <br/>
+         * Default Value: 4
+         */
+        log_files ("4");
 
         
         private final String defaultValue;
@@ -214,6 +330,8 @@ public class Config {
     public static final String GUI_Y_LOCATION = "gui_y";
     public static final String GUI_HEIGHT = "gui_height";
     public static final String GUI_WIDTH = "gui_width";
+    // Backups
+    public static final String LAST_SCHEDULED_BACKUP = "last_scheduled_backup";
     // ------- END KEYS -------- \\
     
     
@@ -302,6 +420,23 @@ public class Config {
         return props.getProperty(key.toString(), key.getDefaultValue());
     }
 
+    /**
+     * Retrieves the integer value for the provided configuration key.<br/>
+     * If the key's value is not a valid number, then the key's default value
+     * will be returned.
+     * 
+     * @param key The configuration key to retrieve the value of. The key's
+     * default value must be a valid number.
+     * @return The value of the configuration key as an integer.
+     */
+    public static int getInt(Key key){
+        try {
+            return Integer.parseInt(get(key).trim());
+        } catch(RuntimeException ex){
+            return Integer.parseInt(key.getDefaultValue());
+        }
+    }
+
     /**
      * Retrieves the value for the provided configuration setting key.<br/>
      * Null is returned if the key doesn't exist, or if the key's value equals
@@ -0,0 +1,204 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+import com.chockly.pm.games.Game;
+import com.chockly.pm.log.LogEntry;
+import com.chockly.pm.metrics.Metrics;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Starts the games and watches their processes, telling the
+ * {@link GameListener}s when a game starts and exits.<br/>
+ * <br/>
+ * The game's executable is started directly in its own folder, without
+ * going through a shell, and a daemon thread waits for it to exit. When the
+ * Profile Manager exits first, as it does with the exit on launch setting,
+ * the game keeps running but its exit isn't reported. That includes games
+ * started with the <tt>-p</tt> argument when no Profile Manager is running
+ * in the background.<br/>
+ * <br/>
+ * Only executables that are the game itself are supervised. Steam's copies
+ * of the games' executables and script extender loaders, such as SKSE and
+ * OBSE, start the real game and exit within a few seconds. A process that
+ * exits that quickly is taken to have handed the game off: it's no longer
+ * reported as running, and its exit isn't passed on to the listeners, since
+ * the game is most likely still using its saves.
+ * @author Curtis Oakley
+ */
+public class GameLauncher {
+    
+    /** Windows' error when a program asks to be run as an administrator. */
+    private static final String ELEVATION_REQUIRED = "error=740";
+    /** Processes that exit sooner than this, in milliseconds, are launcher stubs. */
+    private static final long STUB_EXIT_TIME = 15000;
+    
+    private static final List<GameListener> listeners =
+            new CopyOnWriteArrayList<GameListener>();
+    private static final ConcurrentMap<Byte, Process> running =
+            new ConcurrentHashMap<Byte, Process>();
+    
+    private GameLauncher(){}
+    
+    /**
+     * Starts a game.
+     * @param g The game to start.
+     * @return <tt>true</tt> if the game was started.
+     * @throws FileNotFoundException If the game's executable doesn't exist.
+     */
+    public static boolean launch(Game g) throws FileNotFoundException {
+        String exe = g.getExe();
+        File exeFile = new File(exe);
+        
+        if( !exeFile.exists())
+            throw new FileNotFoundException("Unable to find the specified executable \""
+                    + exe + '"');
+        
+        long startTime = System.nanoTime();
+        final Process p;
+        try {
+            p = new ProcessBuilder(exeFile.getAbsolutePath())
+                    .directory(exeFile.getAbsoluteFile().getParentFile())
+                    .redirectErrorStream(true)
+                    .redirectOutput(getNullFile())
+                    .start();
+            
+        } catch(IOException ioe){
+            // Only the shell can ask the user to run the game as an administrator
+            if(ioe.getMessage() != null && ioe.getMessage().contains(ELEVATION_REQUIRED))
+                return launchWithShell(exe);
+            
+            Main.handleException("Unable to start " + exe + '.',
+                    ioe, Main.WARN_LEVEL);
+            return false;
+        }
+        Metrics.histogram("game.launch").recordSince(startTime);
+        
+        final byte gameID = g.getId();
+        final long started = System.currentTimeMillis();
+        running.put(gameID, p);
+        fireGameStarted(gameID);
+        
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int exitCode;
+                while(true){
+                    try {
+                        exitCode = p.waitFor();
+                        break;
+                    } catch(InterruptedException ie){
+                        // Keep waiting, the game is still running
+                    }
+                }
+                running.remove(gameID, p);
+                
+                long runTime = System.currentTimeMillis() - started;
+                if(runTime < STUB_EXIT_TIME){
+                    Main.handleException(new LogEntry(Main.LOG_LEVEL, "launchGame",
+                            "The game exited after " + runTime
+                            + "ms, it was most likely handed off to another process and its exit won't be reported.",
+                            null).game(gameID));
+                    return;
+                }
+                fireGameExited(gameID, exitCode, runTime);
+            }
+        }, "Game Waiter " + gameID);
+        waiter.setDaemon(true);
+        waiter.start();
+        
+        return true;
+    }
+    
+    /**
+     * Checks if a game started by the launcher is still running.
+     * @param gameID The ID of the game.
+     * @return <tt>true</tt> if the game's process hasn't exited. Games that
+     * were handed off to another process aren't known to be running.
+     */
+    public static boolean isRunning(byte gameID){
+        return running.containsKey(gameID);
+    }
+    
+    /**
+     * Adds a listener that is told when games start and exit.
+     * @param l The listener to add.
+     */
+    public static void addGameListener(GameListener l){
+        listeners.add(l);
+    }
+    
+    /**
+     * Removes a game listener.
+     * @param l The listener to remove.
+     */
+    public static void removeGameListener(GameListener l){
+        listeners.remove(l);
+    }
+    
+    /**
+     * Starts a game through the Windows shell, which can ask the user to let
+     * the game run as an administrator. The game's exit can't be watched.
+     */
+    private static boolean launchWithShell(String exe){
+        File dir = new File(exe).getAbsoluteFile().getParentFile();
+        try {
+            new ProcessBuilder("cmd", "/c", "start", "\"\"", "/d", dir.getPath(), exe)
+                    .redirectErrorStream(true)
+                    .redirectOutput(getNullFile())
+                    .start();
+            return true;
+        } catch(IOException ioe){
+            Main.handleException("Unable to start " + exe + '.',
+                    ioe, Main.WARN_LEVEL);
+            return false;
+        }
+    }
+    
+    /** Returns the file that discards anything written to it. */
+    private static File getNullFile(){
+        return new File(File.separatorChar == '\\' ? "NUL" : "/dev/null");
+    }
+    
+    private static void fireGameStarted(byte gameID){
+        for(GameListener l : listeners){
+            try {
+                l.gameStarted(gameID);
+            } catch(RuntimeException re){
+                Main.handleException(new LogEntry(Main.LOG_LEVEL, "gameListener",
+                        "A game listener failed.", re).game(gameID));
+            }
+        }
+    }
+    
+    private static void fireGameExited(byte gameID, int exitCode, long runTime){
+        for(GameListener l : listeners){
+            try {
+                l.gameExited(gameID, exitCode, runTime);
+            } catch(RuntimeException re){
+                Main.handleException(new LogEntry(Main.LOG_LEVEL, "gameListener",
+                        "A game listener failed.", re).game(gameID));
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+/**
+ * Receives notice of the games started by the {@link GameLauncher}.<br/>
+ * <br/>
+ * {@link #gameStarted(byte)} is called on the thread that launched the game,
+ * and {@link #gameExited(byte, int, long)} on the thread waiting for the
+ * game. Listeners that update the GUI need to hand the change off to the
+ * event dispatch thread, and shouldn't block.
+ * @author Curtis Oakley
+ */
+public interface GameListener {
+    
+    /**
+     * Called after a game's process has been started.
+     * @param gameID The ID of the game.
+     */
+    public void gameStarted(byte gameID);
+    
+    /**
+     * Called after a game's process has exited. Processes that exit within a
+     * few seconds of starting, such as Steam's stubs and script extender
+     * loaders, have handed the game off to another process, and aren't
+     * reported.
+     * @param gameID The ID of the game.
+     * @param exitCode The process's exit code.
+     * @param runTime How long the game ran, in milliseconds.
+     */
+    public void gameExited(byte gameID, int exitCode, long runTime);
+}
@@ -0,0 +1,84 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+import com.chockly.pm.games.Game;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps one lock per game to stop profile activation, backups and restores
+ * from working on the same game's saves at the same time.<br/>
+ * <br/>
+ * Activating a profile moves saves around, so a backup running at the same
+ * time could archive a half moved profile. Backups and restores hold their
+ * game's lock while they read or replace the saves, and activation waits a
+ * short time for them to finish before giving up.
+ * @author Curtis Oakley
+ */
+public class GameLocks {
+    
+    /** How long activation waits for a running backup, in seconds. */
+    private static final long ACTIVATION_WAIT = 5;
+    
+    private static final Map<Byte, ReentrantLock> locks = new HashMap<Byte, ReentrantLock>();
+    
+    /**
+     * Gets the lock for a game.
+     * @param gameID The ID of the game.
+     * @return The game's lock.
+     */
+    public static synchronized ReentrantLock get(byte gameID){
+        ReentrantLock lock = locks.get(gameID);
+        if(lock == null){
+            lock = new ReentrantLock();
+            locks.put(gameID, lock);
+        }
+        return lock;
+    }
+    
+    /**
+     * Locks a game so that one of its profiles can be activated or
+     * deactivated. If a backup is holding the lock this waits for it, and
+     * informs the user if the backup takes too long.
+     * @param g The game to lock.
+     * @return <tt>true</tt> if the lock was acquired, in which case it must
+     * be released with {@link #unlock(byte)}.
+     */
+    public static boolean lockForActivation(Game g){
+        try {
+            if(get(g.getId()).tryLock(ACTIVATION_WAIT, TimeUnit.SECONDS))
+                return true;
+        } catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+        }
+        Main.handleException("A backup of " + g.getName()
+                + " is running, try again once it has finished.",
+                null, Main.WARN_LEVEL);
+        return false;
+    }
+    
+    /**
+     * Releases a game's lock.
+     * @param gameID The ID of the game.
+     */
+    public static void unlock(byte gameID){
+        get(gameID).unlock();
+    }
+}
@@ -18,10 +18,15 @@ package com.chockly.pm;
 
 import com.chockly.pm.games.Game;
 import com.chockly.pm.games.GameFactory;
+import com.chockly.pm.log.LogEntry;
 import com.chockly.pm.win86.JLnk;
+import com.chockly.pm.metrics.Events;
+import com.chockly.pm.metrics.Metrics;
 import java.io.*;
 import java.net.URISyntaxException;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 /**
  * Contains static methods to help perform I/O operations.
@@ -37,54 +42,12 @@ public class IOUtils {
      * otherwise.
      */
     public static boolean checkForProfileDirChanges(byte gameID){
-        Game g = GameFactory.getGameFromID(gameID);
-        boolean changes = false;
-        File saveDir = new File(g.getDir(), g.getSave());
-        
-        if(saveDir.exists()){
-            File[] folders = saveDir.listFiles();
-            if(folders == null)
-                return false;
-            
-            ProfileFactory pf = ProfileFactory.getInstance();
-            Profile[] profiles = pf.getProfiles(gameID);
-            
-            UpdateProfilesChecker check = new UpdateProfilesChecker();
-
-            // Check for new files
-            for(int i=0; i<folders.length; i++){
-                if(folders[i].isDirectory()){
-                    // See if this directory is already used by a profile
-                    String name = folders[i].getName();
-                    if( !dirInUse(name, profiles)){
-                        // Folder not used, add a new profile
-                        if(check.createProfile(name)){
-                            pf.add(name, name, gameID);
-                            changes = true;
-                        }
-                    }
-                }
-            }
-
-            // Check for removed profile folders
-            for(int i=0; i<profiles.length; i++){
-                if( !new File(saveDir, profiles[i].getSaveDir()).exists() ){
-                    // File removed
-                    
-                    if(profiles[i].isActive() && !g.usesIni())
-                        // Profile is active for folder swapping game, ignore
-                        continue;
-                    
-                    if(check.deleteProfile(profiles[i].getName())){
-                        // Delete the profile
-                        pf.remove(profiles[i]);
-                        changes = true;
-                    }
-                }
-            }
+        try {
+            return ProfileDirChanges.scan(gameID).apply();
+        } catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+            return false;
         }
-        
-        return changes;
     }
     
     /**
@@ -107,33 +70,44 @@ public class IOUtils {
      * launches its game when clicked.
      * @param profile The Profile to create the shortcut for.
      * @throws IOException
-     * @throws InterruptedException 
      */
-    public static void createShortcut(Profile profile)
-            throws IOException, InterruptedException
-    {
-        Game game = GameFactory.getGameFromID(profile.getGameID());
-        
-        JLnk link = new JLnk();
-
-        link.setFolder(System.getProperty("user.home") + "\\Desktop");
-        link.setName(profile.getSaveDir() + " " + game.getName());
+    public static void createShortcut(Profile profile) throws IOException {
+        createShortcuts(new Profile[] {profile});
+    }
+    
+    /**
+     * Creates a shortcut on the user's desktop for each of the profiles, that
+     * activates the profile and launches its game when clicked. Shortcuts
+     * that already exist are replaced.
+     * @param profiles The Profiles to create shortcuts for.
+     * @throws IOException If a shortcut couldn't be written, the shortcuts
+     * before it have been created.
+     */
+    public static void createShortcuts(Profile[] profiles) throws IOException {
+        String desktop = System.getProperty("user.home") + File.separator + "Desktop";
         
         // Get the jar's name and location
+        String jar;
         try {
-            link.setPath(new File(
+            jar = new File(
                     IOUtils.class.getProtectionDomain().getCodeSource().getLocation().toURI())
-                    .getAbsolutePath());
+                    .getAbsolutePath();
             
         } catch (URISyntaxException ex) {
             throw new IOException(ex.getMessage(), ex);
         }
         
-        link.setArguments("-p " + profile.getID());
-        link.setIconLocation(game.getExe());
-        link.setDescription("Start " + game.getName() + " as " + profile.getName());
-
-        link.save();
+        for(Profile profile : profiles){
+            Game game = GameFactory.getGameFromID(profile.getGameID());
+            
+            JLnk link = new JLnk(desktop, jar);
+            link.setName(profile.getSaveDir() + " " + game.getName());
+            link.setArguments("-p " + profile.getID());
+            link.setIconLocation(game.getExe());
+            link.setDescription("Start " + game.getName() + " as " + profile.getName());
+            
+            link.save();
+        }
     }
     
     /**
@@ -150,21 +124,6 @@ public class IOUtils {
                     null, Main.WARN_LEVEL);
     }
     
-    /**
-     * Detects if the provided directory name is in use by a profile.
-     * @param dir The directory name to check.
-     * @param profiles The profiles to check against.
-     * @return True if the directory is used by one of the profiles, false
-     * otherwise.
-     */
-    private static boolean dirInUse(String dir, Profile[] profiles){
-        for(int i=0; i<profiles.length; i++){
-            if(profiles[i].getSaveDir().equals(dir))
-                return true;
-        }
-        return false;
-    }
-    
     /**
      * Deletes the provided file or directory.<br/>
      * <br/>
@@ -173,12 +132,14 @@ public class IOUtils {
      * @param f The file to delete.
      * @return True if the file was successfully deleted, false otherwise.
      */
-    private static boolean deleteFile(File f){
+    public static boolean deleteFile(File f){
         boolean success = true;
         
         if(f.exists()){
             if(f.isDirectory()){
                 File[] files = f.listFiles();
+                if(files == null)
+                    return false;
                 for(int i=0; i<files.length; i++){
                     if( !deleteFile(files[i]) )
                         success = false;
@@ -204,6 +165,39 @@ public class IOUtils {
             return new File(g.getDir() + g.getSave() + File.separator + p.getSaveDir());
     }
     
+    /**
+     * Replaces a directory with another directory on the same drive.<br/>
+     * <br/>
+     * The directories are swapped using renames, so the target is never left
+     * partly replaced. If the swap fails the target is put back.
+     * @param target The directory to replace. Does not need to exist.
+     * @param replacement The directory to move into the target's place.
+     * @param trash A location on the same drive to hold the old target until
+     * it has been deleted. Anything already there is deleted.
+     * @throws IOException If the directories couldn't be swapped.
+     */
+    public static void replaceDirectory(File target, File replacement, File trash)
+            throws IOException
+    {
+        deleteFile(trash);
+        
+        boolean hadTarget = target.exists();
+        if(hadTarget)
+            Files.move(target.toPath(), trash.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        
+        try {
+            Files.move(replacement.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException ioe){
+            if(hadTarget)
+                Files.move(trash.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            throw ioe;
+        }
+        
+        if( !deleteFile(trash))
+            Main.handleException(new LogEntry(Main.LOG_LEVEL, "replaceDirectory",
+                    "Unable to delete the replaced directory.", null).path(trash.getPath()));
+    }
+    
     /**
      * Moves a file to another folder.
      * @param source The file to move. This <b>must</b> be a file, and not a
@@ -211,26 +205,25 @@ public class IOUtils {
      * @param dest The path and file name to move the source to.
      */
     public static void moveFile(File source, File dest){
-
-        StringBuilder debugMessage = new StringBuilder(64);
-        debugMessage.append("Unable to move:\n");
-        debugMessage.append(source.getPath());
-        debugMessage.append("\nto:\n");
-        debugMessage.append(dest.getPath());
-        debugMessage.append("\n\n");
+        long startTime = System.nanoTime();
+        Events.Event event = Events.begin(Events.FILE_MOVE);
+        String outcome = Events.RENAMED;
+        long copied = 0;
 
         // Make the parent folder
         File destParent = dest.getParentFile();
+        boolean parentFailed = false;
 
         if(destParent != null && ! destParent.exists() ){
             if( ! destParent.mkdirs() )
-                debugMessage.append("Parent directory failed to create.\n");
+                parentFailed = true;
         }
 
         // Try to rename the file
         if( ! source.renameTo(dest) ){
 
             // Rename failed, attempt to manually copy
+            Metrics.counter("io.moveFile.copies").increment();
             try {
                 if( ! dest.exists() )
                     dest.createNewFile();
@@ -247,20 +240,43 @@ public class IOUtils {
                 sourceChan.close();
                 destination.close();
 
+                copied = count;
+                outcome = size == count ? Events.COPIED : Events.FAILED;
                 if( size == count)
                     source.delete();
                 else
-                    Main.handleException(
-                            debugMessage.append("All of the file failed to copy for an unkown reason.\nOrginal File Size: ")
+                    Main.handleException(new LogEntry(Main.WARN_LEVEL, "moveFile",
+                            moveFailedMessage(source, dest, parentFailed)
+                            .append("All of the file failed to copy for an unkown reason.\nOrginal File Size: ")
                             .append(size).append("  New File Size: ").append(count).toString(),
-                            null, Main.WARN_LEVEL);
+                            null).path(source.getPath()));
 
             } catch(IOException ioe){
-                Main.handleException(debugMessage
+                outcome = Events.FAILED;
+                Main.handleException(new LogEntry(Main.WARN_LEVEL, "moveFile",
+                        moveFailedMessage(source, dest, parentFailed)
                         .append("Rename and copy failed.").toString(),
-                        ioe, Main.WARN_LEVEL);
+                        ioe).path(source.getPath()));
             }
         }
+        
+        Metrics.histogram("io.moveFile").recordSince(startTime);
+        if(event != null)
+            Events.commit(event, (byte) 0, 0,
+                    outcome.equals(Events.RENAMED) ? dest.length() : copied, outcome);
+    }
+    
+    /** Starts the message for a file that couldn't be moved. */
+    private static StringBuilder moveFailedMessage(File source, File dest, boolean parentFailed){
+        StringBuilder debugMessage = new StringBuilder(128);
+        debugMessage.append("Unable to move:\n");
+        debugMessage.append(source.getPath());
+        debugMessage.append("\nto:\n");
+        debugMessage.append(dest.getPath());
+        debugMessage.append("\n\n");
+        if(parentFailed)
+            debugMessage.append("Parent directory failed to create.\n");
+        return debugMessage;
     }
     
     /**
@@ -285,6 +301,7 @@ public class IOUtils {
     public static void setINIValue(File file, String key, String value, String section)
             throws FileNotFoundException
     {
+        long startTime = System.nanoTime();
         try{
             // Make sure that it is possible to write to the file
             if(!file.canWrite()){
@@ -361,39 +378,8 @@ public class IOUtils {
             Main.handleException(
                     "An IO Exception has occured while attempting to read the file '" + file.getName() + "'",
                     ioe, Main.WARN_LEVEL);
-        }
-    }
-
-    /**
-     * Starts the provided executable file in a separate process.
-     * @param exe The name and location of an executable file to start.
-     * @throws FileNotFoundException If the provided executable doesn't exist.
-     */
-    public static void startProgram(String exe) throws FileNotFoundException {
-        
-        if( ! new File(exe).exists())
-            throw new FileNotFoundException("Unable to find the specified executable \""
-                    + exe + '"');
-        
-        try
-        {
-            // See if the exe has a path
-            if(exe.contains(File.separator)){
-                // Extract the path and then change the working directory to the path
-                String path = exe.substring(0, exe.lastIndexOf(File.separator));
-
-                Runtime.getRuntime().exec("cmd /c pushd \"" + path
-                        + "\" & cmd /c \"" + exe + '"');
-            
-            } else {
-                // Attempt to run the file
-                Runtime.getRuntime().exec("cmd /c \"" + exe + '"');
-            }
-        }
-        catch (IOException ioe)
-        {
-            Main.handleException("Unable to start " + exe + '.',
-                    ioe, Main.WARN_LEVEL);
+        } finally {
+            Metrics.histogram("io.setINIValue").recordSince(startTime);
         }
     }
 }
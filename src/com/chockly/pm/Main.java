@@ -18,8 +18,12 @@ package com.chockly.pm;
 
 import com.chockly.pm.games.Game;
 import com.chockly.pm.games.GameFactory;
+import com.chockly.pm.gui.ErrorDialogs;
 import com.chockly.pm.gui.ProfileManager;
-import java.io.PrintWriter;
+import com.chockly.pm.log.Log;
+import com.chockly.pm.log.LogEntry;
+import com.chockly.pm.metrics.Events;
+import com.chockly.pm.metrics.Metrics;
 
 /**
  * Profile Manger main class.<br/>
@@ -71,8 +75,9 @@ public class Main {
 
     private static byte gameID = 0;
     private static int profileID = 0;
+    private static boolean resident = false;
     
-    private static PrintWriter errFile = null;
+    private static boolean headless = false;
 
     /**
      * Starts up the profile manager.
@@ -90,15 +95,38 @@ public class Main {
      * <tr><td>-f</td><td>Starts the GUI in the Fallout 3 tab.</td></tr>
      * <tr><td>-n</td><td>Starts the GUI in the Fallout: New Vegas tab.</td></tr>
      * <tr><td>-p [Profile ID]</td><td>Activates the provided profile and then launches its respective game.</td></tr>
+     * <tr><td>-r</td><td>Runs the Profile Manager in the background without its window.</td></tr>
+     * <tr><td>-x</td><td>Stops the Profile Manager running in the background.</td></tr>
      * <tr><td>-h or -help or help</td><td>Outputs the help.</td></tr>
      * </tbody>
      * </table>
      * Some of the arguments may be combined. For example the argument '-lo'
      * would output a list off all the profiles and then launch the GUI into
-     * the Oblivion tab.
+     * the Oblivion tab.<br/>
+     * <br/>
+     * If the first argument is one of the {@link BatchCommands} the command
+     * is run without the GUI, and the program exits when it has finished.<br/>
+     * <br/>
+     * If a Profile Manager is already running, the <tt>-p</tt> argument and
+     * opening the GUI are handed to it (see {@link ProfileDaemon}) instead of
+     * loading everything again.
      */
     public static void main(String[] args) {
         
+        // Keep the timings of this run
+        Metrics.dumpOnExit();
+        Events.install();
+        
+        if(args.length > 0 && BatchCommands.isCommand(args[0])){
+            // Run the command without any of the GUI
+            headless = true;
+            System.setProperty("java.awt.headless", "true");
+            
+            int status = BatchCommands.run(args);
+            closeErrorLog();
+            System.exit(status);
+        }
+        
         // Parse the command line arguments
         try {
             for(int x=0; x<args.length; x++){
@@ -123,6 +151,8 @@ public class Main {
                                           System.out.println("Only one profile can be specified at a time. Using the first specified profile.");
                                       }
                                       break;
+                            case 'r': resident = true; break;
+                            case 'x': stopResident(); break;
                             case 'h': printHelpAndExit(); break;
                             default: System.err.println("Invalid flag argument provided.");
                         }
@@ -142,6 +172,26 @@ public class Main {
                     + e.toString());
         }
         
+        // Hand the request to a running Profile Manager, which already has
+        // the profiles loaded
+        if(profileID > 0){
+            String reply = ProfileDaemon.send("launch " + profileID);
+            if(reply != null){
+                if( !reply.equals(ProfileDaemon.OK)){
+                    System.err.println(reply);
+                    System.exit(1);
+                }
+                return;
+            }
+        } else if(resident){
+            if(ProfileDaemon.send("ping") != null){
+                System.out.println("The Profile Manager is already running.");
+                return;
+            }
+        } else if(ProfileDaemon.send("show " + gameID) != null){
+            return;
+        }
+        
         // Load up the config
         Config.loadConfig();
 
@@ -166,7 +216,8 @@ public class Main {
                 pf.saveProfiles();
 
                 try {
-                    IOUtils.startProgram( game.getExe() );
+                    // The program exits after this, so the game's exit isn't watched
+                    GameLauncher.launch(game);
                 } catch(java.io.FileNotFoundException fnfe){
                     handleException(null, fnfe, WARN_LEVEL);
                 }
@@ -182,20 +233,19 @@ public class Main {
                         ex, LOG_LEVEL);
             }
             
-            // Find which tab to start in
-            final byte startTabNum = (gameID == 0)
-                    ? Byte.parseByte( Config.get(Config.Key.start_tab.toString(),
-                            Byte.toString(GameFactory.SKYRIM_ID)) )
-                    : gameID;
+            // Start backing up in the background
+            BackupScheduler.getInstance().start();
+            
+            // Let JConsole watch the operations while the program is running
+            Metrics.publish();
+            
+            // Handle the shortcuts and other Profile Managers from here
+            ProfileDaemon.start(resident
+                    || Boolean.parseBoolean(Config.get(Config.Key.resident_mode)));
             
             // Start the GUI
-            java.awt.EventQueue.invokeLater(new Runnable() {
-                @Override
-                public void run() {
-                    new ProfileManager(startTabNum).setVisible(true);
-                    //new com.chockly.pm.gui.ConfigGUI(null).setVisible(true);
-                }
-            });
+            if( !resident)
+                showGUI(gameID);
         }
 
         /* TODO
@@ -245,23 +295,78 @@ public class Main {
     }
     
     /**
-     * Closes the PrintWriter used by
-     * {@link com.chockly.pm.Main#handleException(java.lang.String, java.lang.Throwable, byte)}
-     * to log errors to the error.log file on disk.
+     * Checks if the Profile Manager is running without the GUI. Without the
+     * GUI errors are written to standard error instead of being shown to the
+     * user, and nothing should prompt the user.
+     * @return <tt>true</tt> if a batch command is being run.
+     */
+    public static boolean isHeadless(){
+        return headless;
+    }
+    
+    /**
+     * Shows the GUI, or brings it to the front if it is already open.
+     * @param gameID The ID of the game whose tab should be shown when the GUI
+     * is opened, or <tt>0</tt> for the configured start tab.
+     */
+    public static void showGUI(byte gameID){
+        // Find which tab to start in
+        final byte startTabNum = (gameID == 0)
+                ? Byte.parseByte( Config.get(Config.Key.start_tab.toString(),
+                        Byte.toString(GameFactory.SKYRIM_ID)) )
+                : gameID;
+        
+        java.awt.EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                for(java.awt.Frame f : java.awt.Frame.getFrames()){
+                    if(f instanceof ProfileManager && f.isDisplayable()){
+                        f.setState(java.awt.Frame.NORMAL);
+                        f.toFront();
+                        return;
+                    }
+                }
+                new ProfileManager(startTabNum).setVisible(true);
+                //new com.chockly.pm.gui.ConfigGUI(null).setVisible(true);
+            }
+        });
+    }
+    
+    /**
+     * Checks if the GUI is open.
+     * @return <tt>true</tt> if a ProfileManager window is open.
+     */
+    public static boolean isGUIShowing(){
+        if(headless)
+            return false;
+        for(java.awt.Frame f : java.awt.Frame.getFrames()){
+            if(f instanceof ProfileManager && f.isDisplayable())
+                return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Writes out and closes the error log used by
+     * {@link com.chockly.pm.Main#handleException(java.lang.String, java.lang.Throwable, byte)}.
+     * The log is opened again if another error is logged.
      */
     public static void closeErrorLog(){
-        if(errFile != null)
-            errFile.close();
+        Log.close();
     }
 
     /**
      * Handles exceptions for the Profile Manager program.<br/>
      * <br/>
      * All errors will be written to the file 'error.log' (assuming that it can
-     * be created). If the error level is higher than LOG_LEVEL then the user is
-     * informed of the error via a JOptionPane message box.<br/>
+     * be created), see {@link Log}. If the error level is higher than
+     * LOG_LEVEL then the user is informed of the error via a JOptionPane
+     * message box, or when running without the GUI by a JSON line written to
+     * standard error.<br/>
      * <br/>
-     * This method is synchronized so as to be thread safe.
+     * This method is thread safe, and only waits for the user when the error
+     * is fatal. Errors from a bulk operation are collected into a single
+     * message box (see {@link ErrorDialogs}).
      * 
      * @param msg Any message about the error to display to the user or to log.
      * Can be null.
@@ -271,58 +376,41 @@ public class Main {
      * See each of the levels for a description of what they do: 
      * {@link Main#FATAL_LEVEL} {@link Main#WARN_LEVEL} {@link Main#LOG_LEVEL}.
      */
-    public synchronized static void handleException(String msg, Throwable ex, byte level){
-
-        // Create the error log writer as needed
-        if(errFile == null){
-            try {
-                errFile = new PrintWriter(new java.io.FileWriter("error.log", true));
-            } catch(java.io.IOException ioe){
-                ioe.printStackTrace(System.err);
-            }
-        }
-        
-        // Write exceptions to disk
-        if(errFile != null){
-            
-            StackTraceElement[] stack = Thread.currentThread().getStackTrace();
-            StringBuilder message = new StringBuilder(128);
-            
-            message.append("ERROR:\t[");
-            message.append(new java.text.SimpleDateFormat("MM/dd/yyyy hh:mm:ss a").format(new java.util.Date()));
-            message.append("]\t[");
-            message.append(stack[(stack.length > 1 ? 2 : 1)].getMethodName());
-            message.append("|");
-            message.append(VERSION_NUM);
-            message.append("]");
-                    
-            if(msg != null){
-                message.append("\t");
-                message.append(msg);
-            }
-            
-            message.append(System.getProperty("line.separator"));
-
-            errFile.append(message.toString());
-            
-            if(ex != null)
-                ex.printStackTrace(errFile);
-
-            errFile.flush();
-        }
+    public static void handleException(String msg, Throwable ex, byte level){
+        handleException(new LogEntry(level, null, msg, ex));
+    }
+    
+    /**
+     * Handles an exception, logging the operation, game, profile and path
+     * recorded in the entry along with it.
+     * @param entry The error to handle.
+     * @see #handleException(java.lang.String, java.lang.Throwable, byte)
+     */
+    public static void handleException(LogEntry entry){
+        Log.log(entry);
         
+        byte level = entry.getLevel();
+        Throwable ex = entry.getException();
+        String msg = entry.getMessage();
         if(msg == null)
             msg = "An exception has occured!";
         
-        if(ex != null)
-            msg += "\n\nError Message:\n" + ex.toString();
+        // Without a display, such as in the tests, there is nowhere to show a dialog
+        if(headless || java.awt.GraphicsEnvironment.isHeadless()){
+            if(level > LOG_LEVEL)
+                System.err.println(BatchCommands.toJSON("event", "error",
+                        "level", level == FATAL_LEVEL ? "fatal" : "warn",
+                        "message", msg, "exception", ex == null ? null : ex.toString()));
+        } else if(level > LOG_LEVEL){
+            if(ex != null)
+                msg += "\n\nError Message:\n" + ex.toString();
 
-        // Inform the user of the error if the level indicates to do so.
-        if(level > LOG_LEVEL)
-            javax.swing.JOptionPane.showMessageDialog(null,
-                    msg,
-                    "Error",
-                    javax.swing.JOptionPane.ERROR_MESSAGE);
+            // Inform the user of the error.
+            if(level == FATAL_LEVEL)
+                ErrorDialogs.showAndWait(msg);
+            else
+                ErrorDialogs.show(msg);
+        }
 	
         // If the error is categorized as fatal, stop the program.
         if(level == FATAL_LEVEL){
@@ -384,11 +472,45 @@ public class Main {
 "-f        Starts the program in the Fallout 3 tab.\n" +
 "-n        Starts the program in the Fallout: New Vegas tab.\n" +
 "-p [ID]   Activates the provided profile and then launches its respective game.\n" +
-"help      Outputs this help documentation.\n"
+"-r        Runs the program in the background without its window, so that\n" +
+"          profile shortcuts don't have to start the program.\n" +
+"-x        Stops the program running in the background.\n" +
+"help      Outputs this help documentation.\n" +
+"\n" +
+"The following commands run without the program's window, writing their\n" +
+"results to standard out as one JSON object per line:\n" +
+"Command                                  Effect\n" +
+"=================================================\n" +
+"auto-setup [game]...                     Creates profiles from the games' saved games.\n" +
+"activate [ID]...                         Activates the profiles.\n" +
+"deactivate [game]...                     Deactivates the games' active profiles.\n" +
+"backup [game|ID]...                      Backs up the profiles.\n" +
+"import [file] [game]...                  Imports the profiles in the file into the games.\n" +
+"export [file] [game]...                  Exports the games' profiles to the file.\n" +
+"reconcile [--create] [--delete] [game]...\n" +
+"                                         Adds and removes profiles for added or removed\n" +
+"                                         profile folders.\n" +
+"shortcuts [game]...                      Creates desktop shortcuts for the games' profiles.\n" +
+"Games are given by name, or 'all' for all the active games.\n"
                 );
         System.exit(0);
     }
 
+    /**
+     * Stops the Profile Manager running in the background, and then exits
+     * the program.
+     */
+    private static void stopResident(){
+        String reply = ProfileDaemon.send("stop");
+        if(reply == null){
+            System.out.println("The Profile Manager isn't running.");
+        } else if( !reply.equals(ProfileDaemon.OK)){
+            System.out.println(reply);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+    
     /**
      * Sets the gameID from the one sent in through the command line argument.<br/>
      * <br/>
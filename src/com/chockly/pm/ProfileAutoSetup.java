@@ -0,0 +1,143 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+import com.chockly.pm.games.AutoSetupListener;
+import com.chockly.pm.games.Game;
+import com.chockly.pm.games.GameFactory;
+import com.chockly.pm.gui.ProfileManager;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+
+/**
+ * Runs a game's {@link Game#autoSetupProfiles(AutoSetupListener)} in the
+ * background.<br/>
+ * <br/>
+ * Progress is reported on the files processed through the <tt>progress</tt>
+ * property, along with a status message giving the number of files processed
+ * per second through the {@link ProfileBackup#STATUS_PROPERTY}. The new
+ * profiles show up in the profile list as soon as they are added to the
+ * ProfileFactory. Cancelling stops
+ * the setup after the file being processed, keeping the profiles that have
+ * already been created. The ProfileManager is told once the setup has
+ * actually stopped, rather than from <tt>done()</tt>, which runs as soon as
+ * the setup is cancelled.
+ * @author Curtis Oakley
+ */
+public class ProfileAutoSetup extends SwingWorker<Void, Void> implements AutoSetupListener {
+    
+    /** The minimum time between status updates, in nanoseconds. */
+    private static final long STATUS_INTERVAL = 250000000L;
+    
+    private final Game g;
+    private final ProfileManager pm;
+    private final long start = System.nanoTime();
+    private long lastUpdate = 0;
+    private volatile int created = 0;
+    /** Claimed by the setup when it starts, or by done() if cancelled first. */
+    private final AtomicBoolean started = new AtomicBoolean();
+    
+    /**
+     * Creates a new ProfileAutoSetup.
+     * @param gameID The ID of the game to set up the profiles of.
+     * @param pm The ProfileManager GUI instance. This is told when the setup
+     * has completed. Can be <tt>null</tt>.
+     */
+    public ProfileAutoSetup(byte gameID, ProfileManager pm){
+        this.g = GameFactory.getGameFromID(gameID);
+        this.pm = pm;
+    }
+    
+    /**
+     * Gets the game whose profiles are being set up.
+     * @return The game's ID.
+     */
+    public byte getGameID(){
+        return g.getId();
+    }
+    
+    /**
+     * Gets the number of profiles that have been created.
+     * @return The number of new profiles.
+     */
+    public int getCreatedCount(){
+        return created;
+    }
+    
+    @Override
+    protected Void doInBackground() throws Exception {
+        if( !started.compareAndSet(false, true))
+            return null;
+        
+        // Saves are moved around, so keep backups out until the setup is done
+        try {
+            GameLocks.get(g.getId()).lockInterruptibly();
+            try {
+                g.autoSetupProfiles(this);
+            } finally {
+                GameLocks.unlock(g.getId());
+            }
+        } finally {
+            finish();
+        }
+        return null;
+    }
+    
+    @Override
+    protected void done() {
+        // Cancelled before it started, so the setup won't report it
+        if(isCancelled() && started.compareAndSet(false, true))
+            finish();
+    }
+    
+    /** Tells the ProfileManager that the setup has stopped. */
+    private void finish(){
+        if(pm == null)
+            return;
+        
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                pm.finishAutoCreateProfiles();
+            }
+        });
+    }
+    
+    @Override
+    public void fileProcessed(int processed, int total) {
+        long now = System.nanoTime();
+        if(processed < total && now - lastUpdate < STATUS_INTERVAL)
+            return;
+        lastUpdate = now;
+        
+        setProgress(total > 0 ? Math.min(99, processed * 100 / total) : 0);
+        
+        StringBuilder status = new StringBuilder(64);
+        status.append("Processed ").append(processed).append(" of ");
+        status.append(total).append(" files");
+        double seconds = (now - start) / 1e9;
+        if(seconds > 0.5)
+            status.append(" (").append((int) (processed / seconds)).append(" files/s)");
+        firePropertyChange(ProfileBackup.STATUS_PROPERTY, null, status.toString());
+    }
+    
+    @Override
+    public void profileCreated(Profile profile) {
+        created++;
+    }
+}
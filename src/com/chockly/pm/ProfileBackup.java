@@ -16,22 +16,54 @@
  */
 package com.chockly.pm;
 
+import com.chockly.pm.backup.BackupIndex;
+import com.chockly.pm.backup.BackupRepository;
+import com.chockly.pm.backup.Codec;
+import com.chockly.pm.backup.CodecSelector;
+import com.chockly.pm.backup.ParallelZipWriter;
+import com.chockly.pm.backup.ProgressListener;
 import com.chockly.pm.games.Game;
 import com.chockly.pm.games.GameFactory;
 import com.chockly.pm.gui.ProfileManager;
+import com.chockly.pm.log.LogEntry;
+import com.chockly.pm.metrics.Events;
+import com.chockly.pm.metrics.Metrics;
 import java.io.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
 
 /**
- * Stores a profiles saved games into an archive.
+ * Stores a profiles saved games into an archive.<br/>
+ * <br/>
+ * The whole profile directory, including any sub directories, is archived.
+ * Progress is reported on the bytes archived through the <tt>progress</tt>
+ * property, along with a status message giving the throughput and the
+ * estimated time remaining through the {@link #STATUS_PROPERTY}. Cancelling
+ * the backup stops it and removes the partially written archive.<br/>
+ * <br/>
+ * Each file is compressed with the codec chosen for it by a
+ * {@link CodecSelector}, so saves that are already compressed are stored.
  * @author Curtis Oakley
  */
 public class ProfileBackup extends SwingWorker<Void, Void> {
     
+    /** The name of the property used to report the backup's status text. */
+    public static final String STATUS_PROPERTY = "status";
+    /** The minimum time between status updates, in nanoseconds. */
+    private static final long STATUS_INTERVAL = 250000000L;
+    
     private final Profile p;
     private final ProfileManager pm;
+    private String summary = "";
+    private byte errorLevel = Main.WARN_LEVEL;
+    private boolean failed = false;
+    /** Claimed by the backup when it starts, or by done() if cancelled first. */
+    private final AtomicBoolean started = new AtomicBoolean();
     
     /**
      * Creates a new ProfileBackup.
@@ -44,109 +76,384 @@ public class ProfileBackup extends SwingWorker<Void, Void> {
         this.pm = pm;
     }
     
-    /** Stores a profile's saved games into a compressed archive. */
+    /**
+     * Sets how errors during the backup are reported. Defaults to
+     * {@link Main#WARN_LEVEL}.
+     * @param level The exception level passed to
+     * {@link Main#handleException(java.lang.String, java.lang.Throwable, byte)}.
+     */
+    public void setErrorLevel(byte level){
+        errorLevel = level;
+    }
+    
+    /**
+     * Checks if the backup failed. Cancelled backups aren't failures.
+     * @return <tt>true</tt> if an error stopped the backup.
+     */
+    public boolean hasFailed(){
+        return failed;
+    }
+    
+    /**
+     * Stores a profile's saved games into a compressed archive.<br/>
+     * <br/>
+     * The game is locked for the length of the backup so that its profiles
+     * can't be activated while the saves are being read.
+     */
     public void backupProfile(){
         Game g = GameFactory.getGameFromID(p.getGameID());
         
+        try {
+            GameLocks.get(g.getId()).lockInterruptibly();
+        } catch(InterruptedException ie){
+            // Cancelled while waiting
+            return;
+        }
+        try {
+            long startTime = System.nanoTime();
+            archiveProfile(g);
+            Metrics.histogram("backup.profile").recordSince(startTime);
+            if(failed)
+                Metrics.counter("backup.failures").increment();
+        } finally {
+            GameLocks.unlock(g.getId());
+        }
+    }
+    
+    /** Archives the profile in the configured format. */
+    private void archiveProfile(Game g){
         File dir = IOUtils.getProfileDir(g, p);
         
-        if( Config.get(Config.Key.archive_format)
-                .equals(Config.SEVEN_ZIP_FORMAT) )
-        {
-            // Use 7zip
-            StringBuilder cmd = new StringBuilder(128);
-                    
-            cmd.append('"').append(Config.get(Config.Key.seven_zip_exe));
-            cmd.append("\" a \"").append(dir.getAbsolutePath());
-            cmd.append(".7z\" \"").append(g.getDir()).append(g.getSave()).append(File.separator).append(p.getSaveDir()).append('"');
-
-            setProgress(100);
-
-            try {
-                Process process = Runtime.getRuntime().exec(cmd.toString());
-                
-                BufferedReader in = new BufferedReader(
-                        new InputStreamReader(process.getInputStream()));
-                
-                String line;
-            
-                while((line = in.readLine()) != null){
-                    System.out.println(line);
-                }
-
-                process.waitFor();
+        String format = Config.get(Config.Key.archive_format);
+        
+        // Old 7z settings become zip with high compression
+        String compression = format.equals(Config.SEVEN_ZIP_FORMAT)
+                ? Config.HIGH_COMPRESSION : Config.get(Config.Key.compression);
+        CodecSelector codecs = new CodecSelector(
+                Codec.fromName(compression, Codec.NORMAL));
+        
+        // Find all of the files in the profile
+        List<String> names = new ArrayList<String>();
+        List<File> files = new ArrayList<File>();
+        listFiles(dir, "", names, files);
 
-            } catch(Exception e){
-                e.printStackTrace(System.err);
+        if(format.equals(Config.REPOSITORY_FORMAT))
+            backupToRepository(g, names, files, codecs);
+        else
+            backupToZip(g, names, files, codecs);
+    }
+    
+    /**
+     * Returns a description of how the backup's data was compressed.
+     * @return The codecs used and their throughput, empty if the backup
+     * hasn't finished or didn't compress anything.
+     */
+    public String getSummary(){
+        return summary;
+    }
+    
+    /**
+     * Stores a snapshot of the profile in the game's backup repository.
+     */
+    private void backupToRepository(Game g, List<String> names, List<File> files,
+            CodecSelector codecs)
+    {
+        BackupRepository repo = new BackupRepository(
+                new File(g.getDir() + BackupRepository.REPOSITORY_DIR));
+        ByteProgress progress = new ByteProgress(totalSize(files));
+        
+        BackupRepository.SnapshotWriter out = null;
+        
+        try {
+            out = repo.createSnapshot(p.getSaveDir());
+            
+            for(int i=0; i<files.size(); i++){
+                Events.Event event = Events.begin(Events.BACKUP_ENTRY);
+                out.putFile(names.get(i), files.get(i),
+                        codecs.select(files.get(i)), progress);
+                if(event != null)
+                    Events.commit(event, g.getId(), p.getID(),
+                            files.get(i).length(), Events.OK);
+            }
+            progress.finish();
+            
+            out.close();
+            summary = out.getStatistics().toString();
+            out = null;
+            
+        } catch(IOException ioe){
+            if( !isCancelled()){
+                failed = true;
+                Main.handleException(new LogEntry(errorLevel, "backupProfile",
+                        "An exception occured while attempting to store the profile in the backup repository.",
+                        ioe).game(g.getId()).profile(p.getID()));
             }
+        } finally {
+            // An unfinished snapshot is never recorded
+            if(out != null)
+                out.abort();
         }
-        else
-        {
-            // Use zip
-            File[] files = dir.listFiles();
-            double numFiles = files.length-1;
+    }
+    
+    /**
+     * Archives the profile using zip, only archiving what changed since the
+     * last backup.
+     */
+    private void backupToZip(Game g, List<String> names, List<File> files,
+            CodecSelector codecs)
+    {
+        File archive = getZipArchive(g, p);
+        BackupIndex index = BackupIndex.load(archive);
+        boolean full = index.isFullBackupDue(
+                Config.getInt(Config.Key.full_backup_interval));
+        
+        if(full)
+            index.clear();
+        
+        File target = full ? archive : index.getNextDeltaArchive();
+        ParallelZipWriter out = null;
+        File tmp = null;
+        
+        try {
+            // Find the files that need to be archived
+            List<String> changedNames = new ArrayList<String>();
+            List<File> changed = new ArrayList<File>();
+            for(int i=0; i<files.size(); i++){
+                if(isCancelled())
+                    return;
+                if(full || index.hasChanged(names.get(i), files.get(i))){
+                    changedNames.add(names.get(i));
+                    changed.add(files.get(i));
+                }
+            }
+            List<String> deleted = index.removeMissing(new HashSet<String>(names));
             
-            int buffer = 2024;
-
-            byte data[] = new byte[buffer];
-
-            BufferedInputStream in = null;
-            ZipOutputStream out = null;
-
-            try {
-                out = new ZipOutputStream(
-                        new BufferedOutputStream(
-                        new FileOutputStream(g.getDir() + g.getSave()
-                        + File.separator + p.getSaveDir() + ".zip")));
-
-                for(int i=0; i <= numFiles; i++){
-                    in = new BufferedInputStream(new FileInputStream(files[i]));
-
-                    ZipEntry entry = new ZipEntry(files[i].getName());
-
-                    out.putNextEntry(entry);
-
-                    int count;
-
-                    while((count = in.read(data, 0, buffer)) != -1){
-                        out.write(data, 0, count);
-                    }
-
-                    in.close();
-                    out.closeEntry();
-                    
-                    setProgress((int) Math.floor( ((double) i / numFiles) * 100));
+            if( !full && changed.isEmpty() && deleted.isEmpty()){
+                // Nothing to archive
+                index.save();
+                return;
+            }
+            
+            ByteProgress progress = new ByteProgress(totalSize(changed));
+            
+            tmp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+            out = new ParallelZipWriter(new FileOutputStream(tmp),
+                    Deflater.DEFAULT_COMPRESSION);
+            
+            for(int i=0; i<changed.size(); i++){
+                Events.Event event = Events.begin(Events.BACKUP_ENTRY);
+                index.putFile(out, changedNames.get(i), changed.get(i),
+                        codecs.select(changed.get(i)), progress);
+                if(event != null)
+                    Events.commit(event, g.getId(), p.getID(),
+                            changed.get(i).length(), Events.OK);
+            }
+            
+            if( !deleted.isEmpty()){
+                StringBuilder sb = new StringBuilder();
+                for(String name : deleted){
+                    sb.append(name).append('\n');
                 }
+                byte[] list = sb.toString().getBytes("UTF-8");
+                out.putEntry(BackupIndex.DELETED_ENTRY,
+                        new ByteArrayInputStream(list), list.length,
+                        System.currentTimeMillis());
+            }
+            progress.finish();
+            
+            out.close();
+            summary = out.getStatistics().toString();
+            out = null;
+            
+            if(isCancelled())
+                return;
+            
+            // Replace the old archive only once the new one is complete
+            if(target.exists() && !target.delete())
+                throw new IOException("Unable to replace " + target);
+            if( !tmp.renameTo(target))
+                throw new IOException("Unable to rename " + tmp + " to " + target);
+            tmp = null;
+            
+            if(full)
+                index.commitFull();
+            else
+                index.commitDelta();
 
-            } catch(FileNotFoundException fnfe){
-                Main.handleException("Unable to find a file while attempting to archive the profile.",
-                        fnfe, Main.WARN_LEVEL);
-            } catch(IOException ioe){
-                Main.handleException("An exception occured while attempting to archive the profile.",
-                        ioe, Main.WARN_LEVEL);
-            } finally {
-                try {
-                    if(out != null)
-                        out.close();
-                    if(in != null)
-                        in.close();
-                } catch(IOException ioe){
-                    Main.handleException("Unable to close the archiving files.",
-                            ioe, Main.LOG_LEVEL);
-                }
+        } catch(FileNotFoundException fnfe){
+            failed = true;
+            Main.handleException(new LogEntry(errorLevel, "backupProfile",
+                    "Unable to find a file while attempting to archive the profile.",
+                    fnfe).game(g.getId()).profile(p.getID()));
+        } catch(IOException ioe){
+            if( !isCancelled()){
+                failed = true;
+                Main.handleException(new LogEntry(errorLevel, "backupProfile",
+                        "An exception occured while attempting to archive the profile.",
+                        ioe).game(g.getId()).profile(p.getID()));
             }
+        } finally {
+            // Clean up any partially written archive
+            if(out != null)
+                out.abort();
+            if(tmp != null)
+                tmp.delete();
         }
     }
+    
+    /**
+     * Recursively finds the files in a directory.
+     * @param dir The directory to search.
+     * @param prefix The archive path of the directory, empty or ending in '/'.
+     * @param names Receives the archive path of each file found.
+     * @param files Receives each file found.
+     */
+    private static void listFiles(File dir, String prefix, List<String> names,
+            List<File> files)
+    {
+        File[] children = dir.listFiles();
+        if(children == null)
+            return;
+        
+        for(File f : children){
+            if(f.isDirectory()){
+                listFiles(f, prefix + f.getName() + '/', names, files);
+            } else if(f.isFile()){
+                names.add(prefix + f.getName());
+                files.add(f);
+            }
+        }
+    }
+    
+    /**
+     * Gets the full zip archive of a profile's backup chain.
+     * @param g The profile's game.
+     * @param p The profile.
+     * @return The location of the profile's zip backup.
+     */
+    static File getZipArchive(Game g, Profile p){
+        return new File(g.getDir() + g.getSave() + File.separator
+                + p.getSaveDir() + ".zip");
+    }
+    
+    /**
+     * Builds a status message for a long running operation.
+     * @param action What is being done, such as <tt>Backing up</tt>.
+     * @param processed The number of bytes processed so far.
+     * @param total The total number of bytes to process.
+     * @param elapsed The time taken so far, in nanoseconds.
+     * @return The status, giving the bytes processed, the throughput and the
+     * estimated time remaining.
+     */
+    static String describeProgress(String action, long processed, long total,
+            long elapsed)
+    {
+        StringBuilder status = new StringBuilder(64);
+        status.append(action).append(' ').append(Utils.formatBytes(processed));
+        status.append(" of ").append(Utils.formatBytes(total));
+
+        double seconds = elapsed / 1e9;
+        if(seconds > 0.5 && processed > 0){
+            double rate = processed / seconds;
+            long left = (long) Math.ceil((total - processed) / rate);
+            status.append(" (").append(Utils.formatBytes((long) rate));
+            status.append("/s, ").append(left / 60).append(':');
+            status.append(String.format("%02d", left % 60)).append(" left)");
+        }
+        return status.toString();
+    }
+    
+    private static long totalSize(List<File> files){
+        long total = 0;
+        for(File f : files){
+            total += f.length();
+        }
+        return total;
+    }
 
     @Override
     protected Void doInBackground() throws Exception {
-        backupProfile();
+        if( !started.compareAndSet(false, true))
+            return null;
+        
+        try {
+            backupProfile();
+        } finally {
+            finish();
+        }
         return null;
     }
     
     @Override
     public void done(){
-        if(pm != null)
-            pm.finishBackupProfile();
+        // Cancelled before it started, so the backup won't report it
+        if(isCancelled() && started.compareAndSet(false, true))
+            finish();
+    }
+    
+    /**
+     * Tells the ProfileManager that the backup has stopped. This isn't done
+     * from <tt>done()</tt>, which runs as soon as the backup is cancelled,
+     * while it may still be writing the archive.
+     */
+    private void finish(){
+        if(pm == null)
+            return;
+        
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                pm.finishBackupProfile();
+            }
+        });
+    }
+    
+    /**
+     * Converts the bytes processed into progress updates and status messages,
+     * and stops the backup when it has been cancelled.
+     */
+    private class ByteProgress implements ProgressListener {
+        
+        private final long total;
+        private final long start = System.nanoTime();
+        private long processed = 0;
+        private long lastUpdate = 0;
+        
+        private ByteProgress(long total){
+            this.total = total;
+        }
+
+        @Override
+        public void bytesProcessed(long bytes) throws IOException {
+            if(isCancelled())
+                throw new InterruptedIOException("The backup was cancelled.");
+            
+            processed += bytes;
+            
+            long now = System.nanoTime();
+            if(now - lastUpdate < STATUS_INTERVAL)
+                return;
+            lastUpdate = now;
+            
+            // Keep 100 for when the archive is being finished
+            setProgress(total > 0 ? (int) Math.min(99, processed * 100 / total) : 0);
+            
+            fireStatus(describeProgress("Backing up", processed, total, now - start));
+        }
+        
+        /** Signals that all of the files have been read. */
+        private void finish(){
+            setProgress(100);
+            fireStatus("Finishing backup...");
+        }
+        
+        /**
+         * Reports the status to the GUI. Status changes are always delivered
+         * on the event dispatch thread, so they aren't sent without a GUI.
+         */
+        private void fireStatus(String status){
+            if(pm != null)
+                firePropertyChange(STATUS_PROPERTY, null, status);
+        }
     }
 }
@@ -0,0 +1,354 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+import com.chockly.pm.games.Game;
+import com.chockly.pm.games.GameFactory;
+import com.chockly.pm.log.LogEntry;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+
+/**
+ * Lets a running Profile Manager handle the requests of the ones started
+ * after it, so that profile shortcuts don't have to start a new program and
+ * reload all of the profiles.<br/>
+ * <br/>
+ * The running Profile Manager listens on a loopback socket. The port, along
+ * with a random token that every request has to start with, are written to
+ * <tt>profiles/.daemon</tt>, which only the user should be able to read. A
+ * request is a single line, <tt>&lt;token&gt; &lt;command&gt;</tt>, which is
+ * answered with <tt>ACCEPTED</tt> once the token has been checked, and then
+ * <tt>OK</tt> or <tt>ERROR &lt;message&gt;</tt> once the command has run.
+ * The following commands are accepted:
+ * <pre>
+ * launch &lt;profile id&gt;  Activates the profile and launches its game.
+ * show [game id]       Shows the Profile Manager's window.
+ * ping                 Checks that the Profile Manager is running.
+ * stop                 Stops a resident Profile Manager that has no window.
+ * </pre>
+ * When running resident the Profile Manager keeps running after its window
+ * is closed, until it is stopped.
+ * @author Curtis Oakley
+ */
+public final class ProfileDaemon {
+    
+    /** The reply to a request that succeeded. */
+    public static final String OK = "OK";
+    /** The start of the reply to a request that failed. */
+    public static final String ERROR = "ERROR";
+    
+    private static final String ACCEPTED = "ACCEPTED";
+    private static final String DAEMON_FILE = Config.PROFILE_DATA_DIR + ".daemon";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** How long to wait for a running Profile Manager to accept a request. */
+    private static final int CONNECT_TIMEOUT = 1000;
+    /** How long to wait for a request to be carried out. */
+    private static final int REQUEST_TIMEOUT = 60000;
+    
+    private static ProfileDaemon instance = null;
+    
+    private final ServerSocket server;
+    private final String token;
+    private final boolean resident;
+    private volatile boolean running = true;
+    
+    private ProfileDaemon(ServerSocket server, String token, boolean resident){
+        this.server = server;
+        this.token = token;
+        this.resident = resident;
+    }
+    
+    /**
+     * Sends a request to the running Profile Manager.
+     * @param command The command to run.
+     * @return The reply, either {@link #OK} or an {@link #ERROR} message, or
+     * <tt>null</tt> if no Profile Manager is running. When <tt>null</tt> is
+     * returned the command wasn't run.
+     */
+    public static String send(String command){
+        String[] daemon = readDaemonFile();
+        if(daemon == null)
+            return null;
+        
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(daemon[0])), CONNECT_TIMEOUT);
+            socket.setSoTimeout(CONNECT_TIMEOUT);
+            
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), UTF8);
+            out.write(daemon[1] + " " + command + "\n");
+            out.flush();
+            
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), UTF8));
+            if( !ACCEPTED.equals(in.readLine()))
+                return null;// Not a Profile Manager, or from an old run
+            
+            // The command is being run, it isn't safe to run it again
+            socket.setSoTimeout(REQUEST_TIMEOUT);
+            String reply = in.readLine();
+            return reply == null ? ERROR + " No reply was received." : reply;
+            
+        } catch(SocketTimeoutException ste){
+            return socket.isConnected() ? ERROR + " The request timed out." : null;
+        } catch(IOException ioe){
+            return null;
+        } catch(NumberFormatException nfe){
+            return null;
+        } finally {
+            try {
+                socket.close();
+            } catch(IOException ioe){
+                // Nothing left to do with the socket
+            }
+        }
+    }
+    
+    /**
+     * Starts handling the requests of other Profile Managers, unless another
+     * Profile Manager is already doing so.<br/>
+     * <br/>
+     * The profiles and configuration need to be loaded first.
+     * @param resident <tt>true</tt> to keep the Profile Manager running until
+     * it is stopped, even without a window.
+     * @return <tt>true</tt> if this Profile Manager is now handling requests.
+     */
+    public static synchronized boolean start(boolean resident){
+        if(instance != null)
+            return true;
+        
+        try {
+            ServerSocket server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+            
+            byte[] random = new byte[16];
+            new SecureRandom().nextBytes(random);
+            StringBuilder token = new StringBuilder(32);
+            for(byte b : random){
+                token.append(String.format("%02x", b & 0xff));
+            }
+            
+            instance = new ProfileDaemon(server, token.toString(), resident);
+            instance.writeDaemonFile();
+            
+            // A resident Profile Manager is kept running by this thread
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    instance.listen();
+                }
+            }, "Profile Daemon");
+            t.setDaemon( !resident);
+            t.start();
+            return true;
+            
+        } catch(IOException ioe){
+            Main.handleException("Unable to start listening for profile shortcuts.",
+                    ioe, Main.LOG_LEVEL);
+            if(instance != null){
+                try {
+                    instance.server.close();
+                } catch(IOException e){
+                    // Nothing was listening yet
+                }
+            }
+            instance = null;
+            return false;
+        }
+    }
+    
+    /** Accepts and runs requests until stopped. */
+    private void listen(){
+        while(running){
+            Socket socket = null;
+            try {
+                socket = server.accept();
+                handle(socket);
+            } catch(IOException ioe){
+                if(running)
+                    Main.handleException(new LogEntry(Main.LOG_LEVEL, "daemonRequest",
+                            "Unable to handle a profile shortcut request.", ioe));
+            } finally {
+                if(socket != null){
+                    try {
+                        socket.close();
+                    } catch(IOException ioe){
+                        // Already done with the request
+                    }
+                }
+            }
+        }
+    }
+    
+    /** Reads, checks and runs a single request. */
+    private void handle(Socket socket) throws IOException {
+        socket.setSoTimeout(CONNECT_TIMEOUT);
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), UTF8));
+        String line = in.readLine();
+        if(line == null)
+            return;
+        
+        int space = line.indexOf(' ');
+        if(space == -1 || !MessageDigest.isEqual(token.getBytes(UTF8),
+                line.substring(0, space).getBytes(UTF8)))
+        {
+            // Not from a Profile Manager, give nothing away
+            return;
+        }
+        
+        Writer out = new OutputStreamWriter(socket.getOutputStream(), UTF8);
+        out.write(ACCEPTED + "\n");
+        out.flush();
+        
+        String reply;
+        try {
+            reply = run(line.substring(space + 1).trim().split("\\s+"));
+        } catch(RuntimeException re){
+            Main.handleException(new LogEntry(Main.LOG_LEVEL, "daemonRequest",
+                    "A profile shortcut request failed.", re));
+            reply = ERROR + " " + re;
+        }
+        out.write(reply.replace('\n', ' ') + "\n");
+        out.flush();
+    }
+    
+    /** Runs a command, returning the reply. */
+    private String run(String[] command){
+        if(command[0].equals("launch") && command.length == 2){
+            ProfileFactory pf = ProfileFactory.getInstance();
+            Profile p = pf.getProfile(Integer.parseInt(command[1]));
+            if(p == null)
+                return ERROR + " Unknown profile: " + command[1];
+            
+            Game g = GameFactory.getGameFromID(p.getGameID());
+            if( !g.activateProfile(p))
+                return ERROR + " Unable to activate " + p.getName() + ".";
+            pf.saveProfiles();
+            
+            try {
+                if( !GameLauncher.launch(g))
+                    return ERROR + " Unable to start " + g.getExe() + ".";
+            } catch(java.io.FileNotFoundException fnfe){
+                return ERROR + " The game's executable wasn't found: " + g.getExe();
+            }
+            return OK;
+            
+        } else if(command[0].equals("show")){
+            if(Main.isHeadless())
+                return ERROR + " The Profile Manager is running without a display.";
+            Main.showGUI(command.length > 1 ? Byte.parseByte(command[1]) : 0);
+            return OK;
+            
+        } else if(command[0].equals("ping")){
+            return OK;
+            
+        } else if(command[0].equals("stop")){
+            if( !resident)
+                return ERROR + " The Profile Manager isn't running resident.";
+            if(Main.isGUIShowing())
+                return ERROR + " The Profile Manager's window is open.";
+            stop();
+            return OK;
+        }
+        return ERROR + " Unknown command: " + command[0];
+    }
+    
+    /** Stops handling requests, letting a resident Profile Manager exit. */
+    private void stop(){
+        running = false;
+        new File(DAEMON_FILE).delete();
+        try {
+            server.close();
+        } catch(IOException ioe){
+            // Closing anyway
+        }
+        ProfileFactory.getInstance().saveProfiles();
+        Main.closeErrorLog();
+    }
+    
+    /** Records how to reach this Profile Manager. */
+    private void writeDaemonFile() throws IOException {
+        File file = new File(DAEMON_FILE);
+        File tmp = new File(DAEMON_FILE + ".tmp");
+        file.getParentFile().mkdirs();
+        
+        // Keep the token away from other users where the platform allows it,
+        // making the file private before the token is written to it
+        tmp.delete();
+        if(FileSystems.getDefault().supportedFileAttributeViews().contains("posix")){
+            Files.createFile(tmp.toPath(), PosixFilePermissions.asFileAttribute(
+                    EnumSet.of(PosixFilePermission.OWNER_READ,
+                        PosixFilePermission.OWNER_WRITE)));
+        } else {
+            if( !tmp.createNewFile())
+                throw new IOException("Unable to create " + tmp);
+            tmp.setReadable(false, false);
+            tmp.setReadable(true, true);
+            tmp.setWritable(false, false);
+            tmp.setWritable(true, true);
+        }
+        
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write((server.getLocalPort() + " " + token + "\n").getBytes(UTF8));
+        } finally {
+            out.close();
+        }
+        
+        file.delete();
+        if( !tmp.renameTo(file))
+            throw new IOException("Unable to create " + file);
+        file.deleteOnExit();
+    }
+    
+    /** Reads the port and token of the running Profile Manager. */
+    private static String[] readDaemonFile(){
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(DAEMON_FILE), UTF8));
+            try {
+                String line = in.readLine();
+                String[] daemon = line == null ? null : line.trim().split(" ");
+                return daemon != null && daemon.length == 2 ? daemon : null;
+            } finally {
+                in.close();
+            }
+        } catch(IOException ioe){
+            return null;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+import com.chockly.pm.games.Game;
+import com.chockly.pm.games.GameFactory;
+import com.chockly.pm.metrics.Events;
+import com.chockly.pm.metrics.Metrics;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The folders that have been added to or removed from a game's profiles
+ * folder since the profiles were last updated.<br/>
+ * <br/>
+ * Finding the changes and acting on them are done separately. The
+ * {@link #scan(byte)} only reads the file system, so it can run on a
+ * background thread even when the saves are on a slow or network drive.
+ * {@link #apply()} prompts the user as needed and updates the profiles, and
+ * has to be called on the event dispatch thread.
+ * {@link #apply(UpdateProfilesChecker)} can be used to apply the changes
+ * without prompting.
+ * @author Curtis Oakley
+ */
+public class ProfileDirChanges {
+    
+    private final byte gameID;
+    private final List<String> added = new ArrayList<String>();
+    private final List<Profile> removed = new ArrayList<Profile>();
+    
+    private ProfileDirChanges(byte gameID){
+        this.gameID = gameID;
+    }
+    
+    /**
+     * Finds the profile folders that were added or removed for a game.
+     * @param gameID The ID of the game to check.
+     * @return The changes found.
+     * @throws InterruptedException If the thread was interrupted during the
+     * scan.
+     */
+    public static ProfileDirChanges scan(byte gameID) throws InterruptedException {
+        long startTime = System.nanoTime();
+        Events.Event event = Events.begin(Events.RECONCILE);
+        ProfileDirChanges changes = new ProfileDirChanges(gameID);
+        Game g = GameFactory.getGameFromID(gameID);
+        File saveDir = new File(g.getDir(), g.getSave());
+        
+        File[] folders = saveDir.listFiles();
+        if(folders == null){
+            Events.commit(event, gameID, 0, 0, Events.FAILED);
+            return changes;
+        }
+        
+        Profile[] profiles = ProfileFactory.getInstance().getProfiles(gameID);
+        Set<String> used = new HashSet<String>();
+        for(int i=0; i<profiles.length; i++){
+            used.add(profiles[i].getSaveDir());
+        }
+        
+        // Check for new folders
+        Set<String> present = new HashSet<String>();
+        for(int i=0; i<folders.length; i++){
+            checkInterrupted();
+            if(folders[i].isDirectory()){
+                String name = folders[i].getName();
+                present.add(name);
+                if( !used.contains(name))
+                    changes.added.add(name);
+            }
+        }
+        
+        // Check for removed profile folders
+        for(int i=0; i<profiles.length; i++){
+            if( !present.contains(profiles[i].getSaveDir())){
+                // Profile is active for folder swapping game, ignore
+                if(profiles[i].isActive() && !g.usesIni())
+                    continue;
+                
+                // The folder may not be in the listing if its name differs
+                // only by case
+                checkInterrupted();
+                if( !new File(saveDir, profiles[i].getSaveDir()).exists())
+                    changes.removed.add(profiles[i]);
+            }
+        }
+        
+        Metrics.histogram("reconcile.scan").recordSince(startTime);
+        Events.commit(event, gameID, 0, 0, Events.OK);
+        return changes;
+    }
+    
+    /**
+     * Adds and deletes profiles for the changes found, prompting the user
+     * as needed. Changes made to the profiles since the scan are taken into
+     * account.
+     * @return <tt>True</tt> if any profiles where added or removed,
+     * <tt>false</tt> otherwise.
+     */
+    public boolean apply(){
+        return apply(new UpdateProfilesChecker());
+    }
+    
+    /**
+     * Adds and deletes profiles for the changes found, using the provided
+     * checker to decide which changes to make.
+     * @param check Decides which profiles are created and deleted.
+     * @return <tt>True</tt> if any profiles where added or removed,
+     * <tt>false</tt> otherwise.
+     */
+    public boolean apply(UpdateProfilesChecker check){
+        if(isEmpty())
+            return false;
+        
+        ProfileFactory pf = ProfileFactory.getInstance();
+        boolean changed = false;
+        
+        for(String name : added){
+            if( !pf.profileDirExists(name, gameID) && check.createProfile(name)){
+                pf.add(name, name, gameID);
+                changed = true;
+            }
+        }
+        
+        for(Profile p : removed){
+            if(pf.getProfile(p.getID()) == p && check.deleteProfile(p.getName())){
+                pf.remove(p);
+                changed = true;
+            }
+        }
+        
+        return changed;
+    }
+    
+    /**
+     * Gets the game that was scanned.
+     * @return The ID of the game.
+     */
+    public byte getGameID(){
+        return gameID;
+    }
+    
+    /**
+     * Checks if any changes were found.
+     * @return <tt>true</tt> if no folders were added or removed.
+     */
+    public boolean isEmpty(){
+        return added.isEmpty() && removed.isEmpty();
+    }
+    
+    private static void checkInterrupted() throws InterruptedException {
+        if(Thread.interrupted())
+            throw new InterruptedException();
+    }
+}
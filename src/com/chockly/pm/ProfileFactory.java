@@ -18,15 +18,23 @@ package com.chockly.pm;
 
 import com.chockly.pm.games.Game;
 import com.chockly.pm.games.GameFactory;
+import com.chockly.pm.metrics.Gauge;
+import com.chockly.pm.metrics.Metrics;
 import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
 import javax.swing.JOptionPane;
 
 /**
- * Holds all the profiles for the program. Use this to manage the profiles.
+ * Holds all the profiles for the program. Use this to manage the profiles.<br/>
+ * <br/>
+ * The profiles can be read and changed from any thread, background tasks
+ * such as scheduled backups and profile folder scans use it off of the event
+ * dispatch thread. Changes to the profiles are reported to the registered
+ * {@link ProfileListener}s.
  * @author Curtis Oakley
  */
 public final class ProfileFactory {
@@ -65,9 +73,18 @@ public final class ProfileFactory {
         }
 
         checkForOrphanProfiles();
+        
+        Metrics.gauge("profiles.count", new Gauge() {
+            @Override
+            public long getValue() {
+                synchronized(ProfileFactory.this){
+                    return size;
+                }
+            }
+        });
     }
     
-    public static ProfileFactory getInstance(){
+    public static synchronized ProfileFactory getInstance(){
         if(instance == null)
             instance = new ProfileFactory();
         
@@ -83,8 +100,9 @@ public final class ProfileFactory {
      * This method doesn't perform this check, but leaves it up to the calling object.
      * @param gameID The Game ID for the game that the profile belongs to.<br/>
      * For a list of valid game IDs see the {@link GameFactory}.
+     * @return The new profile.
      */
-    public void add(String name, String saveDir, byte gameID){
+    public synchronized Profile add(String name, String saveDir, byte gameID){
         // Increase the profile array size
         if(profiles.length == size)
             profiles = Arrays.copyOf(profiles, size+3);
@@ -98,6 +116,9 @@ public final class ProfileFactory {
         GameFactory.getGameFromID(gameID).setupProfile(newProfile);
 
         profileIdCounter++;
+        
+        fireProfileAdded(newProfile);
+        return newProfile;
     }
     
     /**
@@ -109,7 +130,7 @@ public final class ProfileFactory {
      * @param p The array of Profiles to add.
      * @param gameID The id number of the game to attache the Profiles to.
      */
-    public void addAll(Profile[] p, byte gameID){
+    public synchronized void addAll(Profile[] p, byte gameID){
         
         Game g = GameFactory.getGameFromID(gameID);
         
@@ -132,14 +153,32 @@ public final class ProfileFactory {
                 profiles[size] = p[i].clone(gameID, ++profileIdCounter);
                 g.setupProfile(profiles[size]);
                 size++;
+                fireProfileAdded(profiles[size-1]);
             } else {
                 // Update the profile
                 profiles[updateIndex].setImage(p[i].getImage());
                 profiles[updateIndex].setName(p[i].getName());
+                fireProfileChanged(profiles[updateIndex]);
             }
         }
     }
     
+    /**
+     * Registers a listener to be told about changes to the profiles.
+     * @param listener The listener to add.
+     */
+    public void addProfileListener(ProfileListener listener){
+        listeners.add(listener);
+    }
+    
+    /**
+     * Stops a listener from being told about changes to the profiles.
+     * @param listener The listener to remove.
+     */
+    public void removeProfileListener(ProfileListener listener){
+        listeners.remove(listener);
+    }
+    
     /** Checks for profiles that don't have a valid game ID. */
     private void checkForOrphanProfiles(){
         byte[] gameIds = GameFactory.getAllGameIds();
@@ -156,8 +195,9 @@ public final class ProfileFactory {
             }
         }
         
-        // Orphan found, prompt the user for what to do.
-        if(numOrphans > 0){
+        // Orphan found, prompt the user for what to do. Without a GUI the
+        // orphans are left for the next time the GUI is run.
+        if(numOrphans > 0 && !Main.isHeadless()){
             String[] options = {"Delete","Change Game","Ignore"};
             
             StringBuilder text = new StringBuilder(64);
@@ -220,11 +260,12 @@ public final class ProfileFactory {
      * Deactivates the active profile for the given game.
      * @param gameID The game id for the profile to deactivate.
      */
-    public void clearActiveProfile(byte gameID){
+    public synchronized void clearActiveProfile(byte gameID){
         for(int x=0; x<size; x++){
             if(profiles[x].getGameID() == gameID){
                 if(profiles[x].isActive()){
                     profiles[x].setActive(false);
+                    fireProfileChanged(profiles[x]);
                     break;
                 }
             }
@@ -236,7 +277,7 @@ public final class ProfileFactory {
      * @param id The id number of the profile to retrieve.
      * @return The Profile with the given id.
      */
-    public Profile getProfile(int id){
+    public synchronized Profile getProfile(int id){
         if(id < 0)
             throw new IllegalArgumentException("Pofile IDs must be positive.");
 
@@ -253,7 +294,7 @@ public final class ProfileFactory {
      * @param gameID The game to retrieve the profiles for.
      * @return Array of all profiles for the given game, if no profiles exits returns an array with zero length.
      */
-    public Profile[] getProfiles(byte gameID){
+    public synchronized Profile[] getProfiles(byte gameID){
         
         Profile[] gameProfiles = new Profile[10];
         int length = 0;
@@ -279,7 +320,7 @@ public final class ProfileFactory {
      * @param gameID The ID number of the game that the pofiles should belong to.
      * @return True if there is a game profile that already uses the provided directory, false otherwise.
      */
-    public boolean profileDirExists(String dir, byte gameID){
+    public synchronized boolean profileDirExists(String dir, byte gameID){
         // Check all the profiles for the game.
         for(int x=0; x<size; x++){
             if( profiles[x].getGameID() == gameID 
@@ -296,7 +337,7 @@ public final class ProfileFactory {
      * Removes the given profile from the profile factory.
      * @param p The profile to remove.
      */
-    public void remove(Profile p){
+    public synchronized void remove(Profile p){
         // Loop to find the profile
         for (int index = 0; index < size; index++){
             if (p.equals(profiles[index])){
@@ -312,15 +353,19 @@ public final class ProfileFactory {
      * @param index The index number of the Profile to remove.
      */
     private void remove(int index){
+        Profile removed = profiles[index];
         int numMoved = size - index - 1;
         if (numMoved > 0)
             System.arraycopy(profiles, index+1, profiles, index, numMoved);
 
         profiles[--size] = null;
+        fireProfileRemoved(removed);
     }
 
     /** Saves the profiles to disk. */
-    public void saveProfiles(){
+    public synchronized void saveProfiles(){
+        long startTime = System.nanoTime();
+        
         // Trim profiles to size
         profiles = Arrays.copyOf(profiles, size);
 
@@ -337,6 +382,8 @@ public final class ProfileFactory {
             Main.handleException("An error occured while saving the profiles.",
                     ioe, Main.WARN_LEVEL);
         }
+        
+        Metrics.histogram("profiles.save").recordSince(startTime);
     }
     
     /**
@@ -344,25 +391,57 @@ public final class ProfileFactory {
      * as in-active.
      * @param profile The Profile to mark as active. 
      */
-    public void setActive(Profile profile){
+    public synchronized void setActive(Profile profile){
         byte gameID = profile.getGameID();
 
         for(int x=0; x<size; x++){
             if(profiles[x].getGameID() == gameID){
-                if(profile.equals(profiles[x]))
-                    profile.setActive(true);
-                else
-                    profiles[x].setActive(false);
+                boolean active = profile.equals(profiles[x]);
+                // Only the profiles whose state changes need to be redrawn
+                if(profiles[x].isActive() != active){
+                    profiles[x].setActive(active);
+                    fireProfileChanged(profiles[x]);
+                }
             }
         }
     }
     
+    /**
+     * Signals that a profile's name or image has been changed outside of the
+     * ProfileFactory, so that the listeners can update.
+     * @param profile The Profile that was changed.
+     */
+    public synchronized void update(Profile profile){
+        fireProfileChanged(profile);
+    }
+    
+    private void fireProfileAdded(Profile p){
+        for(ProfileListener l : listeners){
+            l.profileAdded(p);
+        }
+    }
+    
+    private void fireProfileChanged(Profile p){
+        for(ProfileListener l : listeners){
+            l.profileChanged(p);
+        }
+    }
+    
+    private void fireProfileRemoved(Profile p){
+        for(ProfileListener l : listeners){
+            l.profileRemoved(p);
+        }
+    }
+    
     private static ProfileFactory instance = null;
 
     private Profile[] profiles;
     private int size;
 
     private int profileIdCounter;
+    
+    private final CopyOnWriteArrayList<ProfileListener> listeners =
+            new CopyOnWriteArrayList<ProfileListener>();
 
     private static final String PROFILES_FILE = "profiles.obj";
 }
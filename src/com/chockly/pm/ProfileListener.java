@@ -0,0 +1,47 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+/**
+ * Receives notice of the changes made to the profiles held by the
+ * {@link ProfileFactory}.<br/>
+ * <br/>
+ * The methods are called on the thread that made the change, while the
+ * ProfileFactory is locked. Listeners that update the GUI need to hand the
+ * change off to the event dispatch thread, and shouldn't block.
+ * @author Curtis Oakley
+ */
+public interface ProfileListener {
+    
+    /**
+     * Called after a profile has been added.
+     * @param p The new profile.
+     */
+    public void profileAdded(Profile p);
+    
+    /**
+     * Called after a profile has been removed.
+     * @param p The profile that was removed.
+     */
+    public void profileRemoved(Profile p);
+    
+    /**
+     * Called after a profile's name, image or active state has changed.
+     * @param p The profile that changed.
+     */
+    public void profileChanged(Profile p);
+}
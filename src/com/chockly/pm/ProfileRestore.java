@@ -0,0 +1,229 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+import com.chockly.pm.backup.BackupExtractor;
+import com.chockly.pm.backup.BackupIndex;
+import com.chockly.pm.backup.BackupRepository;
+import com.chockly.pm.backup.HardLinkSnapshots;
+import com.chockly.pm.backup.ProgressListener;
+import com.chockly.pm.games.Game;
+import com.chockly.pm.games.GameFactory;
+import com.chockly.pm.gui.ProfileManager;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingWorker;
+
+/**
+ * Restores a profile's saved games from a backup made by
+ * {@link ProfileBackup}.<br/>
+ * <br/>
+ * The backup is first extracted into a staging folder next to the game's
+ * save folder. Zip backups are extracted on several threads at once, with
+ * every file checked against the CRC stored in the archive. Only once the
+ * whole backup has been extracted and checked is the staging folder swapped
+ * in place of the profile's folder, so a failed restore leaves the profile
+ * untouched. If the profile is active, the game's live save folder is the
+ * one replaced. The game is locked during the swap so the profile can't be
+ * activated or backed up at the same time.<br/>
+ * <br/>
+ * Hard link snapshots, made by {@link HardLinkSnapshots}, are restored the
+ * same way, by copying the snapshot into the staging folder.
+ * @author Curtis Oakley
+ */
+public class ProfileRestore extends SwingWorker<Boolean, Void> {
+    
+    /** The minimum time between status updates, in nanoseconds. */
+    private static final long STATUS_INTERVAL = 250000000L;
+    
+    private final Profile p;
+    private final String snapshot;
+    private final HardLinkSnapshots links;
+    private final ProfileManager pm;
+    
+    /**
+     * Creates a new ProfileRestore.
+     * @param p The Profile to restore.
+     * @param snapshot The backup repository snapshot to restore, or
+     * <tt>null</tt> to restore the profile's zip backup.
+     * @param pm The ProfileManager GUI instance. This is used to trigger that
+     * the restore has completed. Can be <tt>null</tt>.
+     */
+    public ProfileRestore(Profile p, String snapshot, ProfileManager pm){
+        this(p, null, snapshot, pm);
+    }
+    
+    /**
+     * Creates a new ProfileRestore that restores a hard link snapshot.
+     * @param p The Profile to restore.
+     * @param links The game's hard link snapshots.
+     * @param snapshot The name of the hard link snapshot to restore.
+     * @param pm The ProfileManager GUI instance. Can be <tt>null</tt>.
+     */
+    public ProfileRestore(Profile p, HardLinkSnapshots links, String snapshot,
+            ProfileManager pm)
+    {
+        this.p = p;
+        this.links = links;
+        this.snapshot = snapshot;
+        this.pm = pm;
+    }
+    
+    /**
+     * Checks if a profile has a zip backup.
+     * @param p The profile to check.
+     * @return <tt>true</tt> if the profile has a zip backup to restore.
+     */
+    public static boolean hasZipBackup(Profile p){
+        return ProfileBackup.getZipArchive(
+                GameFactory.getGameFromID(p.getGameID()), p).isFile();
+    }
+    
+    /**
+     * Lists the profile's snapshots in its game's backup repository.
+     * @param p The profile.
+     * @return The names of the snapshots, oldest first.
+     */
+    public static String[] listSnapshots(Profile p){
+        return getRepository(GameFactory.getGameFromID(p.getGameID()))
+                .listSnapshots(p.getSaveDir());
+    }
+    
+    /**
+     * Restores the profile's saved games.
+     * @return <tt>true</tt> if the profile was restored.
+     */
+    public boolean restoreProfile(){
+        Game g = GameFactory.getGameFromID(p.getGameID());
+        
+        // Stage on the same drive as the saves, but outside the save folder
+        File staging = new File(g.getDir(), ".restore-" + p.getSaveDir());
+        File trash = new File(g.getDir(), ".replaced-" + p.getSaveDir());
+        
+        IOUtils.deleteFile(staging);
+        
+        try {
+            if(links != null)
+                copyHardLinkSnapshot(staging);
+            else if(snapshot == null)
+                extractZipBackup(g, staging);
+            else
+                restoreSnapshot(g, staging);
+            
+            // The backup may have held no files
+            if( !staging.isDirectory() && !staging.mkdirs())
+                throw new IOException("Unable to create " + staging);
+            
+            setProgress(100);
+            
+            // Don't swap the saves while they are being backed up or moved
+            GameLocks.get(g.getId()).lockInterruptibly();
+            try {
+                IOUtils.replaceDirectory(IOUtils.getProfileDir(g, p), staging, trash);
+            } finally {
+                GameLocks.unlock(g.getId());
+            }
+            return true;
+            
+        } catch(InterruptedException ie){
+            return false;
+            
+        } catch(IOException ioe){
+            Main.handleException("Unable to restore the profile, the profile has not been changed.",
+                    ioe, Main.WARN_LEVEL);
+            return false;
+        } finally {
+            IOUtils.deleteFile(staging);
+        }
+    }
+    
+    /** Extracts the profile's zip backup chain into the staging folder. */
+    private void extractZipBackup(Game g, File staging) throws IOException {
+        File[] archives = BackupIndex.load(ProfileBackup.getZipArchive(g, p))
+                .getArchives();
+        
+        BackupExtractor extractor = new BackupExtractor(archives);
+        try {
+            extractor.extractTo(staging,
+                    Math.max(2, Runtime.getRuntime().availableProcessors()),
+                    new ByteProgress(extractor.getTotalSize()));
+        } finally {
+            extractor.close();
+        }
+    }
+    
+    /** Rebuilds a repository snapshot in the staging folder. */
+    private void restoreSnapshot(Game g, File staging) throws IOException {
+        setProgress(100);
+        firePropertyChange(ProfileBackup.STATUS_PROPERTY, null, "Restoring snapshot...");
+        getRepository(g).restoreSnapshot(p.getSaveDir(), snapshot, staging);
+    }
+    
+    /** Copies a hard link snapshot into the staging folder. */
+    private void copyHardLinkSnapshot(File staging) throws IOException {
+        firePropertyChange(ProfileBackup.STATUS_PROPERTY, null, "Restoring snapshot...");
+        links.copySnapshot(p.getSaveDir(), snapshot, staging);
+    }
+    
+    private static BackupRepository getRepository(Game g){
+        return new BackupRepository(
+                new File(g.getDir() + BackupRepository.REPOSITORY_DIR));
+    }
+    
+    @Override
+    protected Boolean doInBackground() throws Exception {
+        return restoreProfile();
+    }
+    
+    @Override
+    public void done(){
+        if(pm != null)
+            pm.finishRestoreProfile();
+    }
+    
+    /**
+     * Converts the bytes extracted into progress updates and status messages.
+     * Called from all of the extracting threads.
+     */
+    private class ByteProgress implements ProgressListener {
+        
+        private final long total;
+        private final long start = System.nanoTime();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong lastUpdate = new AtomicLong();
+        
+        private ByteProgress(long total){
+            this.total = total;
+        }
+        
+        @Override
+        public void bytesProcessed(long bytes) throws IOException {
+            long done = processed.addAndGet(bytes);
+            
+            // Only one thread sends each update
+            long now = System.nanoTime();
+            long last = lastUpdate.get();
+            if(now - last < STATUS_INTERVAL || !lastUpdate.compareAndSet(last, now))
+                return;
+            
+            setProgress(total > 0 ? (int) Math.min(99, done * 100 / total) : 0);
+            firePropertyChange(ProfileBackup.STATUS_PROPERTY, null,
+                    ProfileBackup.describeProgress("Restoring", done, total, now - start));
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+import com.chockly.pm.games.GameFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An n-gram index over the names and save directories of the profiles, used
+ * to search the profiles as the user types.<br/>
+ * <br/>
+ * Every substring of up to {@link #GRAM_LENGTH} characters is indexed, so
+ * short searches are a single lookup. Longer searches intersect the postings
+ * of each of their n-grams, and the few profiles left are checked against
+ * the full search text. The postings are sorted arrays of profile IDs, which
+ * keeps the index small enough to hold tens of thousands of profiles.<br/>
+ * <br/>
+ * The index listens to the {@link ProfileFactory}, and is updated as the
+ * profiles change. Searches ignore case.
+ * @author Curtis Oakley
+ */
+public final class ProfileSearchIndex implements ProfileListener {
+    
+    /** The longest substrings that are indexed. */
+    private static final int GRAM_LENGTH = 3;
+    /** Keeps n-grams from spanning the name and the save directory. */
+    private static final char SEPARATOR = '\0';
+    
+    private static ProfileSearchIndex instance = null;
+    
+    private final Map<String, Postings> postings = new HashMap<String, Postings>();
+    /** The text each profile was indexed with, by profile ID. */
+    private final Map<Integer, String> texts = new HashMap<Integer, String>();
+    
+    private ProfileSearchIndex(){
+        ProfileFactory pf = ProfileFactory.getInstance();
+        pf.addProfileListener(this);
+        
+        byte[] gameIds = GameFactory.getAllGameIds();
+        for(int i=0; i<gameIds.length; i++){
+            Profile[] p = pf.getProfiles(gameIds[i]);
+            for(int x=0; x<p.length; x++){
+                index(p[x]);
+            }
+        }
+    }
+    
+    /**
+     * Returns the ProfileSearchIndex, building it the first time it is
+     * needed.
+     * @return The ProfileSearchIndex.
+     */
+    public static synchronized ProfileSearchIndex getInstance(){
+        if(instance == null)
+            instance = new ProfileSearchIndex();
+        
+        return instance;
+    }
+    
+    /**
+     * Checks if a profile matches a search, without using the index.
+     * @param p The profile to check.
+     * @param search The text being searched for.
+     * @return <tt>true</tt> if the profile's name or save directory contain
+     * the search text, ignoring case.
+     */
+    public static boolean matches(Profile p, String search){
+        return getText(p).contains(normalize(search));
+    }
+    
+    /**
+     * Finds the profiles whose name or save directory contain the search
+     * text, ignoring case.
+     * @param search The text to search for.
+     * @return The sorted IDs of the matching profiles. An empty search
+     * returns <tt>null</tt>, which matches all the profiles.
+     */
+    public synchronized int[] search(String search){
+        String s = normalize(search);
+        if(s.isEmpty())
+            return null;
+        
+        if(s.length() <= GRAM_LENGTH){
+            // Every substring this short is indexed
+            Postings p = postings.get(s);
+            return p == null ? new int[0] : p.toArray();
+        }
+        
+        // Start with the smallest postings to keep the intersection short
+        Postings[] grams = new Postings[s.length() - GRAM_LENGTH + 1];
+        int smallest = 0;
+        for(int i=0; i<grams.length; i++){
+            grams[i] = postings.get(s.substring(i, i + GRAM_LENGTH));
+            if(grams[i] == null)
+                return new int[0];
+            if(grams[i].size < grams[smallest].size)
+                smallest = i;
+        }
+        
+        int[] ids = new int[grams[smallest].size];
+        int count = 0;
+        candidates:
+        for(int x=0; x<grams[smallest].size; x++){
+            int id = grams[smallest].ids[x];
+            for(int i=0; i<grams.length; i++){
+                if(i != smallest && !grams[i].contains(id))
+                    continue candidates;
+            }
+            // The n-grams can all be present without being in order
+            if(texts.get(id).contains(s))
+                ids[count++] = id;
+        }
+        return Arrays.copyOf(ids, count);
+    }
+    
+    @Override
+    public synchronized void profileAdded(Profile p) {
+        index(p);
+    }
+    
+    @Override
+    public synchronized void profileRemoved(Profile p) {
+        String text = texts.remove(p.getID());
+        if(text != null)
+            removeGrams(text, p.getID());
+    }
+    
+    @Override
+    public synchronized void profileChanged(Profile p) {
+        // Activation changes don't change the text
+        String text = getText(p);
+        if( !text.equals(texts.get(p.getID()))){
+            profileRemoved(p);
+            index(p);
+        }
+    }
+    
+    private void index(Profile p){
+        String text = getText(p);
+        int id = p.getID();
+        String old = texts.put(id, text);
+        if(old != null)
+            removeGrams(old, id);
+        
+        for(String gram : getGrams(text)){
+            Postings list = postings.get(gram);
+            if(list == null){
+                list = new Postings();
+                postings.put(gram, list);
+            }
+            list.add(id);
+        }
+    }
+    
+    private void removeGrams(String text, int id){
+        for(String gram : getGrams(text)){
+            Postings list = postings.get(gram);
+            if(list != null){
+                list.remove(id);
+                if(list.size == 0)
+                    postings.remove(gram);
+            }
+        }
+    }
+    
+    private static Set<String> getGrams(String text){
+        Set<String> grams = new HashSet<String>(text.length() * GRAM_LENGTH);
+        for(int start=0; start<text.length(); start++){
+            for(int end=start+1; end<=start+GRAM_LENGTH && end<=text.length(); end++){
+                if(text.charAt(end-1) == SEPARATOR)
+                    break;
+                grams.add(text.substring(start, end));
+            }
+        }
+        return grams;
+    }
+    
+    private static String getText(Profile p){
+        return normalize(p.getName()) + SEPARATOR + normalize(p.getSaveDir());
+    }
+    
+    private static String normalize(String s){
+        return s == null ? "" : s.trim().toLowerCase(Locale.ENGLISH);
+    }
+    
+    /** A sorted list of profile IDs. */
+    private static class Postings {
+        private int[] ids = new int[4];
+        private int size = 0;
+        
+        private void add(int id){
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if(index >= 0)
+                return;
+            index = -index - 1;
+            
+            if(size == ids.length)
+                ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, index, ids, index+1, size-index);
+            ids[index] = id;
+            size++;
+        }
+        
+        private void remove(int id){
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if(index >= 0){
+                System.arraycopy(ids, index+1, ids, index, size-index-1);
+                size--;
+            }
+        }
+        
+        private boolean contains(int id){
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+        
+        private int[] toArray(){
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
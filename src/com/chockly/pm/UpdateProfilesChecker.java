@@ -39,6 +39,21 @@ public class UpdateProfilesChecker {
     private byte sessionCreate = NOT_SET;
     private byte sessionDelete = NOT_SET;
     
+    /** Creates a new UpdateProfilesChecker that prompts the user as needed. */
+    public UpdateProfilesChecker(){
+    }
+    
+    /**
+     * Creates a new UpdateProfilesChecker that never prompts the user. Changes
+     * the configuration always allows are still made.
+     * @param create The answer to use when asked to create a profile.
+     * @param delete The answer to use when asked to delete a profile.
+     */
+    public UpdateProfilesChecker(boolean create, boolean delete){
+        sessionCreate = create ? TRUE : FALSE;
+        sessionDelete = delete ? TRUE : FALSE;
+    }
+    
     /**
      * Checks if a change should occur, prompts the user as needed.
      * @param text The text of the prompt should it be needed.
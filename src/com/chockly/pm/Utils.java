@@ -57,4 +57,24 @@ public class Utils {
         
         return name;
     }
+    
+    /**
+     * Formats a number of bytes into a short human readable size, such as
+     * <tt>512 B</tt>, <tt>12.5 KB</tt> or <tt>1.2 GB</tt>.
+     * @param bytes The number of bytes.
+     * @return The formatted size.
+     */
+    public static String formatBytes(long bytes){
+        if(bytes < 1024)
+            return bytes + " B";
+        
+        String[] units = {"KB", "MB", "GB", "TB"};
+        double size = bytes / 1024.0;
+        int unit = 0;
+        while(size >= 1024 && unit < units.length-1){
+            size /= 1024;
+            unit++;
+        }
+        return String.format("%.1f %s", size, units[unit]);
+    }
 }
@@ -0,0 +1,243 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.backup;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts a zip backup chain, see {@link BackupIndex}, into a directory.<br/>
+ * <br/>
+ * The chain is resolved from the archives' central directories first, so
+ * each file is only extracted once from the newest archive that holds it,
+ * and files deleted later in the chain are skipped. The files are then
+ * extracted on several threads at once, and every file's CRC-32 and size
+ * are checked against the values stored in the archive.
+ *
+ * @author Curtis Oakley
+ */
+public class BackupExtractor implements Closeable {
+
+    private final List<ZipFile> zips = new ArrayList<ZipFile>();
+    private final Map<String, Source> files = new LinkedHashMap<String, Source>();
+    private long totalSize = 0;
+
+    /**
+     * Opens a backup chain.
+     * @param archives The archives of the chain, full archive first.
+     * @throws IOException If an archive can't be read or contains an unsafe
+     * file name.
+     */
+    public BackupExtractor(File[] archives) throws IOException {
+        try {
+            for(File archive : archives){
+                ZipFile zip = new ZipFile(archive);
+                zips.add(zip);
+
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while(entries.hasMoreElements()){
+                    ZipEntry entry = entries.nextElement();
+                    if(entry.isDirectory())
+                        continue;
+
+                    String name = entry.getName();
+                    if(name.equals(BackupIndex.DELETED_ENTRY)){
+                        for(String deleted : readLines(zip, entry)){
+                            files.remove(deleted);
+                        }
+                    } else {
+                        checkName(name);
+                        files.put(name, new Source(zip, entry));
+                    }
+                }
+            }
+        } catch(IOException ioe){
+            close();
+            throw ioe;
+        }
+
+        for(Source s : files.values()){
+            totalSize += Math.max(s.entry.getSize(), 0);
+        }
+    }
+
+    /**
+     * Returns the number of files that will be extracted.
+     * @return The number of files in the latest backup.
+     */
+    public int getFileCount(){
+        return files.size();
+    }
+
+    /**
+     * Returns the total size of the files that will be extracted.
+     * @return The uncompressed size in bytes.
+     */
+    public long getTotalSize(){
+        return totalSize;
+    }
+
+    /**
+     * Extracts the latest backup into a directory.
+     * @param dest The directory to extract to, it should be empty.
+     * @param threads The number of files to extract at once.
+     * @param listener Receives the bytes extracted, from several threads at
+     * once. Can be <tt>null</tt>.
+     * @throws IOException If a file can't be extracted or fails its check.
+     * The directory will be partly written in this case.
+     */
+    public void extractTo(final File dest, int threads,
+            final ProgressListener listener) throws IOException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(threads, 1),
+                new ThreadFactory() {
+            private int count = 0;
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "restore-" + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>(files.size());
+            for(final Map.Entry<String, Source> e : files.entrySet()){
+                results.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        extract(e.getValue(), new File(dest,
+                                e.getKey().replace('/', File.separatorChar)), listener);
+                        return null;
+                    }
+                }));
+            }
+
+            for(Future<Void> result : results){
+                result.get();
+            }
+        } catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while restoring.");
+        } catch(ExecutionException ee){
+            Throwable cause = ee.getCause();
+            if(cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException("Unable to restore the backup.", cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Closes the archives. */
+    @Override
+    public void close(){
+        for(ZipFile zip : zips){
+            try {
+                zip.close();
+            } catch(IOException ioe){
+                // Nothing was written, so there is nothing to lose
+            }
+        }
+        zips.clear();
+    }
+
+    /** Extracts and checks a single file. */
+    private static void extract(Source source, File f, ProgressListener listener)
+            throws IOException
+    {
+        // Another thread may create the same directory at the same time
+        File parent = f.getParentFile();
+        if( !parent.mkdirs() && !parent.isDirectory())
+            throw new IOException("Unable to create the directory " + parent);
+
+        InputStream raw = source.zip.getInputStream(source.entry);
+        if(listener != null)
+            raw = new ProgressInputStream(raw, listener);
+        CheckedInputStream in = new CheckedInputStream(raw, new CRC32());
+
+        long size = 0;
+        OutputStream out = new FileOutputStream(f);
+        try {
+            byte[] buf = new byte[64 * 1024];
+            int read;
+            while((read = in.read(buf)) != -1){
+                out.write(buf, 0, read);
+                size += read;
+            }
+        } finally {
+            try {
+                out.close();
+            } finally {
+                in.close();
+            }
+        }
+
+        ZipEntry e = source.entry;
+        if(e.getCrc() != -1 && in.getChecksum().getValue() != e.getCrc())
+            throw new IOException(e.getName() + " failed its CRC check.");
+        if(e.getSize() != -1 && size != e.getSize())
+            throw new IOException(e.getName() + " is the wrong size.");
+
+        if(e.getTime() != -1)
+            f.setLastModified(e.getTime());
+    }
+
+    /**
+     * Rejects names that would be extracted outside of the destination.
+     */
+    private static void checkName(String name) throws IOException {
+        String n = name.replace('\\', '/');
+        if(n.startsWith("/") || n.contains(":") || n.equals("..")
+                || n.startsWith("../") || n.contains("/../") || n.endsWith("/.."))
+            throw new IOException("Unsafe file name in backup: " + name);
+    }
+
+    private static List<String> readLines(ZipFile zip, ZipEntry entry)
+            throws IOException
+    {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                zip.getInputStream(entry), "UTF-8"));
+        try {
+            String line;
+            while((line = in.readLine()) != null){
+                if( !line.isEmpty())
+                    lines.add(line);
+            }
+        } finally {
+            in.close();
+        }
+        return lines;
+    }
+
+    /** The archive entry that a file is extracted from. */
+    private static class Source {
+        private final ZipFile zip;
+        private final ZipEntry entry;
+
+        private Source(ZipFile zip, ZipEntry entry){
+            this.zip = zip;
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.backup;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Tracks the files stored in a profile's zip backups so that later backups
+ * only need to archive what has changed.<br/>
+ * <br/>
+ * A backup chain is made of a full archive, <tt>&lt;profile&gt;.zip</tt>,
+ * followed by delta archives, <tt>&lt;profile&gt;.delta1.zip</tt>,
+ * <tt>&lt;profile&gt;.delta2.zip</tt>, ... Each delta holds the files that
+ * were added or modified since the previous archive in the chain, along with
+ * a {@link #DELETED_ENTRY} listing the files that were removed. Restoring
+ * the archives in order rebuilds the latest backup.<br/>
+ * <br/>
+ * The index itself is stored next to the full archive in
+ * <tt>&lt;profile&gt;.zip.idx</tt>, and records the size, modification time
+ * and CRC-32 of every file in the chain. If the index is lost or damaged
+ * while delta archives exist, the chain can't be restored, since only the
+ * index knows which deltas belong to it. The deltas are deleted when the
+ * next full backup is made.
+ *
+ * @author Curtis Oakley
+ */
+public class BackupIndex {
+
+    /**
+     * The name of the entry in a delta archive that lists the files deleted
+     * since the previous archive, one name per line.
+     */
+    public static final String DELETED_ENTRY = ".deleted";
+
+    private static final String INDEX_EXT = ".idx";
+    private static final String DELTA_EXT = ".delta";
+    /** Magic number at the start of the index, 'PMBI'. */
+    private static final int INDEX_MAGIC = 0x504D4249;
+    private static final int INDEX_VERSION = 1;
+
+    private final File archive;
+    private final String baseName;
+    private final Map<String, Record> records = new LinkedHashMap<String, Record>();
+    private int deltas = 0;
+    /** If delta archives were found that the index doesn't account for. */
+    private boolean damaged = false;
+
+    private BackupIndex(File archive){
+        this.archive = archive;
+        String name = archive.getName();
+        int ext = name.lastIndexOf('.');
+        baseName = ext > 0 ? name.substring(0, ext) : name;
+    }
+
+    /**
+     * Loads the index for a backup chain. If the index is missing or can't be
+     * read an empty index is returned, which will cause the next backup to be
+     * a full backup.
+     * @param archive The full archive of the backup chain.
+     * @return The backup chain's index.
+     */
+    public static BackupIndex load(File archive){
+        BackupIndex index = new BackupIndex(archive);
+        File f = index.getIndexFile();
+        if( !f.isFile()){
+            index.damaged = index.findDeltaArchives().length > 0;
+            return index;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(f)));
+            try {
+                if(in.readInt() != INDEX_MAGIC || in.readInt() > INDEX_VERSION)
+                    throw new IOException(f + " is not a supported backup index.");
+
+                index.deltas = in.readInt();
+                int count = in.readInt();
+                for(int i=0; i<count; i++){
+                    Record r = new Record(in.readLong(), in.readLong(), in.readLong());
+                    index.records.put(in.readUTF(), r);
+                }
+            } finally {
+                in.close();
+            }
+        } catch(IOException ioe){
+            // Start the chain over rather than trusting a damaged index
+            index.records.clear();
+            index.deltas = 0;
+            index.damaged = index.findDeltaArchives().length > 0;
+        }
+        return index;
+    }
+
+    /**
+     * Checks if the next backup should be a full backup.
+     * @param maxDeltas The number of delta archives allowed in a chain before
+     * a new full backup is made.
+     * @return <tt>true</tt> if there is no usable chain or the chain has
+     * reached its maximum length.
+     */
+    public boolean isFullBackupDue(int maxDeltas){
+        if( !archive.isFile() || deltas >= maxDeltas || records.isEmpty())
+            return true;
+
+        // All of the chain has to be there for a delta to be useful
+        for(int i=1; i<=deltas; i++){
+            if( !getDeltaArchive(i).isFile())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a file has changed since it was last archived. Files with a
+     * new modification time but the same size are checksummed, so saves that
+     * were only touched aren't archived again.
+     * @param name The name of the file's entry in the archive.
+     * @param f The file to check.
+     * @return <tt>true</tt> if the file is new or its contents have changed.
+     * @throws IOException If the file needs to be checksummed and can't be
+     * read.
+     */
+    public boolean hasChanged(String name, File f) throws IOException {
+        Record r = records.get(name);
+        if(r == null || r.size != f.length())
+            return true;
+
+        long lastModified = f.lastModified();
+        if(r.lastModified == lastModified)
+            return false;
+
+        CheckedInputStream in = new CheckedInputStream(
+                new FileInputStream(f), new CRC32());
+        try {
+            byte[] buf = new byte[64 * 1024];
+            while(in.read(buf) != -1){
+                // Just computing the checksum
+            }
+        } finally {
+            in.close();
+        }
+
+        if(in.getChecksum().getValue() != r.crc)
+            return true;
+
+        records.put(name, new Record(r.size, lastModified, r.crc));
+        return false;
+    }
+
+    /**
+     * Adds a file to an archive and records it in the index.
+     * @param out The archive being written.
+     * @param name The name of the file's entry in the archive.
+     * @param f The file to add.
+     * @param codec The codec to compress the file with.
+     * @param listener Receives the bytes read from the file. Can be
+     * <tt>null</tt>.
+     * @throws IOException If the file can't be read or archived.
+     */
+    public void putFile(ParallelZipWriter out, String name, File f,
+            Codec codec, ProgressListener listener) throws IOException
+    {
+        long size = f.length();
+        long lastModified = f.lastModified();
+        InputStream file = new FileInputStream(f);
+        if(listener != null)
+            file = new ProgressInputStream(file, listener);
+        CheckedInputStream in = new CheckedInputStream(file, new CRC32());
+        try {
+            out.putEntry(name, in, size, lastModified, codec);
+        } finally {
+            in.close();
+        }
+        records.put(name, new Record(size, lastModified, in.getChecksum().getValue()));
+    }
+
+    /**
+     * Removes the files that no longer exist from the index.
+     * @param present The names of the files that currently exist.
+     * @return The names of the files that were removed.
+     */
+    public List<String> removeMissing(Set<String> present){
+        List<String> removed = new ArrayList<String>();
+        Iterator<String> it = records.keySet().iterator();
+        while(it.hasNext()){
+            String name = it.next();
+            if( !present.contains(name)){
+                removed.add(name);
+                it.remove();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Clears the index in preparation for a full backup.
+     */
+    public void clear(){
+        records.clear();
+    }
+
+    /**
+     * Returns the archive that the next delta should be written to.
+     * @return The next delta archive in the chain.
+     */
+    public File getNextDeltaArchive(){
+        return getDeltaArchive(deltas + 1);
+    }
+
+    /**
+     * Returns the archives that make up the backup chain.
+     * @return The full archive followed by each delta archive, in the order
+     * they need to be restored.
+     * @throws IOException If the index couldn't be read and there are delta
+     * archives, so the backup can't be rebuilt.
+     */
+    public File[] getArchives() throws IOException {
+        if(damaged)
+            throw new IOException("The backup index of " + archive.getName()
+                    + " is missing or damaged, so its delta backups can't be restored."
+                    + " Back up the profile again to start a new backup.");
+        
+        File[] files = new File[deltas + 1];
+        files[0] = archive;
+        for(int i=1; i<=deltas; i++){
+            files[i] = getDeltaArchive(i);
+        }
+        return files;
+    }
+
+    /**
+     * Records that a new full archive has been written, deleting the old
+     * delta archives and saving the index.
+     * @throws IOException If the index can't be saved.
+     */
+    public void commitFull() throws IOException {
+        for(int i=1; i<=deltas; i++){
+            getDeltaArchive(i).delete();
+        }
+        // Deltas left from a chain whose index was lost
+        for(File delta : findDeltaArchives()){
+            delta.delete();
+        }
+        deltas = 0;
+        damaged = false;
+        save();
+    }
+
+    /**
+     * Records that a delta archive has been written and saves the index.
+     * @throws IOException If the index can't be saved.
+     */
+    public void commitDelta() throws IOException {
+        deltas++;
+        save();
+    }
+
+    /**
+     * Saves the index without changing the chain, used to remember checksum
+     * results when nothing needed to be archived.
+     * @throws IOException If the index can't be saved.
+     */
+    public void save() throws IOException {
+        File f = getIndexFile();
+        File tmp = new File(f.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(deltas);
+            out.writeInt(records.size());
+            for(Map.Entry<String, Record> e : records.entrySet()){
+                Record r = e.getValue();
+                out.writeLong(r.size);
+                out.writeLong(r.lastModified);
+                out.writeLong(r.crc);
+                out.writeUTF(e.getKey());
+            }
+        } finally {
+            out.close();
+        }
+
+        f.delete();
+        if( !tmp.renameTo(f))
+            throw new IOException("Unable to save the backup index " + f);
+    }
+
+    private File getIndexFile(){
+        return new File(archive.getPath() + INDEX_EXT);
+    }
+
+    private File getDeltaArchive(int n){
+        return new File(archive.getParentFile(), baseName + DELTA_EXT + n + ".zip");
+    }
+
+    /** Finds the delta archives next to the full archive. */
+    private File[] findDeltaArchives(){
+        final String prefix = baseName + DELTA_EXT;
+        File[] found = archive.getAbsoluteFile().getParentFile().listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                String name = f.getName();
+                return f.isFile() && name.startsWith(prefix) && name.endsWith(".zip")
+                        && name.substring(prefix.length(), name.length() - 4).matches("[0-9]+");
+            }
+        });
+        return found == null ? new File[0] : found;
+    }
+
+    /** The recorded state of an archived file. */
+    private static class Record {
+        private final long size;
+        private final long lastModified;
+        private final long crc;
+
+        private Record(long size, long lastModified, long crc){
+            this.size = size;
+            this.lastModified = lastModified;
+            this.crc = crc;
+        }
+    }
+}
@@ -0,0 +1,550 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.backup;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A content addressed backup store.<br/>
+ * <br/>
+ * Files added to the repository are split into variable sized chunks at
+ * content defined boundaries, so an edit in one part of a save only changes
+ * the chunks around the edit. Each chunk is compressed and stored once under
+ * the SHA-1 hash of its contents, and every backup is recorded as a small
+ * snapshot manifest listing the chunks that make up each file. Backing up an
+ * unchanged save writes nothing but the manifest.<br/>
+ * <br/>
+ * The repository layout is:<br/>
+ * <tt>objects/ab/cdef...</tt> - The compressed chunks.<br/>
+ * <tt>snapshots/&lt;profile&gt;/&lt;time&gt;.snap</tt> - The snapshot
+ * manifests for each profile.<br/>
+ * <br/>
+ * The repository must not be placed in a game's save directory, otherwise
+ * it would be picked up as a profile.
+ *
+ * @author Curtis Oakley
+ */
+public class BackupRepository {
+
+    /**
+     * The name of the folder, relative to a game's data directory, that holds
+     * the game's backup repository.
+     */
+    public static final String REPOSITORY_DIR = "Profile Backups";
+
+    /** The file extension used by the snapshot manifests. */
+    private static final String SNAPSHOT_EXT = ".snap";
+    /** Magic number at the start of every snapshot manifest, 'PMSN'. */
+    private static final int SNAPSHOT_MAGIC = 0x504D534E;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    /** Chunks are never cut smaller than this, except at the end of a file. */
+    private static final int MIN_CHUNK = 2 * 1024;
+    /** Chunks are always cut when they reach this size. */
+    private static final int MAX_CHUNK = 64 * 1024;
+    /**
+     * A chunk boundary occurs where the masked bits of the rolling hash are
+     * all zero. Thirteen bits gives an average chunk of about 8KB.
+     */
+    private static final long CUT_MASK = 0x1FFFL << 51;
+    /** The length of a SHA-1 hash in bytes. */
+    private static final int HASH_LENGTH = 20;
+
+    /**
+     * Random values used by the rolling gear hash. This must never change
+     * since the chunk boundaries of existing repositories depend on it.
+     */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random r = new Random(0x50726F66696C65L);
+        for(int i=0; i<GEAR.length; i++){
+            GEAR[i] = r.nextLong();
+        }
+    }
+
+    private final File objectDir;
+    private final File snapshotDir;
+
+    /**
+     * Opens a backup repository, the repository directories will be created
+     * as needed when the first backup is stored.
+     * @param dir The root directory of the repository.
+     */
+    public BackupRepository(File dir){
+        objectDir = new File(dir, "objects");
+        snapshotDir = new File(dir, "snapshots");
+    }
+
+    /**
+     * Starts a new snapshot of a profile. The snapshot is not recorded until
+     * the returned writer is closed.
+     * @param profile The name of the profile's save directory.
+     * @return A SnapshotWriter used to add the profile's files.
+     * @throws IOException If the repository can't be written to.
+     */
+    public SnapshotWriter createSnapshot(String profile) throws IOException {
+        File dir = new File(snapshotDir, profile);
+        if(!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Unable to create the snapshot directory " + dir);
+
+        if(!objectDir.isDirectory() && !objectDir.mkdirs())
+            throw new IOException("Unable to create the object directory " + objectDir);
+
+        // The previous snapshot lets unchanged files skip the chunker
+        Map<String, Entry> previous = new HashMap<String, Entry>();
+        String[] snapshots = listSnapshots(profile);
+        if(snapshots.length > 0){
+            for(Entry e : readSnapshot(profile, snapshots[snapshots.length-1])){
+                previous.put(e.path, e);
+            }
+        }
+
+        return new SnapshotWriter(dir, previous);
+    }
+
+    /**
+     * Returns the names of the snapshots stored for a profile.
+     * @param profile The name of the profile's save directory.
+     * @return The snapshot names, oldest first. Will be empty if the profile
+     * has no snapshots.
+     */
+    public String[] listSnapshots(String profile){
+        String[] names = new File(snapshotDir, profile).list(new FilenameFilter(){
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SNAPSHOT_EXT);
+            }
+        });
+        if(names == null)
+            return new String[0];
+
+        for(int i=0; i<names.length; i++){
+            names[i] = names[i].substring(0, names[i].length() - SNAPSHOT_EXT.length());
+        }
+        // Snapshot names are timestamps, so name order is age order
+        Arrays.sort(names);
+        return names;
+    }
+
+    /**
+     * Rebuilds the files of a snapshot.
+     * @param profile The name of the profile's save directory.
+     * @param snapshot The name of the snapshot to restore.
+     * @param target The directory to write the snapshot's files into.
+     * @throws IOException If the snapshot can't be read, a chunk is missing
+     * or damaged, or the files can't be written.
+     */
+    public void restoreSnapshot(String profile, String snapshot, File target)
+            throws IOException
+    {
+        MessageDigest md = newDigest();
+
+        for(Entry e : readSnapshot(profile, snapshot)){
+            File f = new File(target, e.path.replace('/', File.separatorChar));
+            File parent = f.getParentFile();
+            if(!parent.isDirectory() && !parent.mkdirs())
+                throw new IOException("Unable to create the directory " + parent);
+
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(f));
+            try {
+                for(int i=0; i<e.chunks.length; i++){
+                    out.write(readChunk(e.chunks[i], md));
+                }
+            } finally {
+                out.close();
+            }
+
+            if(f.length() != e.size)
+                throw new IOException("Restored size of " + e.path + " does not match the snapshot.");
+            f.setLastModified(e.lastModified);
+        }
+    }
+
+    /**
+     * Removes a snapshot from the repository. The snapshot's chunks are
+     * left in place until {@link #collectGarbage()} is run.
+     * @param profile The name of the profile's save directory.
+     * @param snapshot The name of the snapshot to remove.
+     * @return <tt>true</tt> if the snapshot was removed.
+     */
+    public boolean deleteSnapshot(String profile, String snapshot){
+        return new File(new File(snapshotDir, profile), snapshot + SNAPSHOT_EXT).delete();
+    }
+
+    /**
+     * Deletes every chunk that isn't used by a snapshot.
+     * @return The number of chunks that were deleted.
+     * @throws IOException If a snapshot can't be read. Nothing is deleted
+     * in this case.
+     */
+    public int collectGarbage() throws IOException {
+        // Mark
+        Set<String> used = new HashSet<String>();
+        String[] profiles = snapshotDir.list();
+        if(profiles != null){
+            for(String profile : profiles){
+                for(String snapshot : listSnapshots(profile)){
+                    for(Entry e : readSnapshot(profile, snapshot)){
+                        for(int i=0; i<e.chunks.length; i++){
+                            used.add(toHex(e.chunks[i]));
+                        }
+                    }
+                }
+            }
+        }
+
+        // Sweep
+        int deleted = 0;
+        File[] buckets = objectDir.listFiles();
+        if(buckets != null){
+            for(File bucket : buckets){
+                File[] objects = bucket.listFiles();
+                if(objects == null)
+                    continue;
+                for(File object : objects){
+                    if(!used.contains(bucket.getName() + object.getName())
+                            && object.delete())
+                        deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Reads the file entries of a snapshot manifest.
+     */
+    private List<Entry> readSnapshot(String profile, String snapshot)
+            throws IOException
+    {
+        File f = new File(new File(snapshotDir, profile), snapshot + SNAPSHOT_EXT);
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(f)));
+        try {
+            if(in.readInt() != SNAPSHOT_MAGIC)
+                throw new IOException(f + " is not a snapshot.");
+            int version = in.readInt();
+            if(version > SNAPSHOT_VERSION)
+                throw new IOException("Unsupported snapshot version " + version);
+
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<Entry>(count);
+            for(int i=0; i<count; i++){
+                Entry e = new Entry(in.readUTF(), in.readLong(), in.readLong(),
+                        new byte[in.readInt()][HASH_LENGTH]);
+                for(int j=0; j<e.chunks.length; j++){
+                    in.readFully(e.chunks[j]);
+                }
+                entries.add(e);
+            }
+            return entries;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads and checks a single chunk.
+     */
+    private byte[] readChunk(byte[] hash, MessageDigest md) throws IOException {
+        File f = getObjectFile(hash);
+        ByteArrayOutputStream data = new ByteArrayOutputStream(MAX_CHUNK);
+        InputStream in = new InflaterInputStream(new FileInputStream(f));
+        try {
+            byte[] buf = new byte[8192];
+            int read;
+            while((read = in.read(buf)) != -1){
+                data.write(buf, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+
+        byte[] chunk = data.toByteArray();
+        if(!Arrays.equals(hash, md.digest(chunk)))
+            throw new IOException("The chunk " + f + " is damaged.");
+        return chunk;
+    }
+
+    private File getObjectFile(byte[] hash){
+        String hex = toHex(hash);
+        return new File(new File(objectDir, hex.substring(0, 2)), hex.substring(2));
+    }
+
+    private static String toHex(byte[] hash){
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for(int i=0; i<hash.length; i++){
+            sb.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static MessageDigest newDigest(){
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch(NoSuchAlgorithmException ex){
+            // Every Java platform is required to support SHA-1
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /** A single file recorded in a snapshot. */
+    private static class Entry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final byte[][] chunks;
+
+        private Entry(String path, long size, long lastModified, byte[][] chunks){
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.chunks = chunks;
+        }
+    }
+
+    /**
+     * Adds files to a new snapshot. Chunks are written to the repository as
+     * the files are added, the snapshot itself is recorded when the writer is
+     * closed.
+     */
+    public class SnapshotWriter {
+
+        private final File dir;
+        private final Map<String, Entry> previous;
+        private final List<Entry> entries = new ArrayList<Entry>();
+        private final MessageDigest md = newDigest();
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        private final CodecStatistics statistics = new CodecStatistics();
+        private final byte[] chunk = new byte[MAX_CHUNK];
+        private final byte[] buf = new byte[64 * 1024];
+        private long bytesAdded = 0;
+        private long bytesStored = 0;
+        private boolean closed = false;
+
+        private SnapshotWriter(File dir, Map<String, Entry> previous){
+            this.dir = dir;
+            this.previous = previous;
+        }
+
+        /**
+         * Adds a file to the snapshot.
+         * @param path The path of the file in the snapshot, using '/' as the
+         * separator.
+         * @param f The file to add.
+         * @param codec The codec to compress the file's new chunks with.
+         * @param listener Receives the bytes read from the file, an
+         * unchanged file is reported all at once. Can be <tt>null</tt>.
+         * @throws IOException If the file can't be read or the chunks can't
+         * be stored.
+         */
+        public void putFile(String path, File f, Codec codec,
+                ProgressListener listener) throws IOException
+        {
+            if(closed)
+                throw new IOException("The snapshot has already been closed.");
+
+            long size = f.length();
+            long lastModified = f.lastModified();
+            bytesAdded += size;
+
+            // A file that hasn't changed since the last snapshot reuses its chunks
+            Entry old = previous.get(path);
+            if(old != null && old.size == size && old.lastModified == lastModified
+                    && chunksExist(old.chunks))
+            {
+                entries.add(old);
+                if(listener != null)
+                    listener.bytesProcessed(size);
+                return;
+            }
+
+            List<byte[]> hashes = new ArrayList<byte[]>();
+            InputStream in = new FileInputStream(f);
+            if(listener != null)
+                in = new ProgressInputStream(in, listener);
+            try {
+                int length = 0;
+                long hash = 0;
+                int read;
+                while((read = in.read(buf)) != -1){
+                    for(int i=0; i<read; i++){
+                        chunk[length++] = buf[i];
+                        hash = (hash << 1) + GEAR[buf[i] & 0xFF];
+
+                        if(length == MAX_CHUNK
+                                || (length >= MIN_CHUNK && (hash & CUT_MASK) == 0))
+                        {
+                            hashes.add(storeChunk(length, codec));
+                            length = 0;
+                            hash = 0;
+                        }
+                    }
+                }
+                if(length > 0)
+                    hashes.add(storeChunk(length, codec));
+            } finally {
+                in.close();
+            }
+
+            entries.add(new Entry(path, size, lastModified,
+                    hashes.toArray(new byte[hashes.size()][])));
+        }
+
+        /**
+         * Returns the number of bytes of file data added to the snapshot.
+         * @return The total size of the files in the snapshot.
+         */
+        public long getBytesAdded(){
+            return bytesAdded;
+        }
+
+        /**
+         * Returns the number of compressed bytes written to the repository
+         * for chunks that weren't already stored.
+         * @return The new space used by this snapshot.
+         */
+        public long getBytesStored(){
+            return bytesStored;
+        }
+
+        /**
+         * Returns the amount of new chunk data compressed by each codec.
+         * @return The snapshot's codec statistics.
+         */
+        public CodecStatistics getStatistics(){
+            return statistics;
+        }
+
+        /**
+         * Records the snapshot in the repository.
+         * @return The name of the new snapshot.
+         * @throws IOException If the snapshot manifest can't be written.
+         */
+        public String close() throws IOException {
+            if(closed)
+                throw new IOException("The snapshot has already been closed.");
+            closed = true;
+            deflater.end();
+
+            // Name the snapshot after the time it was taken
+            SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS");
+            long now = System.currentTimeMillis();
+            String name = format.format(new Date(now));
+            while(new File(dir, name + SNAPSHOT_EXT).exists()){
+                name = format.format(new Date(++now));
+            }
+
+            File tmp = new File(dir, name + ".tmp");
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(entries.size());
+                for(Entry e : entries){
+                    out.writeUTF(e.path);
+                    out.writeLong(e.size);
+                    out.writeLong(e.lastModified);
+                    out.writeInt(e.chunks.length);
+                    for(int i=0; i<e.chunks.length; i++){
+                        out.write(e.chunks[i]);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+
+            // The snapshot only appears once it is complete
+            if(!tmp.renameTo(new File(dir, name + SNAPSHOT_EXT))){
+                tmp.delete();
+                throw new IOException("Unable to record the snapshot " + name);
+            }
+            return name;
+        }
+
+        /**
+         * Abandons the snapshot. Any chunks already stored are left for
+         * {@link BackupRepository#collectGarbage()}.
+         */
+        public void abort(){
+            if(!closed){
+                closed = true;
+                deflater.end();
+            }
+        }
+
+        private boolean chunksExist(byte[][] hashes){
+            for(int i=0; i<hashes.length; i++){
+                if(!getObjectFile(hashes[i]).isFile())
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Stores the chunk buffer if it isn't in the repository yet.
+         * @return The hash of the chunk.
+         */
+        private byte[] storeChunk(int length, Codec codec) throws IOException {
+            md.update(chunk, 0, length);
+            byte[] hash = md.digest();
+
+            File f = getObjectFile(hash);
+            if(f.isFile())
+                return hash;
+
+            File bucket = f.getParentFile();
+            if(!bucket.isDirectory() && !bucket.mkdirs())
+                throw new IOException("Unable to create the directory " + bucket);
+
+            // Write to a temporary file so a partial chunk is never visible
+            File tmp = new File(bucket, f.getName() + ".tmp");
+            long start = System.nanoTime();
+            deflater.reset();
+            deflater.setLevel(codec.getLevel());
+            DeflaterOutputStream out = new DeflaterOutputStream(
+                    new FileOutputStream(tmp), deflater, 8192);
+            try {
+                out.write(chunk, 0, length);
+                out.finish();
+            } finally {
+                out.close();
+            }
+            statistics.record(codec, length, deflater.getBytesWritten(),
+                    System.nanoTime() - start);
+
+            if(!tmp.renameTo(f)){
+                tmp.delete();
+                if(!f.isFile())
+                    throw new IOException("Unable to store the chunk " + f);
+            } else {
+                bytesStored += f.length();
+            }
+            return hash;
+        }
+    }
+}
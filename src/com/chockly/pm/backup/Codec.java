@@ -0,0 +1,99 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.backup;
+
+import java.util.zip.Deflater;
+
+/**
+ * The compression codecs that backups can use.<br/>
+ * <br/>
+ * All of the codecs produce deflate data so that any zip tool can open the
+ * backups. {@link #STORED} uses deflate's uncompressed blocks, which add only
+ * a few bytes per 64KB, rather than the zip stored method. This lets stored
+ * entries be streamed with a data descriptor like every other entry.
+ *
+ * @author Curtis Oakley
+ */
+public enum Codec {
+
+    /** No compression, used for data that is already compressed. */
+    STORED ("stored", Deflater.NO_COMPRESSION),
+    /** The fastest deflate level. */
+    FAST ("fast", Deflater.BEST_SPEED),
+    /** The standard deflate level, a balance of speed and size. */
+    NORMAL ("normal", 6),
+    /** The slowest deflate level, giving the smallest backups. */
+    HIGH ("high", Deflater.BEST_COMPRESSION);
+
+    private final String name;
+    private final int level;
+
+    private Codec(String name, int level){
+        this.name = name;
+        this.level = level;
+    }
+
+    /**
+     * Returns the name of the codec, as used in the configuration file.
+     * @return The codec's name.
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * Returns the deflate level used by the codec.
+     * @return The deflate compression level, 0-9.
+     */
+    public int getLevel(){
+        return level;
+    }
+
+    /**
+     * Finds a codec by its name.
+     * @param name The name of the codec, see {@link #getName()}.
+     * @param defaultCodec The codec to return if the name isn't known.
+     * @return The named codec, or the default codec.
+     */
+    public static Codec fromName(String name, Codec defaultCodec){
+        for(Codec c : values()){
+            if(c.name.equalsIgnoreCase(name))
+                return c;
+        }
+        return defaultCodec;
+    }
+
+    /**
+     * Finds the codec that uses a deflate level.
+     * @param level The deflate level, or {@link Deflater#DEFAULT_COMPRESSION}.
+     * @return The codec using the level, or <tt>null</tt> if no codec uses it.
+     */
+    public static Codec fromLevel(int level){
+        if(level == Deflater.DEFAULT_COMPRESSION)
+            return NORMAL;
+        for(Codec c : values()){
+            if(c.level == level)
+                return c;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString(){
+        return name;
+    }
+}
@@ -0,0 +1,121 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.backup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Chooses the codec to compress each file with.<br/>
+ * <br/>
+ * Files whose extension marks them as already compressed are stored. Other
+ * files have a few small samples read from the start, middle and end, and
+ * the byte entropy of the samples is measured. Data that is close to random
+ * won't compress, so it is stored rather than spending CPU time deflating it.
+ * Everything else uses the preferred codec.
+ *
+ * @author Curtis Oakley
+ */
+public class CodecSelector {
+
+    /** File extensions of formats that are already compressed. */
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<String>(
+            Arrays.asList("7z", "bz2", "cab", "flac", "gif", "gz", "jar",
+            "jpeg", "jpg", "lz4", "mp3", "mp4", "ogg", "png", "rar", "webp",
+            "xz", "zip"));
+
+    /** Files smaller than this aren't worth sampling. */
+    private static final int MIN_SAMPLE_FILE = 4 * 1024;
+    private static final int SAMPLE_SIZE = 4 * 1024;
+    private static final int SAMPLES = 3;
+    /**
+     * Samples with more bits of entropy per byte than this are treated as
+     * incompressible. Deflate output and encrypted data measure above 7.9.
+     */
+    private static final double MAX_ENTROPY = 7.8;
+
+    private final Codec preferred;
+    private final byte[] sample = new byte[SAMPLE_SIZE];
+    private final int[] counts = new int[256];
+
+    /**
+     * Creates a new CodecSelector.
+     * @param preferred The codec to use for compressible files.
+     */
+    public CodecSelector(Codec preferred){
+        this.preferred = preferred;
+    }
+
+    /**
+     * Chooses the codec for a file.
+     * @param f The file to be compressed.
+     * @return The codec to compress the file with.
+     * @throws IOException If the file can't be sampled.
+     */
+    public Codec select(File f) throws IOException {
+        if(preferred == Codec.STORED)
+            return preferred;
+
+        String name = f.getName();
+        int ext = name.lastIndexOf('.');
+        if(ext != -1 && COMPRESSED_EXTENSIONS.contains(
+                name.substring(ext + 1).toLowerCase()))
+            return Codec.STORED;
+
+        long length = f.length();
+        if(length < MIN_SAMPLE_FILE)
+            return preferred;
+
+        return entropy(f, length) > MAX_ENTROPY ? Codec.STORED : preferred;
+    }
+
+    /**
+     * Measures the entropy, in bits per byte, of samples spread through a file.
+     */
+    private double entropy(File f, long length) throws IOException {
+        Arrays.fill(counts, 0);
+        int total = 0;
+
+        RandomAccessFile in = new RandomAccessFile(f, "r");
+        try {
+            long step = Math.max(0, length - SAMPLE_SIZE) / (SAMPLES - 1);
+            for(int s=0; s<SAMPLES; s++){
+                in.seek(step * s);
+                int read = in.read(sample);
+                for(int i=0; i<read; i++){
+                    counts[sample[i] & 0xFF]++;
+                }
+                total += Math.max(read, 0);
+            }
+        } finally {
+            in.close();
+        }
+
+        double entropy = 0;
+        for(int i=0; i<counts.length; i++){
+            if(counts[i] > 0){
+                double p = (double) counts[i] / total;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+}
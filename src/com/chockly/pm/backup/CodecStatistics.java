@@ -0,0 +1,99 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.backup;
+
+import com.chockly.pm.Utils;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects the amount of data each codec has processed and the time spent
+ * compressing it. Safe to update from several threads at once.
+ *
+ * @author Curtis Oakley
+ */
+public class CodecStatistics {
+
+    private final AtomicLongArray bytesIn = new AtomicLongArray(Codec.values().length);
+    private final AtomicLongArray bytesOut = new AtomicLongArray(Codec.values().length);
+    private final AtomicLongArray nanos = new AtomicLongArray(Codec.values().length);
+
+    /**
+     * Records a block of compressed data.
+     * @param codec The codec used.
+     * @param in The number of uncompressed bytes.
+     * @param out The number of compressed bytes.
+     * @param time The time spent compressing, in nanoseconds.
+     */
+    public void record(Codec codec, long in, long out, long time){
+        int i = codec.ordinal();
+        bytesIn.addAndGet(i, in);
+        bytesOut.addAndGet(i, out);
+        nanos.addAndGet(i, time);
+    }
+
+    /**
+     * Returns the number of uncompressed bytes processed by a codec.
+     * @param codec The codec.
+     * @return The bytes given to the codec.
+     */
+    public long getBytesIn(Codec codec){
+        return bytesIn.get(codec.ordinal());
+    }
+
+    /**
+     * Returns the number of compressed bytes produced by a codec.
+     * @param codec The codec.
+     * @return The bytes output by the codec.
+     */
+    public long getBytesOut(Codec codec){
+        return bytesOut.get(codec.ordinal());
+    }
+
+    /**
+     * Returns the throughput of a codec, measured on the time spent
+     * compressing. With several threads this is the per thread throughput.
+     * @param codec The codec.
+     * @return The uncompressed bytes processed per second, or 0 if the codec
+     * wasn't used.
+     */
+    public double getThroughput(Codec codec){
+        long time = nanos.get(codec.ordinal());
+        return time > 0 ? getBytesIn(codec) * 1e9 / time : 0;
+    }
+
+    /**
+     * Describes the codecs that were used, for example
+     * <tt>normal: 12.0 MB to 4.1 MB at 38.2 MB/s</tt>.
+     * @return The description, empty if nothing was compressed.
+     */
+    @Override
+    public String toString(){
+        StringBuilder sb = new StringBuilder();
+        for(Codec c : Codec.values()){
+            long in = getBytesIn(c);
+            if(in == 0)
+                continue;
+            if(sb.length() > 0)
+                sb.append(", ");
+            sb.append(c.getName()).append(": ");
+            sb.append(Utils.formatBytes(in)).append(" to ");
+            sb.append(Utils.formatBytes(getBytesOut(c))).append(" at ");
+            sb.append(Utils.formatBytes((long) getThroughput(c))).append("/s");
+        }
+        return sb.toString();
+    }
+}
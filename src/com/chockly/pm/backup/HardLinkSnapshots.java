@@ -0,0 +1,264 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.backup;
+
+import com.chockly.pm.IOUtils;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Point in time copies of profile folders made with hard links.<br/>
+ * <br/>
+ * A snapshot mirrors the profile's directory tree, but every file in it is a
+ * hard link to the profile's file, so taking a snapshot only writes directory
+ * entries. The games write a save by replacing the file rather than editing
+ * it in place, so the snapshot keeps the old contents and unchanged files
+ * keep sharing their storage. Files are copied instead when the file system
+ * can't link them.<br/>
+ * <br/>
+ * Restoring a snapshot copies its files, so the snapshot can't be changed by
+ * playing the restored profile. The layout is
+ * <tt>&lt;root&gt;/&lt;profile&gt;/&lt;time&gt;/</tt>, where the root must be
+ * on the same drive as the saves for the links to work, and must not be in
+ * the game's save directory.
+ *
+ * @author Curtis Oakley
+ */
+public class HardLinkSnapshots {
+
+    /**
+     * The name of the folder, relative to a game's data directory, that holds
+     * the game's snapshots.
+     */
+    public static final String SNAPSHOT_DIR = "Profile Snapshots";
+
+    /** Prefix of the folders used while a snapshot is written or restored. */
+    private static final String WORK_PREFIX = ".";
+
+    private static final FileFilter SNAPSHOT_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File f) {
+            return f.isDirectory() && !f.getName().startsWith(WORK_PREFIX);
+        }
+    };
+
+    private final File root;
+    private int linked = 0;
+    private int copied = 0;
+
+    /**
+     * Creates a new HardLinkSnapshots.
+     * @param root The directory that holds the snapshots.
+     */
+    public HardLinkSnapshots(File root){
+        this.root = root;
+    }
+
+    /**
+     * Takes a snapshot of a profile.
+     * @param profile The name of the profile's save directory.
+     * @param source The profile's current directory.
+     * @return The name of the new snapshot.
+     * @throws IOException If the snapshot couldn't be written, in which case
+     * nothing is left behind.
+     */
+    public String createSnapshot(String profile, File source) throws IOException {
+        File dir = new File(root, profile);
+        if( !dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Unable to create the snapshot directory " + dir);
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS");
+        long now = System.currentTimeMillis();
+        String name = format.format(new Date(now));
+        while(new File(dir, name).exists()){
+            name = format.format(new Date(++now));
+        }
+
+        // Build the snapshot to the side so a partial one is never listed
+        File work = new File(dir, WORK_PREFIX + name);
+        linked = 0;
+        copied = 0;
+        try {
+            linkTree(source, work);
+            Files.move(work.toPath(), new File(dir, name).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException ioe){
+            IOUtils.deleteFile(work);
+            throw ioe;
+        }
+        return name;
+    }
+
+    /**
+     * Returns the names of the snapshots of a profile.
+     * @param profile The name of the profile's save directory.
+     * @return The snapshot names, oldest first.
+     */
+    public String[] listSnapshots(String profile){
+        File[] dirs = new File(root, profile).listFiles(SNAPSHOT_FILTER);
+        if(dirs == null)
+            return new String[0];
+
+        String[] names = new String[dirs.length];
+        for(int i=0; i<dirs.length; i++){
+            names[i] = dirs[i].getName();
+        }
+        // Snapshot names are timestamps, so name order is age order
+        Arrays.sort(names);
+        return names;
+    }
+
+    /**
+     * Replaces a profile's directory with the contents of a snapshot.
+     * @param profile The name of the profile's save directory.
+     * @param snapshot The name of the snapshot to restore.
+     * @param target The profile's current directory.
+     * @throws IOException If the snapshot couldn't be restored, in which case
+     * the profile's directory is left as it was.
+     */
+    public void restoreSnapshot(String profile, String snapshot, File target)
+            throws IOException
+    {
+        File work = new File(root, WORK_PREFIX + "restore-" + profile);
+        IOUtils.deleteFile(work);
+        try {
+            copySnapshot(profile, snapshot, work);
+            IOUtils.replaceDirectory(target, work,
+                    new File(root, WORK_PREFIX + "replaced-" + profile));
+        } finally {
+            IOUtils.deleteFile(work);
+        }
+    }
+
+    /**
+     * Copies the contents of a snapshot into a new directory, leaving the
+     * profile alone. The caller swaps the copy into place.
+     * @param profile The name of the profile's save directory.
+     * @param snapshot The name of the snapshot to copy.
+     * @param dest The directory to create with the snapshot's files.
+     * @throws IOException If the snapshot doesn't exist or couldn't be copied.
+     */
+    public void copySnapshot(String profile, String snapshot, File dest)
+            throws IOException
+    {
+        File source = new File(new File(root, profile), snapshot);
+        if( !source.isDirectory())
+            throw new IOException("The snapshot " + snapshot + " does not exist.");
+
+        copyTree(source, dest);
+    }
+
+    /**
+     * Deletes a snapshot.
+     * @param profile The name of the profile's save directory.
+     * @param snapshot The name of the snapshot to delete.
+     * @return <tt>true</tt> if the snapshot was deleted.
+     */
+    public boolean deleteSnapshot(String profile, String snapshot){
+        return IOUtils.deleteFile(new File(new File(root, profile), snapshot));
+    }
+
+    /**
+     * Deletes all but the newest snapshots of a profile.
+     * @param profile The name of the profile's save directory.
+     * @param keep The number of snapshots to keep.
+     * @return The number of snapshots deleted.
+     */
+    public int prune(String profile, int keep){
+        String[] names = listSnapshots(profile);
+        int deleted = 0;
+        for(int i=0; i < names.length - keep; i++){
+            if(deleteSnapshot(profile, names[i]))
+                deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Returns the number of files hard linked by the last snapshot taken.
+     * @return The number of linked files.
+     */
+    public int getLinkedCount(){
+        return linked;
+    }
+
+    /**
+     * Returns the number of files that had to be copied by the last snapshot
+     * taken, because the file system couldn't link them.
+     * @return The number of copied files.
+     */
+    public int getCopiedCount(){
+        return copied;
+    }
+
+    /** Mirrors a directory tree, linking the files where possible. */
+    private void linkTree(File source, File dest) throws IOException {
+        if( !dest.mkdir())
+            throw new IOException("Unable to create the directory " + dest);
+
+        File[] files = source.listFiles();
+        if(files == null)
+            throw new IOException("Unable to read the directory " + source);
+
+        for(File f : files){
+            File link = new File(dest, f.getName());
+            if(f.isDirectory()){
+                linkTree(f, link);
+            } else {
+                try {
+                    Files.createLink(link.toPath(), f.toPath());
+                    linked++;
+                } catch(IOException ioe){
+                    copy(f, link);
+                } catch(UnsupportedOperationException uoe){
+                    copy(f, link);
+                }
+            }
+        }
+    }
+
+    private void copy(File source, File dest) throws IOException {
+        Files.copy(source.toPath(), dest.toPath(),
+                StandardCopyOption.COPY_ATTRIBUTES);
+        copied++;
+    }
+
+    /** Copies a directory tree. */
+    private static void copyTree(File source, File dest) throws IOException {
+        if( !dest.mkdirs())
+            throw new IOException("Unable to create the directory " + dest);
+
+        File[] files = source.listFiles();
+        if(files == null)
+            throw new IOException("Unable to read the directory " + source);
+
+        for(File f : files){
+            File copy = new File(dest, f.getName());
+            if(f.isDirectory())
+                copyTree(f, copy);
+            else
+                Files.copy(f.toPath(), copy.toPath(),
+                        StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+}
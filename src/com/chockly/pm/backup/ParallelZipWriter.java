@@ -0,0 +1,683 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.backup;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a standard ZIP archive, compressing the entries on several threads
+ * at once.<br/>
+ * <br/>
+ * Each entry is split into chunks which are deflated concurrently. Every chunk
+ * but the last ends with a sync flush, so the compressed chunks can be
+ * stitched together into one ordinary deflate stream (the same trick used by
+ * pigz). Chunks are primed with the last 32K of the previous chunk so that
+ * the compression ratio is close to single threaded deflate.<br/>
+ * <br/>
+ * Only a fixed number of chunks are in flight at once, which bounds the
+ * memory used, and the chunks are always written out in the order that they
+ * were added. The archive can be read by any unzip tool.
+ *
+ * @author Curtis Oakley
+ */
+public class ParallelZipWriter implements Closeable {
+
+    /** The default size of the chunks that entries are split into. */
+    public static final int DEFAULT_CHUNK_SIZE = 128 * 1024;
+
+    /**
+     * Creates a new ParallelZipWriter that uses one thread per processor.
+     * @param out The stream to write the archive to.
+     * @param level The deflate compression level, 0-9, or
+     * {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public ParallelZipWriter(OutputStream out, int level){
+        this(out, level, Runtime.getRuntime().availableProcessors(),
+                DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new ParallelZipWriter.
+     * @param out The stream to write the archive to.
+     * @param level The deflate compression level, 0-9, or
+     * {@link Deflater#DEFAULT_COMPRESSION}.
+     * @param threads The number of threads to compress with.
+     * @param chunkSize The number of bytes of an entry to compress per task.
+     */
+    public ParallelZipWriter(OutputStream out, int level, int threads, int chunkSize){
+        if(level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+
+        this.out = new CountingOutputStream(out);
+        this.level = level;
+        this.chunkSize = Math.max(chunkSize, DICTIONARY_SIZE);
+        this.threads = Math.max(threads, 1);
+        this.maxInFlight = this.threads * 4;
+
+        pool = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+            private int count = 0;
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "zip-deflate-" + (++count));
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Adds a file to the archive.
+     * @param name The name of the entry in the archive. Use '/' to separate
+     * directories.
+     * @param file The file to add.
+     * @throws IOException
+     */
+    public void putFile(String name, File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            putEntry(name, in, file.length(), file.lastModified());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Adds an entry to the archive, reading the entry's contents from the
+     * provided stream until it ends.
+     * @param name The name of the entry in the archive.
+     * @param in The entry's contents. The stream is not closed.
+     * @param sizeHint The expected size of the entry, or -1 if unknown. This
+     * is used to decide if the entry needs ZIP64 extensions.
+     * @param time The entry's modification time in milliseconds.
+     * @throws IOException
+     */
+    public void putEntry(String name, InputStream in, long sizeHint, long time)
+            throws IOException
+    {
+        putEntry(name, in, sizeHint, time, level);
+    }
+
+    /**
+     * Adds an entry to the archive, compressing it with the given codec
+     * instead of the archive's level.
+     * @param name The name of the entry in the archive.
+     * @param in The entry's contents. The stream is not closed.
+     * @param sizeHint The expected size of the entry, or -1 if unknown.
+     * @param time The entry's modification time in milliseconds.
+     * @param codec The codec to compress the entry with.
+     * @throws IOException
+     */
+    public void putEntry(String name, InputStream in, long sizeHint, long time,
+            Codec codec) throws IOException
+    {
+        putEntry(name, in, sizeHint, time, codec.getLevel());
+    }
+
+    private void putEntry(String name, InputStream in, long sizeHint, long time,
+            int level) throws IOException
+    {
+        checkOpen();
+
+        Entry entry = new Entry(name, time,
+                sizeHint < 0 || sizeHint >= ZIP64_THRESHOLD, level);
+
+        byte[] previous = null;
+        boolean first = true;
+
+        while(true){
+            byte[] data = new byte[chunkSize];
+            int length = readFully(in, data);
+
+            // Look ahead to see if this is the last chunk
+            boolean last = length < chunkSize;
+            if( !last){
+                int next = in.read();
+                if(next == -1){
+                    last = true;
+                } else {
+                    lookAhead = (byte) next;
+                    hasLookAhead = true;
+                }
+            }
+
+            byte[] dictionary = null;
+            if(previous != null)
+                dictionary = Arrays.copyOfRange(previous,
+                        previous.length - DICTIONARY_SIZE, previous.length);
+
+            submit(new ChunkTask(entry, data, length, dictionary, first, last));
+
+            if(last)
+                break;
+
+            previous = data;
+            first = false;
+        }
+        hasLookAhead = false;
+    }
+
+    /**
+     * Finishes writing the archive and closes the underlying stream.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed)
+            return;
+
+        try {
+            // Write out any chunks that are still being compressed
+            while( !inFlight.isEmpty())
+                writeNext();
+
+            writeCentralDirectory();
+        } finally {
+            closed = true;
+            pool.shutdownNow();
+            out.close();
+        }
+    }
+
+    /**
+     * Stops compressing and closes the underlying stream without finishing the
+     * archive. The partially written archive will not be valid.
+     */
+    public void abort(){
+        closed = true;
+        pool.shutdownNow();
+        inFlight.clear();
+        try {
+            out.close();
+        } catch(IOException ioe){
+            // Ignore, the archive is being thrown away
+        }
+    }
+
+    /**
+     * Gets the amount of data compressed by each codec, and how fast.
+     * @return The archive's codec statistics.
+     */
+    public CodecStatistics getStatistics(){
+        return statistics;
+    }
+
+    /**
+     * Gets the number of bytes written to the archive so far.
+     * @return The number of compressed bytes written.
+     */
+    public long getBytesWritten(){
+        return out.count;
+    }
+
+    private void checkOpen() throws IOException {
+        if(closed)
+            throw new IOException("The archive has been closed.");
+    }
+
+    /**
+     * Reads until the buffer is full or the stream ends.
+     * @return The number of bytes read into the buffer.
+     */
+    private int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+
+        if(hasLookAhead){
+            buffer[0] = lookAhead;
+            hasLookAhead = false;
+            total = 1;
+        }
+
+        while(total < buffer.length){
+            int count = in.read(buffer, total, buffer.length - total);
+            if(count == -1)
+                break;
+            total += count;
+        }
+
+        return total;
+    }
+
+    /**
+     * Queues a chunk to be compressed, writing out completed chunks when too
+     * many are in flight.
+     */
+    private void submit(ChunkTask task) throws IOException {
+        while(inFlight.size() >= maxInFlight)
+            writeNext();
+
+        inFlight.add(pool.submit(task));
+    }
+
+    /** Waits for the oldest chunk to be compressed and writes it out. */
+    private void writeNext() throws IOException {
+        Future<Chunk> future = inFlight.poll();
+        Chunk chunk;
+
+        try {
+            chunk = future.get();
+        } catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing.");
+        } catch(ExecutionException ee){
+            throw new IOException("Unable to compress the archive entry.", ee.getCause());
+        }
+
+        Entry entry = chunk.entry;
+
+        if(chunk.first){
+            entry.offset = out.count;
+            writeLocalHeader(entry);
+        }
+
+        out.write(chunk.data, 0, chunk.length);
+
+        entry.crc = crc32Combine(entry.crc, chunk.crc, chunk.inputLength);
+        entry.size += chunk.inputLength;
+        entry.compressedSize += chunk.length;
+
+        if(chunk.last){
+            writeDataDescriptor(entry);
+            entries.add(entry);
+        }
+    }
+
+    private void writeLocalHeader(Entry e) throws IOException {
+        byte[] name = e.name.getBytes(UTF_8);
+
+        writeInt(LOCAL_HEADER_SIG);
+        writeShort(e.zip64 ? VERSION_ZIP64 : VERSION_DEFLATE);
+        writeShort(FLAG_DATA_DESCRIPTOR | FLAG_UTF8);
+        writeShort(METHOD_DEFLATED);
+        writeInt(e.dosTime);
+        writeInt(0);// CRC, stored in the data descriptor
+        writeInt(e.zip64 ? 0xFFFFFFFF : 0);
+        writeInt(e.zip64 ? 0xFFFFFFFF : 0);
+        writeShort(name.length);
+        writeShort(e.zip64 ? 20 : 0);
+        out.write(name);
+
+        if(e.zip64){
+            writeShort(ZIP64_EXTRA_ID);
+            writeShort(16);
+            writeLong(0);
+            writeLong(0);
+        }
+    }
+
+    private void writeDataDescriptor(Entry e) throws IOException {
+        writeInt(DATA_DESCRIPTOR_SIG);
+        writeInt((int) e.crc);
+        if(e.zip64){
+            writeLong(e.compressedSize);
+            writeLong(e.size);
+        } else {
+            if(e.size >= ZIP64_LIMIT || e.compressedSize >= ZIP64_LIMIT)
+                throw new IOException(e.name + " is too large to archive.");
+
+            writeInt((int) e.compressedSize);
+            writeInt((int) e.size);
+        }
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long start = out.count;
+
+        for(Entry e : entries){
+            byte[] name = e.name.getBytes(UTF_8);
+
+            boolean bigSize = e.size >= ZIP64_LIMIT;
+            boolean bigCompressed = e.compressedSize >= ZIP64_LIMIT;
+            boolean bigOffset = e.offset >= ZIP64_LIMIT;
+            int extraLength = (bigSize ? 8 : 0) + (bigCompressed ? 8 : 0)
+                    + (bigOffset ? 8 : 0);
+
+            writeInt(CENTRAL_HEADER_SIG);
+            writeShort(e.zip64 || extraLength > 0 ? VERSION_ZIP64 : VERSION_DEFLATE);
+            writeShort(e.zip64 || extraLength > 0 ? VERSION_ZIP64 : VERSION_DEFLATE);
+            writeShort(FLAG_DATA_DESCRIPTOR | FLAG_UTF8);
+            writeShort(METHOD_DEFLATED);
+            writeInt(e.dosTime);
+            writeInt((int) e.crc);
+            writeInt(bigCompressed ? 0xFFFFFFFF : (int) e.compressedSize);
+            writeInt(bigSize ? 0xFFFFFFFF : (int) e.size);
+            writeShort(name.length);
+            writeShort(extraLength > 0 ? extraLength + 4 : 0);
+            writeShort(0);// Comment length
+            writeShort(0);// Disk number
+            writeShort(0);// Internal attributes
+            writeInt(0);// External attributes
+            writeInt(bigOffset ? 0xFFFFFFFF : (int) e.offset);
+            out.write(name);
+
+            if(extraLength > 0){
+                writeShort(ZIP64_EXTRA_ID);
+                writeShort(extraLength);
+                if(bigSize)
+                    writeLong(e.size);
+                if(bigCompressed)
+                    writeLong(e.compressedSize);
+                if(bigOffset)
+                    writeLong(e.offset);
+            }
+        }
+
+        long end = out.count;
+        long size = end - start;
+        int count = entries.size();
+
+        if(count >= 0xFFFF || start >= ZIP64_LIMIT || size >= ZIP64_LIMIT){
+            // ZIP64 end of central directory record and locator
+            writeInt(ZIP64_END_SIG);
+            writeLong(44);
+            writeShort(VERSION_ZIP64);
+            writeShort(VERSION_ZIP64);
+            writeInt(0);
+            writeInt(0);
+            writeLong(count);
+            writeLong(count);
+            writeLong(size);
+            writeLong(start);
+
+            writeInt(ZIP64_LOCATOR_SIG);
+            writeInt(0);
+            writeLong(end);
+            writeInt(1);
+        }
+
+        writeInt(END_SIG);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(count, 0xFFFF));
+        writeShort(Math.min(count, 0xFFFF));
+        writeInt(size >= ZIP64_LIMIT ? 0xFFFFFFFF : (int) size);
+        writeInt(start >= ZIP64_LIMIT ? 0xFFFFFFFF : (int) start);
+        writeShort(0);
+
+        out.flush();
+    }
+
+    private void writeShort(int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+    }
+
+    private void writeInt(long v) throws IOException {
+        writeShort((int) (v & 0xffff));
+        writeShort((int) ((v >>> 16) & 0xffff));
+    }
+
+    private void writeLong(long v) throws IOException {
+        writeInt(v & 0xffffffffL);
+        writeInt(v >>> 32);
+    }
+
+    /**
+     * Converts a Java time into a MS-DOS date and time.
+     * @param time The time in milliseconds.
+     * @return The MS-DOS date in the high 16 bits and time in the low 16 bits.
+     */
+    static int toDosTime(long time){
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(time);
+
+        int year = c.get(Calendar.YEAR);
+        if(year < 1980)
+            return (1 << 21) | (1 << 16);
+
+        return ((year - 1980) << 25)
+                | ((c.get(Calendar.MONTH) + 1) << 21)
+                | (c.get(Calendar.DAY_OF_MONTH) << 16)
+                | (c.get(Calendar.HOUR_OF_DAY) << 11)
+                | (c.get(Calendar.MINUTE) << 5)
+                | (c.get(Calendar.SECOND) >> 1);
+    }
+
+    /**
+     * Combines two CRC-32 values, as if the data of the second was appended
+     * to the data of the first. This is a port of zlib's crc32_combine.
+     * @param crc1 The CRC of the first block of data.
+     * @param crc2 The CRC of the second block of data.
+     * @param length2 The length of the second block of data.
+     * @return The CRC of the two blocks combined.
+     */
+    static long crc32Combine(long crc1, long crc2, long length2){
+        if(length2 <= 0)
+            return crc1;
+
+        long[] even = new long[32];
+        long[] odd = new long[32];
+
+        // Operator for one zero bit in odd
+        odd[0] = 0xedb88320L;
+        long row = 1;
+        for(int n = 1; n < 32; n++){
+            odd[n] = row;
+            row <<= 1;
+        }
+
+        gf2MatrixSquare(even, odd);// Two zero bits
+        gf2MatrixSquare(odd, even);// Four zero bits
+
+        do {
+            gf2MatrixSquare(even, odd);
+            if((length2 & 1) != 0)
+                crc1 = gf2MatrixTimes(even, crc1);
+            length2 >>= 1;
+
+            if(length2 == 0)
+                break;
+
+            gf2MatrixSquare(odd, even);
+            if((length2 & 1) != 0)
+                crc1 = gf2MatrixTimes(odd, crc1);
+            length2 >>= 1;
+        } while(length2 != 0);
+
+        return (crc1 ^ crc2) & 0xffffffffL;
+    }
+
+    private static long gf2MatrixTimes(long[] mat, long vec){
+        long sum = 0;
+        int i = 0;
+        while(vec != 0){
+            if((vec & 1) != 0)
+                sum ^= mat[i];
+            vec >>= 1;
+            i++;
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] mat){
+        for(int n = 0; n < 32; n++)
+            square[n] = gf2MatrixTimes(mat, mat[n]);
+    }
+
+    /** An entry in the archive. */
+    private static class Entry {
+        private final String name;
+        private final int dosTime;
+        private final boolean zip64;
+        private final int level;
+        private long offset;
+        private long crc = 0;
+        private long size = 0;
+        private long compressedSize = 0;
+
+        private Entry(String name, long time, boolean zip64, int level){
+            this.name = name;
+            this.dosTime = toDosTime(time);
+            this.zip64 = zip64;
+            this.level = level;
+        }
+    }
+
+    /** A compressed chunk of an entry. */
+    private static class Chunk {
+        private Entry entry;
+        private byte[] data;
+        private int length;
+        private int inputLength;
+        private long crc;
+        private boolean first;
+        private boolean last;
+    }
+
+    /** Compresses a chunk of an entry. */
+    private class ChunkTask implements Callable<Chunk> {
+        private final Entry entry;
+        private final byte[] input;
+        private final int length;
+        private final byte[] dictionary;
+        private final boolean first;
+        private final boolean last;
+
+        private ChunkTask(Entry entry, byte[] input, int length,
+                byte[] dictionary, boolean first, boolean last)
+        {
+            this.entry = entry;
+            this.input = input;
+            this.length = length;
+            this.dictionary = dictionary;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        public Chunk call() throws Exception {
+            Chunk chunk = new Chunk();
+            chunk.entry = entry;
+            chunk.first = first;
+            chunk.last = last;
+            chunk.inputLength = length;
+
+            CRC32 crc = new CRC32();
+            crc.update(input, 0, length);
+            chunk.crc = crc.getValue();
+
+            long start = System.nanoTime();
+            Deflater deflater = new Deflater(entry.level, true);
+            try {
+                if(dictionary != null)
+                    deflater.setDictionary(dictionary);
+
+                deflater.setInput(input, 0, length);
+
+                byte[] output = new byte[length + (length >> 3) + 64];
+                int written = 0;
+
+                if(last){
+                    deflater.finish();
+                    while( !deflater.finished()){
+                        if(written == output.length)
+                            output = Arrays.copyOf(output, output.length * 2);
+                        written += deflater.deflate(output, written, output.length - written);
+                    }
+                } else {
+                    // Sync flush so that the next chunk starts on a byte boundary
+                    while(true){
+                        if(written == output.length)
+                            output = Arrays.copyOf(output, output.length * 2);
+                        int count = deflater.deflate(output, written,
+                                output.length - written, Deflater.SYNC_FLUSH);
+                        written += count;
+                        if(written < output.length)
+                            break;
+                    }
+                }
+
+                chunk.data = output;
+                chunk.length = written;
+            } finally {
+                deflater.end();
+            }
+
+            Codec codec = Codec.fromLevel(entry.level);
+            if(codec != null)
+                statistics.record(codec, length, chunk.length,
+                        System.nanoTime() - start);
+
+            return chunk;
+        }
+    }
+
+    /** Counts the bytes written to the archive. */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        private CountingOutputStream(OutputStream out){
+            super(new BufferedOutputStream(out, 64 * 1024));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private final CountingOutputStream out;
+    private final ExecutorService pool;
+    private final ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<Future<Chunk>>();
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private final CodecStatistics statistics = new CodecStatistics();
+    private final int level;
+    private final int chunkSize;
+    private final int threads;
+    private final int maxInFlight;
+
+    private boolean closed = false;
+    private byte lookAhead;
+    private boolean hasLookAhead = false;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    /** Entries this large might need ZIP64 sizes once compressed. */
+    private static final long ZIP64_THRESHOLD = ZIP64_LIMIT - (1 << 24);
+
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIG = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final int VERSION_DEFLATE = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final java.nio.charset.Charset UTF_8 =
+            java.nio.charset.Charset.forName("UTF-8");
+}
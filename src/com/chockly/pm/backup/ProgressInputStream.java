@@ -0,0 +1,72 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.backup;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that reports the bytes read from it to a
+ * {@link ProgressListener}.
+ *
+ * @author Curtis Oakley
+ */
+public class ProgressInputStream extends FilterInputStream {
+
+    private final ProgressListener listener;
+
+    /**
+     * Creates a new ProgressInputStream.
+     * @param in The stream to read from.
+     * @param listener The listener to report to.
+     */
+    public ProgressInputStream(InputStream in, ProgressListener listener){
+        super(in);
+        this.listener = listener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if(b != -1)
+            listener.bytesProcessed(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if(read > 0)
+            listener.bytesProcessed(read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        if(skipped > 0)
+            listener.bytesProcessed(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // Reset would cause bytes to be counted twice
+        return false;
+    }
+}
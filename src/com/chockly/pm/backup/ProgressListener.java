@@ -0,0 +1,36 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.backup;
+
+import java.io.IOException;
+
+/**
+ * Receives the number of bytes processed while a backup is being written or
+ * restored.
+ *
+ * @author Curtis Oakley
+ */
+public interface ProgressListener {
+
+    /**
+     * Called as data is processed.
+     * @param bytes The number of bytes processed since the last call.
+     * @throws IOException To stop the operation, normally an
+     * {@link java.io.InterruptedIOException} when the user has cancelled.
+     */
+    public void bytesProcessed(long bytes) throws IOException;
+}
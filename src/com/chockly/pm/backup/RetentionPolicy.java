@@ -0,0 +1,107 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.backup;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which backup snapshots are old enough to be deleted.<br/>
+ * <br/>
+ * A snapshot is kept if it is one of the newest snapshots, or if it is the
+ * newest snapshot of one of the most recent days or weeks that have
+ * snapshots. For example keeping 5 recent, 7 daily and 4 weekly snapshots
+ * keeps the last 5 backups, one backup for each of the last 7 days with
+ * backups, and one for each of the last 4 weeks with backups.<br/>
+ * <br/>
+ * Snapshot names are expected to be the times they were taken, as made by
+ * {@link BackupRepository} and {@link HardLinkSnapshots}. Snapshots with
+ * other names are always kept.
+ * @author Curtis Oakley
+ */
+public class RetentionPolicy {
+    
+    private final int recent;
+    private final int daily;
+    private final int weekly;
+    
+    /**
+     * Creates a new RetentionPolicy.
+     * @param recent The number of the newest snapshots to keep.
+     * @param daily The number of days to keep a snapshot for.
+     * @param weekly The number of weeks to keep a snapshot for.
+     */
+    public RetentionPolicy(int recent, int daily, int weekly){
+        this.recent = Math.max(0, recent);
+        this.daily = Math.max(0, daily);
+        this.weekly = Math.max(0, weekly);
+    }
+    
+    /**
+     * Checks if the policy keeps every snapshot.
+     * @return <tt>true</tt> if nothing should ever be deleted, which is the
+     * case when every count is zero.
+     */
+    public boolean keepsAll(){
+        return recent == 0 && daily == 0 && weekly == 0;
+    }
+    
+    /**
+     * Finds the snapshots that the policy doesn't keep.
+     * @param names The names of the snapshots, oldest first.
+     * @return The names of the snapshots that can be deleted.
+     */
+    public List<String> selectExpired(String[] names){
+        List<String> expired = new ArrayList<String>();
+        if(keepsAll())
+            return expired;
+        
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS");
+        Calendar cal = Calendar.getInstance();
+        Set<Integer> days = new HashSet<Integer>();
+        Set<Integer> weeks = new HashSet<Integer>();
+        
+        // Work from the newest so each period keeps its latest snapshot
+        for(int i=names.length - 1, n=0; i>=0; i--, n++){
+            String name = names[i];
+            try {
+                cal.setTime(format.parse(name));
+            } catch(ParseException pe){
+                continue;
+            }
+            
+            boolean keep = n < recent;
+            
+            int day = cal.get(Calendar.YEAR) * 1000 + cal.get(Calendar.DAY_OF_YEAR);
+            if(days.size() < daily && days.add(day))
+                keep = true;
+            
+            int week = cal.getWeekYear() * 100 + cal.get(Calendar.WEEK_OF_YEAR);
+            if(weeks.size() < weekly && weeks.add(week))
+                keep = true;
+            
+            if( !keep)
+                expired.add(name);
+        }
+        return expired;
+    }
+}
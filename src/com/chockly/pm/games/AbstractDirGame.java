@@ -16,10 +16,14 @@
  */
 package com.chockly.pm.games;
 
+import com.chockly.pm.GameLocks;
 import com.chockly.pm.IOUtils;
 import com.chockly.pm.Main;
 import com.chockly.pm.Profile;
 import com.chockly.pm.ProfileFactory;
+import com.chockly.pm.log.LogEntry;
+import com.chockly.pm.metrics.Events;
+import com.chockly.pm.metrics.Metrics;
 import java.io.File;
 
 /**
@@ -30,6 +34,37 @@ public abstract class AbstractDirGame implements Game {
     
     @Override
     public boolean activateProfile(Profile profile) {
+        long startTime = System.nanoTime();
+        Events.Event event = Events.begin(Events.ACTIVATE);
+        
+        // Keep backups from reading the saves while they are moved
+        if( !GameLocks.lockForActivation(this)){
+            Metrics.counter("game.activate.failures").increment();
+            Events.commit(event, getId(), profile.getID(), 0, Events.LOCKED);
+            return false;
+        }
+        
+        boolean activated = false;
+        try {
+            activated = moveProfile(profile);
+            if( !activated)
+                Metrics.counter("game.activate.failures").increment();
+            return activated;
+        } finally {
+            GameLocks.unlock(getId());
+            Metrics.histogram("game.activate").recordSince(startTime);
+            Events.commit(event, getId(), profile.getID(), 0,
+                    activated ? Events.OK : Events.FAILED);
+        }
+    }
+    
+    /**
+     * Moves the active profile's saves out of the game's save folder, and
+     * the provided profile's saves into it.
+     * @param profile The profile to activate.
+     * @return <tt>true</tt> if the profile was activated.
+     */
+    private boolean moveProfile(Profile profile) {
         
         // Save the directories
         String dataDir = getDir();
@@ -83,6 +118,12 @@ public abstract class AbstractDirGame implements Game {
     
     @Override
     public void autoSetupProfiles() {
+        autoSetupProfiles(null);
+    }
+    
+    @Override
+    public void autoSetupProfiles(AutoSetupListener listener) {
+        long startTime = System.nanoTime();
         
         // Get the save folder
         File savesFolder = new File(getDir() + getGameSaveDir());
@@ -122,7 +163,9 @@ public abstract class AbstractDirGame implements Game {
                         profileData.put(fileName, fileName);
 
                         // Add the new profile
-                        pf.add(fileName, fileName, getId());
+                        Profile created = pf.add(fileName, fileName, getId());
+                        if(listener != null)
+                            listener.profileCreated(created);
                     }
                 }
             }
@@ -136,8 +179,15 @@ public abstract class AbstractDirGame implements Game {
             return;
         
         // Loop through each file
+        int processed = 0;
         for(String fileName : files)
         {
+            if(listener != null){
+                if(listener.isCancelled())
+                    break;
+                listener.fileProcessed(processed++, files.length);
+            }
+            
             File profileDir = new File(savesFolder, fileName);
             
             // Test if the file is directory
@@ -153,16 +203,21 @@ public abstract class AbstractDirGame implements Game {
                         profileData.put(fileName, fileName);
 
                         // Add the new profile
-                        pf.add(fileName, fileName, getId());
+                        Profile created = pf.add(fileName, fileName, getId());
+                        if(listener != null)
+                            listener.profileCreated(created);
                     } else {
-                        Main.handleException("Unable to move the folder "
-                                + profileDir.getPath() + ".",
-                                null, Main.WARN_LEVEL);
+                        Main.handleException(new LogEntry(Main.WARN_LEVEL, "autoSetupProfiles",
+                                "Unable to move the folder " + profileDir.getPath() + ".",
+                                null).game(getId()).path(profileDir.getPath()));
                     }
                 }
             }
         }
         
+        if(listener != null)
+            listener.fileProcessed(processed, files.length);
+        
         // Re-activate the last active profile
         if(activeProfile != null){
             profilesFolder = new File(profilesFolder, activeProfile.getSaveDir());
@@ -176,32 +231,49 @@ public abstract class AbstractDirGame implements Game {
                 Main.handleException("Unable to reactivate the currently active profile.",
                         null, Main.WARN_LEVEL);
         }
+        
+        Metrics.histogram("game.autoSetup").recordSince(startTime);
     }
     
     @Override
     public void deactivateProfiles(){
+        Events.Event event = Events.begin(Events.DEACTIVATE);
+        if( !GameLocks.lockForActivation(this)){
+            Events.commit(event, getId(), 0, 0, Events.LOCKED);
+            return;
+        }
+        int profileID = 0;
+        String outcome = Events.OK;
+        
         // Save the directories
         String dataDir = getDir();
         File profilesDir = new File(dataDir, getSave());
         File saveDir = new File(dataDir, getGameSaveDir());
         
-        // Find the currently active profile
-        Profile[] profiles = ProfileFactory.getInstance().getProfiles(getId());
-        
-        for(int i=0; i<profiles.length; i++){
-            if( profiles[i].isActive() ){
-                if( saveDir.renameTo(
-                        new File(profilesDir, profiles[i].getSaveDir())) )
-                {
-                    profiles[i].setActive(false);
-                }
-                else
-                {
-                    Main.handleException("Unable to deactivate the active profile.",
-                            null, Main.WARN_LEVEL);
+        try {
+            // Find the currently active profile
+            Profile[] profiles = ProfileFactory.getInstance().getProfiles(getId());
+
+            for(int i=0; i<profiles.length; i++){
+                if( profiles[i].isActive() ){
+                    profileID = profiles[i].getID();
+                    if( saveDir.renameTo(
+                            new File(profilesDir, profiles[i].getSaveDir())) )
+                    {
+                        ProfileFactory.getInstance().clearActiveProfile(getId());
+                    }
+                    else
+                    {
+                        outcome = Events.FAILED;
+                        Main.handleException("Unable to deactivate the active profile.",
+                                null, Main.WARN_LEVEL);
+                    }
+                    break;
                 }
-                break;
             }
+        } finally {
+            GameLocks.unlock(getId());
+            Events.commit(event, getId(), profileID, 0, outcome);
         }
     }
     
@@ -0,0 +1,48 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.games;
+
+import com.chockly.pm.Profile;
+
+/**
+ * Follows the progress of {@link Game#autoSetupProfiles(AutoSetupListener)},
+ * and can stop it part way through.
+ * @author Curtis Oakley
+ */
+public interface AutoSetupListener {
+    
+    /**
+     * Checks if auto setup should stop. Profiles that have already been
+     * created are kept.
+     * @return <tt>true</tt> to stop setting up profiles.
+     */
+    public boolean isCancelled();
+    
+    /**
+     * Called as the files in the game's save folder are processed, before
+     * each file and once all of the files are done.
+     * @param processed The number of files processed so far.
+     * @param total The number of files in the save folder.
+     */
+    public void fileProcessed(int processed, int total);
+    
+    /**
+     * Called when a new profile has been created.
+     * @param profile The new profile.
+     */
+    public void profileCreated(Profile profile);
+}
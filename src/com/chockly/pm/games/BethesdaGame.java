@@ -17,6 +17,9 @@
 package com.chockly.pm.games;
 
 import com.chockly.pm.*;
+import com.chockly.pm.log.LogEntry;
+import com.chockly.pm.metrics.Events;
+import com.chockly.pm.metrics.Metrics;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -33,6 +36,15 @@ public abstract class BethesdaGame implements Game {
     
     @Override
     public boolean activateProfile(Profile profile) {
+        long startTime = System.nanoTime();
+        Events.Event event = Events.begin(Events.ACTIVATE);
+        if( !GameLocks.lockForActivation(this)){
+            Metrics.counter("game.activate.failures").increment();
+            Events.commit(event, getId(), profile.getID(), 0, Events.LOCKED);
+            return false;
+        }
+        String outcome = Events.FAILED;
+        
         try
         {
             IOUtils.setINIValue(
@@ -43,6 +55,7 @@ public abstract class BethesdaGame implements Game {
             
             ProfileFactory.getInstance().setActive(profile);
             
+            outcome = Events.OK;
             return true;
         }
         catch(FileNotFoundException fnfe)
@@ -51,8 +64,20 @@ public abstract class BethesdaGame implements Game {
                     + "'\nMake sure that the settings for this game are correct.",
                     fnfe, Main.WARN_LEVEL);
             
+            Metrics.counter("game.activate.failures").increment();
             return false;
         }
+        finally
+        {
+            GameLocks.unlock(getId());
+            Metrics.histogram("game.activate").recordSince(startTime);
+            Events.commit(event, getId(), profile.getID(), 0, outcome);
+        }
+    }
+    
+    @Override
+    public void autoSetupProfiles() {
+        autoSetupProfiles(null);
     }
     
     /**
@@ -99,14 +124,20 @@ public abstract class BethesdaGame implements Game {
      * 
      * @param repeatNameEnd If the nameEnd variable should be subtracted from the
      * character's name twice.
+     * 
+     * @param listener Receives the progress and can stop the setup. Can be
+     * <tt>null</tt>.
      */
     protected void autoSetupProfiles(String[] validExtensions,
             long nameStartOffset,
             int backTrackAmount,
             String nameStart,
             String nameEnd,
-            boolean repeatNameEnd)
+            boolean repeatNameEnd,
+            AutoSetupListener listener)
     {
+        long startTime = System.nanoTime();
+        
         // Detect the state of the deepscan
         String deepScan = Config.get(Config.Key.deep_scan);
         int deepScanFlag = 0;
@@ -137,8 +168,15 @@ public abstract class BethesdaGame implements Game {
         }
         
         // Loop through each file
+        int processed = 0;
         for(String fileName : files)
         {
+            if(listener != null){
+                if(listener.isCancelled())
+                    break;
+                listener.fileProcessed(processed++, files.length);
+            }
+            
             // Test if the file is directory
             if( new File(savesFolder + fileName).isDirectory() )
             {
@@ -150,7 +188,9 @@ public abstract class BethesdaGame implements Game {
                     profileData.put(fileName, fileName);
 
                     // Add the new profile
-                    pf.add(fileName, fileName, getId());
+                    Profile created = pf.add(fileName, fileName, getId());
+                    if(listener != null)
+                        listener.profileCreated(created);
                 }
             }
             // Only process files that have an extension
@@ -182,24 +222,33 @@ public abstract class BethesdaGame implements Game {
                         } else if(deepScanFlag != 2) {
                             // TODO Check into dealing with multi-language character names.
                             // Read the file's contents to determine the characters name.
+                            Events.Event event = Events.begin(Events.HEADER_PARSE);
+                            String outcome = Events.FAILED;
+                            long read = 0;
+                            try {
+                                java.io.RandomAccessFile ran = new 
+                                        java.io.RandomAccessFile(savesFolder + fileName, "r");
+                                try {
+                                    // Jump to where the name starts
+                                    ran.seek(nameStartOffset);
 
-                            java.io.RandomAccessFile ran = new 
-                                    java.io.RandomAccessFile(savesFolder + fileName, "r");
-                            
-                            // Jump to where the name starts
-                            ran.seek(nameStartOffset);
-                            
-                            // Read in the characters until null byte read
-                            int in;
-                            while( (in = ran.read()) != -1){
-                                if(in == 0x00)
-                                    break;
+                                    // Read in the characters until null byte read
+                                    int in;
+                                    while( (in = ran.read()) != -1){
+                                        if(in == 0x00)
+                                            break;
 
-                                characterName.append( (char) in );
+                                        characterName.append( (char) in );
+                                    }
+                                    read = ran.getFilePointer() - nameStartOffset;
+                                } finally {
+                                    ran.close();
+                                }
+                                outcome = Events.OK;
+                            } finally {
+                                Events.commit(event, getId(), 0, read, outcome);
                             }
 
-                            ran.close();
-
                             // Remove excess byte data
                             characterName.delete(
                                     characterName.length() - backTrackAmount,
@@ -211,16 +260,16 @@ public abstract class BethesdaGame implements Game {
                         }
                     } catch(IOException ioe){
                         // Handle the exception, and then skip the file.
-                        Main.handleException(
+                        Main.handleException(new LogEntry(Main.WARN_LEVEL, "autoSetupProfiles",
                                 "An IO Exception occured while trying to find the character name in the file " +
                                 fileName + ".\nThis file will not be assigned to a profile.",
-                                ioe, Main.WARN_LEVEL);
+                                ioe).game(getId()).path(savesFolder + fileName));
                         continue;
                     } catch(StringIndexOutOfBoundsException sioobe){
-                        Main.handleException(
+                        Main.handleException(new LogEntry(Main.WARN_LEVEL, "autoSetupProfiles",
                                 "Unable to process the file " +
                                 fileName + ".\nThis file will not be assigned to a profile.",
-                                sioobe, Main.WARN_LEVEL);
+                                sioobe).game(getId()).path(savesFolder + fileName));
                         continue;
                     }
 
@@ -247,7 +296,9 @@ public abstract class BethesdaGame implements Game {
                             profileData.put(dirName, characterName.toString());
 
                             // Add the new profile
-                            pf.add(characterName.toString(), dirName, getId());
+                            Profile created = pf.add(characterName.toString(), dirName, getId());
+                            if(listener != null)
+                                listener.profileCreated(created);
 
                             /* Comment out this line to print out the newly added profile information
                             System.out.println("-New Profile-\nSave Folder: " + savesFolder +
@@ -265,10 +316,22 @@ public abstract class BethesdaGame implements Game {
                 }
             }
         }
+        
+        if(listener != null)
+            listener.fileProcessed(processed, files.length);
+        
+        Metrics.histogram("game.autoSetup").recordSince(startTime);
     }
     
     @Override
     public void deactivateProfiles(){
+        Events.Event event = Events.begin(Events.DEACTIVATE);
+        if( !GameLocks.lockForActivation(this)){
+            Events.commit(event, getId(), 0, 0, Events.LOCKED);
+            return;
+        }
+        
+        String outcome = Events.FAILED;
         try
         {
             IOUtils.setINIValue(
@@ -278,6 +341,7 @@ public abstract class BethesdaGame implements Game {
                     "[General]");
             
             ProfileFactory.getInstance().clearActiveProfile(getId());
+            outcome = Events.OK;
         }
         catch(FileNotFoundException fnfe)
         {
@@ -285,6 +349,11 @@ public abstract class BethesdaGame implements Game {
                     + "'\nMake sure that the settings for this game are correct.",
                     fnfe, Main.WARN_LEVEL);
         }
+        finally
+        {
+            GameLocks.unlock(getId());
+            Events.commit(event, getId(), 0, 0, outcome);
+        }
     }
     
     /**
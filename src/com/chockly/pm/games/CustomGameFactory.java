@@ -17,6 +17,7 @@
 package com.chockly.pm.games;
 
 import com.chockly.pm.Config;
+import com.chockly.pm.Main;
 import com.chockly.pm.XMLUtils;
 import java.io.File;
 import java.util.Arrays;
@@ -44,8 +45,8 @@ final class CustomGameFactory {
         if(customGames == null)
             // Create an empty custom game
             customGames = new CustomGame[0];
-        else
-            // check for id conflicts
+        else if( !Main.isHeadless())
+            // check for id conflicts, this needs the user to decide
             checkForConflicts();
     }
     
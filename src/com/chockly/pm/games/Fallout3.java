@@ -47,10 +47,10 @@ public class Fallout3 extends BethesdaGame {
     private static final String FALLOUT3_EXE = "fallout3_exe";
 
     @Override
-    public void autoSetupProfiles() {
+    public void autoSetupProfiles(AutoSetupListener listener) {
         String[] validExtensions = {".fos",".bak"};
         
-        autoSetupProfiles(validExtensions, 0x26L, 2, " - ", ",", true);
+        autoSetupProfiles(validExtensions, 0x26L, 2, " - ", ",", true, listener);
     }
 
     @Override
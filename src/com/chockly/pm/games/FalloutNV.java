@@ -47,10 +47,10 @@ public class FalloutNV extends BethesdaGame {
     private static final String NEW_VEGAS_EXE = "new_vegas_exe";
 
     @Override
-    public void autoSetupProfiles() {
+    public void autoSetupProfiles(AutoSetupListener listener) {
         String[] validExtensions = {".fos",".bak"};
         
-        autoSetupProfiles(validExtensions, 0x67L, 2, "   ", "  ", true);
+        autoSetupProfiles(validExtensions, 0x67L, 2, "   ", "  ", true, listener);
     }
     
     @Override
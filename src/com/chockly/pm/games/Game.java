@@ -44,6 +44,14 @@ public interface Game {
      */
     public void autoSetupProfiles();
     
+    /**
+     * Auto sets up profiles, reporting the progress to a listener.
+     * @param listener Receives the files processed and the profiles created,
+     * and can stop the setup. Can be <tt>null</tt>.
+     * @see #autoSetupProfiles()
+     */
+    public void autoSetupProfiles(AutoSetupListener listener);
+    
     /**
      * Deactivates all profiles. Effectively restoring the game to it's default
      * setting.
@@ -17,6 +17,8 @@
 package com.chockly.pm.games;
 
 import com.chockly.pm.*;
+import com.chockly.pm.metrics.Events;
+import com.chockly.pm.metrics.Metrics;
 import java.io.File;
 import java.io.IOException;
 import javax.swing.Icon;
@@ -54,7 +56,8 @@ public class Morrowind extends AbstractDirGame {
     private static final String MORROWIND_EXE = "morrowind_exe";
 
     @Override
-    public void autoSetupProfiles() {
+    public void autoSetupProfiles(AutoSetupListener listener) {
+        long startTime = System.nanoTime();
         
         // Get the save folder
         File savesFolder = new File(getDir() + getGameSaveDir());
@@ -94,8 +97,10 @@ public class Morrowind extends AbstractDirGame {
                         profileData.put(fileName, fileName);
 
                         // Add the new profile
-                        pf.add(fileName, fileName,
+                        Profile created = pf.add(fileName, fileName,
                                 GameFactory.MORROWIND_ID);
+                        if(listener != null)
+                            listener.profileCreated(created);
                     }
                 }
             }
@@ -109,8 +114,15 @@ public class Morrowind extends AbstractDirGame {
             return;
         
         // Loop through each file
+        int processed = 0;
         for(String fileName : files)
         {
+            if(listener != null){
+                if(listener.isCancelled())
+                    break;
+                listener.fileProcessed(processed++, files.length);
+            }
+            
             // Test if the file is directory
             if( new File(savesFolder, fileName).isDirectory() )
             {
@@ -125,8 +137,10 @@ public class Morrowind extends AbstractDirGame {
                         profileData.put(fileName, fileName);
 
                         // Add the new profile
-                        pf.add(fileName, fileName,
+                        Profile created = pf.add(fileName, fileName,
                                 GameFactory.MORROWIND_ID);
+                        if(listener != null)
+                            listener.profileCreated(created);
                     } else {
                         Main.handleException("Unable to move the folder "
                                 + profileDir.getPath() + ".",
@@ -147,6 +161,7 @@ public class Morrowind extends AbstractDirGame {
                     
                     // TODO Check into dealing with multi-language character names.
                     // Read the file's contents to determine the characters name.
+                    Events.Event event = Events.begin(Events.HEADER_PARSE);
                     try {
                         java.io.RandomAccessFile ran = new 
                                 java.io.RandomAccessFile(
@@ -185,9 +200,13 @@ public class Morrowind extends AbstractDirGame {
                             characterName.append( (char) in );
                         }
 
+                        if(event != null)
+                            Events.commit(event, getId(), 0,
+                                    ran.getFilePointer() - 0x162L, Events.OK);
                         ran.close();
 
                     } catch(IOException ioe){
+                        Events.commit(event, getId(), 0, 0, Events.FAILED);
                         // Handle the exception, and then skip the file.
                         Main.handleException(
                                 "An IO Exception occured while trying to find the character name in the file " +
@@ -219,7 +238,9 @@ public class Morrowind extends AbstractDirGame {
                             profileData.put(dirName, characterName.toString());
 
                             // Add the new profile
-                            pf.add(characterName.toString(), dirName, GameFactory.MORROWIND_ID);
+                            Profile created = pf.add(characterName.toString(), dirName, GameFactory.MORROWIND_ID);
+                            if(listener != null)
+                                listener.profileCreated(created);
 
                             /* Comment out this line to print out the newly added profile information
                             System.out.println("-New Profile-\nSave Folder: " + savesFolder +
@@ -238,6 +259,9 @@ public class Morrowind extends AbstractDirGame {
             }
         }
         
+        if(listener != null)
+            listener.fileProcessed(processed, files.length);
+        
         // Re-activate the last active profile
         if(activeProfile != null){
             profilesFolder = new File(profilesFolder, activeProfile.getSaveDir());
@@ -251,6 +275,8 @@ public class Morrowind extends AbstractDirGame {
                 Main.handleException("Unable to reactivate the currently active profile.",
                         null, Main.WARN_LEVEL);
         }
+        
+        Metrics.histogram("game.autoSetup").recordSince(startTime);
     }
 
     @Override
@@ -47,10 +47,10 @@ public class Oblivion extends BethesdaGame {
     private static final String OBLIVION_EXE = "oblivion_exe";
 
     @Override
-    public void autoSetupProfiles() {
+    public void autoSetupProfiles(AutoSetupListener listener) {
         String[] validExtensions = {".ess",".bak"};
         
-        autoSetupProfiles(validExtensions, 0x2bL, 0, " - ", " - ", false);
+        autoSetupProfiles(validExtensions, 0x2bL, 0, " - ", " - ", false, listener);
     }
     
     @Override
@@ -47,10 +47,10 @@ public class Skyrim extends BethesdaGame {
     private static final String SKYRIM_EXE = "skyrim_exe";
 
     @Override
-    public void autoSetupProfiles() {
+    public void autoSetupProfiles(AutoSetupListener listener) {
         String[] validExtensions = {".ess",".bak"};
         
-        autoSetupProfiles(validExtensions, 0x1bL, 1, " - ", "  ", true);
+        autoSetupProfiles(validExtensions, 0x1bL, 1, " - ", "  ", true, listener);
     }
 
     @Override
@@ -18,6 +18,7 @@ package com.chockly.pm.gui;
 
 import com.chockly.pm.Utils;
 import com.chockly.pm.Config;
+import com.chockly.pm.backup.Codec;
 import com.chockly.pm.games.Game;
 import com.chockly.pm.games.GameFactory;
 import java.io.File;
@@ -59,13 +60,21 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
         else
             nameEditsRB.setSelected(true);
         
-        if(Config.get(Config.Key.archive_format).equals(Config.ZIP_FORMAT)){
+        String archiveFormat = Config.get(Config.Key.archive_format);
+        
+        if(archiveFormat.equals(Config.REPOSITORY_FORMAT))
+            repositoryRB.setSelected(true);
+        else
             zipRB.setSelected(true);
-            sevenZipExeTxt.setEnabled(false);
-            findSevenZipExeBtn.setEnabled(false);
-        } else {
-            sevenZipRB.setSelected(true);
-        }
+        
+        // Old 7z settings are shown as zip with high compression
+        Codec codec = archiveFormat.equals(Config.SEVEN_ZIP_FORMAT)
+                ? Codec.HIGH
+                : Codec.fromName(Config.get(Config.Key.compression), Codec.NORMAL);
+        // Selecting a combo box item fires an action, which would enable apply
+        compressionCB.removeActionListener(this);
+        compressionCB.setSelectedIndex(codec.ordinal());
+        compressionCB.addActionListener(this);
     }
 
     /** This method is called from within the constructor to
@@ -92,10 +101,9 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
         archivePanel = new javax.swing.JPanel();
         archiveFormatLabel = new javax.swing.JLabel();
         zipRB = new javax.swing.JRadioButton();
-        sevenZipRB = new javax.swing.JRadioButton();
-        sevenZipExeLabel = new javax.swing.JLabel();
-        sevenZipExeTxt = new javax.swing.JTextField();
-        findSevenZipExeBtn = new javax.swing.JButton();
+        repositoryRB = new javax.swing.JRadioButton();
+        compressionLabel = new javax.swing.JLabel();
+        compressionCB = new javax.swing.JComboBox<String>();
         settingsPanel = new javax.swing.JPanel();
         exitOnLaunchCB = new javax.swing.JCheckBox();
         startInLastTabCB = new javax.swing.JCheckBox();
@@ -187,18 +195,16 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
         zipRB.setText("Zip");
         zipRB.addActionListener(this);
 
-        archiveBG.add(sevenZipRB);
-        sevenZipRB.setText("7z");
-        sevenZipRB.addActionListener(this);
+        archiveBG.add(repositoryRB);
+        repositoryRB.setText("Repository");
+        repositoryRB.setToolTipText("Keep every backup, storing only what changed since the last one");
+        repositoryRB.addActionListener(this);
 
-        sevenZipExeLabel.setText("7z Exe:");
+        compressionLabel.setText("Compression:");
 
-        sevenZipExeTxt.setText(Config.get(Config.Key.seven_zip_exe));
-        sevenZipExeTxt.setPreferredSize(new java.awt.Dimension(70, 20));
-        sevenZipExeTxt.getDocument().addDocumentListener(new ConfigTextChangeListener(SEVEN_ZIP_DIR));
-
-        findSevenZipExeBtn.setIcon(new javax.swing.ImageIcon(getClass().getResource("/com/chockly/pm/resources/blue-folder-search-result.png"))); // NOI18N
-        findSevenZipExeBtn.addActionListener(this);
+        compressionCB.setModel(new javax.swing.DefaultComboBoxModel<String>(new String[] { "None", "Fast", "Normal", "Maximum (deflate 9)" }));
+        compressionCB.setToolTipText("Saves that are already compressed are always stored without compression");
+        compressionCB.addActionListener(this);
 
         javax.swing.GroupLayout archivePanelLayout = new javax.swing.GroupLayout(archivePanel);
         archivePanel.setLayout(archivePanelLayout);
@@ -212,14 +218,12 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
                         .addComponent(zipRB)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                        .addComponent(sevenZipRB)
+                        .addComponent(repositoryRB)
                         .addGap(0, 0, Short.MAX_VALUE))
                     .addGroup(archivePanelLayout.createSequentialGroup()
-                        .addComponent(sevenZipExeLabel)
-                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                        .addComponent(sevenZipExeTxt, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                        .addComponent(compressionLabel)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                        .addComponent(findSevenZipExeBtn)))
+                        .addComponent(compressionCB, 0, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)))
                 .addContainerGap())
         );
         archivePanelLayout.setVerticalGroup(
@@ -228,12 +232,11 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
                 .addGroup(archivePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(archiveFormatLabel)
                     .addComponent(zipRB)
-                    .addComponent(sevenZipRB))
+                    .addComponent(repositoryRB))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(archivePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
-                    .addComponent(sevenZipExeLabel)
-                    .addComponent(sevenZipExeTxt, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
-                    .addComponent(findSevenZipExeBtn)))
+                    .addComponent(compressionLabel)
+                    .addComponent(compressionCB, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
         );
 
         settingsPanel.setBorder(javax.swing.BorderFactory.createTitledBorder(null, "General Settings", javax.swing.border.TitledBorder.CENTER, javax.swing.border.TitledBorder.DEFAULT_POSITION));
@@ -526,6 +529,8 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
     private javax.swing.JLabel archiveFormatLabel;
     private javax.swing.JPanel archivePanel;
     private javax.swing.JButton cancelBtn;
+    private javax.swing.JComboBox<String> compressionCB;
+    private javax.swing.JLabel compressionLabel;
     private javax.swing.JLabel dataDirLabel;
     private javax.swing.JTextField dataDirTxt;
     private javax.swing.JLabel exeFileLabel;
@@ -533,7 +538,6 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
     private javax.swing.JCheckBox exitOnLaunchCB;
     private javax.swing.JButton findDataDirFolderBtn;
     private javax.swing.JButton findExeFileBtn;
-    private javax.swing.JButton findSevenZipExeBtn;
     private javax.swing.JList gameList;
     private javax.swing.JPanel gameSettingPanel;
     private javax.swing.JTabbedPane gameSettingsTabPane;
@@ -550,11 +554,9 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
     private javax.swing.JLabel nameDBLabel;
     private javax.swing.JRadioButton nameEditsRB;
     private javax.swing.JRadioButton nameStartsRB;
+    private javax.swing.JRadioButton repositoryRB;
     private javax.swing.JButton saveBtn;
     private javax.swing.JPanel settingsPanel;
-    private javax.swing.JLabel sevenZipExeLabel;
-    private javax.swing.JTextField sevenZipExeTxt;
-    private javax.swing.JRadioButton sevenZipRB;
     private javax.swing.JCheckBox startInLastTabCB;
     private javax.swing.JCheckBox startInThisTabCB;
     private javax.swing.JRadioButton zipRB;
@@ -562,7 +564,6 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
 
     private static final byte DATA_DIR = 0;
     private static final byte EXE_DIR = 1;
-    private static final byte SEVEN_ZIP_DIR = 2;
 
     private javax.swing.DefaultListModel gameModel = new javax.swing.DefaultListModel();
     private javax.swing.JPanel[] emptyPanels;
@@ -604,8 +605,6 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
                 findFile(DATA_DIR);
             } else if(source.equals(findExeFileBtn)){
                 findFile(EXE_DIR);
-            } else if(source.equals(findSevenZipExeBtn)){
-                findFile(SEVEN_ZIP_DIR);
             } else if(source.equals(moveGameDownBtn)){
                 moveGameDown();
             } else if(source.equals(moveGameUpBtn)){
@@ -630,9 +629,12 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
                 prefs.put(Config.Key.double_click_name.toString(),
                         Config.DB_CLICK_LAUNCH);
             } else if(source.equals(zipRB)){
-                toogleArchiveMode(true);
-            } else if(source.equals(sevenZipRB)){
-                toogleArchiveMode(false);
+                toogleArchiveMode(Config.ZIP_FORMAT);
+            } else if(source.equals(repositoryRB)){
+                toogleArchiveMode(Config.REPOSITORY_FORMAT);
+            } else if(source.equals(compressionCB)){
+                prefs.put(Config.Key.compression.toString(),
+                        Codec.values()[compressionCB.getSelectedIndex()].getName());
             }
         }
     }
@@ -733,24 +735,13 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
             path = prefs.get(g.getExeConfigKey());
             if(path == null)
                 path = g.getExe();
-        } else if(dirTxt == DATA_DIR){
+        } else {
             fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
             fc.setDialogTitle("Select the " + g.getName() + " game data folder");
             
             path = prefs.get(g.getDirConfigKey());
             if(path == null)
                 path = g.getDir();
-        } else {
-            // Create a new 7-zip executable filter
-            fc.setFileFilter(new GenericFileFilter(
-                    new String[] {"7z.exe","7za.exe"},
-                    "7z.exe"));
-            
-            fc.setDialogTitle("Select the 7zip Executable");
-            
-            path = prefs.get(Config.Key.seven_zip_exe.toString());
-            if(path == null)
-                path = Config.get(Config.Key.seven_zip_exe);
         }
         fc.setCurrentDirectory(new File(path));
         
@@ -761,11 +752,9 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
             
             if(dirTxt == EXE_DIR){
                 exeFileTxt.setText(path);
-            } else if(dirTxt == DATA_DIR){
+            } else {
                 path += java.io.File.separator;
                 dataDirTxt.setText(path);
-            } else {
-                sevenZipExeTxt.setText(path);
             }
         }
     }
@@ -958,20 +947,17 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
     }
 
     /**
-     * Toggles if it is possible to edit the 7z settings, and saves the archive
-     * settings.
-     * @param isZip If <tt>true</tt> means that the program is using zip to
-     * archive the profiles, <tt>false</tt> if using 7z.
+     * Saves the archive settings.
+     * @param format The archive format that the program should use to
+     * archive the profiles.
      */
-    private void toogleArchiveMode(boolean isZip){
-        // Toogle the seven zip fields as needed
-        if(isZip == sevenZipExeTxt.isEnabled()){
-            sevenZipExeTxt.setEnabled( !isZip );
-            findSevenZipExeBtn.setEnabled( !isZip );
-        }
+    private void toogleArchiveMode(String format){
+        prefs.put(Config.Key.archive_format.toString(), format);
         
-        prefs.put(Config.Key.archive_format.toString(),
-                isZip ? Config.ZIP_FORMAT : Config.SEVEN_ZIP_FORMAT);
+        // Make sure an old 7z setting's compression is kept
+        if( !prefs.containsKey(Config.Key.compression.toString()))
+            prefs.put(Config.Key.compression.toString(),
+                    Codec.values()[compressionCB.getSelectedIndex()].getName());
     }
     
     private class ConfigTextChangeListener implements javax.swing.event.DocumentListener {
@@ -989,16 +975,10 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
             
             // Get the new text field value
             String newValue;
-            switch(dirCode){
-                case DATA_DIR:
-                    newValue = dataDirTxt.getText();
-                    break;
-                case EXE_DIR:
-                    newValue = exeFileTxt.getText();
-                    break;
-                default:
-                    newValue = sevenZipExeTxt.getText();
-            }
+            if(dirCode == DATA_DIR)
+                newValue = dataDirTxt.getText();
+            else
+                newValue = exeFileTxt.getText();
             
             if(newValue == null || newValue.isEmpty())
                 return;
@@ -1006,16 +986,10 @@ public class ConfigGUI extends javax.swing.JDialog implements java.awt.event.Act
             // Get the config key and previous value
             Game g = GameFactory.getGameFromID(builtInGames[selectedTab]);
             String prefsKey;
-            switch(dirCode){
-                case DATA_DIR:
-                    prefsKey = g.getDirConfigKey();
-                    break;
-                case EXE_DIR:
-                    prefsKey = g.getExeConfigKey();
-                    break;
-                default:
-                    prefsKey = Config.Key.seven_zip_exe.toString();
-            }
+            if(dirCode == DATA_DIR)
+                prefsKey = g.getDirConfigKey();
+            else
+                prefsKey = g.getExeConfigKey();
 
             String value = prefs.containsKey(prefsKey) ? prefs.get(prefsKey)
                     : Config.get(prefsKey);
@@ -0,0 +1,130 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.gui;
+
+import java.awt.EventQueue;
+import java.lang.reflect.InvocationTargetException;
+import javax.swing.JOptionPane;
+
+/**
+ * Shows error messages to the user without flooding them with dialogs.<br/>
+ * <br/>
+ * Only one error dialog is shown at a time. Errors that happen while a
+ * dialog is open are counted, and once it is closed a single dialog tells
+ * the user how many more errors there were. Errors from background threads
+ * are shown on the event dispatch thread without waiting for the user, so a
+ * bulk operation keeps running while its errors are reported.
+ *
+ * @author Curtis Oakley
+ */
+public final class ErrorDialogs {
+    
+    private static final Object lock = new Object();
+    private static boolean showing = false;
+    private static int suppressed = 0;
+    
+    private ErrorDialogs(){}
+    
+    /**
+     * Shows an error message. When called from the event dispatch thread the
+     * dialog is shown before this returns, unless another error dialog is
+     * already open.
+     * @param msg The message to show.
+     */
+    public static void show(final String msg){
+        synchronized(lock){
+            if(showing){
+                suppressed++;
+                return;
+            }
+            showing = true;
+        }
+        
+        if(EventQueue.isDispatchThread()){
+            display(msg);
+        } else {
+            EventQueue.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    display(msg);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Shows an error message and waits for the user to close it. Used for
+     * errors that will stop the program.
+     * @param msg The message to show.
+     */
+    public static void showAndWait(final String msg){
+        Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                showDialog(msg);
+            }
+        };
+        
+        if(EventQueue.isDispatchThread()){
+            r.run();
+        } else {
+            try {
+                EventQueue.invokeAndWait(r);
+            } catch(InterruptedException ie){
+                Thread.currentThread().interrupt();
+            } catch(InvocationTargetException ite){
+                // The dialog couldn't be shown, the error is still logged
+            }
+        }
+    }
+    
+    /** Shows the message, followed by a count of the errors it hid. */
+    private static void display(String msg){
+        boolean done = false;
+        try {
+            while( !done){
+                showDialog(msg);
+                
+                int more;
+                synchronized(lock){
+                    more = suppressed;
+                    suppressed = 0;
+                    done = (more == 0);
+                    if(done)
+                        showing = false;
+                }
+                msg = (more == 1 ? "1 more error" : more + " more errors")
+                        + " occured while this message was open.\n"
+                        + "See the file 'error.log' for the details.";
+            }
+        } finally {
+            if( !done){
+                // The dialog couldn't be shown, don't block the ones after it
+                synchronized(lock){
+                    showing = false;
+                }
+            }
+        }
+    }
+    
+    private static void showDialog(String msg){
+        JOptionPane.showMessageDialog(null,
+                msg,
+                "Error",
+                JOptionPane.ERROR_MESSAGE);
+    }
+}
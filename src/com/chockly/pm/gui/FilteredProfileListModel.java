@@ -0,0 +1,219 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.gui;
+
+import com.chockly.pm.Profile;
+import com.chockly.pm.ProfileSearchIndex;
+import java.util.Arrays;
+import java.util.BitSet;
+import javax.swing.AbstractListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+/**
+ * A view of a {@link SortedProfileListModel} showing only the profiles that
+ * match a search.<br/>
+ * <br/>
+ * The view doesn't copy the profiles, it holds the rows of the underlying
+ * model that match, in order. Searches are looked up in the
+ * {@link ProfileSearchIndex}, and changes to the underlying model are applied
+ * a row at a time. Without a search the underlying model is passed through
+ * as is.
+ * @author Curtis Oakley
+ */
+public class FilteredProfileListModel extends AbstractListModel<Profile> implements ListDataListener {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final SortedProfileListModel source;
+    private String search = null;
+    /** The rows of the source model that match the search, in order. */
+    private int[] rows = new int[0];
+    private int size = 0;
+    
+    /**
+     * Creates a new FilteredProfileListModel without a search.
+     * @param source The model to filter.
+     */
+    public FilteredProfileListModel(SortedProfileListModel source){
+        this.source = source;
+        source.addListDataListener(this);
+    }
+    
+    /**
+     * Changes the search used to filter the profiles.
+     * @param search The text to search for, an empty or <tt>null</tt>
+     * search shows all the profiles.
+     */
+    public void setSearch(String search){
+        if(search != null && search.trim().isEmpty())
+            search = null;
+        if(search == null ? this.search == null : search.equals(this.search))
+            return;
+        
+        int oldSize = getSize();
+        this.search = search;
+        
+        if(search != null){
+            int[] ids = ProfileSearchIndex.getInstance().search(search);
+            int sourceSize = source.getSize();
+            if(rows.length < sourceSize)
+                rows = new int[sourceSize];
+            size = 0;
+            
+            if(ids.length < sourceSize / 8){
+                // Few matches, look each one up
+                for(int i=0; i<ids.length; i++){
+                    int row = source.indexOf(ids[i]);
+                    if(row != -1)
+                        rows[size++] = row;
+                }
+                Arrays.sort(rows, 0, size);
+            } else {
+                BitSet matches = new BitSet();
+                for(int i=0; i<ids.length; i++){
+                    matches.set(ids[i]);
+                }
+                for(int row=0; row<sourceSize; row++){
+                    if(matches.get(source.getElementAt(row).getID()))
+                        rows[size++] = row;
+                }
+            }
+        }
+        
+        if(oldSize > 0)
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        if(getSize() > 0)
+            fireIntervalAdded(this, 0, getSize() - 1);
+    }
+    
+    /**
+     * Gets the current search.
+     * @return The text being searched for, or <tt>null</tt> if all the
+     * profiles are shown.
+     */
+    public String getSearch(){
+        return search;
+    }
+    
+    /**
+     * Finds the row of a profile.
+     * @param p The profile to find.
+     * @return The index of the profile, or <tt>-1</tt> if it isn't shown.
+     */
+    public int indexOf(Profile p){
+        int row = source.indexOf(p);
+        if(search == null || row == -1)
+            return row;
+        return Math.max(-1, Arrays.binarySearch(rows, 0, size, row));
+    }
+    
+    /**
+     * Checks if the model has any profiles.
+     * @return <tt>true</tt> if no profiles are shown.
+     */
+    public boolean isEmpty(){
+        return getSize() == 0;
+    }
+    
+    @Override
+    public int getSize() {
+        return search == null ? source.getSize() : size;
+    }
+    
+    @Override
+    public Profile getElementAt(int index) {
+        return source.getElementAt(search == null ? index : rows[index]);
+    }
+    
+    @Override
+    public void intervalAdded(ListDataEvent e) {
+        if(search == null){
+            fireIntervalAdded(this, e.getIndex0(), e.getIndex1());
+            return;
+        }
+        
+        int added = e.getIndex1() - e.getIndex0() + 1;
+        shiftRows(e.getIndex0(), added);
+        
+        for(int row=e.getIndex0(); row<=e.getIndex1(); row++){
+            if(ProfileSearchIndex.matches(source.getElementAt(row), search))
+                insertRow(row);
+        }
+    }
+    
+    @Override
+    public void intervalRemoved(ListDataEvent e) {
+        if(search == null){
+            fireIntervalRemoved(this, e.getIndex0(), e.getIndex1());
+            return;
+        }
+        
+        for(int row=e.getIndex1(); row>=e.getIndex0(); row--){
+            int index = Arrays.binarySearch(rows, 0, size, row);
+            if(index >= 0){
+                System.arraycopy(rows, index+1, rows, index, size-index-1);
+                size--;
+                fireIntervalRemoved(this, index, index);
+            }
+        }
+        shiftRows(e.getIndex1() + 1, e.getIndex0() - e.getIndex1() - 1);
+    }
+    
+    @Override
+    public void contentsChanged(ListDataEvent e) {
+        if(search == null){
+            fireContentsChanged(this, e.getIndex0(), e.getIndex1());
+            return;
+        }
+        
+        for(int row=e.getIndex0(); row<=e.getIndex1(); row++){
+            int index = Arrays.binarySearch(rows, 0, size, row);
+            boolean matches = ProfileSearchIndex.matches(source.getElementAt(row), search);
+            if(index >= 0 && matches){
+                fireContentsChanged(this, index, index);
+            } else if(index >= 0){
+                System.arraycopy(rows, index+1, rows, index, size-index-1);
+                size--;
+                fireIntervalRemoved(this, index, index);
+            } else if(matches){
+                insertRow(row);
+            }
+        }
+    }
+    
+    /** Adds a source row to the view. */
+    private void insertRow(int row){
+        int index = -Arrays.binarySearch(rows, 0, size, row) - 1;
+        if(size == rows.length)
+            rows = Arrays.copyOf(rows, Math.max(16, size * 2));
+        System.arraycopy(rows, index, rows, index+1, size-index);
+        rows[index] = row;
+        size++;
+        fireIntervalAdded(this, index, index);
+    }
+    
+    /** Moves the source rows at or after <tt>from</tt> by <tt>offset</tt>. */
+    private void shiftRows(int from, int offset){
+        int index = Arrays.binarySearch(rows, 0, size, from);
+        if(index < 0)
+            index = -index - 1;
+        for(int i=index; i<size; i++){
+            rows[i] += offset;
+        }
+    }
+}
@@ -62,4 +62,12 @@ public class GenericFileFilter extends FileFilter {
     public String getDescription() {
         return description;
     }
+    
+    /**
+     * Gets the first extension accepted by this filter.
+     * @return The extension, in lower case and without the period.
+     */
+    public String getDefaultExtension() {
+        return extensions[0];
+    }
 }
@@ -17,6 +17,7 @@
 package com.chockly.pm.gui;
 
 import com.chockly.pm.*;
+import com.chockly.pm.backup.HardLinkSnapshots;
 import com.chockly.pm.games.CustomGame;
 import com.chockly.pm.games.Game;
 import com.chockly.pm.games.GameFactory;
@@ -39,7 +40,8 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         // CUSTOM CODE
         this.gameID = gameId;
         pf = ProfileFactory.getInstance();
-        profileListModel = new javax.swing.DefaultListModel();
+        profileListModel = new SortedProfileListModel();
+        filteredListModel = new FilteredProfileListModel(profileListModel);
         // END CUSTOM CODE
         
         initComponents();
@@ -70,6 +72,38 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         // Create the default profile icon
         defaultProfileIcon = new ImageIcon("profiles/default.png");
 
+        // Keep the menus in step with the profile list as profiles change
+        profileListModel.addListDataListener(new javax.swing.event.ListDataListener() {
+            @Override
+            public void intervalAdded(javax.swing.event.ListDataEvent e) {
+                exportProfilesMenuItem.setEnabled(true);
+            }
+            @Override
+            public void intervalRemoved(javax.swing.event.ListDataEvent e) {
+                exportProfilesMenuItem.setEnabled( !profileListModel.isEmpty());
+            }
+            @Override
+            public void contentsChanged(javax.swing.event.ListDataEvent e) {
+                // Nothing to update
+            }
+        });
+        
+        // Filter the profile list as the search is typed
+        searchTxt.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                searchProfiles();
+            }
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                searchProfiles();
+            }
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {
+                // Only the text matters
+            }
+        });
+
         // Create the game tabs
         buildTabs();
         
@@ -97,6 +131,7 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
     private void initComponents() {
 
         mainPanel = new javax.swing.JPanel();
+        searchTxt = new javax.swing.JTextField();
         profileListScrollPane = new javax.swing.JScrollPane();
         profileList = new javax.swing.JList();
         launchGameBtn = new javax.swing.JButton();
@@ -111,6 +146,8 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         jSeparator4 = new javax.swing.JPopupMenu.Separator();
         makeShortcutPopupMenuItem = new javax.swing.JMenuItem();
         backupProfilePopupMenuItem = new javax.swing.JMenuItem();
+        snapshotPopupMenuItem = new javax.swing.JMenuItem();
+        restoreProfilePopupMenuItem = new javax.swing.JMenuItem();
         separator4 = new javax.swing.JPopupMenu.Separator();
         deleteProfilePopupMenuItem = new javax.swing.JMenuItem();
         tabPane = new javax.swing.JTabbedPane();
@@ -128,6 +165,7 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         editProfileMenuItem = new javax.swing.JMenuItem();
         chngeImgMenuItem = new javax.swing.JMenuItem();
         makeShortcutMenuItem = new javax.swing.JMenuItem();
+        makeAllShortcutsMenuItem = new javax.swing.JMenuItem();
         separator3 = new javax.swing.JSeparator();
         deleteProfileMenuItem = new javax.swing.JMenuItem();
         customGameMenu = new javax.swing.JMenu();
@@ -141,6 +179,9 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         toolsMenu = new javax.swing.JMenu();
         deactivateMenuItem = new javax.swing.JMenuItem();
         backupProfileMenuItem = new javax.swing.JMenuItem();
+        snapshotMenuItem = new javax.swing.JMenuItem();
+        manageSnapshotsMenuItem = new javax.swing.JMenuItem();
+        restoreProfileMenuItem = new javax.swing.JMenuItem();
         jSeparator3 = new javax.swing.JPopupMenu.Separator();
         exportProfilesMenuItem = new javax.swing.JMenuItem();
         importProfileMenuItem = new javax.swing.JMenuItem();
@@ -150,7 +191,9 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         helpMenuItem = new javax.swing.JMenuItem();
         aboutMenuItem = new javax.swing.JMenuItem();
 
-        profileList.setModel(profileListModel);
+        searchTxt.setToolTipText("Search the profiles by name or folder");
+
+        profileList.setModel(filteredListModel);
         profileList.setCellRenderer(new ProfileListRenderer());
         profileList.addMouseListener(new java.awt.event.MouseAdapter() {
             public void mouseClicked(java.awt.event.MouseEvent evt) {
@@ -184,7 +227,9 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
             mainPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
             .addGroup(mainPanelLayout.createSequentialGroup()
                 .addContainerGap()
-                .addComponent(profileListScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 157, Short.MAX_VALUE)
+                .addGroup(mainPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(searchTxt, javax.swing.GroupLayout.DEFAULT_SIZE, 157, Short.MAX_VALUE)
+                    .addComponent(profileListScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 157, Short.MAX_VALUE))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(mainPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addGroup(mainPanelLayout.createSequentialGroup()
@@ -208,7 +253,10 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
                         .addGroup(mainPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                             .addComponent(infoTxt, javax.swing.GroupLayout.Alignment.TRAILING)
                             .addComponent(progressBar, javax.swing.GroupLayout.Alignment.TRAILING, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
-                    .addComponent(profileListScrollPane, javax.swing.GroupLayout.Alignment.TRAILING))
+                    .addGroup(mainPanelLayout.createSequentialGroup()
+                        .addComponent(searchTxt, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(profileListScrollPane)))
                 .addContainerGap())
         );
 
@@ -244,6 +292,15 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         backupProfilePopupMenuItem.setText("Backup");
         backupProfilePopupMenuItem.addActionListener(this);
         profilePopupMenu.add(backupProfilePopupMenuItem);
+
+        snapshotPopupMenuItem.setIcon(new javax.swing.ImageIcon(getClass().getResource("/com/chockly/pm/resources/vise-drawer.png"))); // NOI18N
+        snapshotPopupMenuItem.setText("Snapshot");
+        snapshotPopupMenuItem.addActionListener(this);
+        profilePopupMenu.add(snapshotPopupMenuItem);
+
+        restoreProfilePopupMenuItem.setText("Restore...");
+        restoreProfilePopupMenuItem.addActionListener(this);
+        profilePopupMenu.add(restoreProfilePopupMenuItem);
         profilePopupMenu.add(separator4);
 
         deleteProfilePopupMenuItem.setIcon(new javax.swing.ImageIcon(getClass().getResource("/com/chockly/pm/resources/cross-script.png"))); // NOI18N
@@ -327,6 +384,11 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         makeShortcutMenuItem.setEnabled(false);
         makeShortcutMenuItem.addActionListener(this);
         profileMenu.add(makeShortcutMenuItem);
+
+        makeAllShortcutsMenuItem.setIcon(new javax.swing.ImageIcon(getClass().getResource("/com/chockly/pm/resources/chain--plus.png"))); // NOI18N
+        makeAllShortcutsMenuItem.setText("Create Shortcuts for All Profiles");
+        makeAllShortcutsMenuItem.addActionListener(this);
+        profileMenu.add(makeAllShortcutsMenuItem);
         profileMenu.add(separator3);
 
         deleteProfileMenuItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_D, java.awt.event.InputEvent.CTRL_MASK));
@@ -384,6 +446,22 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         backupProfileMenuItem.setEnabled(false);
         backupProfileMenuItem.addActionListener(this);
         toolsMenu.add(backupProfileMenuItem);
+
+        snapshotMenuItem.setIcon(new javax.swing.ImageIcon(getClass().getResource("/com/chockly/pm/resources/vise-drawer.png"))); // NOI18N
+        snapshotMenuItem.setText("Take Snapshot");
+        snapshotMenuItem.setEnabled(false);
+        snapshotMenuItem.addActionListener(this);
+        toolsMenu.add(snapshotMenuItem);
+
+        manageSnapshotsMenuItem.setText("Manage Snapshots...");
+        manageSnapshotsMenuItem.setEnabled(false);
+        manageSnapshotsMenuItem.addActionListener(this);
+        toolsMenu.add(manageSnapshotsMenuItem);
+
+        restoreProfileMenuItem.setText("Restore Backup...");
+        restoreProfileMenuItem.setEnabled(false);
+        restoreProfileMenuItem.addActionListener(this);
+        toolsMenu.add(restoreProfileMenuItem);
         toolsMenu.add(jSeparator3);
 
         exportProfilesMenuItem.setIcon(new javax.swing.ImageIcon(getClass().getResource("/com/chockly/pm/resources/card-export.png"))); // NOI18N
@@ -455,10 +533,11 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
             
             previousTab = currentTab;
 
-            // Check the game for profile changes
-            checkForProfileDirChanges();
-            
+            // Show the known profiles now, and check the game for profile
+            // changes in the background
             updateProfileList();
+            
+            checkForProfileDirChanges();
 
             // Check if button and menu items need to be changed
             if(profileList.getSelectedIndex() == -1)
@@ -473,9 +552,12 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
     }//GEN-LAST:event_formWindowClosing
 
     private void profileListValueChanged(javax.swing.event.ListSelectionEvent evt) {//GEN-FIRST:event_profileListValueChanged
-        // If a profile is selected update the UI
+        // Update the UI when a profile is selected, or when the selected
+        // profile is removed or filtered out of the list
         if(profileList.getSelectedIndex() >= 0)
             setProfileIsSelected(true);
+        else if( !evt.getValueIsAdjusting())
+            setProfileIsSelected(false);
     }//GEN-LAST:event_profileListValueChanged
 
     private void profileListMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_profileListMouseClicked
@@ -555,8 +637,10 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
     private javax.swing.JButton launchGameBtn;
     private javax.swing.JMenuItem launchMenuItem;
     private javax.swing.JPanel mainPanel;
+    private javax.swing.JMenuItem makeAllShortcutsMenuItem;
     private javax.swing.JMenuItem makeShortcutMenuItem;
     private javax.swing.JMenuItem makeShortcutPopupMenuItem;
+    private javax.swing.JMenuItem manageSnapshotsMenuItem;
     private javax.swing.JMenuBar menuBar;
     private javax.swing.JMenuItem newGameMenuItem;
     private javax.swing.JMenuItem newProfileMenuItem;
@@ -569,11 +653,16 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
     private javax.swing.JPopupMenu profilePopupMenu;
     private javax.swing.JProgressBar progressBar;
     private javax.swing.JMenuItem renameProfileMenuItem;
+    private javax.swing.JMenuItem restoreProfileMenuItem;
+    private javax.swing.JMenuItem restoreProfilePopupMenuItem;
+    private javax.swing.JTextField searchTxt;
     private javax.swing.JSeparator separator1;
     private javax.swing.JSeparator separator2;
     private javax.swing.JSeparator separator3;
     private javax.swing.JPopupMenu.Separator separator4;
     private javax.swing.JPopupMenu.Separator separator5;
+    private javax.swing.JMenuItem snapshotMenuItem;
+    private javax.swing.JMenuItem snapshotPopupMenuItem;
     private javax.swing.JTabbedPane tabPane;
     private javax.swing.JMenu toolsMenu;
     private javax.swing.JMenuItem uninstallMenuItem;
@@ -585,12 +674,20 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
     private javax.swing.Popup currentPopup;
     private boolean popupOn = false;
     
-    private final javax.swing.DefaultListModel profileListModel;
+    private final SortedProfileListModel profileListModel;
+    private final FilteredProfileListModel filteredListModel;
     private final ImageIcon defaultProfileIcon;
+    private final ThumbnailCache thumbnails = ThumbnailCache.getInstance();
     
     private final ProfileFactory pf;
     
     private JFileChooser xmlChooser = null;
+    private ProfileBackup runningBackup = null;
+    private ProfileRestore runningRestore = null;
+    private ProfileDirScan runningScan = null;
+    private ProfileAutoSetup runningAutoSetup = null;
+    private ActivationTask runningActivation = null;
+    private SnapshotTask runningSnapshot = null;
     
     private int previousTab = 0;
     private boolean[] tabProfilesChecked = null;
@@ -638,12 +735,20 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
                 deleteProfile();
             } else if(source.equals(makeShortcutMenuItem) || source.equals(makeShortcutPopupMenuItem)){
                 createShortcut();
+            } else if(source.equals(makeAllShortcutsMenuItem)){
+                createAllShortcuts();
             } else if(source.equals(renameProfileMenuItem)){
                 showRenamePopup();
             } else if(source.equals(deactivateMenuItem)){
                 deactivateProfiles();
             } else if(source.equals(backupProfileMenuItem) || source.equals(backupProfilePopupMenuItem)){
                 backupProfile();
+            } else if(source.equals(snapshotMenuItem) || source.equals(snapshotPopupMenuItem)){
+                takeSnapshot();
+            } else if(source.equals(manageSnapshotsMenuItem)){
+                manageSnapshots();
+            } else if(source.equals(restoreProfileMenuItem) || source.equals(restoreProfilePopupMenuItem)){
+                restoreProfile();
             } else if(source.equals(uninstallMenuItem)){
                 uninstall();
             } else if(source.equals(newGameMenuItem)){
@@ -675,46 +780,335 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
     /** Activates the currently selected profile. */
     private void activateProfile(){
         Profile p = (Profile) profileList.getSelectedValue();
-        GameFactory.getGameFromID(gameID).activateProfile( p );
-        updateProfileList();
+        startActivation(new ActivationTask(GameFactory.getGameFromID(gameID), p, false));
+    }
+    
+    /**
+     * Runs an activation in the background, since it waits for any backup
+     * of the game to finish first.
+     */
+    private void startActivation(ActivationTask task){
+        if(runningActivation != null){
+            infoTxt.setText("Wait for the profile to finish activating.");
+            return;
+        }
+        
+        runningActivation = task;
+        infoTxt.setText(task.profile == null ? "Deactivating profiles..."
+                : "Activating " + task.profile.getName() + "...");
+        setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
+        task.execute();
     }
     
-    /** Runs the current game's autoSetupProfiles. */
+    /**
+     * Runs the current game's autoSetupProfiles in the background, or cancels
+     * it if it is already running.
+     */
     private void autoCreateProfiles(){
+        if(runningAutoSetup != null){
+            infoTxt.setText("Cancelling auto create...");
+            runningAutoSetup.cancel(false);
+            return;
+        }
+        
+        // The progress bar is in use
+        if(runningBackup != null || runningRestore != null){
+            infoTxt.setText("Wait for the running task to finish before auto creating profiles.");
+            return;
+        }
+        
         // Confirm auto create profiles
         if( JOptionPane.showConfirmDialog(this,
                 "Are you sure that you want to auto create profiles?",
                 "Auto Create Profiles",
                 JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION)
         {
-            setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
-            
-            GameFactory.getGameFromID(gameID).autoSetupProfiles();
+            // Update the GUI
+            infoTxt.setText("Creating profiles...");
+            progressBar.setValue(0);
+            progressBar.setIndeterminate(false);
+            progressBar.setVisible(true);
+            autoProfileMenuItem.setText("Cancel Auto Create");
             
-            updateProfileList();
-            
-            setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
+            runningAutoSetup = new ProfileAutoSetup(gameID, this);
+            runningAutoSetup.addPropertyChangeListener(new java.beans.PropertyChangeListener() {
+                @Override
+                public void propertyChange(PropertyChangeEvent evt) {
+                    // Keep the cancelling message until the setup stops
+                    if(evt.getSource() != runningAutoSetup || runningAutoSetup.isCancelled())
+                        return;
+                    
+                    if(ProfileBackup.STATUS_PROPERTY.equals(evt.getPropertyName()))
+                        infoTxt.setText((String) evt.getNewValue());
+                    else
+                        progressBarUpdate(evt);
+                }
+            });
+            runningAutoSetup.execute();
         }
     }
     
-    /** Creates an archive file of the currently selected profile. */
+    /**
+     * Signals that auto create has completed, updates the GUI to reflect this.
+     * Called once the setup has stopped, even when it was cancelled.
+     */
+    public void finishAutoCreateProfiles(){
+        boolean cancelled = runningAutoSetup.isCancelled();
+        int created = runningAutoSetup.getCreatedCount();
+        runningAutoSetup = null;
+        
+        progressBar.setVisible(false);
+        autoProfileMenuItem.setText("Auto Create Profiles");
+        
+        infoTxt.setText((cancelled ? "Auto create cancelled, " : "")
+                + created + " profiles created");
+    }
+    
+    /**
+     * Creates an archive file of the currently selected profile, or cancels
+     * the backup if one is already running.
+     */
     private void backupProfile(){
+        if(runningBackup != null){
+            infoTxt.setText("Cancelling backup...");
+            runningBackup.cancel(true);
+            return;
+        }
+        
+        // The progress bar is in use
+        if(runningAutoSetup != null || runningRestore != null){
+            infoTxt.setText("Wait for the running task to finish before backing up.");
+            return;
+        }
         
         // Update the GUI
         infoTxt.setText("Creating backup...");
         progressBar.setValue(0);
         progressBar.setIndeterminate(false); 
         progressBar.setVisible(true);
-        backupProfileMenuItem.setEnabled(false);
+        backupProfileMenuItem.setText("Cancel Backup");
+        backupProfilePopupMenuItem.setText("Cancel Backup");
         
-        ProfileBackup pb = new ProfileBackup((Profile) profileList.getSelectedValue(), this);
-        pb.addPropertyChangeListener(new java.beans.PropertyChangeListener() {
+        runningBackup = new ProfileBackup((Profile) profileList.getSelectedValue(), this);
+        runningBackup.addPropertyChangeListener(new java.beans.PropertyChangeListener() {
             @Override
             public void propertyChange(PropertyChangeEvent evt) {
-                progressBarUpdate(evt);
+                // Ignore updates from a backup that has been cancelled
+                if(evt.getSource() != runningBackup || runningBackup.isCancelled())
+                    return;
+                
+                if(ProfileBackup.STATUS_PROPERTY.equals(evt.getPropertyName()))
+                    infoTxt.setText((String) evt.getNewValue());
+                else
+                    progressBarUpdate(evt);
             }
         });
-        pb.execute();
+        runningBackup.execute();
+    }
+    
+    /** Takes a hard link snapshot of the currently selected profile in the background. */
+    private void takeSnapshot(){
+        if(runningSnapshot != null){
+            infoTxt.setText("Wait for the snapshot to finish.");
+            return;
+        }
+        
+        Profile p = (Profile) profileList.getSelectedValue();
+        infoTxt.setText("Taking snapshot...");
+        runningSnapshot = new SnapshotTask(p);
+        runningSnapshot.execute();
+    }
+    
+    /**
+     * Shows the snapshots of the currently selected profile, letting the user
+     * restore, delete, or prune them.
+     */
+    private void manageSnapshots(){
+        Profile p = (Profile) profileList.getSelectedValue();
+        Game g = GameFactory.getGameFromID(p.getGameID());
+        HardLinkSnapshots snapshots = getSnapshots(g);
+        
+        String[] options = {"Restore", "Delete", "Prune", "Close"};
+        
+        while(true){
+            String[] names = snapshots.listSnapshots(p.getSaveDir());
+            if(names.length == 0){
+                JOptionPane.showMessageDialog(this,
+                        p.getName() + " has no snapshots.",
+                        "Snapshots", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            
+            // Show the snapshots newest first, by the time they were taken
+            String[] labels = new String[names.length];
+            for(int i=0; i<names.length; i++){
+                labels[i] = formatSnapshotName(names[names.length - 1 - i]);
+            }
+            
+            javax.swing.JList<String> list = new javax.swing.JList<String>(labels);
+            list.setSelectionMode(javax.swing.ListSelectionModel.SINGLE_SELECTION);
+            list.setSelectedIndex(0);
+            list.setVisibleRowCount(8);
+            
+            int choice = JOptionPane.showOptionDialog(this,
+                    new Object[] {"Snapshots of " + p.getName() + ":",
+                        new javax.swing.JScrollPane(list)},
+                    "Snapshots", JOptionPane.DEFAULT_OPTION,
+                    JOptionPane.PLAIN_MESSAGE, null, options, options[3]);
+            
+            int selected = list.getSelectedIndex();
+            String name = selected == -1 ? null : names[names.length - 1 - selected];
+            
+            if(choice == 0 && name != null){
+                if(JOptionPane.showConfirmDialog(this,
+                        "Replace the saves in " + p.getName()
+                        + " with the snapshot from " + labels[selected] + "?",
+                        "Restore Snapshot", JOptionPane.YES_NO_OPTION)
+                        != JOptionPane.YES_OPTION)
+                    continue;
+                
+                startRestore(new ProfileRestore(p, snapshots, name, this));
+                return;
+            } else if(choice == 1 && name != null){
+                if(JOptionPane.showConfirmDialog(this,
+                        "Delete the snapshot of " + p.getName()
+                        + " from " + labels[selected] + "?",
+                        "Delete Snapshot", JOptionPane.YES_NO_OPTION)
+                        != JOptionPane.YES_OPTION)
+                    continue;
+                
+                if( !snapshots.deleteSnapshot(p.getSaveDir(), name))
+                    Main.handleException("Unable to delete the snapshot.",
+                            null, Main.WARN_LEVEL);
+            } else if(choice == 2){
+                String keep = JOptionPane.showInputDialog(this,
+                        "How many of the newest snapshots should be kept?", "5");
+                if(keep == null)
+                    continue;
+                try {
+                    int deleted = snapshots.prune(p.getSaveDir(),
+                            Math.max(0, Integer.parseInt(keep.trim())));
+                    infoTxt.setText(deleted + " snapshots deleted");
+                } catch(NumberFormatException nfe){
+                    infoTxt.setText("Invalid number of snapshots.");
+                }
+            } else if(choice != 0 && choice != 1){
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Restores the currently selected profile from its backup. If the
+     * profile has been backed up to the backup repository the user picks
+     * which snapshot to restore.
+     */
+    private void restoreProfile(){
+        if( !canRestore())
+            return;
+        
+        Profile p = (Profile) profileList.getSelectedValue();
+        String[] names = ProfileRestore.listSnapshots(p);
+        boolean hasZip = ProfileRestore.hasZipBackup(p);
+        boolean useRepository = names.length > 0 && ( !hasZip
+                || Config.REPOSITORY_FORMAT.equals(Config.get(Config.Key.archive_format)));
+        
+        String snapshot = null;
+        String from;
+        if(useRepository){
+            // Offer the snapshots newest first
+            String[] labels = new String[names.length];
+            for(int i=0; i<names.length; i++){
+                labels[i] = formatSnapshotName(names[names.length - 1 - i]);
+            }
+            Object choice = JOptionPane.showInputDialog(this,
+                    "Choose the backup of " + p.getName() + " to restore:",
+                    "Restore Backup", JOptionPane.PLAIN_MESSAGE, null,
+                    labels, labels[0]);
+            if(choice == null)
+                return;
+            
+            int selected = java.util.Arrays.asList(labels).indexOf(choice);
+            snapshot = names[names.length - 1 - selected];
+            from = "the backup from " + choice;
+        } else if(hasZip){
+            from = "its latest backup";
+        } else {
+            JOptionPane.showMessageDialog(this,
+                    p.getName() + " has not been backed up.",
+                    "Restore Backup", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
+        if(JOptionPane.showConfirmDialog(this,
+                "Replace the saves in " + p.getName() + " with " + from + "?",
+                "Restore Backup", JOptionPane.YES_NO_OPTION)
+                != JOptionPane.YES_OPTION)
+            return;
+        
+        startRestore(new ProfileRestore(p, snapshot, this));
+    }
+    
+    /**
+     * Checks that nothing else is using the progress bar, so a restore can be
+     * started.
+     */
+    private boolean canRestore(){
+        if(runningRestore != null)
+            return false;
+        
+        // The progress bar is in use
+        if(runningBackup != null || runningAutoSetup != null){
+            infoTxt.setText("Wait for the running task to finish before restoring.");
+            return false;
+        }
+        return true;
+    }
+    
+    /** Runs a profile restore in the background, showing its progress. */
+    private void startRestore(ProfileRestore restore){
+        if( !canRestore())
+            return;
+        
+        // Update the GUI
+        infoTxt.setText("Restoring backup...");
+        progressBar.setValue(0);
+        progressBar.setIndeterminate(false);
+        progressBar.setVisible(true);
+        restoreProfileMenuItem.setEnabled(false);
+        restoreProfilePopupMenuItem.setEnabled(false);
+        
+        runningRestore = restore;
+        runningRestore.addPropertyChangeListener(new java.beans.PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if(ProfileBackup.STATUS_PROPERTY.equals(evt.getPropertyName()))
+                    infoTxt.setText((String) evt.getNewValue());
+                else
+                    progressBarUpdate(evt);
+            }
+        });
+        runningRestore.execute();
+    }
+    
+    /**
+     * Converts the name of a snapshot into the date and time it was taken.
+     * @param name The name of the snapshot.
+     * @return The time the snapshot was taken, or the name if it isn't a
+     * time.
+     */
+    private static String formatSnapshotName(String name){
+        try {
+            return java.text.DateFormat.getDateTimeInstance().format(
+                    new java.text.SimpleDateFormat("yyyyMMdd-HHmmss-SSS").parse(name));
+        } catch(java.text.ParseException pe){
+            return name;
+        }
+    }
+    
+    /** Gets the hard link snapshots of a game. */
+    private static HardLinkSnapshots getSnapshots(Game g){
+        return new HardLinkSnapshots(new File(g.getDir() + HardLinkSnapshots.SNAPSHOT_DIR));
     }
     
     /** Initializes the game tabs. */
@@ -775,15 +1169,25 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         int result = fc.showOpenDialog(this);
         if (result == javax.swing.JFileChooser.APPROVE_OPTION) {
             p.setImage(fc.getSelectedFile().getAbsolutePath());
-            profileImage.setIcon(new ImageIcon(p.getImage()));
+            pf.update(p);
+            showProfileImage(p);
         }
     }
     
     /**
-     * Checks the current tab's profile directory for changes.
-     * @return True if profiles where changed.
+     * Checks the current tab's profile directory for changes in the
+     * background. Any check still running for another tab is cancelled, and
+     * that tab is checked again the next time it is shown. The profile list
+     * is updated once the changes have been applied.
      */
-    private boolean checkForProfileDirChanges(){
+    private void checkForProfileDirChanges(){
+        if(runningScan != null){
+            // Check the tab again when it is next shown
+            runningScan.cancel(true);
+            tabProfilesChecked[runningScan.tab] = false;
+            runningScan = null;
+        }
+        
         if(tabProfilesChecked != null){
             // Increase the size of the tabProfilesChecked array.
             if(tabProfilesChecked.length <= previousTab)
@@ -793,10 +1197,10 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
                     pf.getProfiles(gameID).length > 0)
             {
                 tabProfilesChecked[previousTab] = true;
-                return IOUtils.checkForProfileDirChanges(gameID);
+                runningScan = new ProfileDirScan(gameID, previousTab);
+                runningScan.execute();
             }
         }
-        return false;
     }
 
     /**
@@ -826,10 +1230,8 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
                     dir = dir.substring(0, dir.length()-1) + x;
             }
 
-            // Add the profile and update the profile list
+            // Add the profile, the profile list is updated by the add
             pf.add(name, dir, gameID);
-
-            updateProfileList();
         }
     }
     
@@ -849,6 +1251,20 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         }
     }
     
+    /** Creates desktop shortcuts for all of the current game's profiles. */
+    private void createAllShortcuts(){
+        Profile[] profiles = ProfileFactory.getInstance().getProfiles(gameID);
+        
+        try {
+            IOUtils.createShortcuts(profiles);
+            
+            infoTxt.setText(profiles.length + " shortcuts created");
+            
+        } catch(Exception ex){
+            Main.handleException("Unable to create the shortcuts", ex, Main.WARN_LEVEL);
+        }
+    }
+    
     /** Deactivates the profiles for the currently selected games. */
     private void deactivateProfiles(){
         if( JOptionPane.showConfirmDialog(this,
@@ -857,9 +1273,7 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
                 JOptionPane.YES_NO_OPTION)
                 == JOptionPane.YES_OPTION )
         {
-            GameFactory.getGameFromID(gameID).deactivateProfiles();
-            updateProfileList();
-            setProfileIsSelected(false);
+            startActivation(new ActivationTask(GameFactory.getGameFromID(gameID), null, false));
         }
     }
     
@@ -904,16 +1318,11 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
                 IOUtils.deleteProfileDir(p);
             }
             
-            // Delete the profile and remove it from the list.
+            // Delete the profile, this removes it from the list.
             pf.remove(p);
-            profileListModel.removeElementAt(
-                    profileList.getSelectedIndex());
             
             // Indicate that no profile is selected.
             setProfileIsSelected(false);
-            
-            // Enabled/disable the export profiles buttons as needed
-            exportProfilesMenuItem.setEnabled( !profileListModel.isEmpty());
         }
     }
     
@@ -928,46 +1337,76 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         this.dispose();
     }
     
+    @Override
+    public void dispose(){
+        // A resident Profile Manager can open the window again, so stop
+        // listening for profile changes
+        profileListModel.dispose();
+        super.dispose();
+    }
+    
+    /**
+     * Exports or imports the current game's profiles or the current custom
+     * game.<br/>
+     * <br/>
+     * The file format is picked from the file's extension. Files ending in
+     * .pmb or .pmz are read and written as binary bundles (see
+     * {@link BundleUtils}), all other files are treated as XML.
+     * @param isExport True to export, false to import.
+     * @param isProfiles True to export/import profiles, false for games.
+     */
     private void exportImport(boolean isExport, boolean isProfiles){
         if(xmlChooser == null){
             xmlChooser = new JFileChooser();
+            xmlChooser.addChoosableFileFilter(new GenericFileFilter(
+                    new String[] {BundleUtils.GZIP_BUNDLE_EXT},
+                    "Compressed bundle (*.pmz)"));
+            xmlChooser.addChoosableFileFilter(new GenericFileFilter(
+                    new String[] {BundleUtils.BUNDLE_EXT},
+                    "Bundle (*.pmb)"));
             xmlChooser.setFileFilter(new GenericFileFilter(new String[] {"xml"}, "xml"));
         }
         
         if(isExport){
             if(xmlChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION){
-                File file = xmlChooser.getSelectedFile();
-
-                String fName = file.getName();
-                if( !fName.contains(".") || 
-                        !fName.substring(fName.lastIndexOf('.')).equalsIgnoreCase(".xml"))
-                    fName += ".xml";
-
-                String out = file.getParent() + File.separator + fName;
+                String out = getSelectedExportFile();
+                boolean bundle = BundleUtils.isBundle(out);
+                boolean gzip = BundleUtils.isGzipBundle(out);
                 
                 if(isProfiles){
-                    XMLUtils.ProfilesToXML(pf.getProfiles(gameID), out);
+                    Profile[] profiles = pf.getProfiles(gameID);
+                    if(bundle)
+                        BundleUtils.ProfilesToBundle(profiles, out, gzip);
+                    else
+                        XMLUtils.ProfilesToXML(profiles, out);
                 } else {
                     CustomGame[] g = {(CustomGame) GameFactory.getGameFromID(gameID)};
             
-                    XMLUtils.GamesToXML(g, out);
+                    if(bundle)
+                        BundleUtils.GamesToBundle(g, out, gzip);
+                    else
+                        XMLUtils.GamesToXML(g, out);
                 }
 
                 infoTxt.setText("Export complete.");
             }
         } else {
             if(xmlChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION){
+                String in = xmlChooser.getSelectedFile().getAbsolutePath();
+                boolean bundle = BundleUtils.isBundle(in);
+                
                 if(isProfiles){
-                    Profile[] profiles = XMLUtils.ProfilesFromXML(xmlChooser.getSelectedFile().getAbsolutePath());
+                    Profile[] profiles = bundle ? BundleUtils.ProfilesFromBundle(in)
+                            : XMLUtils.ProfilesFromXML(in);
                     if(profiles == null || profiles.length == 0){
                         infoTxt.setText("No profiles imported.");
                         return;
                     } else {
                         pf.addAll(profiles, gameID);
-                        updateProfileList();
                     }
                 } else {
-                    CustomGame[] games = XMLUtils.GamesFromXML(xmlChooser.getSelectedFile().getAbsolutePath());
+                    CustomGame[] games = bundle ? BundleUtils.GamesFromBundle(in)
+                            : XMLUtils.GamesFromXML(in);
                     if(games == null || games.length == 0){
                         infoTxt.setText("No games imported.");
                         return;
@@ -982,24 +1421,66 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         }
     }
     
-    /** Signals that a profile backup has completed, updates the GUI to reflect this. */
+    /**
+     * Signals that a profile backup has completed, updates the GUI to reflect
+     * this. Called once the backup has stopped, even when it was cancelled.
+     */
     public void finishBackupProfile(){
+        boolean cancelled = runningBackup != null && runningBackup.isCancelled();
+        String summary = runningBackup != null ? runningBackup.getSummary() : "";
+        runningBackup = null;
+        
         progressBar.setVisible(false);
+        backupProfileMenuItem.setText("Backup Profile");
+        backupProfilePopupMenuItem.setText("Backup");
+        backupProfileMenuItem.setEnabled( !profileList.isSelectionEmpty());
         
-        if( !profileList.isSelectionEmpty())
-            backupProfileMenuItem.setEnabled(true);
+        if(cancelled)
+            infoTxt.setText("Backup cancelled");
+        else if(summary.isEmpty())
+            infoTxt.setText("Backup complete");
+        else
+            infoTxt.setText("Backup complete - " + summary);
+    }
+    
+    /** Signals that a profile restore has completed, updates the GUI to reflect this. */
+    public void finishRestoreProfile(){
+        boolean restored = false;
+        try {
+            restored = runningRestore != null && runningRestore.get();
+        } catch(Exception ex){
+            // Failures have already been reported by the restore
+        }
+        runningRestore = null;
+        
+        progressBar.setVisible(false);
+        restoreProfileMenuItem.setEnabled( !profileList.isSelectionEmpty());
+        restoreProfilePopupMenuItem.setEnabled(true);
         
-        infoTxt.setText("Backup complete");
+        infoTxt.setText(restored ? "Backup restored" : "Restore failed");
     }
     
-    private String getSelectedXMLFile(){
+    /**
+     * Gets the file selected in the export file chooser.<br/>
+     * <br/>
+     * If the file doesn't end in one of the supported extensions then the
+     * extension of the selected file filter is appended, defaulting to .xml.
+     * @return The full path of the file to export to.
+     */
+    private String getSelectedExportFile(){
         File file = xmlChooser.getSelectedFile();
 
         String fName = file.getName();
-        if( !fName.contains(".") || 
-                !fName.substring(fName.lastIndexOf('.')).equalsIgnoreCase(".xml"))
-            fName += ".xml";
-
+        String ext = fName.contains(".")
+                ? fName.substring(fName.lastIndexOf('.') + 1).toLowerCase() : "";
+        
+        if( !ext.equals("xml") && !BundleUtils.isBundle(fName)){
+            javax.swing.filechooser.FileFilter filter = xmlChooser.getFileFilter();
+            if(filter instanceof GenericFileFilter)
+                fName += "." + ((GenericFileFilter) filter).getDefaultExtension();
+            else
+                fName += ".xml";
+        }
 
         return file.getParent() + File.separator + fName;
     }
@@ -1010,24 +1491,26 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         Profile p = (Profile) profileList.getSelectedValue();
         Game g = GameFactory.getGameFromID(gameID);
         
-        // Activate
-        if(g.activateProfile( p )){
-
-            // Save the state
-            saveState();
+        // Activate, the game is started once it's done
+        startActivation(new ActivationTask(g, p, true));
+    }
+    
+    /** Starts a game whose profile has been activated. */
+    private void startGame(Game g){
+        // Save the state
+        saveState();
 
-            try {
-                // Launch the game
-                IOUtils.startProgram( g.getExe() );
+        try {
+            // Launch the game
+            GameLauncher.launch(g);
 
-                // Exit if needed
-                if( Boolean.parseBoolean(Config.get(Config.Key.exit_on_launch)) )
-                    this.dispose();
+            // Exit if needed
+            if( Boolean.parseBoolean(Config.get(Config.Key.exit_on_launch)) )
+                this.dispose();
 
-            } catch(java.io.FileNotFoundException fnfe){
-                Main.handleException("The games executable wasn't found.\nMake sure that the correct executable is specified in the settings window.",
-                        fnfe, Main.WARN_LEVEL);
-            }
+        } catch(java.io.FileNotFoundException fnfe){
+            Main.handleException("The games executable wasn't found.\nMake sure that the correct executable is specified in the settings window.",
+                    fnfe, Main.WARN_LEVEL);
         }
     }
     
@@ -1102,27 +1585,54 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
             editProfileMenuItem.setEnabled(yes);
             makeShortcutMenuItem.setEnabled(yes);
             
-            // Enable other buttons
-            backupProfileMenuItem.setEnabled(yes);
+            // Enable other buttons, a running backup can always be cancelled
+            backupProfileMenuItem.setEnabled(yes || runningBackup != null);
+            snapshotMenuItem.setEnabled(yes);
+            manageSnapshotsMenuItem.setEnabled(yes);
+            restoreProfileMenuItem.setEnabled(yes && runningRestore == null);
         }
         
         // Update the profile image as needed
         if(yes){
             // Set the profile image
-            Profile p = (Profile) profileList.getSelectedValue();
             profileImage.setText("");
-            
-            if(p.getImage() == null || p.getImage().isEmpty()){
-                profileImage.setIcon(defaultProfileIcon);
-            } else {
-                profileImage.setIcon(new ImageIcon(p.getImage()));
-            }
+            showProfileImage((Profile) profileList.getSelectedValue());
         } else {
             profileImage.setIcon(null);
             profileImage.setText("Select a Profile");
         }
     }
     
+    /**
+     * Shows a profile's image in the profile image area. Images are loaded
+     * in the background by the {@link ThumbnailCache}, and only shown if the
+     * profile is still selected once the image has loaded.
+     * @param p The profile to show the image of.
+     */
+    private void showProfileImage(Profile p){
+        String image = p.getImage();
+        if(image == null || image.isEmpty()){
+            profileImage.setIcon(defaultProfileIcon);
+            return;
+        }
+        
+        ImageIcon cached = thumbnails.getCached(image);
+        if(cached != null){
+            profileImage.setIcon(cached);
+            return;
+        }
+        
+        profileImage.setIcon(null);
+        thumbnails.load(image, new ThumbnailCache.Listener() {
+            @Override
+            public void thumbnailLoaded(String path, ImageIcon thumbnail) {
+                Profile selected = (Profile) profileList.getSelectedValue();
+                if(selected != null && path.equals(selected.getImage()))
+                    profileImage.setIcon(thumbnail == null ? defaultProfileIcon : thumbnail);
+            }
+        });
+    }
+    
     @Override
     public void setVisible(boolean b){
         super.setVisible(b);
@@ -1132,8 +1642,7 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
             tabProfilesChecked = new boolean[GameFactory.getAllGameIds().length];
             Arrays.fill(tabProfilesChecked, false);
 
-            if(checkForProfileDirChanges())
-                updateProfileList();
+            checkForProfileDirChanges();
         }
     }
     
@@ -1183,18 +1692,37 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         String previousImg = p.getImage();
         
         new EditProfile(this, p).setVisible(true);
+        pf.update(p);
+        selectProfile(p);
         
         // Update the image as needed
-        if( p.getImage() == null ){
-            profileImage.setIcon(defaultProfileIcon);
-        } else {
-            if(previousImg != null && p.getImage().equals(previousImg))
-                return;
-            
-            if(p.getImage().isEmpty())
-                profileImage.setIcon(defaultProfileIcon);
-            else
-                profileImage.setIcon(new ImageIcon(p.getImage()));
+        if(p.getImage() == null || !p.getImage().equals(previousImg))
+            showProfileImage(p);
+    }
+    
+    /**
+     * Filters the profile list by the text in the search box, keeping the
+     * selected profile selected if it is still shown.
+     */
+    private void searchProfiles(){
+        Profile selected = (Profile) profileList.getSelectedValue();
+        
+        filteredListModel.setSearch(searchTxt.getText());
+        
+        if(selected != null)
+            selectProfile(selected);
+    }
+    
+    /**
+     * Selects a profile in the profile list and scrolls to it.
+     * @param p The profile to select. Nothing is selected if the profile
+     * isn't shown.
+     */
+    private void selectProfile(Profile p){
+        int index = filteredListModel.indexOf(p);
+        if(index != -1){
+            profileList.setSelectedIndex(index);
+            profileList.ensureIndexIsVisible(index);
         }
     }
     
@@ -1247,8 +1775,12 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         
         String newName = popupTextField.getText().trim();
         
-        if( !newName.isEmpty())
+        if( !newName.isEmpty() && !newName.equals(p.getName())){
             p.setName(newName);
+            pf.update(p);
+            // Follow the profile to its new place in the list
+            selectProfile(p);
+        }
         
         currentPopup.hide();
     }
@@ -1265,25 +1797,153 @@ public class ProfileManager extends javax.swing.JFrame implements java.awt.event
         }
     }
 
-    /** Rebuilds the profileListModel. */
+    /**
+     * Fills the profileListModel with the current game's profiles. Changes
+     * made after this are applied to the model as they happen.
+     */
     private void updateProfileList(){
-        // Get the profiles
-        Profile[] p = pf.getProfiles(gameID);
+        profileListModel.setGame(gameID);
         
-        // Sort the profiles
-        Arrays.sort(p);
+        // Auto select the active profile
+        int active = profileListModel.indexOfActive();
+        if(active != -1)
+            selectProfile(profileListModel.getElementAt(active));
+    }
+    
+    /**
+     * Activates a profile, or deactivates a game's profiles, off of the event
+     * dispatch thread. Activation waits for a running backup of the game, so
+     * the window stays responsive while it does.
+     */
+    private class ActivationTask extends javax.swing.SwingWorker<Boolean, Void> {
         
-        // Add them to the profileListModel
-        profileListModel.removeAllElements();
-        for(int x=0; x<p.length; x++){
-            profileListModel.addElement(p[x]);
-
-            // Auto select the active profile
-            if(p[x].isActive())
-                profileList.setSelectedIndex(x);
+        private final Game game;
+        /** The profile to activate, <tt>null</tt> to deactivate the game's profiles. */
+        private final Profile profile;
+        private final boolean launch;
+        
+        private ActivationTask(Game game, Profile profile, boolean launch){
+            this.game = game;
+            this.profile = profile;
+            this.launch = launch;
+        }
+        
+        @Override
+        protected Boolean doInBackground() throws Exception {
+            if(profile == null){
+                game.deactivateProfiles();
+                return true;
+            }
+            return game.activateProfile(profile);
         }
         
-        // Enabled/disable the export profiles buttons as needed
-        exportProfilesMenuItem.setEnabled(p.length > 0);
+        @Override
+        protected void done() {
+            runningActivation = null;
+            setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
+            
+            boolean activated;
+            try {
+                activated = get();
+            } catch(Exception ex){
+                Main.handleException("Unable to activate the profile.",
+                        ex, Main.WARN_LEVEL);
+                activated = false;
+            }
+            
+            if(profile == null){
+                infoTxt.setText("Profiles deactivated");
+                setProfileIsSelected(false);
+            } else if( !activated){
+                infoTxt.setText("Unable to activate " + profile.getName());
+            } else {
+                infoTxt.setText(profile.getName() + " activated");
+                if(launch)
+                    startGame(game);
+            }
+        }
+    }
+    
+    /**
+     * Takes a hard link snapshot off of the event dispatch thread. The game
+     * is locked while the profile's folder is walked, so that an activation
+     * can't move the folder part way through.
+     */
+    private class SnapshotTask extends javax.swing.SwingWorker<Integer, Void> {
+        
+        private final Profile profile;
+        
+        private SnapshotTask(Profile profile){
+            this.profile = profile;
+        }
+        
+        /** Returns the number of files that had to be copied. */
+        @Override
+        protected Integer doInBackground() throws Exception {
+            Game g = GameFactory.getGameFromID(profile.getGameID());
+            HardLinkSnapshots snapshots = getSnapshots(g);
+            
+            GameLocks.get(g.getId()).lockInterruptibly();
+            try {
+                snapshots.createSnapshot(profile.getSaveDir(), IOUtils.getProfileDir(g, profile));
+            } finally {
+                GameLocks.unlock(g.getId());
+            }
+            return snapshots.getCopiedCount();
+        }
+        
+        @Override
+        protected void done() {
+            runningSnapshot = null;
+            try {
+                int copied = get();
+                if(copied > 0)
+                    infoTxt.setText("Snapshot taken, " + copied
+                            + " files could not be linked and were copied");
+                else
+                    infoTxt.setText("Snapshot taken");
+            } catch(Exception ex){
+                infoTxt.setText("Snapshot failed");
+                Main.handleException("Unable to take a snapshot of the profile.",
+                        ex instanceof java.util.concurrent.ExecutionException ? ex.getCause() : ex,
+                        Main.WARN_LEVEL);
+            }
+        }
+    }
+    
+    /**
+     * Scans a game's profiles folder for changes off of the event dispatch
+     * thread, and then applies them.
+     */
+    private class ProfileDirScan extends javax.swing.SwingWorker<ProfileDirChanges, Void> {
+        
+        private final byte scanGameID;
+        private final int tab;
+        
+        private ProfileDirScan(byte gameID, int tab){
+            this.scanGameID = gameID;
+            this.tab = tab;
+        }
+        
+        @Override
+        protected ProfileDirChanges doInBackground() throws Exception {
+            return ProfileDirChanges.scan(scanGameID);
+        }
+        
+        @Override
+        protected void done() {
+            // Ignore scans that were cancelled
+            if(runningScan != this)
+                return;
+            runningScan = null;
+            
+            try {
+                // The changes are applied to the list as they are made
+                get().apply();
+            } catch(Exception ex){
+                Main.handleException("Unable to check the profiles folder for changes.",
+                        ex, Main.LOG_LEVEL);
+            }
+        }
     }
 }
@@ -0,0 +1,285 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.gui;
+
+import com.chockly.pm.Profile;
+import com.chockly.pm.ProfileFactory;
+import com.chockly.pm.ProfileListener;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+
+/**
+ * A ListModel holding one game's profiles sorted by name.<br/>
+ * <br/>
+ * The model listens to the {@link ProfileFactory} and applies each change as
+ * a single row insert, remove or update, so the list keeps its selection and
+ * scroll position and only the changed rows are redrawn. The names are
+ * compared using precomputed CollationKeys, ignoring case.<br/>
+ * <br/>
+ * Changes made off of the event dispatch thread are applied on the event
+ * dispatch thread.
+ * @author Curtis Oakley
+ */
+public class SortedProfileListModel extends AbstractListModel<Profile> implements ProfileListener {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final Collator collator;
+    private final List<Entry> entries = new ArrayList<Entry>();
+    /** The entries by profile ID, holds the key each profile was sorted with. */
+    private final Map<Integer, Entry> byId = new HashMap<Integer, Entry>();
+    private byte gameID = -1;
+    
+    /**
+     * Creates a new, empty, SortedProfileListModel and registers it with the
+     * ProfileFactory.
+     */
+    public SortedProfileListModel(){
+        collator = Collator.getInstance();
+        collator.setStrength(Collator.SECONDARY);
+        ProfileFactory.getInstance().addProfileListener(this);
+    }
+    
+    /**
+     * Fills the model with the profiles of a game, replacing any profiles
+     * from the previous game.
+     * @param gameID The ID of the game whose profiles should be shown.
+     */
+    public void setGame(byte gameID){
+        this.gameID = gameID;
+        
+        if( !entries.isEmpty()){
+            int last = entries.size() - 1;
+            entries.clear();
+            byId.clear();
+            fireIntervalRemoved(this, 0, last);
+        }
+        
+        Profile[] p = ProfileFactory.getInstance().getProfiles(gameID);
+        for(int i=0; i<p.length; i++){
+            Entry e = new Entry(p[i]);
+            entries.add(e);
+            byId.put(p[i].getID(), e);
+        }
+        Collections.sort(entries);
+        
+        if( !entries.isEmpty())
+            fireIntervalAdded(this, 0, entries.size() - 1);
+    }
+    
+    /**
+     * Gets the ID of the game whose profiles are shown.
+     * @return The game ID, or <tt>-1</tt> if no game has been set.
+     */
+    public byte getGameID(){
+        return gameID;
+    }
+    
+    /**
+     * Finds the row of a profile.
+     * @param p The profile to find.
+     * @return The index of the profile, or <tt>-1</tt> if it isn't in the
+     * model.
+     */
+    public int indexOf(Profile p){
+        return indexOf(p.getID());
+    }
+    
+    /**
+     * Finds the row of a profile.
+     * @param id The ID of the profile to find.
+     * @return The index of the profile, or <tt>-1</tt> if it isn't in the
+     * model.
+     */
+    public int indexOf(int id){
+        Entry e = byId.get(id);
+        if(e == null)
+            return -1;
+        return Math.max(-1, Collections.binarySearch(entries, e));
+    }
+    
+    /**
+     * Finds the row of the game's active profile.
+     * @return The index of the active profile, or <tt>-1</tt> if none of the
+     * profiles are active.
+     */
+    public int indexOfActive(){
+        for(int i=0; i<entries.size(); i++){
+            if(entries.get(i).profile.isActive())
+                return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * Checks if the model has any profiles.
+     * @return <tt>true</tt> if there are no profiles in the model.
+     */
+    public boolean isEmpty(){
+        return entries.isEmpty();
+    }
+    
+    /**
+     * Stops listening for changes to the profiles. The model should not be
+     * used after it has been disposed.
+     */
+    public void dispose(){
+        ProfileFactory.getInstance().removeProfileListener(this);
+    }
+    
+    @Override
+    public int getSize() {
+        return entries.size();
+    }
+    
+    @Override
+    public Profile getElementAt(int index) {
+        return entries.get(index).profile;
+    }
+    
+    @Override
+    public void profileAdded(final Profile p) {
+        if(SwingUtilities.isEventDispatchThread()){
+            insert(p);
+        } else {
+            SwingUtilities.invokeLater(new Runnable(){
+                @Override
+                public void run() {
+                    insert(p);
+                }
+            });
+        }
+    }
+    
+    @Override
+    public void profileRemoved(final Profile p) {
+        if(SwingUtilities.isEventDispatchThread()){
+            remove(p);
+        } else {
+            SwingUtilities.invokeLater(new Runnable(){
+                @Override
+                public void run() {
+                    remove(p);
+                }
+            });
+        }
+    }
+    
+    @Override
+    public void profileChanged(final Profile p) {
+        if(SwingUtilities.isEventDispatchThread()){
+            update(p);
+        } else {
+            SwingUtilities.invokeLater(new Runnable(){
+                @Override
+                public void run() {
+                    update(p);
+                }
+            });
+        }
+    }
+    
+    /*
+     * The changes can arrive after setGame has already read them from the
+     * ProfileFactory, so each of these treats a repeated change as an update.
+     */
+    
+    private void insert(Profile p){
+        if(p.getGameID() != gameID)
+            return;
+        
+        if(byId.containsKey(p.getID())){
+            update(p);
+            return;
+        }
+        
+        Entry e = new Entry(p);
+        int index = -Collections.binarySearch(entries, e) - 1;
+        entries.add(index, e);
+        byId.put(p.getID(), e);
+        fireIntervalAdded(this, index, index);
+    }
+    
+    private void remove(Profile p){
+        Entry e = byId.remove(p.getID());
+        if(e == null)
+            return;
+        
+        int index = Collections.binarySearch(entries, e);
+        entries.remove(index);
+        fireIntervalRemoved(this, index, index);
+    }
+    
+    private void update(Profile p){
+        Entry old = byId.get(p.getID());
+        if(old == null){
+            insert(p);
+            return;
+        }
+        
+        int index = Collections.binarySearch(entries, old);
+        Entry e = new Entry(p);
+        if(e.compareTo(old) == 0){
+            // Same place in the list, just redraw the row
+            entries.set(index, e);
+            byId.put(p.getID(), e);
+            fireContentsChanged(this, index, index);
+            return;
+        }
+        
+        // The name has changed, move the profile to its new row
+        entries.remove(index);
+        int newIndex = -Collections.binarySearch(entries, e) - 1;
+        entries.add(newIndex, e);
+        byId.put(p.getID(), e);
+        if(newIndex == index){
+            fireContentsChanged(this, index, index);
+        } else {
+            fireIntervalRemoved(this, index, index);
+            fireIntervalAdded(this, newIndex, newIndex);
+        }
+    }
+    
+    /** A profile along with the key it is sorted by. */
+    private class Entry implements Comparable<Entry> {
+        private final Profile profile;
+        private final CollationKey key;
+        
+        private Entry(Profile profile){
+            this.profile = profile;
+            this.key = collator.getCollationKey(profile.getName());
+        }
+        
+        @Override
+        public int compareTo(Entry o) {
+            int c = key.compareTo(o.key);
+            if(c == 0){
+                // Keep profiles with the same name in a consistent order
+                c = profile.getID() < o.profile.getID() ? -1
+                        : (profile.getID() == o.profile.getID() ? 0 : 1);
+            }
+            return c;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.gui;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores thumbnails as raw ARGB pixels in a single memory mapped file, so
+ * they can be shown without decoding them.<br/>
+ * <br/>
+ * The atlas file holds the pixels of each thumbnail one after another, and
+ * an index file next to it, <tt>&lt;atlas&gt;.idx</tt>, records where each
+ * thumbnail starts along with its size and the modification time of the
+ * image it was made from. Reading a thumbnail is a single copy out of the
+ * mapped file.<br/>
+ * <br/>
+ * Adding a thumbnail appends its pixels to the atlas and one record to the
+ * index, where a later record for an image replaces the earlier ones. The
+ * file is grown, and mapped again, in steps of at least a quarter of its
+ * size, since old mappings can't be released until they are garbage
+ * collected. Thumbnails of images that have changed leave their old pixels
+ * and records unused. The unused space is reclaimed when the atlas is
+ * opened, once it takes up more room than the thumbnails that are still
+ * used.
+ * @author Curtis Oakley
+ */
+public class ThumbnailAtlas {
+    
+    /** Magic number at the start of the atlas and index, 'PMTA'. */
+    private static final int MAGIC = 0x504D5441;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final String INDEX_EXT = ".idx";
+    /** The smallest step the atlas is grown by, in bytes. */
+    private static final long MIN_GROWTH = 4L << 20;
+    
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private RandomAccessFile atlas = null;
+    private FileChannel channel = null;
+    private MappedByteBuffer mapped = null;
+    private DataOutputStream index = null;
+    private long end = HEADER_SIZE;
+    /** The number of records in the index, including replaced ones. */
+    private int records = 0;
+    /** If the index ended with a whole record when it was read. */
+    private boolean indexComplete = false;
+    
+    /**
+     * Creates a new ThumbnailAtlas. The atlas needs to be opened before it
+     * can be used.
+     * @param file The atlas file.
+     */
+    public ThumbnailAtlas(File file){
+        this.file = file;
+    }
+    
+    /**
+     * Opens the atlas, creating it if needed. An atlas that can't be read is
+     * started over.
+     * @throws IOException If the atlas can't be opened or created.
+     */
+    public synchronized void open() throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if( !dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Unable to create the directory " + dir);
+        
+        boolean rewriteIndex = false;
+        if( !readIndex()){
+            entries.clear();
+            rewriteIndex = true;
+        } else if( !indexComplete || records > entries.size() * 2){
+            // Drop a record cut short by a crash, or the replaced records
+            rewriteIndex = true;
+        }
+        
+        // Reclaim the space used by old thumbnails before mapping the file
+        long used = 0;
+        for(Entry e : entries.values()){
+            used += e.getLength();
+        }
+        if(end - HEADER_SIZE - used > used){
+            try {
+                compact();
+                rewriteIndex = false;
+            } catch(IOException ioe){
+                // Start over with an empty atlas
+                entries.clear();
+            }
+        }
+        
+        atlas = new RandomAccessFile(file, "rw");
+        channel = atlas.getChannel();
+        if(entries.isEmpty() || atlas.length() < end){
+            // Start a new atlas
+            entries.clear();
+            end = HEADER_SIZE;
+            atlas.setLength(0);
+            atlas.writeInt(MAGIC);
+            atlas.writeInt(VERSION);
+            rewriteIndex = true;
+        }
+        if(rewriteIndex)
+            saveIndex();
+        
+        index = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(getIndexFile(), true)));
+        map(Math.max(atlas.length(), end));
+    }
+    
+    /**
+     * Closes the atlas.
+     */
+    public synchronized void close(){
+        mapped = null;
+        if(index != null){
+            try {
+                index.close();
+            } catch(IOException ioe){
+                // The records have already been flushed
+            }
+            index = null;
+        }
+        if(atlas != null){
+            try {
+                atlas.close();
+            } catch(IOException ioe){
+                // Nothing left to do with it
+            }
+            atlas = null;
+            channel = null;
+        }
+    }
+    
+    /**
+     * Gets a thumbnail from the atlas.
+     * @param path The path of the image.
+     * @param lastModified The image's modification time.
+     * @return The thumbnail, or <tt>null</tt> if the atlas doesn't have a
+     * thumbnail of the current version of the image.
+     */
+    public synchronized BufferedImage get(String path, long lastModified){
+        Entry e = entries.get(path);
+        if(e == null || e.lastModified != lastModified || channel == null)
+            return null;
+        
+        BufferedImage img = new BufferedImage(e.width, e.height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        ByteBuffer data = mapped.duplicate();
+        data.position((int) e.offset);
+        data.asIntBuffer().get(pixels);
+        return img;
+    }
+    
+    /**
+     * Adds a thumbnail to the atlas, replacing any thumbnail of an older
+     * version of the image.
+     * @param path The path of the image.
+     * @param lastModified The image's modification time.
+     * @param thumbnail The thumbnail.
+     * @throws IOException If the thumbnail can't be written.
+     */
+    public synchronized void put(String path, long lastModified, BufferedImage thumbnail)
+            throws IOException
+    {
+        if(channel == null)
+            throw new IOException("The thumbnail atlas is not open.");
+        
+        int width = thumbnail.getWidth();
+        int height = thumbnail.getHeight();
+        int[] pixels = thumbnail.getRGB(0, 0, width, height, null, 0, width);
+        
+        ByteBuffer data = ByteBuffer.allocate(pixels.length * 4);
+        data.asIntBuffer().put(pixels);
+        long offset = end;
+        if(offset + data.capacity() > mapped.capacity())
+            map(Math.max(offset + data.capacity(),
+                    mapped.capacity() + Math.max(MIN_GROWTH, mapped.capacity() / 4)));
+        
+        while(data.hasRemaining()){
+            channel.write(data, offset + data.position());
+        }
+        end += pixels.length * 4L;
+        
+        Entry entry = new Entry(lastModified, offset, width, height);
+        entries.put(path, entry);
+        
+        // The pixels are written before the record that points at them
+        writeRecord(index, path, entry);
+        index.flush();
+        records++;
+    }
+    
+    /**
+     * Grows the atlas file if needed and maps it into memory.
+     * @param size The number of bytes to map.
+     */
+    private void map(long size) throws IOException {
+        if(atlas.length() < size)
+            atlas.setLength(size);
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+    
+    /**
+     * Reads the index.
+     * @return <tt>false</tt> if there is no index or it can't be used.
+     */
+    private boolean readIndex(){
+        File f = getIndexFile();
+        if( !f.isFile() || !file.isFile())
+            return false;
+        
+        try {
+            // The index is small, read it in one go to know where each
+            // record ends
+            byte[] bytes = new byte[(int) f.length()];
+            DataInputStream in = new DataInputStream(new FileInputStream(f));
+            try {
+                in.readFully(bytes);
+            } finally {
+                in.close();
+            }
+            
+            ByteArrayInputStream buffer = new ByteArrayInputStream(bytes);
+            in = new DataInputStream(buffer);
+            if(in.readInt() != MAGIC || in.readInt() != VERSION)
+                return false;
+            
+            long length = file.length();
+            int recordEnd = HEADER_SIZE;
+            end = HEADER_SIZE;
+            records = 0;
+            while(true){
+                String path;
+                Entry e;
+                try {
+                    path = in.readUTF();
+                    e = new Entry(in.readLong(), in.readLong(),
+                            in.readInt(), in.readInt());
+                } catch(EOFException eof){
+                    // A record cut short by a crash has to be dropped
+                    // before more records are appended
+                    indexComplete = recordEnd == bytes.length;
+                    break;
+                }
+                recordEnd = bytes.length - buffer.available();
+                records++;
+                
+                long entryEnd = e.offset + e.getLength();
+                if(e.offset < HEADER_SIZE || entryEnd > length)
+                    return false;
+                entries.put(path, e);
+                end = Math.max(end, entryEnd);
+            }
+        } catch(IOException ioe){
+            return false;
+        }
+        return true;
+    }
+    
+    /** Saves the index, replacing the old index only once it is written. */
+    private void saveIndex() throws IOException {
+        File f = getIndexFile();
+        File tmp = new File(f.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for(Map.Entry<String, Entry> e : entries.entrySet()){
+                writeRecord(out, e.getKey(), e.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        
+        f.delete();
+        if( !tmp.renameTo(f))
+            throw new IOException("Unable to save the thumbnail index " + f);
+        records = entries.size();
+    }
+    
+    /** Writes the index record of a thumbnail. */
+    private static void writeRecord(DataOutputStream out, String path, Entry e)
+            throws IOException
+    {
+        out.writeUTF(path);
+        out.writeLong(e.lastModified);
+        out.writeLong(e.offset);
+        out.writeInt(e.width);
+        out.writeInt(e.height);
+    }
+    
+    /** Copies the used thumbnails into a new atlas. */
+    private void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileChannel in = new FileInputStream(file).getChannel();
+        try {
+            RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+            try {
+                out.setLength(0);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                FileChannel outChannel = out.getChannel();
+                
+                long offset = HEADER_SIZE;
+                for(Entry e : entries.values()){
+                    long length = e.getLength();
+                    long copied = 0;
+                    while(copied < length){
+                        copied += in.transferTo(e.offset + copied, length - copied, outChannel);
+                    }
+                    e.offset = offset;
+                    offset += length;
+                }
+                end = offset;
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        
+        if( !file.delete() || !tmp.renameTo(file)){
+            entries.clear();
+            throw new IOException("Unable to replace the thumbnail atlas " + file);
+        }
+        saveIndex();
+    }
+    
+    private File getIndexFile(){
+        return new File(file.getPath() + INDEX_EXT);
+    }
+    
+    /** The location of a thumbnail in the atlas. */
+    private static class Entry {
+        private final long lastModified;
+        private long offset;
+        private final int width;
+        private final int height;
+        
+        private Entry(long lastModified, long offset, int width, int height){
+            this.lastModified = lastModified;
+            this.offset = offset;
+            this.width = width;
+            this.height = height;
+        }
+        
+        private long getLength(){
+            return width * (long) height * 4;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.gui;
+
+import com.chockly.pm.Config;
+import com.chockly.pm.IOUtils;
+import com.chockly.pm.Main;
+import com.chockly.pm.log.LogEntry;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+/**
+ * Loads scaled down copies of the profile images in the background.<br/>
+ * <br/>
+ * Images are decoded off of the event dispatch thread, and large images are
+ * subsampled while they are read so the full size image is never held in
+ * memory. The most recently used thumbnails are kept in memory through soft
+ * references, so the garbage collector can reclaim them when memory is low.
+ * Every thumbnail is also saved in a memory mapped {@link ThumbnailAtlas},
+ * keyed by the image's path and modification time. Thumbnails in the atlas
+ * are ready to show without decoding anything, so they are returned right
+ * away by {@link #getCached(java.lang.String)}, and images are only decoded
+ * again after they change.
+ * @author Curtis Oakley
+ */
+public class ThumbnailCache {
+    
+    /** The largest width or height of a thumbnail, in pixels. */
+    public static final int THUMBNAIL_SIZE = 200;
+    /** The atlas file the thumbnails are saved in. */
+    public static final String ATLAS_FILE = Config.PROFILE_DATA_DIR + "thumbnails.atlas";
+    
+    /**
+     * The folder older versions saved each thumbnail in as a PNG. The PNGs
+     * are named from a hash of the image's path, so they can't be moved into
+     * the atlas.
+     */
+    private static final String OLD_THUMBNAIL_DIR = Config.PROFILE_DATA_DIR + "thumbnails";
+    
+    /** The number of thumbnails kept in memory. */
+    private static final int MEMORY_ENTRIES = 64;
+    
+    private static ThumbnailCache instance = null;
+    
+    private final ThumbnailAtlas atlas;
+    private final Map<String, SoftReference<ImageIcon>> memory;
+    private final Map<String, List<Listener>> pending = new HashMap<String, List<Listener>>();
+    private final ExecutorService loader;
+    
+    /**
+     * Receives thumbnails once they have been loaded.
+     */
+    public interface Listener {
+        /**
+         * Called on the event dispatch thread when a thumbnail is ready.
+         * @param path The path of the image.
+         * @param thumbnail The image's thumbnail, or <tt>null</tt> if the
+         * image couldn't be read.
+         */
+        public void thumbnailLoaded(String path, ImageIcon thumbnail);
+    }
+    
+    private ThumbnailCache(ThumbnailAtlas atlas){
+        this.atlas = atlas;
+        memory = new LinkedHashMap<String, SoftReference<ImageIcon>>(MEMORY_ENTRIES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SoftReference<ImageIcon>> eldest) {
+                return size() > MEMORY_ENTRIES;
+            }
+        };
+        loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "thumbnails");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+    
+    /**
+     * Returns the ThumbnailCache instance.
+     * @return The ThumbnailCache.
+     */
+    public static synchronized ThumbnailCache getInstance(){
+        if(instance == null){
+            ThumbnailAtlas atlas = new ThumbnailAtlas(new File(ATLAS_FILE));
+            try {
+                atlas.open();
+            } catch(IOException ioe){
+                // Thumbnails will still be cached in memory
+                Main.handleException("Unable to open the thumbnail atlas.",
+                        ioe, Main.LOG_LEVEL);
+                atlas = null;
+            }
+            instance = new ThumbnailCache(atlas);
+            instance.deleteOldThumbnails();
+        }
+        return instance;
+    }
+    
+    /** Deletes the thumbnails saved as PNGs in the background. */
+    private void deleteOldThumbnails(){
+        final File dir = new File(OLD_THUMBNAIL_DIR);
+        if( !dir.isDirectory())
+            return;
+        
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                if( !IOUtils.deleteFile(dir))
+                    Main.handleException("Unable to delete the old thumbnails in " + dir + ".",
+                            null, Main.LOG_LEVEL);
+            }
+        });
+    }
+    
+    /**
+     * Gets a thumbnail if it is already in memory or in the atlas.
+     * @param path The path of the image.
+     * @return The image's thumbnail, or <tt>null</tt> if it needs to be
+     * loaded.
+     */
+    public ImageIcon getCached(String path){
+        File image = new File(path);
+        String key = getKey(image);
+        synchronized(memory){
+            SoftReference<ImageIcon> ref = memory.get(key);
+            ImageIcon icon = ref == null ? null : ref.get();
+            if(icon != null)
+                return icon;
+        }
+        
+        BufferedImage thumbnail = atlas == null ? null
+                : atlas.get(image.getAbsolutePath(), image.lastModified());
+        return thumbnail == null ? null : remember(key, thumbnail);
+    }
+    
+    /**
+     * Loads a thumbnail in the background. If the thumbnail is already in
+     * memory the listener is called right away.
+     * @param path The path of the image.
+     * @param listener Receives the thumbnail on the event dispatch thread.
+     */
+    public void load(final String path, Listener listener){
+        ImageIcon cached = getCached(path);
+        if(cached != null){
+            listener.thumbnailLoaded(path, cached);
+            return;
+        }
+        
+        // Only decode each image once, however many times it is asked for
+        synchronized(pending){
+            List<Listener> listeners = pending.get(path);
+            if(listeners != null){
+                listeners.add(listener);
+                return;
+            }
+            listeners = new ArrayList<Listener>();
+            listeners.add(listener);
+            pending.put(path, listeners);
+        }
+        
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                ImageIcon thumbnail = null;
+                try {
+                    thumbnail = loadThumbnail(new File(path));
+                } catch(RuntimeException re){
+                    Main.handleException(new LogEntry(Main.LOG_LEVEL, "loadThumbnail",
+                            "Unable to load the thumbnail.", re).path(path));
+                } catch(OutOfMemoryError oom){
+                    Main.handleException(new LogEntry(Main.LOG_LEVEL, "loadThumbnail",
+                            "Not enough memory to load the thumbnail.", oom).path(path));
+                } finally {
+                    // Otherwise the image would never be loaded again
+                    finishLoad(path, thumbnail);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Stops waiting on an image and hands its thumbnail to everything that
+     * asked for it.
+     * @param thumbnail The thumbnail, or <tt>null</tt> if it couldn't be loaded.
+     */
+    private void finishLoad(final String path, final ImageIcon thumbnail){
+        final List<Listener> listeners;
+        synchronized(pending){
+            listeners = pending.remove(path);
+        }
+        if(listeners == null)
+            return;
+        
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                for(Listener l : listeners){
+                    l.thumbnailLoaded(path, thumbnail);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Loads a thumbnail from the atlas, or creates it from the image.
+     */
+    private ImageIcon loadThumbnail(File image){
+        if( !image.isFile())
+            return null;
+        
+        ImageIcon cached = getCached(image.getPath());
+        if(cached != null)
+            return cached;
+        
+        // Read the modification time first so a change while reading is
+        // picked up next time
+        long lastModified = image.lastModified();
+        BufferedImage thumbnail = null;
+        try {
+            thumbnail = createThumbnail(image);
+        } catch(IOException ioe){
+            Main.handleException(new LogEntry(Main.LOG_LEVEL, "loadThumbnail",
+                    "Unable to read the image.", ioe).path(image.getPath()));
+        }
+        if(thumbnail == null)
+            return null;
+        
+        if(atlas != null){
+            try {
+                atlas.put(image.getAbsolutePath(), lastModified, thumbnail);
+            } catch(IOException ioe){
+                Main.handleException(new LogEntry(Main.LOG_LEVEL, "saveThumbnail",
+                        "Unable to save a thumbnail.", ioe).path(image.getPath()));
+            }
+        }
+        return remember(getKey(image), thumbnail);
+    }
+    
+    /** Keeps a thumbnail in memory. */
+    private ImageIcon remember(String key, BufferedImage thumbnail){
+        ImageIcon icon = new ImageIcon(thumbnail);
+        synchronized(memory){
+            memory.put(key, new SoftReference<ImageIcon>(icon));
+        }
+        return icon;
+    }
+    
+    /**
+     * Reads an image scaled to fit within the {@link #THUMBNAIL_SIZE}.
+     * @return The scaled image, or <tt>null</tt> if the image's format isn't
+     * supported.
+     */
+    static BufferedImage createThumbnail(File image) throws IOException {
+        ImageInputStream in = ImageIO.createImageInputStream(image);
+        if(in == null)
+            return null;
+        
+        BufferedImage img;
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if( !readers.hasNext())
+                return null;
+            
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                
+                // Skip pixels while reading, leaving the final scaling
+                // enough detail to look smooth
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(width, height) / (THUMBNAIL_SIZE * 2);
+                if(step > 1)
+                    param.setSourceSubsampling(step, step, 0, 0);
+                
+                img = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+        
+        return scale(img);
+    }
+    
+    /** Scales an image down to fit within the thumbnail size. */
+    private static BufferedImage scale(BufferedImage img){
+        int width = img.getWidth();
+        int height = img.getHeight();
+        double ratio = Math.min(1.0, (double) THUMBNAIL_SIZE / Math.max(width, height));
+        int w = Math.max(1, (int) Math.round(width * ratio));
+        int h = Math.max(1, (int) Math.round(height * ratio));
+        
+        BufferedImage thumbnail = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = thumbnail.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING,
+                    RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(img, 0, 0, w, h, null);
+        } finally {
+            g.dispose();
+        }
+        return thumbnail;
+    }
+    
+    /**
+     * Gets the key of an image in memory, made from its path and its
+     * modification time.
+     */
+    private static String getKey(File image){
+        return image.getAbsolutePath() + '|' + image.lastModified();
+    }
+}
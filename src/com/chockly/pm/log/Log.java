@@ -0,0 +1,131 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.log;
+
+import com.chockly.pm.Main;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes entries to the error log without making the caller wait for the
+ * disk.<br/>
+ * <br/>
+ * Entries are put into a fixed size queue which a background thread writes
+ * to <tt>error.log</tt>, so logging from many threads never locks and a bulk
+ * operation can log thousands of problems without slowing down. The log file
+ * is rotated once it grows past the size in the <tt>log_max_size</tt>
+ * setting (see {@link LogWriter}).<br/>
+ * <br/>
+ * If the queue fills up, entries at {@link Main#LOG_LEVEL} are dropped and
+ * counted, while warnings wait for the writer to catch up. Logging only
+ * writes the entry, informing the user is left to
+ * {@link Main#handleException(java.lang.String, java.lang.Throwable, byte)}.
+ *
+ * @author Curtis Oakley
+ */
+public final class Log {
+    
+    /** The number of entries that can be waiting to be written. */
+    private static final int CAPACITY = 4096;
+    /** How long to wait for the log to be written when flushing, in seconds. */
+    private static final long FLUSH_WAIT = 5;
+    
+    private static final LogRing<LogEntry> ring = new LogRing<LogEntry>(CAPACITY);
+    private static final LogWriter writer = new LogWriter(ring);
+    
+    private Log(){}
+    
+    /**
+     * Logs an error.
+     * @param level The error level.
+     * @param operation The name of the operation that failed. Can be null, see
+     * {@link #log(com.chockly.pm.log.LogEntry)}.
+     * @param message A message describing the error. Can be null.
+     * @param exception The exception that occurred. Can be null.
+     */
+    public static void log(byte level, String operation, String message, Throwable exception){
+        log(new LogEntry(level, operation, message, exception));
+    }
+    
+    /**
+     * Logs an entry. This returns as soon as the entry has been queued.<br/>
+     * <br/>
+     * Warnings without an operation are logged with the name of the method
+     * that logged them, which means capturing the caller's stack. That is
+     * too slow for {@link Main#LOG_LEVEL} entries, which can be logged once
+     * per file, so they use the method their exception came through, or
+     * <tt>unknown</tt>. Code that logs often should name its operation.
+     * @param entry The entry to log.
+     */
+    public static void log(LogEntry entry){
+        if(entry.operation == null && entry.level > Main.LOG_LEVEL){
+            // Only filled in, the stack isn't walked until it is written
+            entry.origin = new Throwable();
+        }
+        
+        writer.start();
+        if( !ring.offer(entry)){
+            if(entry.level == Main.LOG_LEVEL){
+                writer.dropped();
+                return;
+            }
+            // Don't lose warnings, wait for the writer to make room
+            do {
+                writer.wake();
+                Thread.yield();
+            } while( !ring.offer(entry));
+        }
+        writer.wake();
+    }
+    
+    /**
+     * Waits for the entries that have been logged to be written to disk.
+     * @return <tt>true</tt> if the entries were written, <tt>false</tt> if
+     * the writer didn't finish in time.
+     */
+    public static boolean flush(){
+        return sync(false);
+    }
+    
+    /**
+     * Writes the logged entries to disk and then closes the log file. The
+     * file is opened again if anything else is logged.
+     * @return <tt>true</tt> if the entries were written, <tt>false</tt> if
+     * the writer didn't finish in time.
+     */
+    public static boolean close(){
+        return sync(true);
+    }
+    
+    private static boolean sync(boolean close){
+        if( !writer.isStarted() || writer.isWriterThread())
+            return true;
+        
+        LogWriter.Marker marker = new LogWriter.Marker(close);
+        while( !ring.offer(marker)){
+            writer.wake();
+            Thread.yield();
+        }
+        writer.wake();
+        
+        try {
+            return marker.done.await(FLUSH_WAIT, TimeUnit.SECONDS);
+        } catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
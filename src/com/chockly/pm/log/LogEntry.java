@@ -0,0 +1,120 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.log;
+
+/**
+ * A single entry in the error log.<br/>
+ * <br/>
+ * Along with the message and exception an entry can record the operation
+ * that was running and the game, profile and path it was working on, so that
+ * entries from bulk operations can be told apart. The fields are set with
+ * the chained setters, for example:
+ * <pre>
+ * Log.log(new LogEntry(Main.WARN_LEVEL, "moveFile", "Unable to move the save.", ioe)
+ *         .game(gameID).path(save.getPath()));
+ * </pre>
+ * Entries are handed to the log's writer thread, so they should not be
+ * changed once they have been logged.
+ *
+ * @author Curtis Oakley
+ */
+public class LogEntry {
+    
+    final long time;
+    final byte level;
+    final String message;
+    final Throwable exception;
+    String operation;
+    byte gameID = 0;
+    int profileID = 0;
+    String path = null;
+    /** Where the entry was logged from, used when no operation is given. */
+    Throwable origin = null;
+    
+    /**
+     * Creates a new log entry.
+     * @param level The error level, one of {@link com.chockly.pm.Main#LOG_LEVEL},
+     * {@link com.chockly.pm.Main#WARN_LEVEL} or
+     * {@link com.chockly.pm.Main#FATAL_LEVEL}.
+     * @param operation The name of the operation that failed. Can be null, in
+     * which case it is found from the stack when it's cheap to do so (see
+     * {@link Log#log(com.chockly.pm.log.LogEntry)}).
+     * @param message A message describing the error. Can be null.
+     * @param exception The exception that occurred. Can be null.
+     */
+    public LogEntry(byte level, String operation, String message, Throwable exception){
+        this.time = System.currentTimeMillis();
+        this.level = level;
+        this.operation = operation;
+        this.message = message;
+        this.exception = exception;
+    }
+    
+    /**
+     * Sets the game that the operation was working on.
+     * @param gameID The ID of the game.
+     * @return This entry.
+     */
+    public LogEntry game(byte gameID){
+        this.gameID = gameID;
+        return this;
+    }
+    
+    /**
+     * Sets the profile that the operation was working on.
+     * @param profileID The ID of the profile.
+     * @return This entry.
+     */
+    public LogEntry profile(int profileID){
+        this.profileID = profileID;
+        return this;
+    }
+    
+    /**
+     * Sets the file or folder that the operation was working on.
+     * @param path The path of the file.
+     * @return This entry.
+     */
+    public LogEntry path(String path){
+        this.path = path;
+        return this;
+    }
+    
+    /**
+     * Gets the error level of the entry.
+     * @return The error level.
+     */
+    public byte getLevel(){
+        return level;
+    }
+    
+    /**
+     * Gets the entry's message.
+     * @return The message, or null if there isn't one.
+     */
+    public String getMessage(){
+        return message;
+    }
+    
+    /**
+     * Gets the entry's exception.
+     * @return The exception, or null if there isn't one.
+     */
+    public Throwable getException(){
+        return exception;
+    }
+}
@@ -0,0 +1,111 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue of log entries that any number of threads can add to
+ * without locking, and that a single writer thread takes from.<br/>
+ * <br/>
+ * Each slot has a sequence number that says whose turn it is to use the
+ * slot. A thread adding an entry claims the next slot by moving the tail
+ * forward, stores the entry and then publishes it by moving the slot's
+ * sequence on. The writer only takes an entry once it has been published.
+ * When the queue is full {@link #offer(Object)} fails instead of waiting.
+ *
+ * @author Curtis Oakley
+ */
+class LogRing<E> {
+    
+    private final int mask;
+    private final AtomicReferenceArray<E> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    /** Only used by the writer thread. */
+    private long head = 0;
+    
+    /**
+     * Creates a new LogRing.
+     * @param capacity The number of entries the queue can hold, must be a
+     * power of two.
+     */
+    LogRing(int capacity){
+        if(Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("The capacity must be a power of two.");
+        
+        mask = capacity - 1;
+        slots = new AtomicReferenceArray<E>(capacity);
+        sequences = new AtomicLongArray(capacity);
+        for(int i=0; i<capacity; i++){
+            sequences.set(i, i);
+        }
+    }
+    
+    /**
+     * Adds an entry to the queue. Safe to call from any thread.
+     * @param e The entry to add.
+     * @return <tt>true</tt> if the entry was added, <tt>false</tt> if the
+     * queue is full.
+     */
+    boolean offer(E e){
+        while(true){
+            long t = tail.get();
+            int i = (int) t & mask;
+            long seq = sequences.get(i);
+            if(seq == t){
+                if(tail.compareAndSet(t, t + 1)){
+                    slots.set(i, e);
+                    sequences.set(i, t + 1);
+                    return true;
+                }
+            } else if(seq < t){
+                // The writer hasn't taken the entry from a lap ago
+                return false;
+            }
+            // Another thread claimed the slot first, try the next one
+        }
+    }
+    
+    /**
+     * Takes the oldest entry from the queue. Must only be called from the
+     * writer thread.
+     * @return The entry, or null if the queue is empty.
+     */
+    E poll(){
+        int i = (int) head & mask;
+        if(sequences.get(i) != head + 1)
+            return null;// Empty, or the entry is still being stored
+        
+        E e = slots.get(i);
+        slots.set(i, null);
+        sequences.set(i, head + mask + 1);
+        head++;
+        return e;
+    }
+    
+    /**
+     * Checks if the queue looks empty. Used by the writer before it sleeps.
+     * @return <tt>true</tt> if no entries have been added that haven't been
+     * taken.
+     */
+    boolean isEmpty(){
+        return tail.get() == head;
+    }
+}
@@ -0,0 +1,314 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.log;
+
+import com.chockly.pm.Config;
+import com.chockly.pm.Main;
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The background thread that writes the queued log entries to
+ * <tt>error.log</tt>.<br/>
+ * <br/>
+ * The file is only flushed once the queue has been emptied, so a burst of
+ * entries is written together. When the file grows past the
+ * <tt>log_max_size</tt> setting it is renamed to <tt>error.1.log</tt>, the
+ * older logs are moved down (<tt>error.1.log</tt> to <tt>error.2.log</tt>
+ * and so on) and the oldest past the <tt>log_files</tt> setting is deleted.
+ *
+ * @author Curtis Oakley
+ */
+class LogWriter implements Runnable {
+    
+    private static final String LOG_NAME = "error";
+    private static final String LOG_EXT = ".log";
+    /** How long the writer sleeps when there is nothing to write, in ms. */
+    private static final long IDLE_WAIT = 1000;
+    /** The number of entries written between checks of the file's size. */
+    private static final int SIZE_CHECK_INTERVAL = 256;
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    
+    private final LogRing<LogEntry> ring;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile Thread thread = null;
+    private volatile boolean sleeping = false;
+    
+    // Only used by the writer thread
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy hh:mm:ss a");
+    private final StringBuilder line = new StringBuilder(256);
+    private long lastSecond = -1;
+    private String lastStamp = null;
+    private CountingOutputStream counter = null;
+    private PrintWriter out = null;
+    private boolean openFailed = false;
+    private long maxSize;
+    private int maxFiles;
+    
+    LogWriter(LogRing<LogEntry> ring){
+        this.ring = ring;
+    }
+    
+    /** Starts the writer thread if it isn't running yet. */
+    void start(){
+        if(thread != null)
+            return;
+        
+        synchronized(this){
+            if(thread != null)
+                return;
+            Thread t = new Thread(this, "Log Writer");
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            t.start();
+            thread = t;
+            
+            // Write what has been logged when the program exits
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Log.close();
+                }
+            }, "Log Shutdown"));
+        }
+    }
+    
+    boolean isStarted(){
+        return thread != null;
+    }
+    
+    boolean isWriterThread(){
+        return Thread.currentThread() == thread;
+    }
+    
+    /** Wakes the writer thread if it is waiting for entries. */
+    void wake(){
+        if(sleeping)
+            LockSupport.unpark(thread);
+    }
+    
+    /** Records that an entry was dropped because the queue was full. */
+    void dropped(){
+        dropped.incrementAndGet();
+    }
+    
+    @Override
+    public void run() {
+        int written = 0;
+        while(true){
+            LogEntry e = ring.poll();
+            if(e != null){
+                try {
+                    if(e instanceof Marker){
+                        finish((Marker) e);
+                    } else {
+                        write(e);
+                        if(++written % SIZE_CHECK_INTERVAL == 0)
+                            flush();
+                    }
+                } catch(RuntimeException re){
+                    // Keep writing the rest of the log
+                    re.printStackTrace(System.err);
+                }
+                
+            } else if( !ring.isEmpty()){
+                // An entry is still being stored
+                Thread.yield();
+                
+            } else {
+                long lost = dropped.getAndSet(0);
+                if(lost > 0){
+                    write(new LogEntry(Main.LOG_LEVEL, "log",
+                            lost + " log entries were dropped because the log was full.",
+                            null));
+                }
+                flush();
+                
+                sleeping = true;
+                if(ring.isEmpty())
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(IDLE_WAIT));
+                sleeping = false;
+            }
+        }
+    }
+    
+    private void write(LogEntry e){
+        if(out == null && !open())
+            return;
+        
+        line.setLength(0);
+        line.append("ERROR:\t[");
+        line.append(timeStamp(e.time));
+        line.append("]\t[");
+        line.append(e.operation != null ? e.operation
+                : callerOf(e.origin != null ? e.origin : e.exception));
+        line.append('|');
+        line.append(Main.VERSION_NUM);
+        line.append(']');
+        
+        if(e.message != null)
+            line.append('\t').append(e.message);
+        if(e.gameID != 0)
+            line.append("\tgame=").append(e.gameID);
+        if(e.profileID != 0)
+            line.append("\tprofile=").append(e.profileID);
+        if(e.path != null)
+            line.append("\tpath=").append(e.path);
+        line.append(LINE_SEPARATOR);
+        
+        out.append(line);
+        if(e.exception != null)
+            e.exception.printStackTrace(out);
+    }
+    
+    private void finish(Marker m){
+        flush();
+        if(m.close && out != null){
+            out.close();
+            out = null;
+            counter = null;
+        }
+        // Try the file again after a close, the problem may have been fixed
+        openFailed = false;
+        m.done.countDown();
+    }
+    
+    /** Flushes the file and rotates it if it has grown too large. */
+    private void flush(){
+        if(out == null)
+            return;
+        
+        out.flush();
+        if(counter.count >= maxSize){
+            out.close();
+            out = null;
+            rotate();
+            open();
+        }
+    }
+    
+    private boolean open(){
+        if(openFailed)
+            return false;
+        
+        maxSize = getSetting(Config.Key.log_max_size);
+        maxFiles = (int) getSetting(Config.Key.log_files);
+        
+        try {
+            File f = new File(LOG_NAME + LOG_EXT);
+            counter = new CountingOutputStream(new FileOutputStream(f, true), f.length());
+            out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(counter)));
+            return true;
+        } catch(IOException ioe){
+            // Can't log that the log can't be written
+            ioe.printStackTrace(System.err);
+            openFailed = true;
+            return false;
+        }
+    }
+    
+    private void rotate(){
+        new File(LOG_NAME + '.' + maxFiles + LOG_EXT).delete();
+        for(int i=maxFiles-1; i>0; i--){
+            File f = new File(LOG_NAME + '.' + i + LOG_EXT);
+            if(f.exists())
+                f.renameTo(new File(LOG_NAME + '.' + (i + 1) + LOG_EXT));
+        }
+        new File(LOG_NAME + LOG_EXT).renameTo(new File(LOG_NAME + ".1" + LOG_EXT));
+    }
+    
+    private long getSetting(Config.Key key){
+        try {
+            long value = Long.parseLong(Config.get(key));
+            if(value > 0)
+                return value;
+        } catch(NumberFormatException nfe){
+            // Fall through to the default
+        }
+        return Long.parseLong(key.getDefaultValue());
+    }
+    
+    /** Formats the time, reusing the last stamp for entries in the same second. */
+    private String timeStamp(long time){
+        long second = time / 1000;
+        if(second != lastSecond){
+            lastSecond = second;
+            lastStamp = dateFormat.format(new Date(time));
+        }
+        return lastStamp;
+    }
+    
+    /**
+     * Finds the name of the method that logged an entry, or the Profile
+     * Manager method an exception was thrown through.
+     */
+    private static String callerOf(Throwable origin){
+        if(origin == null)
+            return "unknown";
+        
+        for(StackTraceElement frame : origin.getStackTrace()){
+            String className = frame.getClassName();
+            if( !className.startsWith("com.chockly.pm.")
+                    || className.startsWith("com.chockly.pm.log.")
+                    || (className.equals("com.chockly.pm.Main")
+                        && frame.getMethodName().equals("handleException")))
+            {
+                continue;
+            }
+            return frame.getMethodName();
+        }
+        return "unknown";
+    }
+    
+    /** A request to flush, and optionally close, the log file. */
+    static class Marker extends LogEntry {
+        final boolean close;
+        final CountDownLatch done = new CountDownLatch(1);
+        
+        Marker(boolean close){
+            super(Main.LOG_LEVEL, "flush", null, null);
+            this.close = close;
+        }
+    }
+    
+    /** Counts the bytes written to the log file. */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+        
+        CountingOutputStream(OutputStream out, long count){
+            super(out);
+            this.count = count;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how many times something has happened, such as failed activations.
+ *
+ * @author Curtis Oakley
+ */
+public class Counter implements CounterMBean {
+    
+    private final AtomicLong count = new AtomicLong();
+    
+    Counter(){}
+    
+    /** Adds one to the count. */
+    public void increment(){
+        count.incrementAndGet();
+    }
+    
+    /**
+     * Adds to the count.
+     * @param n The amount to add.
+     */
+    public void add(long n){
+        count.addAndGet(n);
+    }
+    
+    @Override
+    public long getCount(){
+        return count.get();
+    }
+}
@@ -0,0 +1,162 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.metrics;
+
+import com.chockly.pm.Main;
+
+/**
+ * Records the Profile Manager's operations as Java Flight Recorder events,
+ * so that a recording attached to a bug report shows where the time went
+ * during a slow activation or backup.<br/>
+ * <br/>
+ * The program runs on Java 7, which doesn't have JFR, so the events
+ * themselves are in the <tt>jfr</tt> source folder next to <tt>src</tt>.
+ * They are built for Java 11 into the program's classes:
+ * <pre>
+ * javac --release 11 -cp build/classes -d build/classes jfr/com/chockly/pm/jfr/*.java
+ * </pre>
+ * and are loaded by {@link #install()} when the JVM supports JFR. Events
+ * are only created while a recording is running, otherwise
+ * {@link #begin(int)} returns <tt>null</tt>. Timing an operation looks
+ * like:
+ * <pre>
+ * Events.Event event = Events.begin(Events.ACTIVATE);
+ * ...
+ * Events.commit(event, gameID, profileID, bytes, Events.OK);
+ * </pre>
+ * Arguments that are costly to work out, such as a file's length, should
+ * only be worked out when the event isn't <tt>null</tt>.<br/>
+ * <br/>
+ * A recording can be made with
+ * <tt>java -XX:StartFlightRecording=filename=pm.jfr -jar ProfileManager.jar</tt>,
+ * or started on a running Profile Manager with <tt>jcmd &lt;pid&gt; JFR.start</tt>.
+ *
+ * @author Curtis Oakley
+ */
+public final class Events {
+    
+    /** A profile being activated. */
+    public static final int ACTIVATE = 0;
+    /** A game's profiles being deactivated. */
+    public static final int DEACTIVATE = 1;
+    /** A game's profile folders being compared to its profiles. */
+    public static final int RECONCILE = 2;
+    /** A character's name being read from a save's header. */
+    public static final int HEADER_PARSE = 3;
+    /** A file being moved, by renaming or copying it. */
+    public static final int FILE_MOVE = 4;
+    /** A file being stored in a backup. */
+    public static final int BACKUP_ENTRY = 5;
+    
+    public static final String OK = "ok";
+    public static final String FAILED = "failed";
+    /** The game was locked by a backup or another activation. */
+    public static final String LOCKED = "locked";
+    public static final String RENAMED = "renamed";
+    public static final String COPIED = "copied";
+    
+    /** The JFR support, in the <tt>jfr</tt> source folder. */
+    private static final String JFR_RECORDER = "com.chockly.pm.jfr.JfrRecorder";
+    
+    private static volatile Recorder recorder = null;
+    private static boolean installed = false;
+    
+    private Events(){}
+    
+    /**
+     * An operation that has started and not yet been committed.
+     */
+    public interface Event {
+        /**
+         * Records the operation as finished.
+         * @param gameID The game the operation was for, 0 if unknown.
+         * @param profileID The profile the operation was for, 0 if unknown.
+         * @param bytes The number of bytes read, written or moved.
+         * @param outcome How the operation ended, such as {@link Events#OK}.
+         */
+        void commit(byte gameID, int profileID, long bytes, String outcome);
+    }
+    
+    /**
+     * Creates events while a recording is running.
+     */
+    public interface Recorder {
+        /**
+         * Starts an event.
+         * @param type The type of event, such as {@link Events#ACTIVATE}.
+         * @return The started event.
+         */
+        Event begin(int type);
+    }
+    
+    /**
+     * Starts an event if a recording is running.
+     * @param type The type of event, such as {@link #ACTIVATE}.
+     * @return The started event, or <tt>null</tt> if nothing is recording.
+     */
+    public static Event begin(int type){
+        Recorder r = recorder;
+        return r == null ? null : r.begin(type);
+    }
+    
+    /**
+     * Commits an event started by {@link #begin(int)}.
+     * @param event The event, does nothing if this is <tt>null</tt>.
+     * @param gameID The game the operation was for, 0 if unknown.
+     * @param profileID The profile the operation was for, 0 if unknown.
+     * @param bytes The number of bytes read, written or moved.
+     * @param outcome How the operation ended, such as {@link #OK}.
+     */
+    public static void commit(Event event, byte gameID, int profileID,
+            long bytes, String outcome)
+    {
+        if(event != null)
+            event.commit(gameID, profileID, bytes, outcome);
+    }
+    
+    /**
+     * Sets the recorder that creates events. The JFR support calls this when
+     * recordings start and stop.
+     * @param r The recorder, or <tt>null</tt> to stop creating events.
+     */
+    public static void setRecorder(Recorder r){
+        recorder = r;
+    }
+    
+    /**
+     * Loads the JFR support if the JVM has JFR and the events were built.
+     * Does nothing after the first call.
+     */
+    public static synchronized void install(){
+        if(installed)
+            return;
+        installed = true;
+        
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            Class.forName(JFR_RECORDER).getMethod("install").invoke(null);
+        } catch(ClassNotFoundException cnfe){
+            // No JFR in this JVM, or the events weren't built
+        } catch(Exception ex){
+            Main.handleException("Unable to set up the flight recorder events.",
+                    ex, Main.LOG_LEVEL);
+        } catch(LinkageError le){
+            Main.handleException("Unable to set up the flight recorder events.",
+                    le, Main.LOG_LEVEL);
+        }
+    }
+}
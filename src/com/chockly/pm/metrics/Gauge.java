@@ -0,0 +1,33 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.metrics;
+
+/**
+ * A metric whose value is read when it is needed, such as the number of
+ * profiles. Registered with {@link Metrics#gauge(java.lang.String, com.chockly.pm.metrics.Gauge)}.
+ *
+ * @author Curtis Oakley
+ */
+public abstract class Gauge implements GaugeMBean {
+    
+    /**
+     * Reads the gauge's current value. Can be called from any thread.
+     * @return The value.
+     */
+    @Override
+    public abstract long getValue();
+}
@@ -0,0 +1,160 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how long an operation takes, so that its percentiles can be read
+ * without keeping every time.<br/>
+ * <br/>
+ * Times are kept in nanoseconds in buckets that grow with the time, like an
+ * HDR histogram. Each power of two is split into {@link #SUB_BUCKETS}
+ * buckets, so a percentile is accurate to within 12.5% whether the
+ * operation took microseconds or minutes, and the histogram always uses the
+ * same small amount of memory. Recording only touches atomic counters, so
+ * any number of threads can record at once.
+ *
+ * @author Curtis Oakley
+ */
+public class Histogram implements HistogramMBean {
+    
+    private static final int SUB_BITS = 3;
+    /** The number of buckets each power of two is split into. */
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // A positive long has at most 63 bits
+    private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    Histogram(){}
+    
+    /**
+     * Records the time an operation took.
+     * @param nanos The time in nanoseconds.
+     */
+    public void record(long nanos){
+        if(nanos < 0)
+            nanos = 0;
+        
+        buckets.incrementAndGet(indexOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        
+        long m;
+        while(nanos > (m = max.get())){
+            if(max.compareAndSet(m, nanos))
+                break;
+        }
+    }
+    
+    /**
+     * Records the time since an operation started.
+     * @param startNanos The value of {@link System#nanoTime()} when the
+     * operation started.
+     */
+    public void recordSince(long startNanos){
+        record(System.nanoTime() - startNanos);
+    }
+    
+    @Override
+    public long getCount(){
+        return count.get();
+    }
+    
+    @Override
+    public double getMean(){
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / NANOS_PER_MILLI / n;
+    }
+    
+    @Override
+    public double getMax(){
+        return max.get() / NANOS_PER_MILLI;
+    }
+    
+    @Override
+    public double get50thPercentile(){
+        return getPercentile(50);
+    }
+    
+    @Override
+    public double get90thPercentile(){
+        return getPercentile(90);
+    }
+    
+    @Override
+    public double get99thPercentile(){
+        return getPercentile(99);
+    }
+    
+    /**
+     * Finds the time that a percentage of the recorded times were at or
+     * below.
+     * @param percent The percentile, from 0 to 100.
+     * @return The time in milliseconds, the top of the bucket the percentile
+     * falls in but never more than the longest time recorded.
+     */
+    public double getPercentile(double percent){
+        // The buckets can be updated while they are read, so the total is
+        // taken from the buckets themselves
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for(int i=0; i<BUCKETS; i++){
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        if(n == 0)
+            return 0;
+        
+        long rank = Math.max(1, (long) Math.ceil(n * percent / 100.0));
+        long seen = 0;
+        for(int i=0; i<BUCKETS; i++){
+            seen += counts[i];
+            if(seen >= rank){
+                long top = (i + 1 < BUCKETS) ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(top, max.get()) / NANOS_PER_MILLI;
+            }
+        }
+        return getMax();
+    }
+    
+    /** Finds the bucket that a time is counted in. */
+    static int indexOf(long nanos){
+        if(nanos < SUB_BUCKETS)
+            return (int) nanos;
+        
+        int shift = (63 - Long.numberOfLeadingZeros(nanos)) - SUB_BITS;
+        int sub = (int) (nanos >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+    
+    /** Finds the smallest time counted in a bucket. */
+    static long lowerBound(int index){
+        if(index < SUB_BUCKETS)
+            return index;
+        
+        int shift = index / SUB_BUCKETS - 1;
+        int sub = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << shift;
+    }
+}
@@ -0,0 +1,38 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.metrics;
+
+/**
+ * The attributes of a {@link Histogram} published over JMX. All of the times
+ * are in milliseconds.
+ *
+ * @author Curtis Oakley
+ */
+public interface HistogramMBean {
+    
+    public long getCount();
+    
+    public double getMean();
+    
+    public double getMax();
+    
+    public double get50thPercentile();
+    
+    public double get90thPercentile();
+    
+    public double get99thPercentile();
+}
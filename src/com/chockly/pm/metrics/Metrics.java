@@ -0,0 +1,230 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.metrics;
+
+import com.chockly.pm.Config;
+import com.chockly.pm.Main;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Keeps the counters, gauges and timing histograms for the Profile Manager's
+ * main operations, so that slow activations or backups on a user's machine
+ * can be looked into with real numbers.<br/>
+ * <br/>
+ * Metrics are created the first time they are asked for, and the same
+ * metric is returned for the same name after that. Timing an operation looks
+ * like:
+ * <pre>
+ * long start = System.nanoTime();
+ * try {
+ *     ...
+ * } finally {
+ *     Metrics.histogram("game.activate").recordSince(start);
+ * }
+ * </pre>
+ * Once {@link #publish()} has been called each metric is also registered
+ * as an MBean named <tt>com.chockly.pm:type=&lt;type&gt;,name=&lt;name&gt;</tt>,
+ * so they can be watched with JConsole. {@link #dumpOnExit()} writes the
+ * metrics to <tt>metrics.log</tt> in the profile data folder when the
+ * program exits.
+ *
+ * @author Curtis Oakley
+ */
+public final class Metrics {
+    
+    private static final String DOMAIN = "com.chockly.pm";
+    private static final String DUMP_FILE = Config.PROFILE_DATA_DIR + "metrics.log";
+    
+    private static final ConcurrentMap<String, Object> metrics =
+            new ConcurrentHashMap<String, Object>();
+    private static volatile MBeanServer server = null;
+    private static boolean dumpOnExit = false;
+    
+    private Metrics(){}
+    
+    /**
+     * Gets a timing histogram, creating it if needed.
+     * @param name The name of the histogram.
+     * @return The histogram.
+     */
+    public static Histogram histogram(String name){
+        Object m = metrics.get(name);
+        if(m == null)
+            m = register(name, new Histogram());
+        return (Histogram) m;
+    }
+    
+    /**
+     * Gets a counter, creating it if needed.
+     * @param name The name of the counter.
+     * @return The counter.
+     */
+    public static Counter counter(String name){
+        Object m = metrics.get(name);
+        if(m == null)
+            m = register(name, new Counter());
+        return (Counter) m;
+    }
+    
+    /**
+     * Adds a gauge. If a metric already has the name the gauge isn't added.
+     * @param name The name of the gauge.
+     * @param gauge The gauge.
+     */
+    public static void gauge(String name, Gauge gauge){
+        register(name, gauge);
+    }
+    
+    /**
+     * Publishes the metrics as MBeans on the platform MBean server. Metrics
+     * created after this are published as they are created.<br/>
+     * <br/>
+     * Starting JMX takes a noticeable amount of time, so this is only done
+     * when the GUI or a resident Profile Manager is running.
+     */
+    public static synchronized void publish(){
+        if(server != null)
+            return;
+        
+        server = ManagementFactory.getPlatformMBeanServer();
+        for(Map.Entry<String, Object> e : metrics.entrySet()){
+            publish(e.getKey(), e.getValue());
+        }
+    }
+    
+    /**
+     * Writes the metrics to <tt>metrics.log</tt> in the profile data folder
+     * when the program exits. Nothing is written if the folder doesn't
+     * exist, such as when nothing was loaded from the working directory.
+     */
+    public static synchronized void dumpOnExit(){
+        if(dumpOnExit)
+            return;
+        dumpOnExit = true;
+        
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                File file = new File(DUMP_FILE);
+                if( !metrics.isEmpty() && file.getAbsoluteFile().getParentFile().isDirectory())
+                    dump(file);
+            }
+        }, "Metrics Dump"));
+    }
+    
+    /**
+     * Writes the current value of each metric to a file, replacing the
+     * file's contents.
+     * @param file The file to write to.
+     */
+    public static void dump(File file){
+        try {
+            PrintWriter out = new PrintWriter(new FileWriter(file));
+            try {
+                out.println("Profile Manager " + Main.VERSION_NUM + " metrics, "
+                        + new SimpleDateFormat("MM/dd/yyyy hh:mm:ss a").format(new Date()));
+                out.println("Times are in milliseconds.");
+                out.println();
+                
+                for(Map.Entry<String, Object> e
+                        : new TreeMap<String, Object>(metrics).entrySet())
+                {
+                    out.println(describe(e.getKey(), e.getValue()));
+                }
+            } finally {
+                out.close();
+            }
+        } catch(IOException ioe){
+            // The program is exiting, the error log may already be closed
+            ioe.printStackTrace(System.err);
+        }
+    }
+    
+    /** Formats a metric as a single line. */
+    static String describe(String name, Object metric){
+        if(metric instanceof Histogram){
+            Histogram h = (Histogram) metric;
+            return String.format("%-28s count=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f max=%.3f",
+                    name, h.getCount(), h.getMean(), h.get50thPercentile(),
+                    h.get90thPercentile(), h.get99thPercentile(), h.getMax());
+        } else if(metric instanceof Counter){
+            return String.format("%-28s count=%d", name, ((Counter) metric).getCount());
+        } else {
+            long value;
+            try {
+                value = ((Gauge) metric).getValue();
+            } catch(RuntimeException re){
+                return String.format("%-28s value=unavailable (%s)", name, re);
+            }
+            return String.format("%-28s value=%d", name, value);
+        }
+    }
+    
+    private static Object register(String name, Object metric){
+        Object existing = metrics.putIfAbsent(name, metric);
+        if(existing != null)
+            return existing;
+        
+        if(server != null)
+            publish(name, metric);
+        return metric;
+    }
+    
+    private static synchronized void publish(String name, Object metric){
+        Class<?> type;
+        if(metric instanceof Histogram)
+            type = HistogramMBean.class;
+        else if(metric instanceof Counter)
+            type = CounterMBean.class;
+        else
+            type = GaugeMBean.class;
+        
+        try {
+            String typeName = type.getSimpleName().replace("MBean", "");
+            ObjectName objectName = new ObjectName(
+                    DOMAIN + ":type=" + typeName + ",name=" + name);
+            // Created while the rest were being published
+            if( !server.isRegistered(objectName))
+                server.registerMBean(toMBean(metric, type), objectName);
+        } catch(JMException jme){
+            Main.handleException("Unable to publish the metric " + name + ".",
+                    jme, Main.LOG_LEVEL);
+        }
+    }
+    
+    /** Wraps a metric in an MBean with the given management interface. */
+    private static <T> StandardMBean toMBean(Object metric, Class<T> type)
+            throws NotCompliantMBeanException
+    {
+        return new StandardMBean(type.cast(metric), type);
+    }
+}
@@ -16,21 +16,53 @@
  */
 package com.chockly.pm.win86;
 
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.Charset;
 
 /**
  * Provides means to create a windows shell shortcut (.lnk file).<br/>
  * <br/>
- * The shortcut is created by building a VBScript file and then running it.
+ * The shortcut is written directly in the Shell Link Binary File Format
+ * (MS-SHLLINK), so no script or other process is needed and shortcuts can
+ * be made on any system. The target is stored as a local path in the link
+ * info and as an environment variable block, the shell fills in the rest
+ * the first time the shortcut is used.
  * 
  * @author Curtis Oakley
- * @version 0.4.1
+ * @version 0.5
  */
 public class JLnk {
     
-    private static final String SCRIPT_FILE_NAME = "makelink.vbs";
+    /** The class ID of a shell link, 00021401-0000-0000-C000-000000000046. */
+    private static final byte[] LINK_CLSID = {
+        0x01, 0x14, 0x02, 0x00, 0x00, 0x00, 0x00, 0x00,
+        (byte) 0xC0, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x46};
+    private static final int HEADER_SIZE = 0x4C;
+    
+    // Link flags
+    private static final int HAS_LINK_INFO = 0x02;
+    private static final int HAS_NAME = 0x04;
+    private static final int HAS_WORKING_DIR = 0x10;
+    private static final int HAS_ARGUMENTS = 0x20;
+    private static final int HAS_ICON_LOCATION = 0x40;
+    private static final int IS_UNICODE = 0x80;
+    private static final int HAS_EXP_STRING = 0x200;
+    
+    private static final int FILE_ATTRIBUTE_DIRECTORY = 0x10;
+    private static final int FILE_ATTRIBUTE_ARCHIVE = 0x20;
+    private static final int SW_SHOWNORMAL = 1;
+    private static final int DRIVE_FIXED = 3;
+    private static final int ENVIRONMENT_VARIABLE_BLOCK = 0xA0000001;
+    /** The characters in each of the environment variable block's paths. */
+    private static final int MAX_PATH = 260;
+    /** The difference between the Windows and Java epochs, in milliseconds. */
+    private static final long FILETIME_EPOCH = 11644473600000L;
+    private static final Charset UTF_16LE = Charset.forName("UTF-16LE");
+    /** The system's code page, used for the ANSI copies of the paths. */
+    private static final Charset ANSI = getAnsiCharset();
     
     private String arguments = "";
     private String description = "";
@@ -55,73 +87,180 @@ public class JLnk {
     }
 
     /**
-     * Writes the shortcut to disk.
+     * Writes the shortcut to disk, replacing any shortcut with the same name.
      * 
+     * @return The shortcut file.
      * @throws IOException Thrown if an IOException occurred and prevented the
      * shortcut from being created.
-     * @throws InterruptedException If the makelink script is interrupted. 
      * @throws IllegalStateException If the folder or path have not been set
      * before calling.
      */
-    public void save() throws IOException, InterruptedException {
+    public File save() throws IOException {
         
         // Make sure that the folder and path are defined
         if(folder == null || folder.isEmpty())
             throw new IllegalStateException("Folder must be defined before calling save");
         
+        byte[] lnk = toBytes();
+        
+        File file = new File(folder, name + ".lnk");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(lnk);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+    
+    /**
+     * Builds the contents of the shortcut file.
+     * @return The shortcut in the Shell Link Binary File Format.
+     * @throws IllegalStateException If the path has not been set.
+     */
+    public byte[] toBytes() {
         if(path == null || path.isEmpty())
             throw new IllegalStateException("Path must be defined before calling save");
         
         // IF the working directory is not defined, define it.
-        if(workingDirectory == null || workingDirectory.isEmpty())
-            if(path.contains("\\"))
-                workingDirectory = path.substring(0, path.lastIndexOf('\\'));
-// TODO, build name if not set using the path
-        // Construct the visual basic script that builds the shortcut
-        StringBuilder vbscript = new StringBuilder(128);
-        String commonEndLine = "\"\r\n";
-
-        vbscript.append("Set WshShell = WScript.CreateObject(\"WScript.Shell\")\r\n");
-        vbscript.append("Set lnk = WshShell.CreateShortcut(\"").append(folder).append("\\").append(name).append(".LNK\")\r\n");
-        vbscript.append("lnk.TargetPath = \"").append(path).append(commonEndLine);
+        String workingDir = workingDirectory;
+        if((workingDir == null || workingDir.isEmpty()) && path.contains("\\"))
+            workingDir = path.substring(0, path.lastIndexOf('\\'));
+        
+        // Local paths are stored in the link info, others only in the
+        // environment variable block
+        boolean local = path.length() > 2 && path.charAt(1) == ':';
         
-        if(arguments != null && !arguments.isEmpty())
-            vbscript.append("lnk.Arguments = \"").append(arguments).append(commonEndLine);
+        int flags = IS_UNICODE | HAS_EXP_STRING;
+        if(local)
+            flags |= HAS_LINK_INFO;
+        if(isSet(description))
+            flags |= HAS_NAME;
+        if(isSet(workingDir))
+            flags |= HAS_WORKING_DIR;
+        if(isSet(arguments))
+            flags |= HAS_ARGUMENTS;
+        if(isSet(iconLocation))
+            flags |= HAS_ICON_LOCATION;
         
-        if(description != null && !description.isEmpty())
-            vbscript.append("lnk.Description = \"").append(description).append(commonEndLine);
-	
-        if(iconLocation != null && !iconLocation.isEmpty())
-            vbscript.append("lnk.IconLocation = \"").append(iconLocation).append(",").append(iconIndex).append(commonEndLine);
+        // Describe the target when it's reachable, such as when the
+        // shortcut is made on the machine it's for
+        File target = new File(path);
+        long size = 0, time = 0;
+        int attributes = FILE_ATTRIBUTE_ARCHIVE;
+        if(target.isDirectory()){
+            attributes = FILE_ATTRIBUTE_DIRECTORY;
+        } else if(target.isFile()){
+            size = target.length();
+            time = toFileTime(target.lastModified());
+        }
         
-        if(workingDirectory != null && !workingDirectory.isEmpty())
-            vbscript.append("lnk.WorkingDirectory = \"").append(workingDirectory).append(commonEndLine);
+        LittleEndianBuffer lnk = new LittleEndianBuffer(1024);
         
-        vbscript.append("lnk.Save\r\n");
-        vbscript.append("Set lnk = Nothing");
-
-        // Write the script to disk
-        BufferedWriter out = null;
-        File scriptFile = new File(SCRIPT_FILE_NAME);
+        // ShellLinkHeader
+        lnk.writeInt(HEADER_SIZE);
+        lnk.write(LINK_CLSID, 0, LINK_CLSID.length);
+        lnk.writeInt(flags);
+        lnk.writeInt(attributes);
+        lnk.writeLong(time);    // Creation time
+        lnk.writeLong(time);    // Access time
+        lnk.writeLong(time);    // Write time
+        lnk.writeInt((int) Math.min(size, 0xFFFFFFFFL));
+        lnk.writeInt(iconIndex);
+        lnk.writeInt(SW_SHOWNORMAL);
+        lnk.writeShort(0);      // Hot key
+        lnk.writeShort(0);      // Reserved
+        lnk.writeInt(0);
+        lnk.writeInt(0);
         
-        try {
-            out = new java.io.BufferedWriter(new java.io.FileWriter(scriptFile));
-            
-            out.write( vbscript.toString() );
-            
-        } finally {
-            if(out != null)
-                out.close();
-        }
+        if(local)
+            writeLinkInfo(lnk, path);
+        
+        // StringData, in the order set by the format
+        if(isSet(description))
+            lnk.writeString(description);
+        if(isSet(workingDir))
+            lnk.writeString(workingDir);
+        if(isSet(arguments))
+            lnk.writeString(arguments);
+        if(isSet(iconLocation))
+            lnk.writeString(iconLocation);
+        
+        // EnvironmentVariableDataBlock
+        lnk.writeInt(8 + MAX_PATH * 3);
+        lnk.writeInt(ENVIRONMENT_VARIABLE_BLOCK);
+        lnk.writeFixed(path.getBytes(ANSI), MAX_PATH);
+        lnk.writeFixed(path.getBytes(UTF_16LE), MAX_PATH * 2);
+        
+        // TerminalBlock
+        lnk.writeInt(0);
+        
+        return lnk.toByteArray();
+    }
+    
+    /** Writes a LinkInfo structure for a path on a local drive. */
+    private static void writeLinkInfo(LittleEndianBuffer lnk, String path){
+        byte[] ansiPath = path.getBytes(ANSI);
+        byte[] unicodePath = path.getBytes(UTF_16LE);
+        
+        int headerSize = 0x24;
+        // DriveType, serial number and an empty label
+        int volumeIDSize = 4 * 4 + 1;
+        int volumeIDOffset = headerSize;
+        int localBasePathOffset = volumeIDOffset + volumeIDSize;
+        int commonPathSuffixOffset = localBasePathOffset + ansiPath.length + 1;
+        int localBasePathUnicodeOffset = commonPathSuffixOffset + 1;
+        int commonPathSuffixUnicodeOffset = localBasePathUnicodeOffset + unicodePath.length + 2;
+        int size = commonPathSuffixUnicodeOffset + 2;
         
-        // Run the script
-        Process exec = Runtime.getRuntime().exec("cscript " + SCRIPT_FILE_NAME);
+        lnk.writeInt(size);
+        lnk.writeInt(headerSize);
+        lnk.writeInt(1);        // VolumeIDAndLocalBasePath
+        lnk.writeInt(volumeIDOffset);
+        lnk.writeInt(localBasePathOffset);
+        lnk.writeInt(0);        // No network share
+        lnk.writeInt(commonPathSuffixOffset);
+        lnk.writeInt(localBasePathUnicodeOffset);
+        lnk.writeInt(commonPathSuffixUnicodeOffset);
         
-        if(exec.waitFor() != 0)
-            throw new IOException("Create .LNK script exited abnormally.");
+        // VolumeID
+        lnk.writeInt(volumeIDSize);
+        lnk.writeInt(DRIVE_FIXED);
+        lnk.writeInt(0);        // Serial number
+        lnk.writeInt(0x10);     // Offset of the label
+        lnk.write(0);
         
-        // Delete the script
-        scriptFile.delete();
+        lnk.write(ansiPath, 0, ansiPath.length);
+        lnk.write(0);
+        lnk.write(0);           // Empty common path suffix
+        lnk.write(unicodePath, 0, unicodePath.length);
+        lnk.writeShort(0);
+        lnk.writeShort(0);
+    }
+    
+    private static boolean isSet(String s){
+        return s != null && !s.isEmpty();
+    }
+    
+    /**
+     * Gets the charset for the system's code page. Java reports it as the
+     * encoding for file names, the default charset is UTF-8 in newer Java
+     * versions.
+     */
+    private static Charset getAnsiCharset(){
+        String name = System.getProperty("sun.jnu.encoding");
+        try {
+            if(name != null)
+                return Charset.forName(name);
+        } catch(IllegalArgumentException iae){
+            // Unknown encoding, use the default
+        }
+        return Charset.defaultCharset();
+    }
+    
+    /** Converts Java time to a Windows FILETIME, in 100 nanosecond units. */
+    private static long toFileTime(long millis){
+        return (millis + FILETIME_EPOCH) * 10000L;
     }
     
     /**
@@ -194,4 +333,43 @@ public class JLnk {
         this.workingDirectory = workingDirectory;
     }
 
+    /** Writes the little endian values used by the format. */
+    private static class LittleEndianBuffer extends ByteArrayOutputStream {
+        
+        private LittleEndianBuffer(int size){
+            super(size);
+        }
+        
+        private void writeShort(int v){
+            write(v);
+            write(v >>> 8);
+        }
+        
+        private void writeInt(int v){
+            writeShort(v);
+            writeShort(v >>> 16);
+        }
+        
+        private void writeLong(long v){
+            writeInt((int) v);
+            writeInt((int) (v >>> 32));
+        }
+        
+        /** Writes a StringData structure, a count of characters and then the characters. */
+        private void writeString(String s){
+            writeShort(s.length());
+            byte[] b = s.getBytes(UTF_16LE);
+            write(b, 0, b.length);
+        }
+        
+        /** Writes bytes into a null padded field, cutting them to fit. */
+        private void writeFixed(byte[] b, int length){
+            int n = Math.min(b.length, length - 2);
+            write(b, 0, n);
+            for(int i=n; i<length; i++){
+                write(0);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,44 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.win86;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads values from the <tt>HKLM\Software</tt> part of the Windows Registry.
+ * <br/>
+ * On 64 bit Windows the 32 bit programs' keys, under
+ * <tt>HKLM\Software\Wow6432Node</tt>, are read when they exist.
+ *
+ * @author Curtis Oakley
+ */
+public interface RegistryBackend {
+    
+    /**
+     * Finds a value in a key and all of its subkeys.
+     * @param path The path to the key, under <tt>HKLM\Software</tt>. For
+     * example <tt>Bethesda Softworks</tt>.
+     * @param name The name of the value to find.
+     * @return The value's data in each key that has it, mapped by the key's
+     * path relative to <tt>path</tt>, such as <tt>Skyrim</tt>. The map
+     * ignores case, like the registry. Empty if the key doesn't exist.
+     * @throws IOException If the registry can't be read.
+     */
+    public Map<String, String> findValues(String path, String name) throws IOException;
+    
+}
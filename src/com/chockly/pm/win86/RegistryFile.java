@@ -0,0 +1,64 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.win86;
+
+import java.io.*;
+import java.util.Map;
+
+/**
+ * Stands in for the Windows Registry by reading the saved output of a
+ * <tt>reg query</tt>, so the registry code can be run on other systems.<br/>
+ * <br/>
+ * The file is made on Windows with:
+ * <pre>
+ * reg query "HKLM\Software\Wow6432Node\Bethesda Softworks" /s &gt; registry.txt
+ * </pre>
+ * Several queries can be put into the same file. The file is read again for
+ * each lookup.
+ *
+ * @author Curtis Oakley
+ */
+public class RegistryFile implements RegistryBackend {
+    
+    private final File file;
+    
+    /**
+     * Creates a new RegistryFile.
+     * @param file The file with the <tt>reg query</tt> output.
+     */
+    public RegistryFile(File file){
+        this.file = file;
+    }
+    
+    @Override
+    public Map<String, String> findValues(String path, String name) throws IOException {
+        Map<String, String> values = read(RegistryReader.HKLM_SOFTWARE
+                + RegistryReader.WOW_6432_NODE + path, name);
+        if(values.isEmpty())
+            values = read(RegistryReader.HKLM_SOFTWARE + path, name);
+        return values;
+    }
+    
+    private Map<String, String> read(String key, String name) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            return RegistryReader.parse(in, key, name);
+        } finally {
+            in.close();
+        }
+    }
+}
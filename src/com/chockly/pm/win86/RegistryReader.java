@@ -1,4 +1,4 @@
-/*
+/* Profile Manager
  * Copyright (C) 2012 Curtis Oakley
  *
  * This program is free software: you can redistribute it and/or modify
@@ -19,98 +19,110 @@ package com.chockly.pm.win86;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- * Provides methods to read the Windows Registry using the reg.exe.
+ * Provides methods to read the Windows Registry using the reg.exe.<br/>
+ * <br/>
+ * Each lookup runs a single recursive <tt>reg query</tt> over the key, so
+ * finding the values of many subkeys only starts one process. The 32 bit
+ * keys are queried first, and the native keys only if the 32 bit key
+ * doesn't exist.
  * 
  * @author Curtis Oakley
- * @version 0.5
+ * @version 0.6
  */
-public class RegistryReader {
+public class RegistryReader implements RegistryBackend {
     
-    /**
-     * Constructs a new RegistryReader.
-     * @throws IOException 
-     */
-    public RegistryReader() throws IOException {
-        String requestWow6432Node = runQuery(HKLM_SOFTWARE + WOW_6432_NODE);
-        
-        if(requestWow6432Node == null)
-            usesWow6432Node = false;
+    static final String HKLM_SOFTWARE = "HKEY_LOCAL_MACHINE\\SOFTWARE\\";
+    static final String WOW_6432_NODE = "Wow6432Node\\";
+    
+    /** Matches a value line, such as <tt>    Installed Path    REG_SZ    C:\Games\</tt>. */
+    private static final Pattern VALUE_LINE =
+            Pattern.compile("\\s+(.+?)\\s+REG_[A-Z0-9_]+(?:\\s+(.*))?");
+    
+    @Override
+    public Map<String, String> findValues(String path, String name) throws IOException {
+        Map<String, String> values = runQuery(HKLM_SOFTWARE + WOW_6432_NODE + path, name);
+        if(values == null)
+            values = runQuery(HKLM_SOFTWARE + path, name);
+        if(values == null)
+            values = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        return values;
     }
     
     /**
-     * Gets the key value for an entry in in the Windows Registry.
-     * 
-     * @param path The path to the key, this method automatically appends the
-     * correct path to the software key directory.
-     * 
-     * @param key The key to look for.
-     * @return
-     * @throws IOException 
+     * Runs a recursive query against the windows registry.
+     * @param key The full path to the key to query.
+     * @param name The name of the value to find.
+     * @return The values found, or null if the key doesn't exist.
+     * @throws IOException If reg.exe can't be run.
      */
-    public String getKeyValue(String path, String key) throws IOException {
-        // Build the query
-        StringBuilder query = new StringBuilder(64);
-        query.append('"' + HKLM_SOFTWARE);
-        
-        if(usesWow6432Node)
-            query.append(WOW_6432_NODE);
-        
-        query.append(path).append("\" /v \"").append(key).append('"');
+    private Map<String, String> runQuery(String key, String name) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder("reg", "query", key, "/s", "/v", name);
+        pb.redirectErrorStream(true);
+        Process p = pb.start();
+        p.getOutputStream().close();
         
-        // Run it
-        String output = runQuery(query.toString());
-        
-        // Extract the key's value from the output
-        if(output == null)
-            return null;
-            
-        output = output.substring(output.indexOf(key)+key.length());
-        
-        output = output.substring(output.indexOf("REG"));
-        
-        output = output.substring(output.indexOf(' '));
+        Map<String, String> values;
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(p.getInputStream()));
+        try {
+            values = parse(in, key, name);
+        } finally {
+            in.close();
+        }
         
-        return output.trim();
+        try {
+            // reg exits with 1 when the key or value wasn't found
+            if(p.waitFor() != 0 && values.isEmpty())
+                return null;
+        } catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the registry.", ie);
+        }
+        return values;
     }
     
     /**
-     * Runs a query against the windows registry.
-     * @param query The query to run.
-     * @return The query string result, or null if an error occurred or the 
-     * query returned no result.
-     * @throws IOException 
+     * Reads the values out of the output of <tt>reg query</tt>.
+     * @param in The query's output.
+     * @param key The full path to the key that was queried. Keys outside
+     * of it are skipped.
+     * @param name The name of the value to find.
+     * @return The values found, mapped by the path of their key relative to
+     * the queried key.
+     * @throws IOException If the output can't be read.
      */
-    private String runQuery(String query) throws IOException {
-        String line;
-        StringBuilder output = new StringBuilder(128);
-        
-        Process p = Runtime.getRuntime().exec(REG_QUERY + query);
-    
-        BufferedReader in = new BufferedReader(
-                new InputStreamReader(p.getInputStream()));
+    static Map<String, String> parse(BufferedReader in, String key, String name)
+            throws IOException
+    {
+        Map<String, String> values =
+                new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        String prefix = key.toLowerCase();
+        String current = null;
         
+        String line;
         while((line = in.readLine()) != null){
-            output.append(line);
+            if(line.startsWith("HKEY_")){
+                // Start of a key, keep its path if it's inside the queried key
+                String lower = line.trim().toLowerCase();
+                if(lower.equals(prefix))
+                    current = "";
+                else if(lower.startsWith(prefix + '\\'))
+                    current = line.trim().substring(prefix.length() + 1);
+                else
+                    current = null;
+                
+            } else if(current != null){
+                Matcher m = VALUE_LINE.matcher(line);
+                if(m.matches() && m.group(1).equalsIgnoreCase(name))
+                    values.put(current, m.group(2) == null ? "" : m.group(2).trim());
+            }
         }
-        in.close();
-        
-        String returnMe = output.toString().trim();
-        
-        if(returnMe.isEmpty())
-            return null;
-        
-        if(returnMe.toLowerCase().contains("error"))
-            return null;
-        
-        return output.toString();
+        return values;
     }
-    
-    private boolean usesWow6432Node = true;
-    
-    private static final String REG_QUERY = "reg query ";
-    private static final String HKLM_SOFTWARE = "HKLM\\Software\\";
-    private static final String WOW_6432_NODE = "Wow6432Node\\";
-    
 }
@@ -0,0 +1,91 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+import com.chockly.pm.games.Game;
+import com.chockly.pm.games.GameFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Builds the default configuration from a saved <tt>reg query</tt>, set
+ * with the <tt>pm.registry</tt> property.
+ *
+ * @author Curtis Oakley
+ */
+public class BuildIniTest {
+    
+    private File file;
+    
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("registry", ".txt");
+        System.setProperty("pm.registry", file.getPath());
+    }
+    
+    @After
+    public void tearDown() {
+        System.clearProperty("pm.registry");
+        file.delete();
+    }
+    
+    @Test
+    public void testRegistryFile() throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write("\r\n"
+                    + "HKEY_LOCAL_MACHINE\\SOFTWARE\\Wow6432Node\\Bethesda Softworks\\Morrowind\r\n"
+                    + "    Installed Path    REG_SZ    D:\\Test Games\\Morrowind\\\r\n"
+                    + "\r\n"
+                    + "HKEY_LOCAL_MACHINE\\SOFTWARE\\Wow6432Node\\Bethesda Softworks\\Skyrim\r\n"
+                    + "    Installed Path    REG_SZ    D:\\Test Games\\Steam\\steamapps\\common\\skyrim\r\n"
+                    + "\r\n"
+                    + "HKEY_LOCAL_MACHINE\\SOFTWARE\\Wow6432Node\\Bethesda Softworks\\Fallout3\r\n"
+                    + "    Installed Path    REG_SZ\r\n"
+                    + "\r\n"
+                    + "End of search: 3 match(es) found.\r\n");
+        } finally {
+            out.close();
+        }
+        
+        Game morrowind = GameFactory.getGameFromID(GameFactory.MORROWIND_ID);
+        Game skyrim = GameFactory.getGameFromID(GameFactory.SKYRIM_ID);
+        Game fallout3 = GameFactory.getGameFromID(GameFactory.FALLOUT_3_ID);
+        String fallout3Exe = fallout3.getExe();
+        
+        BuildIni.buildDefaultIni();
+        
+        assertEquals("D:\\Test Games\\Morrowind\\Morrowind.exe",
+                Config.get(morrowind.getExeConfigKey()));
+        // Morrowind doesn't use an ini, so its data is in the install folder
+        assertEquals("D:\\Test Games\\Morrowind\\",
+                Config.get(morrowind.getDirConfigKey()));
+        assertEquals("D:\\Test Games\\Steam\\steamapps\\common\\skyrim\\TESV.exe",
+                Config.get(skyrim.getExeConfigKey()));
+        assertEquals("D:\\Test Games\\Steam\\steamapps\\common\\skyrim\\TESV.exe",
+                skyrim.getExe());
+        // An empty install path is skipped
+        assertEquals(fallout3Exe, fallout3.getExe());
+    }
+}
@@ -0,0 +1,159 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+import com.chockly.pm.games.CustomGame;
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that profiles and custom games survive being exported to XML and to
+ * both bundle formats and imported back again.
+ *
+ * @author Curtis Oakley
+ */
+public class BundleUtilsTest {
+    
+    private File dir;
+    
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("bundle-test", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+    
+    @After
+    public void tearDown() {
+        IOUtils.deleteFile(dir);
+    }
+    
+    @Test
+    public void testRoundTrip() {
+        Profile[] profiles = {
+            profile("Dovahkiin", "Dovahkiin", (byte) 6, 1, "C:\\images\\dragon.png"),
+            profile("No Image", "No Image", (byte) 4, 2, null),
+            profile("Zo\u00eb \u674e\u767d \u0414\u0430\u043d\u0438\u043b\u0430",
+                    "Zo\u00eb \u674e\u767d", (byte) 8, 300, "\u00e9\u00e9.jpg"),
+            profile("Courier", "Courier", (byte) 10, Integer.MAX_VALUE, "/home/courier/six.png")
+        };
+        assertRoundTrip(profiles);
+    }
+    
+    @Test
+    public void testEmptyRoundTrip() {
+        assertRoundTrip(new Profile[0]);
+    }
+    
+    @Test
+    public void testGamesRoundTrip() {
+        CustomGame[] games = {
+            new CustomGame((byte) 100, "Morrowind", "C:\\Games\\Morrowind",
+                    "C:\\Games\\Morrowind\\Morrowind Launcher.exe",
+                    "C:\\Games\\Morrowind\\mw.ico", "Profiles", "Saves"),
+            new CustomGame((byte) 101, "No Icon", "/home/user/games/noicon",
+                    "/home/user/games/noicon/run.sh", null, "pm profiles", "save games"),
+            new CustomGame((byte) 102, "\u00d6kami \u5927\u795e", "D:\\\u5927\u795e",
+                    "D:\\\u5927\u795e\\okami.exe", "\u00e9\u00e9.png",
+                    "Profils \u00e9t\u00e9", "Sauvegardes"),
+            new CustomGame(Byte.MAX_VALUE, "Last", "E:\\Last", "E:\\Last\\last.exe",
+                    "E:\\Last\\last.png", "p", "s")
+        };
+        
+        String xml = new File(dir, "games.xml").getPath();
+        String bundle = new File(dir, "games." + BundleUtils.BUNDLE_EXT).getPath();
+        String gzip = new File(dir, "games." + BundleUtils.GZIP_BUNDLE_EXT).getPath();
+        
+        XMLUtils.GamesToXML(games, xml);
+        BundleUtils.GamesToBundle(games, bundle, false);
+        BundleUtils.GamesToBundle(games, gzip, true);
+        
+        CustomGame[] fromXML = XMLUtils.GamesFromXML(xml);
+        assertGamesEqual("XML", games, fromXML);
+        // The bundles have to read back the same games the XML does
+        assertGamesEqual("bundle", fromXML, BundleUtils.GamesFromBundle(bundle));
+        assertGamesEqual("gzip bundle", fromXML, BundleUtils.GamesFromBundle(gzip));
+        assertNull(BundleUtils.GamesFromBundle(bundle)[1].getIconPath());
+        
+        // No games
+        BundleUtils.GamesToBundle(new CustomGame[0], bundle, true);
+        assertGamesEqual("empty bundle", new CustomGame[0], BundleUtils.GamesFromBundle(bundle));
+    }
+    
+    @Test
+    public void testWrongKindIsRejected() {
+        String file = new File(dir, "games." + BundleUtils.BUNDLE_EXT).getPath();
+        BundleUtils.GamesToBundle(new CustomGame[0], file, false);
+        
+        assertNull(BundleUtils.ProfilesFromBundle(file));
+        // The failed read has to release the file
+        assertTrue(new File(file).delete());
+    }
+    
+    /** Exports the profiles in each format, and checks what's imported. */
+    private void assertRoundTrip(Profile[] expected){
+        String xml = new File(dir, "profiles.xml").getPath();
+        String bundle = new File(dir, "profiles." + BundleUtils.BUNDLE_EXT).getPath();
+        String gzip = new File(dir, "profiles." + BundleUtils.GZIP_BUNDLE_EXT).getPath();
+        
+        XMLUtils.ProfilesToXML(expected, xml);
+        BundleUtils.ProfilesToBundle(expected, bundle, false);
+        BundleUtils.ProfilesToBundle(expected, gzip, true);
+        
+        assertProfilesEqual("XML", expected, XMLUtils.ProfilesFromXML(xml));
+        assertProfilesEqual("bundle", expected, BundleUtils.ProfilesFromBundle(bundle));
+        assertProfilesEqual("gzip bundle", expected, BundleUtils.ProfilesFromBundle(gzip));
+    }
+    
+    private static void assertProfilesEqual(String format, Profile[] expected, Profile[] actual){
+        assertNotNull(format, actual);
+        assertEquals(format + " count", expected.length, actual.length);
+        for(int i=0; i<expected.length; i++){
+            String msg = format + " profile " + i;
+            assertEquals(msg + " id", expected[i].getID(), actual[i].getID());
+            assertEquals(msg + " game id", expected[i].getGameID(), actual[i].getGameID());
+            assertEquals(msg + " name", expected[i].getName(), actual[i].getName());
+            assertEquals(msg + " image", expected[i].getImage(), actual[i].getImage());
+            assertEquals(msg + " save dir", expected[i].getSaveDir(), actual[i].getSaveDir());
+        }
+    }
+    
+    private static void assertGamesEqual(String format, CustomGame[] expected, CustomGame[] actual){
+        assertNotNull(format, actual);
+        assertEquals(format + " count", expected.length, actual.length);
+        for(int i=0; i<expected.length; i++){
+            String msg = format + " game " + i;
+            assertEquals(msg + " id", expected[i].getId(), actual[i].getId());
+            assertEquals(msg + " name", expected[i].getName(), actual[i].getName());
+            assertEquals(msg + " dir", expected[i].getDir(), actual[i].getDir());
+            assertEquals(msg + " exe", expected[i].getExe(), actual[i].getExe());
+            assertEquals(msg + " icon", expected[i].getIconPath(), actual[i].getIconPath());
+            assertEquals(msg + " profile dir", expected[i].getSave(), actual[i].getSave());
+            assertEquals(msg + " save dir", expected[i].getGameSaveDir(), actual[i].getGameSaveDir());
+        }
+    }
+    
+    private static Profile profile(String name, String dir, byte gameID, int id, String image){
+        Profile p = new Profile(name, dir, gameID, id);
+        p.setImage(image);
+        return p;
+    }
+}
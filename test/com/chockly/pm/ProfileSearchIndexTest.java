@@ -0,0 +1,130 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the searches of the {@link ProfileSearchIndex}, both the short ones
+ * that are a single lookup and the longer ones that intersect the n-grams.
+ * <br/>
+ * The test profiles use IDs and text that the saved profiles won't have, and
+ * are removed from the index after each test.
+ *
+ * @author Curtis Oakley
+ */
+public class ProfileSearchIndexTest {
+    
+    private static final byte GAME = (byte) 120;
+    
+    private ProfileSearchIndex index;
+    private Profile[] profiles;
+    
+    @Before
+    public void setUp() {
+        index = ProfileSearchIndex.getInstance();
+        profiles = new Profile[]{
+            new Profile("Qzx Vault Dweller", "qzx vault", GAME, 900001),
+            new Profile("Qzx Courier", "mojave qzx", GAME, 900002),
+            new Profile("Qzxabc Hero", "qzxbcd", GAME, 900003),
+            new Profile("QZXLONE", "QZXLONE", GAME, 900004)
+        };
+        for(int i=0; i<profiles.length; i++){
+            index.profileAdded(profiles[i]);
+        }
+    }
+    
+    @After
+    public void tearDown() {
+        for(int i=0; i<profiles.length; i++){
+            index.profileRemoved(profiles[i]);
+        }
+    }
+    
+    @Test
+    public void testShortSearches() {
+        // Up to three characters is a single lookup of the postings
+        assertArrayEquals(new int[]{900001, 900002, 900003, 900004}, index.search("qzx"));
+        assertArrayEquals(new int[]{900001, 900002, 900003, 900004}, index.search("zx"));
+        assertArrayEquals(new int[]{900003}, index.search("xab"));
+        assertArrayEquals(new int[0], index.search("qzq"));
+        assertNull(index.search(""));
+        assertNull(index.search("   "));
+    }
+    
+    @Test
+    public void testLongSearches() {
+        assertArrayEquals(new int[]{900001}, index.search("qzx vault"));
+        assertArrayEquals(new int[]{900001}, index.search("vault dweller"));
+        assertArrayEquals(new int[]{900002}, index.search("mojave"));
+        assertArrayEquals(new int[]{900003}, index.search("qzxabc"));
+        assertArrayEquals(new int[0], index.search("qzx vault courier"));
+    }
+    
+    @Test
+    public void testCandidatesAreChecked() {
+        // "qzxabc hero" and "qzxbcd" hold all of qzx, zxa, xab, abc and bcd,
+        // but never "qzxabcd" in order
+        assertArrayEquals(new int[0], index.search("qzxabcd"));
+        // Nor do the n-grams span the name and the save directory
+        assertArrayEquals(new int[0], index.search("heroqzx"));
+        assertArrayEquals(new int[0], index.search("ro q"));
+        assertArrayEquals(new int[]{900003}, index.search("xbcd"));
+    }
+    
+    @Test
+    public void testCaseIsIgnored() {
+        assertArrayEquals(new int[]{900004}, index.search("qzxlone"));
+        assertArrayEquals(new int[]{900004}, index.search("QzXlOnE"));
+        assertArrayEquals(new int[]{900001}, index.search("VAULT"));
+        assertArrayEquals(new int[]{900001, 900002, 900003, 900004}, index.search("QZX"));
+        assertTrue(ProfileSearchIndex.matches(profiles[0], "DWELLER"));
+        assertFalse(ProfileSearchIndex.matches(profiles[0], "courier"));
+    }
+    
+    @Test
+    public void testRenameRemovesOldText() {
+        Profile p = profiles[1];
+        p.setName("Qzx Lone Wanderer");
+        p.setSaveDir("capital qzx");
+        index.profileChanged(p);
+        
+        assertArrayEquals(new int[0], index.search("courier"));
+        assertArrayEquals(new int[0], index.search("moj"));
+        assertArrayEquals(new int[]{900002}, index.search("wanderer"));
+        assertArrayEquals(new int[]{900002}, index.search("capital"));
+        assertArrayEquals(new int[]{900002}, index.search("qzx lone"));
+        // Grams shared with the other profiles are kept for them
+        assertArrayEquals(new int[]{900001, 900002, 900003, 900004}, index.search("qzx"));
+    }
+    
+    @Test
+    public void testRemove() {
+        index.profileRemoved(profiles[3]);
+        
+        assertArrayEquals(new int[0], index.search("qzxlone"));
+        assertArrayEquals(new int[0], index.search("one"));
+        assertArrayEquals(new int[]{900001, 900002, 900003}, index.search("qzx"));
+        
+        // Removing it again changes nothing
+        index.profileRemoved(profiles[3]);
+        assertArrayEquals(new int[]{900001, 900002, 900003}, index.search("qzx"));
+    }
+}
@@ -0,0 +1,133 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.backup;
+
+import com.chockly.pm.IOUtils;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link BackupExtractor} refuses archives whose file names would
+ * be extracted outside of the destination directory.
+ *
+ * @author Curtis Oakley
+ */
+public class BackupExtractorTest {
+    
+    private File dir;
+    private File dest;
+    
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("backup-extractor-test", "");
+        dir.delete();
+        dest = new File(new File(dir, "restore"), "profile");
+        dest.mkdirs();
+    }
+    
+    @After
+    public void tearDown() {
+        IOUtils.deleteFile(dir);
+    }
+    
+    @Test
+    public void testParentPathsRejected() throws IOException {
+        assertRejected("../x");
+        assertRejected("..");
+        assertRejected("saves/../../x");
+        assertRejected("saves/..");
+        assertRejected("..\\x");
+        assertRejected("saves\\..\\..\\x");
+    }
+    
+    @Test
+    public void testAbsolutePathsRejected() throws IOException {
+        assertRejected("/x");
+        assertRejected("/tmp/x");
+        assertRejected("\\x");
+        assertRejected("C:\\Windows\\x");
+        assertRejected("C:x");
+        assertRejected("\\\\server\\share\\x");
+    }
+    
+    @Test
+    public void testSafeNamesExtracted() throws IOException {
+        File zip = zip("safe.zip", "a.ess", "saves/b..ess", "..saves/c.ess",
+                "saves/..d/e.ess");
+        BackupExtractor extractor = new BackupExtractor(new File[]{zip});
+        try {
+            assertEquals(4, extractor.getFileCount());
+            extractor.extractTo(dest, 2, null);
+        } finally {
+            extractor.close();
+        }
+        
+        assertTrue(new File(dest, "a.ess").isFile());
+        assertTrue(new File(dest, "saves/b..ess").isFile());
+        assertTrue(new File(dest, "..saves/c.ess").isFile());
+        assertTrue(new File(dest, "saves/..d/e.ess").isFile());
+    }
+    
+    @Test
+    public void testUnsafeNameInDelta() throws IOException {
+        // The later archives in a chain are checked too
+        File full = zip("full.zip", "a.ess");
+        File delta = zip("delta.zip", "b.ess", "../../evil.ess");
+        try {
+            new BackupExtractor(new File[]{full, delta}).close();
+            fail("An unsafe name in a delta archive was accepted.");
+        } catch(IOException expected){
+            assertTrue(expected.getMessage(), expected.getMessage().contains("../../evil.ess"));
+        }
+        assertFalse(new File(dir, "evil.ess").exists());
+    }
+    
+    private void assertRejected(String name) throws IOException {
+        File zip = zip("unsafe.zip", "a.ess", name);
+        try {
+            new BackupExtractor(new File[]{zip}).close();
+            fail("The unsafe name " + name + " was accepted.");
+        } catch(IOException expected){
+            assertTrue(expected.getMessage(), expected.getMessage().contains(name));
+        }
+        assertEquals(0, dest.list().length);
+        assertTrue(zip.delete());
+    }
+    
+    /** Writes a zip with the named entries, each holding its own name. */
+    private File zip(String fileName, String... names) throws IOException {
+        File f = new File(dir, fileName);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(f));
+        try {
+            for(String name : names){
+                out.putNextEntry(new ZipEntry(name));
+                out.write(name.getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+}
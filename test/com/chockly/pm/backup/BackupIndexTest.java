@@ -0,0 +1,336 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.backup;
+
+import com.chockly.pm.IOUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Makes zip backup chains of a directory the way the profile backups do, and
+ * checks that the {@link BackupIndex} resolves each chain back into the
+ * directory's latest contents.
+ *
+ * @author Curtis Oakley
+ */
+public class BackupIndexTest {
+    
+    /** A fixed time for the files, so changes don't depend on the clock. */
+    private static final long TIME = 1350000000000L;
+    
+    private File dir;
+    private File source;
+    private File archive;
+    
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("backup-index-test", "");
+        dir.delete();
+        source = new File(dir, "profile");
+        source.mkdirs();
+        archive = new File(dir, "profile.zip");
+    }
+    
+    @After
+    public void tearDown() {
+        IOUtils.deleteFile(dir);
+    }
+    
+    @Test
+    public void testDeltaChain() throws IOException {
+        write("a.ess", "one", TIME);
+        write("dir/b.ess", "two", TIME);
+        write("c.ess", "three", TIME);
+        assertEquals(archive, backup(5));
+        assertRestored(1);
+        
+        // Changed size, changed contents with the same size, deleted and added
+        write("a.ess", "one, longer", TIME + 1000);
+        write("dir/b.ess", "TWO", TIME + 1000);
+        delete("c.ess");
+        write("dir/d.ess", "four", TIME);
+        File delta1 = backup(5);
+        assertEquals("profile.delta1.zip", delta1.getName());
+        assertEquals(Arrays.asList("a.ess", "dir/b.ess", "dir/d.ess"), entries(delta1));
+        assertEquals("c.ess\n", read(delta1, BackupIndex.DELETED_ENTRY));
+        assertRestored(2);
+        
+        // A deleted file comes back and another is deleted
+        write("c.ess", "three again", TIME + 2000);
+        delete("dir/b.ess");
+        File delta2 = backup(5);
+        assertEquals("profile.delta2.zip", delta2.getName());
+        assertEquals(Arrays.asList("c.ess"), entries(delta2));
+        assertEquals("dir/b.ess\n", read(delta2, BackupIndex.DELETED_ENTRY));
+        assertRestored(3);
+        
+        // Only touched, so there is nothing to archive
+        new File(source, "a.ess").setLastModified(TIME + 5000);
+        assertNull(backup(5));
+        assertFalse(new File(dir, "profile.delta3.zip").exists());
+        assertRestored(3);
+        
+        // The checksum was remembered, so the file isn't read again
+        BackupIndex index = BackupIndex.load(archive);
+        assertFalse(index.hasChanged("a.ess", new File(source, "a.ess")));
+        assertEquals(new File(dir, "profile.delta3.zip"), index.getNextDeltaArchive());
+    }
+    
+    @Test
+    public void testFullBackupDue() throws IOException {
+        write("a.ess", "one", TIME);
+        assertEquals(archive, backup(2));
+        write("a.ess", "two", TIME + 1000);
+        assertEquals("profile.delta1.zip", backup(2).getName());
+        write("a.ess", "three", TIME + 2000);
+        assertEquals("profile.delta2.zip", backup(2).getName());
+        assertTrue(BackupIndex.load(archive).isFullBackupDue(2));
+        
+        // The chain is full, so the next backup starts a new one
+        write("b.ess", "four", TIME);
+        assertEquals(archive, backup(2));
+        assertFalse(new File(dir, "profile.delta1.zip").exists());
+        assertFalse(new File(dir, "profile.delta2.zip").exists());
+        assertRestored(1);
+        assertEquals(Arrays.asList("a.ess", "b.ess"), entries(archive));
+    }
+    
+    @Test
+    public void testMissingDeltaStartsOver() throws IOException {
+        write("a.ess", "one", TIME);
+        backup(5);
+        write("a.ess", "two", TIME + 1000);
+        File delta1 = backup(5);
+        assertFalse(BackupIndex.load(archive).isFullBackupDue(5));
+        
+        assertTrue(delta1.delete());
+        assertTrue(BackupIndex.load(archive).isFullBackupDue(5));
+        assertEquals(archive, backup(5));
+        assertRestored(1);
+    }
+    
+    @Test
+    public void testLostIndex() throws IOException {
+        write("a.ess", "one", TIME);
+        backup(5);
+        write("a.ess", "two", TIME + 1000);
+        File delta1 = backup(5);
+        
+        assertTrue(new File(dir, "profile.zip.idx").delete());
+        BackupIndex index = BackupIndex.load(archive);
+        assertTrue(index.isFullBackupDue(5));
+        try {
+            index.getArchives();
+            fail("A chain without its index was restored.");
+        } catch(IOException expected){
+            // Only the index knows which deltas belong to the chain
+        }
+        
+        // The next full backup removes the stray delta
+        assertEquals(archive, backup(5));
+        assertFalse(delta1.exists());
+        assertRestored(1);
+    }
+    
+    @Test
+    public void testDamagedIndex() throws IOException {
+        write("a.ess", "one", TIME);
+        backup(5);
+        
+        // Without deltas a damaged index just means a full backup
+        OutputStream out = new FileOutputStream(new File(dir, "profile.zip.idx"));
+        out.write(new byte[]{'P', 'M', 'B', 'X', 0, 0, 0, 1});
+        out.close();
+        BackupIndex index = BackupIndex.load(archive);
+        assertTrue(index.isFullBackupDue(5));
+        assertEquals(1, index.getArchives().length);
+        assertTrue(index.hasChanged("a.ess", new File(source, "a.ess")));
+    }
+    
+    /**
+     * Backs up the source directory like the profile backups do.
+     * @return The archive that was written, or <tt>null</tt> if nothing had
+     * changed.
+     */
+    private File backup(int maxDeltas) throws IOException {
+        BackupIndex index = BackupIndex.load(archive);
+        boolean full = index.isFullBackupDue(maxDeltas);
+        if(full)
+            index.clear();
+        File target = full ? archive : index.getNextDeltaArchive();
+        
+        Map<String, File> files = new TreeMap<String, File>();
+        listFiles(source, "", files);
+        
+        List<String> changed = new ArrayList<String>();
+        for(Map.Entry<String, File> e : files.entrySet()){
+            if(full || index.hasChanged(e.getKey(), e.getValue()))
+                changed.add(e.getKey());
+        }
+        List<String> deleted = index.removeMissing(new HashSet<String>(files.keySet()));
+        if( !full && changed.isEmpty() && deleted.isEmpty()){
+            index.save();
+            return null;
+        }
+        
+        ParallelZipWriter out = new ParallelZipWriter(new FileOutputStream(target),
+                Deflater.DEFAULT_COMPRESSION);
+        try {
+            for(String name : changed){
+                index.putFile(out, name, files.get(name), Codec.NORMAL, null);
+            }
+            if( !deleted.isEmpty()){
+                StringBuilder sb = new StringBuilder();
+                for(String name : deleted){
+                    sb.append(name).append('\n');
+                }
+                byte[] list = sb.toString().getBytes("UTF-8");
+                out.putEntry(BackupIndex.DELETED_ENTRY,
+                        new ByteArrayInputStream(list), list.length, TIME);
+            }
+        } finally {
+            out.close();
+        }
+        
+        if(full)
+            index.commitFull();
+        else
+            index.commitDelta();
+        return target;
+    }
+    
+    /** Restores the chain and checks it matches the source directory. */
+    private void assertRestored(int archives) throws IOException {
+        File[] chain = BackupIndex.load(archive).getArchives();
+        assertEquals(archives, chain.length);
+        assertEquals(archive, chain[0]);
+        for(int i=1; i<chain.length; i++){
+            assertEquals("profile.delta" + i + ".zip", chain[i].getName());
+        }
+        
+        File dest = new File(dir, "restored");
+        IOUtils.deleteFile(dest);
+        BackupExtractor extractor = new BackupExtractor(chain);
+        try {
+            extractor.extractTo(dest, 4, null);
+        } finally {
+            extractor.close();
+        }
+        assertEquals(contents(source), contents(dest));
+    }
+    
+    private void write(String name, String text, long time) throws IOException {
+        File f = new File(source, name);
+        f.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(f);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        f.setLastModified(time);
+    }
+    
+    private void delete(String name){
+        assertTrue(new File(source, name).delete());
+    }
+    
+    private static void listFiles(File dir, String prefix, Map<String, File> files){
+        File[] children = dir.listFiles();
+        if(children == null)
+            return;
+        for(File f : children){
+            if(f.isDirectory())
+                listFiles(f, prefix + f.getName() + '/', files);
+            else
+                files.put(prefix + f.getName(), f);
+        }
+    }
+    
+    /** Reads every file in a directory, by its path in the archive. */
+    private static Map<String, String> contents(File dir) throws IOException {
+        Map<String, File> files = new TreeMap<String, File>();
+        listFiles(dir, "", files);
+        Map<String, String> contents = new TreeMap<String, String>();
+        for(Map.Entry<String, File> e : files.entrySet()){
+            InputStream in = new FileInputStream(e.getValue());
+            try {
+                contents.put(e.getKey(), readAll(in));
+            } finally {
+                in.close();
+            }
+        }
+        return contents;
+    }
+    
+    /** Lists the files in an archive, without the deleted files entry. */
+    private static List<String> entries(File zip) throws IOException {
+        List<String> names = new ArrayList<String>();
+        ZipFile z = new ZipFile(zip);
+        try {
+            for(ZipEntry e : Collections.list(z.entries())){
+                if( !e.getName().equals(BackupIndex.DELETED_ENTRY))
+                    names.add(e.getName());
+            }
+        } finally {
+            z.close();
+        }
+        Collections.sort(names);
+        return names;
+    }
+    
+    private static String read(File zip, String name) throws IOException {
+        ZipFile z = new ZipFile(zip);
+        try {
+            ZipEntry e = z.getEntry(name);
+            assertNotNull(name, e);
+            return readAll(z.getInputStream(e));
+        } finally {
+            z.close();
+        }
+    }
+    
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int read;
+        while((read = in.read(buf)) != -1){
+            out.write(buf, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,283 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.backup;
+
+import com.chockly.pm.IOUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Stores snapshots in a {@link BackupRepository} and checks that they are
+ * restored exactly, that unchanged data is shared between snapshots, and that
+ * collecting the garbage only removes the chunks no snapshot uses.
+ *
+ * @author Curtis Oakley
+ */
+public class BackupRepositoryTest {
+    
+    /** A fixed time for the files, so changes don't depend on the clock. */
+    private static final long TIME = 1350000000000L;
+    
+    private File dir;
+    private File source;
+    private BackupRepository repo;
+    
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("backup-repository-test", "");
+        dir.delete();
+        source = new File(dir, "profile");
+        source.mkdirs();
+        repo = new BackupRepository(new File(dir, "repository"));
+        
+        write("quicksave.ess", random(1, 300 * 1024), TIME);
+        write("saves/autosave.ess", random(2, 40 * 1024), TIME);
+        write("saves/notes.txt", "Level 12, Whiterun".getBytes("UTF-8"), TIME);
+    }
+    
+    @After
+    public void tearDown() {
+        IOUtils.deleteFile(dir);
+    }
+    
+    @Test
+    public void testSnapshotRestore() throws IOException {
+        assertEquals(0, repo.listSnapshots("profile").length);
+        
+        BackupRepository.SnapshotWriter writer = snapshot("profile");
+        assertEquals((300 + 40) * 1024 + 18, writer.getBytesAdded());
+        assertTrue(writer.getBytesStored() > 0);
+        String name = writer.close();
+        
+        assertArrayEquals(new String[]{name}, repo.listSnapshots("profile"));
+        assertRestored("profile", name);
+    }
+    
+    @Test
+    public void testUnchangedSnapshotStoresNothing() throws IOException {
+        String first = snapshot("profile").close();
+        int objects = countObjects();
+        
+        BackupRepository.SnapshotWriter writer = snapshot("profile");
+        assertEquals(0, writer.getBytesStored());
+        String second = writer.close();
+        assertEquals(objects, countObjects());
+        
+        // Snapshots are listed oldest first
+        assertTrue(first.compareTo(second) < 0);
+        assertArrayEquals(new String[]{first, second}, repo.listSnapshots("profile"));
+        assertRestored("profile", second);
+    }
+    
+    @Test
+    public void testEditSharesChunks() throws IOException {
+        byte[] save = random(1, 300 * 1024);
+        String first = snapshot("profile").close();
+        int objects = countObjects();
+        
+        // Change a few bytes in the middle of the save
+        byte[] edited = save.clone();
+        for(int i=150000; i<150016; i++){
+            edited[i] ^= 0x5A;
+        }
+        write("quicksave.ess", edited, TIME + 1000);
+        BackupRepository.SnapshotWriter writer = snapshot("profile");
+        String second = writer.close();
+        
+        // Only the chunks around the edit are new
+        int added = countObjects() - objects;
+        assertTrue("new chunks " + added, added >= 1 && added <= 3);
+        assertTrue("stored " + writer.getBytesStored(), writer.getBytesStored() < 3 * 64 * 1024);
+        assertRestored("profile", second);
+        
+        // The first snapshot still restores the old save
+        File old = new File(dir, "old");
+        repo.restoreSnapshot("profile", first, old);
+        assertArrayEquals(save, read(new File(old, "quicksave.ess")));
+    }
+    
+    @Test
+    public void testDeleteAndCollectGarbage() throws IOException {
+        String first = snapshot("profile").close();
+        write("quicksave.ess", random(3, 100 * 1024), TIME + 1000);
+        String second = snapshot("profile").close();
+        
+        // Every chunk is still used
+        int objects = countObjects();
+        assertEquals(0, repo.collectGarbage());
+        assertEquals(objects, countObjects());
+        
+        // Deleting leaves the chunks until the garbage is collected
+        assertTrue(repo.deleteSnapshot("profile", first));
+        assertFalse(repo.deleteSnapshot("profile", first));
+        assertArrayEquals(new String[]{second}, repo.listSnapshots("profile"));
+        assertEquals(objects, countObjects());
+        
+        int deleted = repo.collectGarbage();
+        assertTrue("deleted " + deleted, deleted > 0);
+        assertEquals(objects - deleted, countObjects());
+        assertRestored("profile", second);
+        assertEquals(0, repo.collectGarbage());
+        
+        assertTrue(repo.deleteSnapshot("profile", second));
+        assertTrue(repo.collectGarbage() > 0);
+        assertEquals(0, countObjects());
+    }
+    
+    @Test
+    public void testGarbageSharedBetweenProfiles() throws IOException {
+        String first = snapshot("profile").close();
+        int objects = countObjects();
+        // The same saves under another profile share every chunk
+        String other = snapshot("other").close();
+        assertEquals(objects, countObjects());
+        
+        assertTrue(repo.deleteSnapshot("profile", first));
+        assertEquals(0, repo.collectGarbage());
+        assertRestored("other", other);
+    }
+    
+    @Test
+    public void testAbortedSnapshot() throws IOException {
+        BackupRepository.SnapshotWriter writer = snapshot("profile");
+        writer.abort();
+        assertEquals(0, repo.listSnapshots("profile").length);
+        try {
+            writer.close();
+            fail("An aborted snapshot was recorded.");
+        } catch(IOException expected){
+            // Already closed
+        }
+        
+        // The chunks written so far are garbage
+        assertTrue(countObjects() > 0);
+        assertEquals(countObjects(), repo.collectGarbage());
+        assertEquals(0, countObjects());
+    }
+    
+    @Test
+    public void testDamagedChunk() throws IOException {
+        String name = snapshot("profile").close();
+        
+        File object = findObject(new File(dir, "repository/objects"));
+        RandomAccessFile raf = new RandomAccessFile(object, "rw");
+        try {
+            raf.seek(raf.length() / 2);
+            int b = raf.read();
+            raf.seek(raf.length() / 2);
+            raf.write(b ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+        
+        try {
+            repo.restoreSnapshot("profile", name, new File(dir, "restored"));
+            fail("A damaged chunk was restored.");
+        } catch(IOException expected){
+            // Either the inflater or the hash check finds it
+        }
+    }
+    
+    /** Adds every file in the source directory to a new snapshot. */
+    private BackupRepository.SnapshotWriter snapshot(String profile) throws IOException {
+        BackupRepository.SnapshotWriter writer = repo.createSnapshot(profile);
+        writer.putFile("quicksave.ess", new File(source, "quicksave.ess"), Codec.NORMAL, null);
+        writer.putFile("saves/autosave.ess", new File(source, "saves/autosave.ess"), Codec.FAST, null);
+        writer.putFile("saves/notes.txt", new File(source, "saves/notes.txt"), Codec.STORED, null);
+        return writer;
+    }
+    
+    /** Restores a snapshot and checks it matches the source directory. */
+    private void assertRestored(String profile, String snapshot) throws IOException {
+        File target = new File(dir, "restored");
+        IOUtils.deleteFile(target);
+        repo.restoreSnapshot(profile, snapshot, target);
+        
+        String[] names = {"quicksave.ess", "saves/autosave.ess", "saves/notes.txt"};
+        for(String name : names){
+            File expected = new File(source, name);
+            File actual = new File(target, name);
+            assertTrue(name, Arrays.equals(read(expected), read(actual)));
+            assertEquals(name, expected.lastModified(), actual.lastModified());
+        }
+    }
+    
+    private int countObjects(){
+        int count = 0;
+        File[] buckets = new File(dir, "repository/objects").listFiles();
+        if(buckets != null){
+            for(File bucket : buckets){
+                count += bucket.list().length;
+            }
+        }
+        return count;
+    }
+    
+    private static File findObject(File objects){
+        for(File bucket : objects.listFiles()){
+            File[] files = bucket.listFiles();
+            if(files.length > 0)
+                return files[0];
+        }
+        throw new AssertionError("The repository has no chunks.");
+    }
+    
+    private void write(String name, byte[] data, long time) throws IOException {
+        File f = new File(source, name);
+        f.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(f);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        f.setLastModified(time);
+    }
+    
+    private static byte[] read(File f) throws IOException {
+        byte[] data = new byte[(int) f.length()];
+        InputStream in = new FileInputStream(f);
+        try {
+            int off = 0;
+            int read;
+            while(off < data.length && (read = in.read(data, off, data.length - off)) != -1){
+                off += read;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+    
+    /** Makes incompressible data, the same for the same seed. */
+    private static byte[] random(long seed, int length){
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,259 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.gui;
+
+import com.chockly.pm.Profile;
+import com.chockly.pm.ProfileSearchIndex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.SwingUtilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Changes the profiles under a {@link FilteredProfileListModel} and checks
+ * that the rows it shows are always the matching rows of the sorted model,
+ * in order.<br/>
+ * <br/>
+ * Each change is sent to the {@link ProfileSearchIndex} and then to the
+ * sorted model, in the same order the ProfileFactory would send them.
+ *
+ * @author Curtis Oakley
+ */
+public class FilteredProfileListModelTest {
+    
+    private static final byte GAME = (byte) 120;
+    
+    private ProfileSearchIndex index;
+    private SortedProfileListModel source;
+    private FilteredProfileListModel model;
+    private List<Profile> profiles;
+    private List<String> events;
+    
+    @Before
+    public void setUp() throws Exception {
+        index = ProfileSearchIndex.getInstance();
+        profiles = new ArrayList<Profile>();
+        events = new ArrayList<String>();
+        SwingUtilities.invokeAndWait(new Runnable(){
+            @Override
+            public void run() {
+                source = new SortedProfileListModel();
+                source.setGame(GAME);
+                model = new FilteredProfileListModel(source);
+                model.addListDataListener(new SortedProfileListModelTest.EventRecorder(events));
+            }
+        });
+    }
+    
+    @After
+    public void tearDown() {
+        source.dispose();
+        for(Profile p : profiles){
+            index.profileRemoved(p);
+        }
+    }
+    
+    @Test
+    public void testWithoutSearch() throws Exception {
+        Profile b = add("banana", 900012);
+        add("apple", 900011);
+        flush();
+        assertShown("apple", "banana");
+        assertEvents("added 0-0", "added 0-0");
+        
+        events.clear();
+        rename(b, "aardvark");
+        assertShown("aardvark", "apple");
+        assertEvents("removed 1-1", "added 0-0");
+    }
+    
+    @Test
+    public void testSearch() throws Exception {
+        add("apple qzx", 900011);
+        add("banana", 900012);
+        add("cherry qzx", 900013);
+        add("dates", 900014);
+        flush();
+        
+        events.clear();
+        search("QZX");
+        assertShown("apple qzx", "cherry qzx");
+        assertEvents("removed 0-3", "added 0-1");
+        
+        events.clear();
+        search("");
+        assertNull(model.getSearch());
+        assertShown("apple qzx", "banana", "cherry qzx", "dates");
+        assertEvents("removed 0-1", "added 0-3");
+        
+        events.clear();
+        search("nothing qzx");
+        assertShown();
+        assertTrue(model.isEmpty());
+        assertEvents("removed 0-3");
+    }
+    
+    @Test
+    public void testChangesUnderSearch() throws Exception {
+        Profile apple = add("apple qzx", 900011);
+        Profile banana = add("banana", 900012);
+        Profile cherry = add("cherry qzx", 900013);
+        Profile dates = add("dates", 900014);
+        flush();
+        search("qzx");
+        
+        // A matching insert between the shown rows
+        events.clear();
+        add("blue qzx", 900015);
+        flush();
+        assertShown("apple qzx", "blue qzx", "cherry qzx");
+        assertEvents("added 1-1");
+        
+        // A hidden row is removed, the shown rows move up in the source
+        events.clear();
+        remove(banana);
+        assertShown("apple qzx", "blue qzx", "cherry qzx");
+        assertEvents();
+        
+        // A hidden row is renamed to match, in place
+        events.clear();
+        rename(dates, "date qzx");
+        assertShown("apple qzx", "blue qzx", "cherry qzx", "date qzx");
+        assertEvents("added 3-3");
+        
+        // A shown row is renamed to no longer match
+        events.clear();
+        rename(apple, "apple");
+        assertShown("blue qzx", "cherry qzx", "date qzx");
+        assertEvents("removed 0-0");
+        
+        // A shown row moves past a hidden one
+        events.clear();
+        rename(cherry, "aardvark qzx");
+        assertShown("aardvark qzx", "blue qzx", "date qzx");
+        assertEvents("removed 1-1", "added 0-0");
+        
+        // A shown row is renamed in place
+        events.clear();
+        rename(cherry, "AARDVARK QZX");
+        assertShown("AARDVARK QZX", "blue qzx", "date qzx");
+        assertEvents("changed 0-0");
+        
+        // A hidden row is inserted before all of the shown rows
+        events.clear();
+        add("aaa", 900016);
+        flush();
+        assertShown("AARDVARK QZX", "blue qzx", "date qzx");
+        assertEvents();
+        
+        events.clear();
+        remove(dates);
+        assertShown("AARDVARK QZX", "blue qzx");
+        assertEvents("removed 2-2");
+    }
+    
+    @Test
+    public void testFewMatches() throws Exception {
+        // Fewer matches than an eighth of the rows are looked up one at a time
+        for(int i=0; i<26; i++){
+            add("profile " + (char) ('a' + i), 900020 + i);
+        }
+        add("profile qzx", 900050);
+        add("profile aqzx", 900051);
+        flush();
+        
+        search("qzx");
+        assertShown("profile aqzx", "profile qzx");
+        
+        Profile p = profiles.get(3);
+        rename(p, "profile zqzx");
+        assertShown("profile aqzx", "profile qzx", "profile zqzx");
+    }
+    
+    private Profile add(String name, int id){
+        Profile p = new Profile(name, name, GAME, id);
+        profiles.add(p);
+        index.profileAdded(p);
+        source.profileAdded(p);
+        return p;
+    }
+    
+    private void remove(Profile p) throws Exception {
+        index.profileRemoved(p);
+        source.profileRemoved(p);
+        flush();
+    }
+    
+    private void rename(Profile p, String name) throws Exception {
+        p.setName(name);
+        p.setSaveDir(name);
+        index.profileChanged(p);
+        source.profileChanged(p);
+        flush();
+    }
+    
+    private void search(final String search) throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable(){
+            @Override
+            public void run() {
+                model.setSearch(search);
+            }
+        });
+    }
+    
+    /** Waits for the changes queued on the event dispatch thread. */
+    private static void flush() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable(){
+            @Override
+            public void run() {
+            }
+        });
+    }
+    
+    /**
+     * Checks the shown profiles, and that they are the profiles of the
+     * sorted model that match the search.
+     */
+    private void assertShown(String... names){
+        String[] actual = new String[model.getSize()];
+        for(int i=0; i<actual.length; i++){
+            Profile p = model.getElementAt(i);
+            actual[i] = p.getName();
+            assertEquals(i, model.indexOf(p));
+        }
+        assertArrayEquals(names, actual);
+        
+        List<String> expected = new ArrayList<String>();
+        for(int row=0; row<source.getSize(); row++){
+            Profile p = source.getElementAt(row);
+            if(model.getSearch() == null || ProfileSearchIndex.matches(p, model.getSearch())){
+                expected.add(p.getName());
+            } else {
+                assertEquals(-1, model.indexOf(p));
+            }
+        }
+        assertEquals(expected, Arrays.asList(actual));
+    }
+    
+    private void assertEvents(String... expected){
+        assertEquals(Arrays.asList(expected), events);
+    }
+}
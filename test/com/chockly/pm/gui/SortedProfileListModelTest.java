@@ -0,0 +1,274 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.gui;
+
+import com.chockly.pm.Profile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Sends profile changes to a {@link SortedProfileListModel} and checks the
+ * order of the rows and the list events it fires.<br/>
+ * <br/>
+ * The changes are sent from the test thread, so the model applies them on the
+ * event dispatch thread, and each check waits for the dispatch thread first.
+ *
+ * @author Curtis Oakley
+ */
+public class SortedProfileListModelTest {
+    
+    /** A game ID that none of the saved profiles use. */
+    private static final byte GAME = (byte) 120;
+    
+    private SortedProfileListModel model;
+    private List<String> events;
+    
+    @Before
+    public void setUp() throws Exception {
+        events = new ArrayList<String>();
+        SwingUtilities.invokeAndWait(new Runnable(){
+            @Override
+            public void run() {
+                model = new SortedProfileListModel();
+                model.setGame(GAME);
+                model.addListDataListener(new EventRecorder(events));
+            }
+        });
+    }
+    
+    @After
+    public void tearDown() {
+        model.dispose();
+    }
+    
+    @Test
+    public void testInsertUsesCollationOrder() throws Exception {
+        model.profileAdded(new Profile("cherry", "cherry", GAME, 1));
+        model.profileAdded(new Profile("apple", "apple", GAME, 2));
+        model.profileAdded(new Profile("Banana", "Banana", GAME, 3));
+        model.profileAdded(new Profile("Éclair", "Eclair", GAME, 4));
+        flush();
+        
+        // Plain String order would put Banana first and the accented E last
+        assertNames("apple", "Banana", "cherry", "Éclair");
+        assertEvents("added 0-0", "added 0-0", "added 1-1", "added 3-3");
+        assertEquals(2, model.indexOf(1));
+        assertEquals(0, model.indexOf(2));
+        assertEquals(1, model.indexOf(3));
+        assertEquals(3, model.indexOf(4));
+    }
+    
+    @Test
+    public void testSameNamesOrderedById() throws Exception {
+        model.profileAdded(new Profile("Zed", "Zed", GAME, 7));
+        model.profileAdded(new Profile("zed", "zed 2", GAME, 4));
+        model.profileAdded(new Profile("ZED", "zed 3", GAME, 9));
+        flush();
+        
+        assertNames("zed", "Zed", "ZED");
+        assertEvents("added 0-0", "added 0-0", "added 2-2");
+    }
+    
+    @Test
+    public void testOtherGamesIgnored() throws Exception {
+        model.profileAdded(new Profile("apple", "apple", (byte) (GAME + 1), 1));
+        flush();
+        
+        assertEquals(0, model.getSize());
+        assertTrue(model.isEmpty());
+        assertEquals(-1, model.indexOf(1));
+        assertEvents();
+    }
+    
+    @Test
+    public void testRepeatedAddIsAnUpdate() throws Exception {
+        Profile p = new Profile("apple", "apple", GAME, 1);
+        model.profileAdded(p);
+        model.profileAdded(p);
+        flush();
+        
+        assertNames("apple");
+        assertEvents("added 0-0", "changed 0-0");
+    }
+    
+    @Test
+    public void testRemove() throws Exception {
+        Profile banana = new Profile("Banana", "Banana", GAME, 2);
+        addFruit(banana);
+        
+        model.profileRemoved(banana);
+        flush();
+        assertNames("apple", "cherry");
+        assertEvents("removed 1-1");
+        assertEquals(-1, model.indexOf(banana));
+        assertEquals(1, model.indexOf(3));
+        
+        // Removing it again changes nothing
+        events.clear();
+        model.profileRemoved(banana);
+        flush();
+        assertNames("apple", "cherry");
+        assertEvents();
+    }
+    
+    @Test
+    public void testRenameMovesRow() throws Exception {
+        Profile apple = new Profile("apple", "apple", GAME, 1);
+        model.profileAdded(apple);
+        model.profileAdded(new Profile("Banana", "Banana", GAME, 2));
+        model.profileAdded(new Profile("cherry", "cherry", GAME, 3));
+        flush();
+        events.clear();
+        
+        apple.setName("dates");
+        model.profileChanged(apple);
+        flush();
+        assertNames("Banana", "cherry", "dates");
+        assertEvents("removed 0-0", "added 2-2");
+        assertEquals(2, model.indexOf(apple));
+        
+        // And back to the front
+        events.clear();
+        apple.setName("Apricot");
+        model.profileChanged(apple);
+        flush();
+        assertNames("Apricot", "Banana", "cherry");
+        assertEvents("removed 2-2", "added 0-0");
+        assertEquals(0, model.indexOf(apple));
+    }
+    
+    @Test
+    public void testRenameInPlace() throws Exception {
+        Profile banana = new Profile("Banana", "Banana", GAME, 2);
+        addFruit(banana);
+        
+        // Still between apple and cherry
+        banana.setName("Blueberry");
+        model.profileChanged(banana);
+        flush();
+        assertNames("apple", "Blueberry", "cherry");
+        assertEvents("changed 1-1");
+        
+        // Only the case changes, so the key is the same
+        events.clear();
+        banana.setName("BLUEBERRY");
+        model.profileChanged(banana);
+        flush();
+        assertNames("apple", "BLUEBERRY", "cherry");
+        assertEvents("changed 1-1");
+    }
+    
+    @Test
+    public void testChangeOfUnknownProfileIsAnInsert() throws Exception {
+        addFruit(new Profile("Banana", "Banana", GAME, 2));
+        
+        model.profileChanged(new Profile("bilberry", "bilberry", GAME, 5));
+        flush();
+        assertNames("apple", "Banana", "bilberry", "cherry");
+        assertEvents("added 2-2");
+    }
+    
+    @Test
+    public void testSetGameClearsRows() throws Exception {
+        addFruit(new Profile("Banana", "Banana", GAME, 2));
+        
+        SwingUtilities.invokeAndWait(new Runnable(){
+            @Override
+            public void run() {
+                model.setGame((byte) (GAME + 1));
+            }
+        });
+        assertEquals(0, model.getSize());
+        assertEvents("removed 0-2");
+        
+        // The old game's changes are now ignored
+        events.clear();
+        model.profileAdded(new Profile("dates", "dates", GAME, 6));
+        flush();
+        assertEquals(0, model.getSize());
+        assertEvents();
+    }
+    
+    /**
+     * Adds apple (ID 1), the given profile and cherry (ID 3), then clears the
+     * recorded events.
+     */
+    private void addFruit(Profile middle) throws Exception {
+        model.profileAdded(new Profile("apple", "apple", GAME, 1));
+        model.profileAdded(middle);
+        model.profileAdded(new Profile("cherry", "cherry", GAME, 3));
+        flush();
+        events.clear();
+    }
+    
+    /** Waits for the changes queued on the event dispatch thread. */
+    private static void flush() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable(){
+            @Override
+            public void run() {
+            }
+        });
+    }
+    
+    private void assertNames(String... names){
+        String[] actual = new String[model.getSize()];
+        for(int i=0; i<actual.length; i++){
+            actual[i] = model.getElementAt(i).getName();
+        }
+        assertArrayEquals(names, actual);
+    }
+    
+    private void assertEvents(String... expected){
+        assertEquals(Arrays.asList(expected), events);
+    }
+    
+    /** Records each list event as its type and index range. */
+    static class EventRecorder implements ListDataListener {
+        private final List<String> events;
+        
+        EventRecorder(List<String> events){
+            this.events = events;
+        }
+        
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            record("added", e);
+        }
+        
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            record("removed", e);
+        }
+        
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            record("changed", e);
+        }
+        
+        private void record(String type, ListDataEvent e){
+            events.add(type + " " + e.getIndex0() + "-" + e.getIndex1());
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.win86;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Parses the shortcuts written by {@link JLnk} back out of the Shell Link
+ * Binary File Format, checking each structure against the format.
+ *
+ * @author Curtis Oakley
+ */
+public class JLnkTest {
+    
+    private static final Charset UTF_16LE = Charset.forName("UTF-16LE");
+    private static final byte[] LINK_CLSID = {
+        0x01, 0x14, 0x02, 0x00, 0x00, 0x00, 0x00, 0x00,
+        (byte) 0xC0, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x46};
+    
+    private static final int HAS_LINK_INFO = 0x02;
+    private static final int HAS_NAME = 0x04;
+    private static final int HAS_WORKING_DIR = 0x10;
+    private static final int HAS_ARGUMENTS = 0x20;
+    private static final int HAS_ICON_LOCATION = 0x40;
+    private static final int IS_UNICODE = 0x80;
+    private static final int HAS_EXP_STRING = 0x200;
+    
+    @Test
+    public void testLocalShortcut() {
+        String path = "C:\\Games\\Skyrim\\SkyrimLauncher.exe";
+        JLnk link = new JLnk();
+        link.setPath(path);
+        link.setArguments("-p 5");
+        link.setDescription("Play Dovahkiin");
+        link.setIconLocation("C:\\Games\\Skyrim\\TESV.exe");
+        link.setIconIndex(2);
+        
+        ByteBuffer lnk = wrap(link.toBytes());
+        
+        int flags = readHeader(lnk, 2);
+        assertEquals(IS_UNICODE | HAS_EXP_STRING | HAS_LINK_INFO | HAS_NAME
+                | HAS_WORKING_DIR | HAS_ARGUMENTS | HAS_ICON_LOCATION, flags);
+        
+        // LinkInfo
+        int linkInfo = lnk.position();
+        int size = lnk.getInt();
+        assertEquals(0x24, lnk.getInt());               // Header size
+        assertEquals(1, lnk.getInt());                  // VolumeIDAndLocalBasePath
+        int volumeID = lnk.getInt();
+        int localBasePath = lnk.getInt();
+        assertEquals(0, lnk.getInt());                  // No network share
+        int commonPathSuffix = lnk.getInt();
+        int localBasePathUnicode = lnk.getInt();
+        int commonPathSuffixUnicode = lnk.getInt();
+        
+        assertEquals(0x24, volumeID);
+        assertEquals(17, lnk.getInt(linkInfo + volumeID));          // VolumeID size
+        assertEquals(3, lnk.getInt(linkInfo + volumeID + 4));       // DRIVE_FIXED
+        assertEquals(0x10, lnk.getInt(linkInfo + volumeID + 12));   // Label offset
+        assertEquals(0, lnk.get(linkInfo + volumeID + 0x10));       // Empty label
+        
+        assertEquals(volumeID + 17, localBasePath);
+        assertEquals(path, readAnsi(lnk, linkInfo + localBasePath));
+        assertEquals("", readAnsi(lnk, linkInfo + commonPathSuffix));
+        assertEquals(path, readUnicode(lnk, linkInfo + localBasePathUnicode));
+        assertEquals("", readUnicode(lnk, linkInfo + commonPathSuffixUnicode));
+        assertEquals(commonPathSuffixUnicode + 2, size);
+        
+        // StringData
+        lnk.position(linkInfo + size);
+        assertEquals("Play Dovahkiin", readCountedString(lnk));
+        assertEquals("C:\\Games\\Skyrim", readCountedString(lnk));
+        assertEquals("-p 5", readCountedString(lnk));
+        assertEquals("C:\\Games\\Skyrim\\TESV.exe", readCountedString(lnk));
+        
+        assertEnvironmentBlock(lnk, path);
+    }
+    
+    @Test
+    public void testNetworkShortcut() {
+        String path = "\\\\server\\games\\Oblivion\\Oblivion.exe";
+        JLnk link = new JLnk();
+        link.setPath(path);
+        
+        ByteBuffer lnk = wrap(link.toBytes());
+        
+        // Only local paths get a LinkInfo, and unset strings are left out
+        assertEquals(IS_UNICODE | HAS_EXP_STRING | HAS_WORKING_DIR, readHeader(lnk, 0));
+        assertEquals("\\\\server\\games\\Oblivion", readCountedString(lnk));
+        
+        assertEnvironmentBlock(lnk, path);
+    }
+    
+    @Test
+    public void testUnicodeStrings() {
+        String path = "D:\\Spiele\\Zo\u00eb\\\u674e\u767d.exe";
+        JLnk link = new JLnk();
+        link.setPath(path);
+        link.setWorkingDirectory("D:\\\u0414\u0430\u043d\u0438\u043b\u0430");
+        
+        ByteBuffer lnk = wrap(link.toBytes());
+        
+        readHeader(lnk, 0);
+        int linkInfo = lnk.position();
+        assertEquals(path, readUnicode(lnk, linkInfo + lnk.getInt(linkInfo + 28)));
+        
+        lnk.position(linkInfo + lnk.getInt(linkInfo));
+        assertEquals("D:\\\u0414\u0430\u043d\u0438\u043b\u0430", readCountedString(lnk));
+        
+        // The ANSI path depends on the system's code page, so only the
+        // Unicode copy is compared
+        assertEquals(0x314, lnk.getInt());
+        assertEquals(0xA0000001, lnk.getInt());
+        lnk.position(lnk.position() + 260);
+        assertEquals(path, readFixedUnicode(lnk, 520));
+        assertEquals(0, lnk.getInt());
+        assertFalse(lnk.hasRemaining());
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testPathIsRequired() {
+        new JLnk().toBytes();
+    }
+    
+    /**
+     * Checks the ShellLinkHeader, leaving the buffer after it.
+     * @return The link flags.
+     */
+    private static int readHeader(ByteBuffer lnk, int iconIndex){
+        assertEquals(0x4C, lnk.getInt());
+        byte[] clsid = new byte[16];
+        lnk.get(clsid);
+        assertArrayEquals(LINK_CLSID, clsid);
+        
+        int flags = lnk.getInt();
+        assertEquals(0x20, lnk.getInt());               // FILE_ATTRIBUTE_ARCHIVE
+        lnk.position(lnk.position() + 3 * 8 + 4);       // Times and file size
+        assertEquals(iconIndex, lnk.getInt());
+        assertEquals(1, lnk.getInt());                  // SW_SHOWNORMAL
+        assertEquals(0, lnk.getShort());                // Hot key
+        lnk.position(0x4C);
+        return flags;
+    }
+    
+    /** Checks the EnvironmentVariableDataBlock and the TerminalBlock. */
+    private static void assertEnvironmentBlock(ByteBuffer lnk, String path){
+        assertEquals(0x314, lnk.getInt());
+        assertEquals(0xA0000001, lnk.getInt());
+        assertEquals(path, readFixedAnsi(lnk, 260));
+        assertEquals(path, readFixedUnicode(lnk, 520));
+        assertEquals(0, lnk.getInt());
+        assertFalse(lnk.hasRemaining());
+    }
+    
+    private static ByteBuffer wrap(byte[] lnk){
+        return ByteBuffer.wrap(lnk).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /** Reads a null terminated ASCII string at an offset. */
+    private static String readAnsi(ByteBuffer lnk, int offset){
+        StringBuilder s = new StringBuilder();
+        for(int i=offset; lnk.get(i) != 0; i++){
+            s.append((char) lnk.get(i));
+        }
+        return s.toString();
+    }
+    
+    /** Reads a null terminated UTF-16 string at an offset. */
+    private static String readUnicode(ByteBuffer lnk, int offset){
+        StringBuilder s = new StringBuilder();
+        for(int i=offset; lnk.getChar(i) != 0; i+=2){
+            s.append(lnk.getChar(i));
+        }
+        return s.toString();
+    }
+    
+    /** Reads a StringData string, a character count followed by UTF-16. */
+    private static String readCountedString(ByteBuffer lnk){
+        byte[] b = new byte[(lnk.getShort() & 0xFFFF) * 2];
+        lnk.get(b);
+        return new String(b, UTF_16LE);
+    }
+    
+    /** Reads a null padded ASCII field, checking the padding. */
+    private static String readFixedAnsi(ByteBuffer lnk, int length){
+        int start = lnk.position();
+        String s = readAnsi(lnk, start);
+        for(int i=start + s.length(); i<start + length; i++){
+            assertEquals(0, lnk.get(i));
+        }
+        lnk.position(start + length);
+        return s;
+    }
+    
+    /** Reads a null padded UTF-16 field, checking the padding. */
+    private static String readFixedUnicode(ByteBuffer lnk, int length){
+        int start = lnk.position();
+        String s = readUnicode(lnk, start);
+        for(int i=start + s.length() * 2; i<start + length; i++){
+            assertEquals(0, lnk.get(i));
+        }
+        lnk.position(start + length);
+        return s;
+    }
+}
@@ -0,0 +1,177 @@
+/* Profile Manager
+ * Copyright (C) 2012 Curtis Oakley
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chockly.pm.win86;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Reads captured <tt>reg query /s</tt> output with {@link RegistryReader} and
+ * {@link RegistryFile}.
+ *
+ * @author Curtis Oakley
+ */
+public class RegistryReaderTest {
+    
+    private static final String BETHESDA = "Bethesda Softworks";
+    private static final String WOW_KEY = "HKEY_LOCAL_MACHINE\\SOFTWARE\\Wow6432Node\\" + BETHESDA;
+    private static final String NATIVE_KEY = "HKEY_LOCAL_MACHINE\\SOFTWARE\\" + BETHESDA;
+    
+    /**
+     * The output of <tt>reg query "HKLM\Software\Wow6432Node\Bethesda Softworks" /s</tt>
+     * on 64 bit Windows, with reg's CRLF line endings.
+     */
+    private static final String WOW_OUTPUT = lines(
+            "",
+            "HKEY_LOCAL_MACHINE\\SOFTWARE\\Wow6432Node\\Bethesda Softworks",
+            "    (Default)    REG_SZ    (value not set)",
+            "",
+            "HKEY_LOCAL_MACHINE\\SOFTWARE\\Wow6432Node\\Bethesda Softworks\\Fallout3",
+            "    Installed Path    REG_SZ    C:\\Games\\Fallout 3\\",
+            "    Installed    REG_DWORD    0x1",
+            "",
+            "HKEY_LOCAL_MACHINE\\SOFTWARE\\Wow6432Node\\Bethesda Softworks\\Oblivion",
+            "    installed path    REG_SZ    C:\\Program Files (x86)\\Bethesda Softworks\\Oblivion   ",
+            "    Version    REG_SZ    1.2.0416",
+            "",
+            "HKEY_LOCAL_MACHINE\\SOFTWARE\\Wow6432Node\\Bethesda Softworks\\Oblivion\\Shivering Isles",
+            "    Installed Path    REG_SZ",
+            "",
+            "HKEY_LOCAL_MACHINE\\SOFTWARE\\WOW6432Node\\Bethesda Softworks\\skyrim",
+            "    Installed Path    REG_EXPAND_SZ    %ProgramFiles(x86)%\\Steam\\steamapps\\common\\Skyrim",
+            "    Installed Path Backup    REG_SZ    D:\\Old Skyrim\\",
+            "",
+            "HKEY_LOCAL_MACHINE\\SOFTWARE\\Wow6432Node\\Bethesda Softworks Launcher",
+            "    Installed Path    REG_SZ    C:\\Launcher\\",
+            "",
+            "End of search: 4 match(es) found.");
+    
+    /** The same query against the native key, on 32 bit Windows. */
+    private static final String NATIVE_OUTPUT = lines(
+            "",
+            "HKEY_LOCAL_MACHINE\\SOFTWARE\\Bethesda Softworks\\Morrowind",
+            "    Installed Path    REG_SZ    C:\\Program Files\\Bethesda Softworks\\Morrowind\\",
+            "",
+            "HKEY_LOCAL_MACHINE\\SOFTWARE\\Bethesda Softworks\\FalloutNV",
+            "    Installed Path    REG_SZ    C:\\Program Files\\Fallout New Vegas",
+            "",
+            "End of search: 2 match(es) found.");
+    
+    @Test
+    public void testParseWow6432Node() throws IOException {
+        Map<String, String> values = parse(WOW_OUTPUT, WOW_KEY, "Installed Path");
+        
+        assertEquals(4, values.size());
+        assertEquals("C:\\Games\\Fallout 3\\", values.get("Fallout3"));
+        assertEquals("C:\\Program Files (x86)\\Bethesda Softworks\\Oblivion",
+                values.get("Oblivion"));
+        assertEquals("", values.get("Oblivion\\Shivering Isles"));
+        assertEquals("%ProgramFiles(x86)%\\Steam\\steamapps\\common\\Skyrim",
+                values.get("skyrim"));
+        // The keys ignore case like the registry does
+        assertEquals(values.get("skyrim"), values.get("Skyrim"));
+        // Only the queried key and its subkeys are read
+        assertFalse(values.containsKey("Launcher"));
+        assertFalse(values.containsValue("C:\\Launcher\\"));
+    }
+    
+    @Test
+    public void testParseOtherValues() throws IOException {
+        Map<String, String> values = parse(WOW_OUTPUT, WOW_KEY, "Installed Path Backup");
+        assertEquals(1, values.size());
+        assertEquals("D:\\Old Skyrim\\", values.get("Skyrim"));
+        
+        values = parse(WOW_OUTPUT, WOW_KEY, "(Default)");
+        assertEquals(1, values.size());
+        assertEquals("(value not set)", values.get(""));
+        
+        values = parse(WOW_OUTPUT, WOW_KEY, "Installed");
+        assertEquals(1, values.size());
+        assertEquals("0x1", values.get("Fallout3"));
+    }
+    
+    @Test
+    public void testParseNativeKey() throws IOException {
+        Map<String, String> values = parse(NATIVE_OUTPUT, NATIVE_KEY, "Installed Path");
+        assertEquals(2, values.size());
+        assertEquals("C:\\Program Files\\Bethesda Softworks\\Morrowind\\",
+                values.get("Morrowind"));
+        assertEquals("C:\\Program Files\\Fallout New Vegas", values.get("FalloutNV"));
+        
+        // The 32 bit keys aren't under the native key, nor the reverse
+        assertTrue(parse(WOW_OUTPUT, NATIVE_KEY, "Installed Path").isEmpty());
+        assertTrue(parse(NATIVE_OUTPUT, WOW_KEY, "Installed Path").isEmpty());
+        assertTrue(parse("", NATIVE_KEY, "Installed Path").isEmpty());
+    }
+    
+    @Test
+    public void testRegistryFile() throws IOException {
+        File file = File.createTempFile("registry", ".txt");
+        try {
+            // Both queries saved into one file
+            write(file, WOW_OUTPUT + NATIVE_OUTPUT);
+            RegistryFile reg = new RegistryFile(file);
+            
+            // The 32 bit key is used when it exists
+            Map<String, String> values = reg.findValues(BETHESDA, "Installed Path");
+            assertEquals(4, values.size());
+            assertEquals("C:\\Games\\Fallout 3\\", values.get("Fallout3"));
+            assertNull(values.get("Morrowind"));
+            
+            // Otherwise the native key is read
+            write(file, NATIVE_OUTPUT);
+            values = reg.findValues(BETHESDA, "Installed Path");
+            assertEquals(2, values.size());
+            assertEquals("C:\\Program Files\\Fallout New Vegas", values.get("FalloutNV"));
+            
+            assertTrue(reg.findValues("Missing", "Installed Path").isEmpty());
+        } finally {
+            file.delete();
+        }
+    }
+    
+    private static Map<String, String> parse(String output, String key, String name)
+            throws IOException
+    {
+        return RegistryReader.parse(new BufferedReader(new StringReader(output)), key, name);
+    }
+    
+    private static String lines(String... lines){
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<lines.length; i++){
+            sb.append(lines[i]).append("\r\n");
+        }
+        return sb.toString();
+    }
+    
+    private static void write(File file, String text) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write(text);
+        } finally {
+            out.close();
+        }
+    }
+}